@@ -0,0 +1,52 @@
+package org.russpollock.rss;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.russpollock.rss.models.Article;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * BenchmarkFixtures
+ *
+ * Loads the recorded search hits in benchmarks/article-hits.json.
+ * Each hit is an ES search hit (`_id`, `_score`, `_source`) of a realistically sized article.
+ */
+public class BenchmarkFixtures {
+    private static final String RECORDED_HITS = "benchmarks/article-hits.json";
+
+    public static List<JsonObject> recordedHits() {
+        try(InputStream stream = BenchmarkFixtures.class.getClassLoader().getResourceAsStream(RECORDED_HITS)) {
+            if(stream == null) {
+                throw new NullPointerException(String.format("Missing benchmark resource %s", RECORDED_HITS));
+            }
+            final JsonArray hits = new JsonParser()
+                    .parse(new InputStreamReader(stream, StandardCharsets.UTF_8)).getAsJsonArray();
+            final List<JsonObject> recorded = new ArrayList<>(hits.size());
+            for(JsonElement hit: hits) {
+                recorded.add(hit.getAsJsonObject());
+            }
+            return recorded;
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static List<Article> recordedArticles() {
+        final Gson gson = new Gson();
+        final List<Article> articles = new ArrayList<>();
+        for(JsonObject hit: recordedHits()) {
+            articles.add(gson.fromJson(hit.get("_source"), Article.class));
+        }
+        return articles;
+    }
+}
@@ -0,0 +1,49 @@
+package org.russpollock.rss.models.builders;
+
+import org.russpollock.rss.BenchmarkFixtures;
+import org.russpollock.rss.models.Article;
+import org.russpollock.rss.models.Link;
+import org.russpollock.rss.models.Tag;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ArticleBuilderBenchmark {
+    private Article template;
+
+    @Setup
+    public void setup() {
+        template = BenchmarkFixtures.recordedArticles().get(1);
+    }
+
+    @Benchmark
+    public Article build() {
+        ArticleBuilder ab = new ArticleBuilder()
+                .setURL(template.URL)
+                .setTile(template.title)
+                .setDescription(template.description)
+                .setContent(template.content)
+                .setContentType(template.contentType)
+                .setAuthor(template.author)
+                .setSource(template.source)
+                .setPublished(template.published)
+                .setUpdated(template.updated)
+                .setCreated(template.created);
+        for(Tag tag: template.tags) {
+            ab.addTag(tag.tag, tag.tagType);
+        }
+        for(Link link: template.links) {
+            ab.addLink(link.href);
+        }
+        return ab.build();
+    }
+}
@@ -0,0 +1,55 @@
+package org.russpollock.rss.repository;
+
+import org.russpollock.rss.BenchmarkFixtures;
+import org.russpollock.rss.models.Article;
+import org.russpollock.rss.models.ArticleBatch;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ArticleSerializationBenchmark {
+    @Param({"0", "1", "2"})
+    public int article;
+
+    private Article target;
+    private ArticleBatch batch;
+    private BytesStreamOutput out;
+
+    @Setup
+    public void setup() {
+        target = BenchmarkFixtures.recordedArticles().get(article);
+        batch = new ArticleBatch();
+        batch.add(target);
+        out = new BytesStreamOutput();
+    }
+
+    @Benchmark
+    public String serializeJSON() {
+        return target.serializeJSON();
+    }
+
+    @Benchmark
+    public BytesReference codecToXContent() {
+        return ArticleCodec.toXContent(target).bytes();
+    }
+
+    @Benchmark
+    public int batchWriteSource() throws IOException {
+        out.reset();
+        batch.writeSource(0, out);
+        return out.size();
+    }
+}
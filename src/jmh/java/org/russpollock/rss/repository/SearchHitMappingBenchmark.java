@@ -0,0 +1,57 @@
+package org.russpollock.rss.repository;
+
+import com.google.gson.JsonObject;
+import org.russpollock.rss.BenchmarkFixtures;
+import org.russpollock.rss.models.ArticleHit;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.text.Text;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHitField;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SearchHitMappingBenchmark
+ *
+ * Measures EsArticleDatastore.searchHitsToArticleHits over pages of recorded hits.
+ * Run with the gc profiler to get the allocation rate per page.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SearchHitMappingBenchmark {
+    @Param({"10", "100"})
+    public int pageSize;
+
+    private SearchHit[] hits;
+
+    @Setup
+    public void setup() {
+        final List<JsonObject> recorded = BenchmarkFixtures.recordedHits();
+        hits = new SearchHit[pageSize];
+        for(int i = 0; i < pageSize; i++) {
+            final JsonObject hit = recorded.get(i % recorded.size());
+            final SearchHit searchHit = new SearchHit(i, hit.get("_id").getAsString(),
+                    new Text(hit.get("_type").getAsString()), Collections.<String, SearchHitField>emptyMap());
+            searchHit.sourceRef(new BytesArray(hit.get("_source").toString().getBytes(StandardCharsets.UTF_8)));
+            searchHit.score(hit.get("_score").getAsFloat());
+            hits[i] = searchHit;
+        }
+    }
+
+    @Benchmark
+    public List<ArticleHit> searchHitsToArticleHits() {
+        return EsArticleDatastore.searchHitsToArticleHits(hits);
+    }
+}
@@ -0,0 +1,132 @@
+package org.russpollock.rss.repository.http;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.russpollock.rss.BenchmarkFixtures;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * EsHttpStub
+ *
+ * Local http server answering the ES endpoints HttpArticleDatastore uses with canned responses:
+ * searches return pageSize recorded hits and bulks report every item as created.
+ * Request bodies are read in full and gzip is honoured both ways, so the client side costs are real.
+ */
+class EsHttpStub {
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final byte[] searchResponse;
+
+    EsHttpStub(final int pageSize) throws IOException {
+        this.searchResponse = buildSearchResponse(pageSize);
+        // Without TCP_NODELAY the stub's separate header and body writes hit delayed ACKs
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.createContext("/", this::handle);
+        this.server.setExecutor(executor);
+        this.server.start();
+    }
+
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        final byte[] body = readBody(exchange);
+        final String path = exchange.getRequestURI().getPath();
+        final byte[] response;
+        if(path.endsWith("/_search")) {
+            response = searchResponse;
+        } else if(path.endsWith("/_bulk")) {
+            response = buildBulkResponse(body);
+        } else {
+            response = "{\"result\":\"created\",\"_shards\":{\"total\":1,\"successful\":1,\"failed\":0}}"
+                    .getBytes(StandardCharsets.UTF_8);
+        }
+        writeResponse(exchange, response);
+    }
+
+    private static byte[] readBody(final HttpExchange exchange) throws IOException {
+        final boolean gzipped = "gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"));
+        try(InputStream in = gzipped ? new GZIPInputStream(exchange.getRequestBody()) : exchange.getRequestBody()) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            int read;
+            while((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static void writeResponse(final HttpExchange exchange, final byte[] response) throws IOException {
+        final String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        exchange.getResponseHeaders().add("Content-Type", "application/json; charset=UTF-8");
+        byte[] payload = response;
+        if(acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try(GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(response);
+            }
+            payload = compressed.toByteArray();
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+        }
+        exchange.sendResponseHeaders(200, payload.length);
+        try(OutputStream out = exchange.getResponseBody()) {
+            out.write(payload);
+        }
+    }
+
+    private static byte[] buildSearchResponse(final int pageSize) {
+        final List<JsonObject> recorded = BenchmarkFixtures.recordedHits();
+        final JsonArray hits = new JsonArray();
+        for(int i = 0; i < pageSize; i++) {
+            hits.add(recorded.get(i % recorded.size()));
+        }
+        final JsonObject hitsObject = new JsonObject();
+        hitsObject.addProperty("total", pageSize);
+        hitsObject.addProperty("max_score", 1.0f);
+        hitsObject.add("hits", hits);
+        final JsonObject response = new JsonObject();
+        response.addProperty("took", 1);
+        response.addProperty("timed_out", false);
+        response.add("hits", hitsObject);
+        return response.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] buildBulkResponse(final byte[] body) {
+        int lines = 0;
+        for(byte b: body) {
+            if(b == '\n') {
+                lines++;
+            }
+        }
+        final StringBuilder response = new StringBuilder("{\"took\":1,\"errors\":false,\"items\":[");
+        for(int i = 0; i < lines / 2; i++) {
+            if(i > 0) {
+                response.append(',');
+            }
+            response.append("{\"index\":{\"_index\":\"articles\",\"_type\":\"article\",\"_id\":\"")
+                    .append(i).append("\",\"status\":201}}");
+        }
+        return response.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,92 @@
+package org.russpollock.rss.repository.http;
+
+import org.russpollock.rss.BenchmarkFixtures;
+import org.russpollock.rss.metrics.DefaultMetricsRegistry;
+import org.russpollock.rss.models.Article;
+import org.russpollock.rss.models.ArticleHit;
+import org.russpollock.rss.repository.ElasticSearchRestClient;
+import org.russpollock.rss.repository.queries.SearchQuery;
+import org.russpollock.rss.repository.queries.SearchQueryBuilder;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HttpArticleDatastoreBenchmark
+ *
+ * Round trips of HttpArticleDatastore against EsHttpStub on localhost, with and without gzip.
+ * Compare search with SearchHitMappingBenchmark for the transport path's client side cost.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HttpArticleDatastoreBenchmark {
+    @Param({"10", "100"})
+    public int pageSize;
+
+    @Param({"true", "false"})
+    public boolean compression;
+
+    private EsHttpStub stub;
+    private RestClient restClient;
+    private HttpArticleDatastore datastore;
+    private SearchQuery query;
+    private List<Article> articles;
+
+    @Setup
+    public void setup() throws IOException {
+        stub = new EsHttpStub(pageSize);
+        restClient = ElasticSearchRestClient.build(
+                Collections.singletonList(new HttpHost("127.0.0.1", stub.getPort(), "http")),
+                ElasticSearchRestClient.DEFAULT_MAX_CONNECTIONS,
+                ElasticSearchRestClient.DEFAULT_MAX_CONNECTIONS_PER_NODE,
+                ElasticSearchRestClient.DEFAULT_KEEP_ALIVE_MILLIS,
+                DefaultMetricsRegistry.getInstance());
+        datastore = new HttpArticleDatastore(restClient, "articles", new String[] {"articles"});
+        datastore.setCompressionThresholdBytes(compression ? HttpArticleDatastore.DEFAULT_COMPRESSION_THRESHOLD_BYTES : -1);
+
+        SearchQueryBuilder builder = new SearchQueryBuilder();
+        builder.setSearchQuery("transit expansion");
+        builder.setFields("title", "description", "content");
+        builder.setLimit(pageSize);
+        query = builder.build();
+
+        final List<Article> recorded = BenchmarkFixtures.recordedArticles();
+        articles = new ArrayList<>(pageSize);
+        for(int i = 0; i < pageSize; i++) {
+            final Article article = new Article(recorded.get(i % recorded.size()));
+            article.URL = article.URL + "#" + i;
+            articles.add(article);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        restClient.close();
+        stub.stop();
+    }
+
+    @Benchmark
+    public List<ArticleHit> search() {
+        return datastore.search(query);
+    }
+
+    @Benchmark
+    public void saveAll() {
+        datastore.saveAll(articles);
+    }
+}
@@ -0,0 +1,52 @@
+package org.russpollock.rss.repository.queries;
+
+import org.russpollock.rss.models.Tag;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ArticleSearchQueryBuilderBenchmark {
+    @Param({"1", "10", "100"})
+    public int tagCount;
+
+    private ArrayList<Tag> tags;
+    private SearchQuery query;
+
+    @Setup
+    public void setup() {
+        tags = new ArrayList<>(tagCount);
+        for(int i = 0; i < tagCount; i++) {
+            tags.add(new Tag("tag-" + i, (i % 2 == 0) ? "category" : "keyword"));
+        }
+        query = build();
+    }
+
+    @Benchmark
+    public SearchQuery build() {
+        ArticleSearchQueryBuilder builder = new ArticleSearchQueryBuilder();
+        builder.setSearchQuery("transit expansion");
+        builder.setFields("title", "description", "content");
+        builder.setAuthor("Jane Alvarez")
+                .setContentType("text/html")
+                .setPublished("2017-01-01", "2017-06-30")
+                .setCreated("2017-01-01", SearchQuery.RANGE.GREATER_THAN_OR_EQUAL)
+                .setTags(tags);
+        return builder.build();
+    }
+
+    @Benchmark
+    public String searchQueryToString() {
+        return query.toString();
+    }
+}
@@ -12,10 +12,23 @@ public class RssEnvironment {
     private String[] props = {
             getESClusterNameProp(),
             getESTransportAddressesProp(),
+            getESTransportPortProp(),
+            getESHttpAddressesProp(),
+            getESHttpPortProp(),
             getESArticleSearchIndiciesProp(),
             getESArticleWriteIndexProp(),
+            getESPartitionPrefixProp(),
+            getESPartitionIntervalProp(),
+            getESPartitionFieldProp(),
+            getESRoutingFieldProp(),
             getProvisionESWriteIndexProp(),
-            getProvisionESDropAndCreateProp()
+            getProvisionESDropAndCreateProp(),
+            getProvisionESPartitionPrefixProp(),
+            getMemorySnapshotFileProp(),
+            getIngestFingerprintFileProp(),
+            getIngestSpoolDirectoryProp(),
+            getBulkLoadThreadsProp(),
+            getBulkLoadConcurrentBulksProp()
     };
 
     public RssEnvironment() {
@@ -52,6 +65,18 @@ public class RssEnvironment {
         return ENV_PREFIX + ".es.transportAddresses";
     }
 
+    public String getESTransportPortProp() {
+        return ENV_PREFIX + ".es.transportPort";
+    }
+
+    public String getESHttpAddressesProp() {
+        return ENV_PREFIX + ".es.httpAddresses";
+    }
+
+    public String getESHttpPortProp() {
+        return ENV_PREFIX + ".es.httpPort";
+    }
+
     public String getESArticleSearchIndiciesProp() {
         return ENV_PREFIX + ".es.articleSearchIndicies";
     }
@@ -60,6 +85,22 @@ public class RssEnvironment {
         return ENV_PREFIX + ".es.articleWriteIndex";
     }
 
+    public String getESPartitionPrefixProp() {
+        return ENV_PREFIX + ".es.partitionPrefix";
+    }
+
+    public String getESPartitionIntervalProp() {
+        return ENV_PREFIX + ".es.partitionInterval";
+    }
+
+    public String getESPartitionFieldProp() {
+        return ENV_PREFIX + ".es.partitionField";
+    }
+
+    public String getESRoutingFieldProp() {
+        return ENV_PREFIX + ".es.routingField";
+    }
+
     public String getProvisionESWriteIndexProp() {
         return ENV_PREFIX + ".provision.es.writeIndex";
     }
@@ -68,6 +109,30 @@ public class RssEnvironment {
         return ENV_PREFIX + ".provision.es.dropAndCreate";
     }
 
+    public String getProvisionESPartitionPrefixProp() {
+        return ENV_PREFIX + ".provision.es.partitionPrefix";
+    }
+
+    public String getMemorySnapshotFileProp() {
+        return ENV_PREFIX + ".memory.snapshotFile";
+    }
+
+    public String getIngestFingerprintFileProp() {
+        return ENV_PREFIX + ".ingest.fingerprintFile";
+    }
+
+    public String getIngestSpoolDirectoryProp() {
+        return ENV_PREFIX + ".ingest.spoolDirectory";
+    }
+
+    public String getBulkLoadThreadsProp() {
+        return ENV_PREFIX + ".bulkload.threads";
+    }
+
+    public String getBulkLoadConcurrentBulksProp() {
+        return ENV_PREFIX + ".bulkload.concurrentBulks";
+    }
+
     private static class LazyHolder {
         private static final RssEnvironment INSTANCE = new RssEnvironment();
     }
@@ -0,0 +1,361 @@
+package org.russpollock.rss.bootstrap;
+
+import org.russpollock.rss.RssEnvironment;
+import org.russpollock.rss.models.Article;
+import org.russpollock.rss.repository.ArticleCodec;
+import org.russpollock.rss.repository.ArticleDatastoreFactory;
+import org.russpollock.rss.repository.ElasticSearchClient;
+import org.russpollock.rss.repository.EsArticleDatastore;
+import org.russpollock.rss.repository.ingest.ArticleIngestor;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * BulkLoad
+ *
+ * Loads NDJSON article dumps, one Article per line like the in memory snapshot, into ElasticSearch.
+ * Plain files are memory mapped and split at line boundaries into chunks parsed in parallel, gzipped files
+ * are inflated with a large buffer on the calling thread and their chunks parsed in parallel.
+ * Parsed articles go through an ArticleIngestor, so partitions, routing, dedup and the spool apply, and
+ * its bound on concurrent bulks throttles the parsers: the load runs as fast as the cluster accepts bulks.
+ * Progress is logged in documents per second.
+ *
+ * Usage: BulkLoad <file or directory>... with the ElasticSearch environment variables of the ES datastore.
+ */
+public class BulkLoad {
+    private static final Logger LOGGER = LogManager.getLogger(BulkLoad.class);
+    private static final RssEnvironment ENV = RssEnvironment.getInstance();
+    public static final int DEFAULT_CONCURRENT_BULKS = 4;
+    public static final int DEFAULT_CHUNK_BYTES = 8 * 1024 * 1024;
+    public static final long DEFAULT_REPORT_INTERVAL_MILLIS = 5000;
+    private static final long MAX_MAP_BYTES = 1L << 30;
+    private static final int GZIP_BUFFER_BYTES = 1024 * 1024;
+    private final ArticleIngestor ingestor;
+    private final int threads;
+    private final int chunkBytes;
+    private final AtomicLong parsed = new AtomicLong();
+    private final AtomicLong invalid = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+
+    /**
+     * BulkLoad
+     *
+     * @param ingestor ArticleIngestor the articles are added to
+     * @param threads int number of parser threads
+     * @param chunkBytes int size of the chunks files are split into
+     */
+    public BulkLoad(final ArticleIngestor ingestor, final int threads, final int chunkBytes) {
+        this.ingestor = ingestor;
+        this.threads = Math.max(1, threads);
+        this.chunkBytes = Math.max(64 * 1024, chunkBytes);
+    }
+
+    public static void main(String[] args) {
+        if(args.length == 0) {
+            LOGGER.error("Usage: BulkLoad <NDJSON file or directory, .gz files are gunzipped>...");
+            System.exit(1);
+        }
+        final List<Path> files;
+        try {
+            files = listFiles(args);
+        } catch(IOException e) {
+            LOGGER.error("Unable to list the files to load", e);
+            System.exit(1);
+            return;
+        }
+
+        final String threadsEnv = ENV.getEnv(ENV.getBulkLoadThreadsProp());
+        final String concurrentBulksEnv = ENV.getEnv(ENV.getBulkLoadConcurrentBulksProp());
+        final int threads = (threadsEnv == null)
+                ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(threadsEnv);
+        final int concurrentBulks = (concurrentBulksEnv == null)
+                ? DEFAULT_CONCURRENT_BULKS : Integer.parseInt(concurrentBulksEnv);
+
+        final EsArticleDatastore datastore = (EsArticleDatastore) ArticleDatastoreFactory.getArticleDatastore(
+                ArticleDatastoreFactory.DATASTORE_TYPE.ELASTIC_SEARCH);
+        final ArticleIngestor ingestor;
+        try {
+            ingestor = datastore.ingestorBuilder()
+                    .setConcurrentRequests(concurrentBulks)
+                    .build();
+        } catch(NullPointerException e) {
+            LOGGER.error(String.format("You must set a write index in environment var %s or a partition prefix in %s.",
+                    ENV.getESArticleWriteIndexProp(), ENV.getESPartitionPrefixProp()), e);
+            ElasticSearchClient.getInstance().getClient().close();
+            System.exit(1);
+            return;
+        }
+
+        boolean completed = false;
+        try {
+            completed = new BulkLoad(ingestor, threads, DEFAULT_CHUNK_BYTES).load(files);
+        } catch(IOException | UncheckedIOException e) {
+            LOGGER.error("Bulk load failed", e);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.error("Bulk load interrupted", e);
+        } finally {
+            ingestor.close();
+            ElasticSearchClient.getInstance().getClient().close();
+        }
+        System.exit((completed && ingestor.getFailedCount() == 0) ? 0 : 1);
+    }
+
+    /**
+     * load
+     *
+     * Parses every file into the ingestor and waits for the last bulk.
+     *
+     * @param files List of Paths, files ending in `.gz` are gunzipped
+     * @return boolean true if every bulk completed
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public boolean load(final List<Path> files) throws IOException, InterruptedException {
+        LOGGER.info(String.format("Bulk loading %s files with %s parser threads", files.size(), threads));
+        // A full queue runs the chunk on the reading thread, so reading never gets far ahead of parsing
+        final ThreadPoolExecutor parsers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+        final ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "bulk-load-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final long start = System.nanoTime();
+        final long[] last = {start, 0};
+        reporter.scheduleAtFixedRate(() -> {
+            final long now = System.nanoTime();
+            final long indexed = ingestor.getIndexedCount();
+            report(indexed, (indexed - last[1]) / seconds(now - last[0]), indexed / seconds(now - start));
+            last[0] = now;
+            last[1] = indexed;
+        }, DEFAULT_REPORT_INTERVAL_MILLIS, DEFAULT_REPORT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+
+        final List<Future<?>> chunks = new ArrayList<>();
+        try {
+            for(Path file: files) {
+                LOGGER.info(String.format("Loading %s", file));
+                if(file.getFileName().toString().endsWith(".gz")) {
+                    readGzip(file, parsers, chunks);
+                } else {
+                    readMapped(file, parsers, chunks);
+                }
+            }
+            for(Future<?> chunk: chunks) {
+                try {
+                    chunk.get();
+                } catch(ExecutionException e) {
+                    LOGGER.error("Failed to parse a chunk", e.getCause());
+                }
+            }
+        } finally {
+            parsers.shutdownNow();
+        }
+
+        final boolean completed = ingestor.awaitClose(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        reporter.shutdownNow();
+        final long indexed = ingestor.getIndexedCount();
+        LOGGER.info(String.format("Bulk load done: %s parsed, %s indexed, %s failed, %s skipped, %s spooled, "
+                        + "%s invalid lines, %s MB read, %.0f docs/sec",
+                parsed.get(), indexed, ingestor.getFailedCount(), ingestor.getSkippedCount(),
+                ingestor.getSpooledCount(), invalid.get(), bytesRead.get() / (1024 * 1024),
+                indexed / seconds(System.nanoTime() - start)));
+        return completed;
+    }
+
+    private void report(final long indexed, final double docsPerSec, final double avgDocsPerSec) {
+        LOGGER.info(String.format("%s indexed, %s parsed, %s failed, %.0f docs/sec (%.0f avg)",
+                indexed, parsed.get(), ingestor.getFailedCount(), docsPerSec, avgDocsPerSec));
+    }
+
+    private static double seconds(final long nanos) {
+        return Math.max(1, nanos) / 1e9;
+    }
+
+    /**
+     * readMapped
+     *
+     * Maps a file in windows of up to 1GB and splits each window into chunks ending on a line end.
+     */
+    private void readMapped(final Path file, final ExecutorService parsers, final List<Future<?>> chunks)
+            throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            long position = 0;
+            while(position < size) {
+                final long length = Math.min(MAX_MAP_BYTES, size - position);
+                final MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                int end = (int) length;
+                if(position + length < size) {
+                    end = lastLineEnd(window, 0, end);
+                    if(end <= 0) {
+                        throw new IOException(String.format("%s has a line longer than %s bytes at %s",
+                                file, MAX_MAP_BYTES, position));
+                    }
+                }
+                int start = 0;
+                while(start < end) {
+                    int chunkEnd = end;
+                    if(end - start > chunkBytes) {
+                        chunkEnd = nextLineEnd(window, start + chunkBytes, end);
+                    }
+                    final ByteBuffer chunk = window.duplicate();
+                    chunk.position(start);
+                    chunk.limit(chunkEnd);
+                    chunks.add(parsers.submit(() -> parse(chunk.slice())));
+                    start = chunkEnd;
+                }
+                position += end;
+            }
+        }
+    }
+
+    /**
+     * readGzip
+     *
+     * Inflates a file into chunks ending on a line end, the partial last line is carried into the next chunk.
+     */
+    private void readGzip(final Path file, final ExecutorService parsers, final List<Future<?>> chunks)
+            throws IOException {
+        try(InputStream in = new GZIPInputStream(Files.newInputStream(file), GZIP_BUFFER_BYTES)) {
+            byte[] block = new byte[chunkBytes];
+            int filled = 0;
+            int read;
+            while((read = in.read(block, filled, block.length - filled)) != -1) {
+                filled += read;
+                if(filled < block.length) {
+                    continue;
+                }
+                final int end = lastLineEnd(ByteBuffer.wrap(block), 0, filled);
+                if(end <= 0) {
+                    // A line longer than a chunk, grow the block until it ends
+                    block = Arrays.copyOf(block, block.length * 2);
+                    continue;
+                }
+                final byte[] next = new byte[Math.max(chunkBytes, filled - end)];
+                System.arraycopy(block, end, next, 0, filled - end);
+                final ByteBuffer chunk = ByteBuffer.wrap(block, 0, end);
+                chunks.add(parsers.submit(() -> parse(chunk)));
+                filled -= end;
+                block = next;
+            }
+            if(filled > 0) {
+                final ByteBuffer chunk = ByteBuffer.wrap(block, 0, filled);
+                chunks.add(parsers.submit(() -> parse(chunk)));
+            }
+        }
+    }
+
+    /**
+     * parse
+     *
+     * Parses the lines of a chunk into Articles and adds them to the ingestor. Blank lines are skipped,
+     * lines that are not an article with a URL are logged and counted as invalid.
+     */
+    private void parse(final ByteBuffer chunk) {
+        bytesRead.addAndGet(chunk.remaining());
+        byte[] line = new byte[4096];
+        while(chunk.hasRemaining()) {
+            final int start = chunk.position();
+            int end = nextLineEnd(chunk, start, chunk.limit());
+            int length = end - start;
+            if(length > line.length) {
+                line = new byte[Math.max(length, line.length * 2)];
+            }
+            chunk.get(line, 0, length);
+            while(length > 0 && (line[length - 1] == '\n' || line[length - 1] == '\r')) {
+                length--;
+            }
+            if(length == 0) {
+                continue;
+            }
+            final Article article;
+            try(XContentParser parser = XContentType.JSON.xContent()
+                    .createParser(NamedXContentRegistry.EMPTY, line, 0, length)) {
+                article = ArticleCodec.read(parser, parser.nextToken(), new Article());
+            } catch(IOException | RuntimeException e) {
+                LOGGER.warn(String.format("Skipping invalid article line: %s", e.getMessage()));
+                invalid.incrementAndGet();
+                continue;
+            }
+            if(article.URL == null) {
+                invalid.incrementAndGet();
+                continue;
+            }
+            parsed.incrementAndGet();
+            ingestor.add(article);
+        }
+    }
+
+    /**
+     * nextLineEnd
+     *
+     * @return int index after the first newline at or after from, or limit
+     */
+    private static int nextLineEnd(final ByteBuffer buffer, final int from, final int limit) {
+        for(int i = from; i < limit; i++) {
+            if(buffer.get(i) == '\n') {
+                return i + 1;
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * lastLineEnd
+     *
+     * @return int index after the last newline before limit, or 0 if there is none
+     */
+    private static int lastLineEnd(final ByteBuffer buffer, final int from, final int limit) {
+        for(int i = limit - 1; i >= from; i--) {
+            if(buffer.get(i) == '\n') {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    private static List<Path> listFiles(final String[] args) throws IOException {
+        final List<Path> files = new ArrayList<>();
+        for(String arg: args) {
+            final Path path = Paths.get(arg);
+            if(!Files.isDirectory(path)) {
+                files.add(path);
+                continue;
+            }
+            try(Stream<Path> children = Files.list(path)) {
+                files.addAll(children.filter(Files::isRegularFile).sorted().collect(Collectors.toList()));
+            }
+        }
+        return files;
+    }
+}
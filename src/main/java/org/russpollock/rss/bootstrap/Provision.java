@@ -17,6 +17,13 @@ public class Provision {
     public static void main(String[] args) {
         final Client client = ElasticSearchClient.getInstance().getClient();
 
+        // Time partitioned articles get an index template instead of an index
+        final String partitionPrefix = System.getenv(ENV.getProvisionESPartitionPrefixProp());
+        if(partitionPrefix != null && !partitionPrefix.equals("")) {
+            provisionPartitionTemplate(client, partitionPrefix);
+            return;
+        }
+
         // Get articles index name env
         final String dropAndCreateProp = ENV.getProvisionESDropAndCreateProp();
         final String articleWriteIndexProp = ENV.getProvisionESWriteIndexProp();
@@ -89,6 +96,33 @@ public class Provision {
         }
     }
 
+    /**
+     * provisionPartitionTemplate
+     *
+     * Puts an index template applying the articles index settings and article mapping
+     * to every time partition `<partitionPrefix>-*`, partitions are then created on their first write.
+     *
+     * @param client Client
+     * @param partitionPrefix String
+     */
+    public static void provisionPartitionTemplate(final Client client, final String partitionPrefix) {
+        final String templateName = partitionPrefix + "-partitions";
+        final boolean createdTemplate = client.admin().indices().preparePutTemplate(templateName)
+                .setTemplate(partitionPrefix + "-*")
+                .setSettings(Provision.getArticlesIndex(), XContentType.JSON)
+                .addMapping("article", Provision.getArticleMapping(), XContentType.JSON)
+                .get().isAcknowledged();
+
+        if(createdTemplate) {
+            LOGGER.info(String.format("Successfully provisioned index template %s for %s-*",
+                    templateName, partitionPrefix));
+        } else {
+            LOGGER.error(String.format("Failed to provision index template %s", templateName));
+            client.close();
+            System.exit(1);
+        }
+    }
+
     public static String getArticlesIndex() throws NullPointerException {
         String articlesJson = null;
         try {
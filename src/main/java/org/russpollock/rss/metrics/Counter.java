@@ -0,0 +1,9 @@
+package org.russpollock.rss.metrics;
+
+public interface Counter extends Metric {
+    void increment();
+
+    void add(long delta);
+
+    long getCount();
+}
@@ -0,0 +1,106 @@
+package org.russpollock.rss.metrics;
+
+import org.HdrHistogram.ConcurrentHistogram;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * DefaultMetricsRegistry
+ *
+ * In process MetricsRegistry. Counters are LongAdders and histograms are HdrHistograms
+ * with two significant digits that resize to the largest recorded value,
+ * so recording never allocates once the range has been seen.
+ */
+public class DefaultMetricsRegistry implements MetricsRegistry {
+    private static final int SIGNIFICANT_DIGITS = 2;
+    private final ConcurrentMap<String, Metric> metrics = new ConcurrentHashMap<>();
+
+    public static final String DEFAULT_JMX_NAME = "rss-data";
+
+    private static class LazyHolder {
+        private static final DefaultMetricsRegistry INSTANCE = new DefaultMetricsRegistry();
+
+        static {
+            JmxMetricsReporter.register(INSTANCE, DEFAULT_JMX_NAME);
+        }
+    }
+
+    /**
+     * getInstance
+     *
+     * Gets the registry shared by datastores that are not given one.
+     * It is exposed over JMX as `org.russpollock.rss:type=Metrics,name="rss-data"`.
+     *
+     * @return DefaultMetricsRegistry
+     */
+    public static DefaultMetricsRegistry getInstance() {
+        return LazyHolder.INSTANCE;
+    }
+
+    public Counter counter(final String name) {
+        return register(name, AdderCounter.class, new AdderCounter());
+    }
+
+    public Histogram histogram(final String name) {
+        return register(name, HdrHistogramMetric.class, new HdrHistogramMetric());
+    }
+
+    public void gauge(final String name, final Gauge gauge) {
+        metrics.put(name, gauge);
+    }
+
+    public Map<String, Metric> getMetrics() {
+        return Collections.unmodifiableMap(new TreeMap<>(metrics));
+    }
+
+    private <T extends Metric> T register(final String name, final Class<T> type, final T metric) {
+        final Metric existing = metrics.putIfAbsent(name, metric);
+        if(existing == null) {
+            return metric;
+        }
+        if(!type.isInstance(existing)) {
+            throw new IllegalArgumentException(String.format("Metric %s is already registered as a %s",
+                    name, existing.getClass().getSimpleName()));
+        }
+        return type.cast(existing);
+    }
+
+    private static class AdderCounter implements Counter {
+        private final LongAdder count = new LongAdder();
+
+        public void increment() {
+            count.increment();
+        }
+
+        public void add(final long delta) {
+            count.add(delta);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+    }
+
+    private static class HdrHistogramMetric implements Histogram {
+        private final ConcurrentHistogram histogram = new ConcurrentHistogram(SIGNIFICANT_DIGITS);
+
+        public void record(final long value) {
+            histogram.recordValue(Math.max(0, value));
+        }
+
+        public HistogramSnapshot getSnapshot() {
+            final org.HdrHistogram.Histogram copy = histogram.copy();
+            return new HistogramSnapshot(copy.getTotalCount(),
+                    copy.getMaxValue(),
+                    copy.getMean(),
+                    copy.getValueAtPercentile(50.0),
+                    copy.getValueAtPercentile(99.0),
+                    copy.getValueAtPercentile(99.9));
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package org.russpollock.rss.metrics;
+
+/**
+ * Gauge
+ *
+ * Metric whose value is read when it is reported, e.g. the number of requests in flight.
+ */
+@FunctionalInterface
+public interface Gauge extends Metric {
+    long getValue();
+}
@@ -0,0 +1,13 @@
+package org.russpollock.rss.metrics;
+
+/**
+ * Histogram
+ *
+ * Distribution of recorded values, latencies are recorded in microseconds.
+ * Implementations must be safe to record from many threads.
+ */
+public interface Histogram extends Metric {
+    void record(long value);
+
+    HistogramSnapshot getSnapshot();
+}
@@ -0,0 +1,54 @@
+package org.russpollock.rss.metrics;
+
+public class HistogramSnapshot {
+    private final long count;
+    private final long max;
+    private final double mean;
+    private final long p50;
+    private final long p99;
+    private final long p999;
+
+    public HistogramSnapshot(final long count,
+                             final long max,
+                             final double mean,
+                             final long p50,
+                             final long p99,
+                             final long p999) {
+        this.count = count;
+        this.max = max;
+        this.mean = mean;
+        this.p50 = p50;
+        this.p99 = p99;
+        this.p999 = p999;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public long getP50() {
+        return p50;
+    }
+
+    public long getP99() {
+        return p99;
+    }
+
+    public long getP999() {
+        return p999;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("HistogramSnapshot [count: %s, mean: %.1f, p50: %s, p99: %s, p999: %s, max: %s]",
+                this.count, this.mean, this.p50, this.p99, this.p999, this.max);
+    }
+}
@@ -0,0 +1,138 @@
+package org.russpollock.rss.metrics;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JmxMetricsReporter
+ *
+ * Exposes a MetricsRegistry as a single read only MBean named `org.russpollock.rss:type=Metrics,name=<name>`.
+ * Counters and gauges are one attribute each; a histogram is reported as
+ * `<metric>.count`, `.mean`, `.p50`, `.p99`, `.p999` and `.max` attributes.
+ * Attributes are read from the registry on every request, so metrics registered later show up too.
+ */
+public class JmxMetricsReporter implements DynamicMBean {
+    private static final Logger LOGGER = LogManager.getLogger(JmxMetricsReporter.class);
+    private static final String[] HISTOGRAM_ATTRIBUTES = {"count", "mean", "p50", "p99", "p999", "max"};
+    private final MetricsRegistry registry;
+
+    public JmxMetricsReporter(final MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * register
+     *
+     * Registers the registry with the platform MBeanServer. Does nothing if the name is already registered.
+     *
+     * @param registry MetricsRegistry
+     * @param name String
+     */
+    public static void register(final MetricsRegistry registry, final String name) {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(new JmxMetricsReporter(registry),
+                    new ObjectName(String.format("org.russpollock.rss:type=Metrics,name=%s", ObjectName.quote(name))));
+        } catch(InstanceAlreadyExistsException e) {
+            LOGGER.debug(String.format("Metrics MBean %s is already registered", name));
+        } catch(JMException e) {
+            LOGGER.warn(String.format("Unable to register metrics MBean %s", name), e);
+        }
+    }
+
+    @Override
+    public Object getAttribute(final String attribute) throws AttributeNotFoundException {
+        final Map<String, Metric> metrics = registry.getMetrics();
+        final Metric metric = metrics.get(attribute);
+        if(metric instanceof Counter) {
+            return ((Counter) metric).getCount();
+        }
+        if(metric instanceof Gauge) {
+            return ((Gauge) metric).getValue();
+        }
+
+        final int split = attribute.lastIndexOf('.');
+        final Metric histogram = (split < 0) ? null : metrics.get(attribute.substring(0, split));
+        if(histogram instanceof Histogram) {
+            final HistogramSnapshot snapshot = ((Histogram) histogram).getSnapshot();
+            switch(attribute.substring(split + 1)) {
+                case "count":
+                    return snapshot.getCount();
+                case "mean":
+                    return snapshot.getMean();
+                case "p50":
+                    return snapshot.getP50();
+                case "p99":
+                    return snapshot.getP99();
+                case "p999":
+                    return snapshot.getP999();
+                case "max":
+                    return snapshot.getMax();
+                default:
+                    break;
+            }
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    @Override
+    public AttributeList getAttributes(final String[] attributes) {
+        final AttributeList list = new AttributeList();
+        for(String attribute: attributes) {
+            try {
+                list.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch(AttributeNotFoundException e) {
+                // Unknown attributes are left out of the list
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(final Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException(String.format("Metric %s is read only", attribute.getName()));
+    }
+
+    @Override
+    public AttributeList setAttributes(final AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(final String actionName, final Object[] params, final String[] signature) {
+        throw new UnsupportedOperationException(String.format("Metrics MBean has no operation %s", actionName));
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        final List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for(Map.Entry<String, Metric> entry: registry.getMetrics().entrySet()) {
+            final String name = entry.getKey();
+            if(entry.getValue() instanceof Histogram) {
+                for(String suffix: HISTOGRAM_ATTRIBUTES) {
+                    final String type = "mean".equals(suffix) ? "double" : "long";
+                    attributes.add(new MBeanAttributeInfo(name + "." + suffix, type, name, true, false, false));
+                }
+            } else {
+                attributes.add(new MBeanAttributeInfo(name, "long", name, true, false, false));
+            }
+        }
+        return new MBeanInfo(JmxMetricsReporter.class.getName(), "rss-data metrics",
+                attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null, null, null);
+    }
+}
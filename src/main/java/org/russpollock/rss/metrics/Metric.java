@@ -0,0 +1,9 @@
+package org.russpollock.rss.metrics;
+
+/**
+ * Metric
+ *
+ * Marker for the values held by a MetricsRegistry: Counter, Gauge and Histogram.
+ */
+public interface Metric {
+}
@@ -0,0 +1,45 @@
+package org.russpollock.rss.metrics;
+
+import java.util.Map;
+
+/**
+ * MetricsRegistry
+ *
+ * Named metrics recorded by the datastores. Metrics are created on first use and the same
+ * instance is returned for a name afterwards, so callers may hold on to them.
+ * Implement this to forward the datastore metrics to another metrics system.
+ */
+public interface MetricsRegistry {
+    /**
+     * counter
+     *
+     * @param name String
+     * @return Counter registered under name
+     */
+    Counter counter(String name);
+
+    /**
+     * histogram
+     *
+     * @param name String
+     * @return Histogram registered under name
+     */
+    Histogram histogram(String name);
+
+    /**
+     * gauge
+     *
+     * Registers a gauge, replacing any gauge registered under the same name.
+     *
+     * @param name String
+     * @param gauge Gauge
+     */
+    void gauge(String name, Gauge gauge);
+
+    /**
+     * getMetrics
+     *
+     * @return Map of every registered metric by name
+     */
+    Map<String, Metric> getMetrics();
+}
@@ -2,9 +2,11 @@ package org.russpollock.rss.models;
 
 import com.google.gson.Gson;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class Article extends Document {
+    private static final Gson GSON = new Gson();
 
     public static final String[] DEFAULT_SEARCH_FIELDS = {
             "URL",
@@ -29,8 +31,35 @@ public class Article extends Document {
     public String created;
 
     public String serializeJSON() {
-        return new Gson().toJson(this);
+        return GSON.toJson(this);
     }
 
     public Article() {}
+
+    /**
+     * Article
+     *
+     * Copies an Article. Tag and Link lists are copied, their immutable elements are shared.
+     *
+     * @param article Article to copy
+     */
+    public Article(final Article article) {
+        setID(article.getID());
+        this.URL = article.URL;
+        this.published = article.published;
+        this.updated = article.updated;
+        this.contentType = article.contentType;
+        this.content = article.content;
+        this.author = article.author;
+        this.title = article.title;
+        this.description = article.description;
+        this.source = article.source;
+        this.created = article.created;
+        if(article.links != null) {
+            this.links = new ArrayList<>(article.links);
+        }
+        if(article.tags != null) {
+            this.tags = new ArrayList<>(article.tags);
+        }
+    }
 }
@@ -0,0 +1,695 @@
+package org.russpollock.rss.models;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * ArticleBatch
+ *
+ * Compact, append only store of many Articles for backfills. Every string value is kept as UTF-8 in one shared
+ * byte buffer, on heap or direct, and located by int offsets and lengths in column arrays: one slot per field
+ * per article and one per value of each Link and Tag. A batch of a million articles is a few large arrays
+ * instead of tens of millions of small objects, and each article's source is written straight from the buffer
+ * into bulk request bytes without building an Article or a JSON String.
+ *
+ * Articles are appended with add(Article) or field by field between startArticle() and endArticle(),
+ * e.g. by ArticleBuilder.appendTo. When a put fails, e.g. the batch is full, the started article is discarded
+ * and the batch holds the articles ended before it. Null Links and Tags inside a list are dropped. Not thread safe.
+ */
+public class ArticleBatch {
+    public static final int DEFAULT_CAPACITY_BYTES = 1024 * 1024;
+    private static final int FIELD_COUNT = FIELD.values().length;
+    private static final int LINK_VALUES = 3;
+    private static final int TAG_VALUES = 2;
+    private static final int MAX_CAPACITY_BYTES = Integer.MAX_VALUE - 8;
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private final boolean direct;
+    private ByteBuffer data;
+    private int size;
+    private boolean open;
+    private int openDataStart;
+    private final Column fields = new Column();
+    private final Column links = new Column();
+    private final Column tags = new Column();
+    private int[] linkStarts = new int[16];
+    private int[] linkCounts = new int[16];
+    private int[] tagStarts = new int[16];
+    private int[] tagCounts = new int[16];
+
+    /**
+     * FIELD
+     *
+     * The string fields of an Article, in the order ArticleCodec writes them.
+     * ID is written after the others like the `id` of a serialized Article.
+     */
+    public static enum FIELD {
+        URL("URL"),
+        PUBLISHED("published"),
+        UPDATED("updated"),
+        CONTENT_TYPE("contentType"),
+        CONTENT("content"),
+        AUTHOR("author"),
+        TITLE("title"),
+        DESCRIPTION("description"),
+        SOURCE("source"),
+        CREATED("created"),
+        ID("id");
+
+        private final String name;
+        private final byte[] key;
+
+        FIELD(final String name) {
+            this.name = name;
+            this.key = ("\"" + name + "\":").getBytes(StandardCharsets.UTF_8);
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    public ArticleBatch() {
+        this(DEFAULT_CAPACITY_BYTES, false);
+    }
+
+    /**
+     * ArticleBatch
+     *
+     * @param capacityBytes int initial size of the string buffer, it doubles when full
+     * @param direct boolean keep the strings off heap in a direct buffer
+     */
+    public ArticleBatch(final int capacityBytes, final boolean direct) {
+        this.direct = direct;
+        this.data = allocate(Math.max(64, capacityBytes));
+    }
+
+    /**
+     * size
+     *
+     * @return int number of complete articles in the batch
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * sizeInBytes
+     *
+     * @return int bytes of string data held by the batch
+     */
+    public int sizeInBytes() {
+        return data.position();
+    }
+
+    public boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * clear
+     *
+     * Empties the batch, keeping its buffers for reuse.
+     */
+    public void clear() {
+        data.clear();
+        fields.size = 0;
+        links.size = 0;
+        tags.size = 0;
+        size = 0;
+        open = false;
+    }
+
+    /**
+     * add
+     *
+     * Appends an Article. Its id is kept only when it differs from its URL.
+     *
+     * @param article Article
+     * @return int index of the article in the batch
+     */
+    public int add(final Article article) {
+        startArticle();
+        putField(FIELD.URL, article.URL);
+        putField(FIELD.PUBLISHED, article.published);
+        putField(FIELD.UPDATED, article.updated);
+        putField(FIELD.CONTENT_TYPE, article.contentType);
+        putField(FIELD.CONTENT, article.content);
+        putField(FIELD.AUTHOR, article.author);
+        putField(FIELD.TITLE, article.title);
+        putField(FIELD.DESCRIPTION, article.description);
+        putField(FIELD.SOURCE, article.source);
+        putField(FIELD.CREATED, article.created);
+        putField(FIELD.ID, Objects.equals(article.getID(), article.URL) ? null : article.getID());
+        putLinks(article.links);
+        putTags(article.tags);
+        return endArticle();
+    }
+
+    /**
+     * startArticle
+     *
+     * Starts appending an article, every field is null until it is put.
+     *
+     * @return ArticleBatch
+     * @throws IllegalStateException if the previous article was not ended
+     */
+    public ArticleBatch startArticle() throws IllegalStateException {
+        if(open) {
+            throw new IllegalStateException("endArticle must be called before starting another article.");
+        }
+        fields.ensureCapacity(fields.size + FIELD_COUNT);
+        for(int i = 0; i < FIELD_COUNT; i++) {
+            fields.append(0, -1);
+        }
+        linkStarts = ensureCapacity(linkStarts, size + 1);
+        linkCounts = ensureCapacity(linkCounts, size + 1);
+        tagStarts = ensureCapacity(tagStarts, size + 1);
+        tagCounts = ensureCapacity(tagCounts, size + 1);
+        linkStarts[size] = links.size;
+        linkCounts[size] = -1;
+        tagStarts[size] = tags.size;
+        tagCounts[size] = -1;
+        openDataStart = data.position();
+        open = true;
+        return this;
+    }
+
+    /**
+     * abortArticle
+     *
+     * Discards the started article and the data put for it.
+     */
+    private void abortArticle() {
+        data.position(openDataStart);
+        fields.size = size * FIELD_COUNT;
+        links.size = linkStarts[size];
+        tags.size = tagStarts[size];
+        open = false;
+    }
+
+    /**
+     * putField
+     *
+     * @param field FIELD
+     * @param value String or null
+     * @return ArticleBatch
+     * @throws IllegalStateException if no article was started or the batch is full, the article is then discarded
+     */
+    public ArticleBatch putField(final FIELD field, final String value) throws IllegalStateException {
+        checkOpen();
+        final int slot = size * FIELD_COUNT + field.ordinal();
+        if(value == null) {
+            fields.offsets[slot] = 0;
+            fields.lengths[slot] = -1;
+            return this;
+        }
+        try {
+            fields.offsets[slot] = data.position();
+            fields.lengths[slot] = encode(value);
+        } catch(RuntimeException | Error e) {
+            abortArticle();
+            throw e;
+        }
+        return this;
+    }
+
+    /**
+     * putLinks
+     *
+     * @param links List of Links or null
+     * @return ArticleBatch
+     * @throws IllegalStateException if no article was started or its links were already put,
+     * or the batch is full, the article is then discarded
+     */
+    public ArticleBatch putLinks(final List<Link> links) throws IllegalStateException {
+        checkOpen();
+        if(linkCounts[size] >= 0) {
+            throw new IllegalStateException("Links of an article can only be put once.");
+        }
+        if(links == null) {
+            return this;
+        }
+        int count = 0;
+        try {
+            for(Link link: links) {
+                if(link != null) {
+                    appendValue(this.links, link.href);
+                    appendValue(this.links, link.rel);
+                    appendValue(this.links, link.type);
+                    count++;
+                }
+            }
+        } catch(RuntimeException | Error e) {
+            abortArticle();
+            throw e;
+        }
+        linkCounts[size] = count;
+        return this;
+    }
+
+    /**
+     * putTags
+     *
+     * @param tags List of Tags or null
+     * @return ArticleBatch
+     * @throws IllegalStateException if no article was started or its tags were already put,
+     * or the batch is full, the article is then discarded
+     */
+    public ArticleBatch putTags(final List<Tag> tags) throws IllegalStateException {
+        checkOpen();
+        if(tagCounts[size] >= 0) {
+            throw new IllegalStateException("Tags of an article can only be put once.");
+        }
+        if(tags == null) {
+            return this;
+        }
+        int count = 0;
+        try {
+            for(Tag tag: tags) {
+                if(tag != null) {
+                    appendValue(this.tags, tag.tag);
+                    appendValue(this.tags, tag.tagType);
+                    count++;
+                }
+            }
+        } catch(RuntimeException | Error e) {
+            abortArticle();
+            throw e;
+        }
+        tagCounts[size] = count;
+        return this;
+    }
+
+    /**
+     * endArticle
+     *
+     * Completes the started article. An article without an id gets its URL as id, like ArticleBuilder.build.
+     *
+     * @return int index of the article in the batch
+     * @throws IllegalStateException if no article was started
+     */
+    public int endArticle() throws IllegalStateException {
+        checkOpen();
+        final int base = size * FIELD_COUNT;
+        if(fields.lengths[base + FIELD.ID.ordinal()] < 0) {
+            fields.offsets[base + FIELD.ID.ordinal()] = fields.offsets[base + FIELD.URL.ordinal()];
+            fields.lengths[base + FIELD.ID.ordinal()] = fields.lengths[base + FIELD.URL.ordinal()];
+        }
+        open = false;
+        return size++;
+    }
+
+    /**
+     * getString
+     *
+     * Decodes one field of an article.
+     *
+     * @param index int article index
+     * @param field FIELD
+     * @return String or null
+     */
+    public String getString(final int index, final FIELD field) {
+        checkIndex(index);
+        final int slot = index * FIELD_COUNT + field.ordinal();
+        return decode(fields.offsets[slot], fields.lengths[slot]);
+    }
+
+    /**
+     * toArticle
+     *
+     * Decodes an article back into an Article, e.g. to log or retry it.
+     *
+     * @param index int article index
+     * @return Article
+     */
+    public Article toArticle(final int index) {
+        final Article article = toArticle(index, FIELD.values());
+        if(linkCounts[index] >= 0) {
+            article.links = new ArrayList<>(linkCounts[index]);
+            for(int i = 0, slot = linkStarts[index]; i < linkCounts[index]; i++, slot += LINK_VALUES) {
+                article.links.add(new Link(valueAt(links, slot), valueAt(links, slot + 1), valueAt(links, slot + 2)));
+            }
+        }
+        if(tagCounts[index] >= 0) {
+            article.tags = new ArrayList<>(tagCounts[index]);
+            for(int i = 0, slot = tagStarts[index]; i < tagCounts[index]; i++, slot += TAG_VALUES) {
+                article.tags.add(new Tag(valueAt(tags, slot), valueAt(tags, slot + 1)));
+            }
+        }
+        return article;
+    }
+
+    /**
+     * toArticle
+     *
+     * Decodes only some fields of an article, e.g. the ones a TimePartitioner or ArticleRouting reads.
+     * Links and tags are left null.
+     *
+     * @param index int article index
+     * @param fields FIELDs to decode
+     * @return Article
+     */
+    public Article toArticle(final int index, final FIELD... fields) {
+        checkIndex(index);
+        final Article article = new Article();
+        for(FIELD field: fields) {
+            final String value = getString(index, field);
+            switch(field) {
+                case URL:
+                    article.URL = value;
+                    break;
+                case PUBLISHED:
+                    article.published = value;
+                    break;
+                case UPDATED:
+                    article.updated = value;
+                    break;
+                case CONTENT_TYPE:
+                    article.contentType = value;
+                    break;
+                case CONTENT:
+                    article.content = value;
+                    break;
+                case AUTHOR:
+                    article.author = value;
+                    break;
+                case TITLE:
+                    article.title = value;
+                    break;
+                case DESCRIPTION:
+                    article.description = value;
+                    break;
+                case SOURCE:
+                    article.source = value;
+                    break;
+                case CREATED:
+                    article.created = value;
+                    break;
+                default:
+                    article.setID(value);
+            }
+        }
+        return article;
+    }
+
+    /**
+     * writeSource
+     *
+     * Writes the JSON source of an article, with the same layout as ArticleCodec.writeArticle:
+     * null fields are omitted, strings are escaped from their UTF-8 bytes without decoding them.
+     *
+     * @param index int article index
+     * @param out OutputStream
+     * @throws IOException
+     */
+    public void writeSource(final int index, final OutputStream out) throws IOException {
+        checkIndex(index);
+        final byte[] scratch = direct ? new byte[8192] : null;
+        final int base = index * FIELD_COUNT;
+        boolean first = true;
+        out.write('{');
+        for(FIELD field: FIELD.values()) {
+            if(field == FIELD.SOURCE) {
+                // Lists sit between description and source in a serialized Article
+                first = writeLinks(index, out, first, scratch);
+                first = writeTags(index, out, first, scratch);
+            }
+            final int slot = base + field.ordinal();
+            if(fields.lengths[slot] < 0) {
+                continue;
+            }
+            if(!first) {
+                out.write(',');
+            }
+            first = false;
+            out.write(field.key);
+            writeString(out, fields.offsets[slot], fields.lengths[slot], scratch);
+        }
+        out.write('}');
+    }
+
+    private boolean writeLinks(final int index, final OutputStream out, final boolean first, final byte[] scratch)
+            throws IOException {
+        if(linkCounts[index] < 0) {
+            return first;
+        }
+        if(!first) {
+            out.write(',');
+        }
+        out.write(ascii("\"links\":["));
+        for(int i = 0, slot = linkStarts[index]; i < linkCounts[index]; i++, slot += LINK_VALUES) {
+            if(i > 0) {
+                out.write(',');
+            }
+            out.write('{');
+            boolean firstValue = writeValue(out, "href", links, slot, true, scratch);
+            firstValue = writeValue(out, "rel", links, slot + 1, firstValue, scratch);
+            writeValue(out, "type", links, slot + 2, firstValue, scratch);
+            out.write('}');
+        }
+        out.write(']');
+        return false;
+    }
+
+    private boolean writeTags(final int index, final OutputStream out, final boolean first, final byte[] scratch)
+            throws IOException {
+        if(tagCounts[index] < 0) {
+            return first;
+        }
+        if(!first) {
+            out.write(',');
+        }
+        out.write(ascii("\"tags\":["));
+        for(int i = 0, slot = tagStarts[index]; i < tagCounts[index]; i++, slot += TAG_VALUES) {
+            if(i > 0) {
+                out.write(',');
+            }
+            out.write('{');
+            final boolean firstValue = writeValue(out, "tag", tags, slot, true, scratch);
+            writeValue(out, "tagType", tags, slot + 1, firstValue, scratch);
+            out.write('}');
+        }
+        out.write(']');
+        return false;
+    }
+
+    private boolean writeValue(final OutputStream out,
+                               final String name,
+                               final Column column,
+                               final int slot,
+                               final boolean first,
+                               final byte[] scratch) throws IOException {
+        if(column.lengths[slot] < 0) {
+            return first;
+        }
+        if(!first) {
+            out.write(',');
+        }
+        out.write(ascii("\"" + name + "\":"));
+        writeString(out, column.offsets[slot], column.lengths[slot], scratch);
+        return false;
+    }
+
+    /**
+     * writeString
+     *
+     * Writes a quoted JSON string from UTF-8 bytes, escaping quotes, backslashes and control characters.
+     * Runs of bytes that need no escaping are written in one call.
+     */
+    private void writeString(final OutputStream out, final int offset, final int length, final byte[] scratch)
+            throws IOException {
+        out.write('"');
+        int done = 0;
+        while(done < length) {
+            final byte[] bytes;
+            final int start;
+            final int chunk;
+            if(direct) {
+                chunk = Math.min(scratch.length, length - done);
+                final ByteBuffer view = data.duplicate();
+                view.position(offset + done);
+                view.get(scratch, 0, chunk);
+                bytes = scratch;
+                start = 0;
+            } else {
+                chunk = length - done;
+                bytes = data.array();
+                start = data.arrayOffset() + offset + done;
+            }
+            int run = start;
+            for(int i = start; i < start + chunk; i++) {
+                final int b = bytes[i] & 0xff;
+                if(b >= 0x20 && b != '"' && b != '\\') {
+                    continue;
+                }
+                out.write(bytes, run, i - run);
+                writeEscape(out, b);
+                run = i + 1;
+            }
+            out.write(bytes, run, start + chunk - run);
+            done += chunk;
+        }
+        out.write('"');
+    }
+
+    private static void writeEscape(final OutputStream out, final int b) throws IOException {
+        out.write('\\');
+        switch(b) {
+            case '"':
+            case '\\':
+                out.write(b);
+                break;
+            case '\b':
+                out.write('b');
+                break;
+            case '\t':
+                out.write('t');
+                break;
+            case '\n':
+                out.write('n');
+                break;
+            case '\f':
+                out.write('f');
+                break;
+            case '\r':
+                out.write('r');
+                break;
+            default:
+                out.write('u');
+                out.write('0');
+                out.write('0');
+                out.write(HEX[b >> 4]);
+                out.write(HEX[b & 0xf]);
+        }
+    }
+
+    private static byte[] ascii(final String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private void appendValue(final Column column, final String value) {
+        column.ensureCapacity(column.size + 1);
+        if(value == null) {
+            column.append(0, -1);
+        } else {
+            final int offset = data.position();
+            column.append(offset, encode(value));
+        }
+    }
+
+    private String valueAt(final Column column, final int slot) {
+        return decode(column.offsets[slot], column.lengths[slot]);
+    }
+
+    /**
+     * encode
+     *
+     * Encodes a String as UTF-8 at the end of the buffer, unpaired surrogates become `?` like String.getBytes.
+     *
+     * @return int number of bytes written
+     */
+    private int encode(final String value) {
+        final int length = value.length();
+        ensureBytes((long) length * 3);
+        final int start = data.position();
+        for(int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if(c < 0x80) {
+                data.put((byte) c);
+            } else if(c < 0x800) {
+                data.put((byte) (0xc0 | (c >> 6)));
+                data.put((byte) (0x80 | (c & 0x3f)));
+            } else if(Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                final int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                data.put((byte) (0xf0 | (codePoint >> 18)));
+                data.put((byte) (0x80 | ((codePoint >> 12) & 0x3f)));
+                data.put((byte) (0x80 | ((codePoint >> 6) & 0x3f)));
+                data.put((byte) (0x80 | (codePoint & 0x3f)));
+            } else if(Character.isSurrogate(c)) {
+                data.put((byte) '?');
+            } else {
+                data.put((byte) (0xe0 | (c >> 12)));
+                data.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+                data.put((byte) (0x80 | (c & 0x3f)));
+            }
+        }
+        return data.position() - start;
+    }
+
+    private String decode(final int offset, final int length) {
+        if(length < 0) {
+            return null;
+        }
+        if(!direct) {
+            return new String(data.array(), data.arrayOffset() + offset, length, StandardCharsets.UTF_8);
+        }
+        final byte[] bytes = new byte[length];
+        final ByteBuffer view = data.duplicate();
+        view.position(offset);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void ensureBytes(final long needed) {
+        if(data.remaining() >= needed) {
+            return;
+        }
+        final long required = data.position() + needed;
+        if(required > MAX_CAPACITY_BYTES) {
+            throw new IllegalStateException(String.format("ArticleBatch can not hold more than %s bytes",
+                    MAX_CAPACITY_BYTES));
+        }
+        final ByteBuffer grown = allocate((int) Math.min(MAX_CAPACITY_BYTES, Math.max(required, 2L * data.capacity())));
+        data.flip();
+        grown.put(data);
+        data = grown;
+    }
+
+    private ByteBuffer allocate(final int capacity) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    private void checkOpen() throws IllegalStateException {
+        if(!open) {
+            throw new IllegalStateException("startArticle must be called before putting fields.");
+        }
+    }
+
+    private void checkIndex(final int index) {
+        if(index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(String.format("Article %s of a batch of %s", index, size));
+        }
+    }
+
+    private static int[] ensureCapacity(final int[] array, final int needed) {
+        return (needed <= array.length) ? array : Arrays.copyOf(array, Math.max(needed, array.length * 2));
+    }
+
+    /**
+     * Column
+     *
+     * Offsets and lengths of string values in the buffer, a length of -1 is null.
+     */
+    private static class Column {
+        private int[] offsets = new int[64];
+        private int[] lengths = new int[64];
+        private int size;
+
+        private void ensureCapacity(final int needed) {
+            offsets = ArticleBatch.ensureCapacity(offsets, needed);
+            lengths = ArticleBatch.ensureCapacity(lengths, needed);
+        }
+
+        private void append(final int offset, final int length) {
+            offsets[size] = offset;
+            lengths[size] = length;
+            size++;
+        }
+    }
+}
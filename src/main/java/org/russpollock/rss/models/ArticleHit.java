@@ -2,4 +2,15 @@ package org.russpollock.rss.models;
 
 public class ArticleHit extends Article {
     public float searchScore;
+
+    public ArticleHit() {}
+
+    public ArticleHit(final Article article, final float searchScore) {
+        super(article);
+        this.searchScore = searchScore;
+    }
+
+    public ArticleHit(final ArticleHit hit) {
+        this(hit, hit.searchScore);
+    }
 }
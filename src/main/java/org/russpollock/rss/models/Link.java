@@ -1,15 +1,41 @@
 package org.russpollock.rss.models;
 
+import java.util.Objects;
+
+/**
+ * Link
+ *
+ * Immutable, so equal Links can be shared between articles, see ValuePools.
+ */
 public class Link {
-    public String href;
-    public String rel;
-    public String type;
+    public final String href;
+    public final String rel;
+    public final String type;
 
-    public Link() {}
+    public Link() {
+        this(null, null, null);
+    }
 
     public Link(final String href, final String rel, final String type) {
         this.href = href;
         this.rel = rel;
         this.type = type;
     }
+
+    @Override
+    public boolean equals(final Object o) {
+        if(this == o) {
+            return true;
+        }
+        if(!(o instanceof Link)) {
+            return false;
+        }
+        final Link other = (Link) o;
+        return Objects.equals(href, other.href) && Objects.equals(rel, other.rel) && Objects.equals(type, other.type);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(href, rel, type);
+    }
 }
@@ -1,13 +1,39 @@
 package org.russpollock.rss.models;
 
+import java.util.Objects;
+
+/**
+ * Tag
+ *
+ * Immutable, so equal Tags can be shared between articles, see ValuePools.
+ */
 public class Tag {
-    public String tag;
-    public String tagType;
+    public final String tag;
+    public final String tagType;
 
-    public Tag() {}
+    public Tag() {
+        this(null, null);
+    }
 
     public Tag(final String tag, final String tagType) {
         this.tag = tag;
         this.tagType = tagType;
     }
+
+    @Override
+    public boolean equals(final Object o) {
+        if(this == o) {
+            return true;
+        }
+        if(!(o instanceof Tag)) {
+            return false;
+        }
+        final Tag other = (Tag) o;
+        return Objects.equals(tag, other.tag) && Objects.equals(tagType, other.tagType);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(tag, tagType);
+    }
 }
@@ -1,13 +1,16 @@
 package org.russpollock.rss.models.builders;
 
 import org.russpollock.rss.models.Article;
+import org.russpollock.rss.models.ArticleBatch;
 import org.russpollock.rss.models.Link;
 import org.russpollock.rss.models.Tag;
+import org.russpollock.rss.models.pools.ValuePools;
 
 import java.util.ArrayList;
 import java.util.List;
 
 public class ArticleBuilder {
+    private static final ValuePools POOLS = ValuePools.getInstance();
     private String URL;
     private String author;
     private String contentType;
@@ -29,12 +32,12 @@ public class ArticleBuilder {
     }
 
     public ArticleBuilder setAuthor(final String author) {
-        this.author = author;
+        this.author = POOLS.string(author);
         return this;
     }
 
     public ArticleBuilder setContentType(final String contentType) {
-        this.contentType = contentType;
+        this.contentType = POOLS.string(contentType);
         return this;
     }
 
@@ -69,7 +72,7 @@ public class ArticleBuilder {
     }
 
     public ArticleBuilder setSource(final String source) {
-        this.source = source;
+        this.source = POOLS.string(source);
         return this;
     }
 
@@ -77,7 +80,7 @@ public class ArticleBuilder {
         if(this.tags == null) {
             this.tags = new ArrayList<>();
         }
-        this.tags.add(tag);
+        this.tags.add(POOLS.tag(tag));
         return this;
     }
 
@@ -85,7 +88,7 @@ public class ArticleBuilder {
         if(this.tags == null) {
             this.tags = new ArrayList<>();
         }
-        this.tags.add(new Tag(tag, tagType));
+        this.tags.add(POOLS.tag(tag, tagType));
         return this;
     }
 
@@ -93,7 +96,7 @@ public class ArticleBuilder {
         if(this.links == null) {
             this.links = new ArrayList<>();
         }
-        this.links.add(link);
+        this.links.add(POOLS.link(link));
         return this;
     }
 
@@ -101,12 +104,35 @@ public class ArticleBuilder {
         if(this.links == null) {
             this.links = new ArrayList<>();
         }
-        Link l = new Link();
-        l.href = href;
-        this.links.add(l);
+        this.links.add(POOLS.link(href, null, null));
         return this;
     }
 
+    /**
+     * appendTo
+     *
+     * Appends the article to an ArticleBatch instead of building it, with its URL as id like build.
+     *
+     * @param batch ArticleBatch
+     * @return int index of the article in the batch
+     */
+    public int appendTo(final ArticleBatch batch) {
+        return batch.startArticle()
+                .putField(ArticleBatch.FIELD.URL, this.URL)
+                .putField(ArticleBatch.FIELD.PUBLISHED, this.published)
+                .putField(ArticleBatch.FIELD.UPDATED, this.updated)
+                .putField(ArticleBatch.FIELD.CONTENT_TYPE, this.contentType)
+                .putField(ArticleBatch.FIELD.CONTENT, this.content)
+                .putField(ArticleBatch.FIELD.AUTHOR, this.author)
+                .putField(ArticleBatch.FIELD.TITLE, this.title)
+                .putField(ArticleBatch.FIELD.DESCRIPTION, this.description)
+                .putField(ArticleBatch.FIELD.SOURCE, this.source)
+                .putField(ArticleBatch.FIELD.CREATED, this.created)
+                .putLinks(this.links)
+                .putTags(this.tags)
+                .endArticle();
+    }
+
     public Article build() {
         Article a = new Article();
         a.setID(this.URL);
@@ -0,0 +1,67 @@
+package org.russpollock.rss.models.pools;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * ValuePool
+ *
+ * Bounded, lossy canonicalizing pool of immutable values. Equal values passed through the pool come back as
+ * one shared instance while it stays in the pool, so repeated values across hits or ingest batches hold one copy.
+ * The pool is a fixed table of weak references indexed by hash: a colliding value replaces the one in its slot
+ * and values nobody else references are collected, so the pool never grows and never pins memory.
+ * Thread safe without locking, a lost race only costs a duplicate instance.
+ *
+ * @param <T> value type with value based equals and hashCode
+ */
+public class ValuePool<T> {
+    private final AtomicReferenceArray<WeakReference<T>> slots;
+    private final int mask;
+
+    /**
+     * ValuePool
+     *
+     * @param size int number of slots, rounded up to a power of two
+     */
+    public ValuePool(final int size) {
+        final int capacity = Integer.highestOneBit(Math.max(2, Math.min(size, 1 << 30) - 1) << 1);
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+    }
+
+    public int getSize() {
+        return slots.length();
+    }
+
+    /**
+     * canonicalize
+     *
+     * @param value T or null
+     * @return T the pooled instance equal to value, or value itself after pooling it
+     */
+    public T canonicalize(final T value) {
+        if(value == null) {
+            return null;
+        }
+        final int hash = value.hashCode();
+        final int slot = (hash ^ (hash >>> 16)) & mask;
+        final WeakReference<T> ref = slots.get(slot);
+        final T pooled = (ref == null) ? null : ref.get();
+        if(pooled != null && pooled.equals(value)) {
+            return pooled;
+        }
+        slots.lazySet(slot, new WeakReference<>(value));
+        return value;
+    }
+
+    /**
+     * clear
+     *
+     * Empties the pool, values already handed out stay shared.
+     */
+    public void clear() {
+        for(int i = 0; i < slots.length(); i++) {
+            slots.set(i, null);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package org.russpollock.rss.models.pools;
+
+import org.russpollock.rss.models.Link;
+import org.russpollock.rss.models.Tag;
+
+/**
+ * ValuePools
+ *
+ * The shared pools of low cardinality article values: `source`, `author` and `contentType` strings,
+ * Tags and Links. Used by ArticleCodec when decoding hits and by ArticleBuilder, so large cached result sets
+ * and ingest queues share one instance of each repeated value. High cardinality values such as titles,
+ * content and URLs are not pooled, except as part of a Link.
+ */
+public class ValuePools {
+    public static final int DEFAULT_STRING_POOL_SIZE = 1 << 16;
+    public static final int DEFAULT_TAG_POOL_SIZE = 1 << 16;
+    public static final int DEFAULT_LINK_POOL_SIZE = 1 << 14;
+    private final ValuePool<String> strings;
+    private final ValuePool<Tag> tags;
+    private final ValuePool<Link> links;
+
+    /**
+     * ValuePools
+     *
+     * @param stringPoolSize int
+     * @param tagPoolSize int
+     * @param linkPoolSize int
+     */
+    public ValuePools(final int stringPoolSize, final int tagPoolSize, final int linkPoolSize) {
+        this.strings = new ValuePool<>(stringPoolSize);
+        this.tags = new ValuePool<>(tagPoolSize);
+        this.links = new ValuePool<>(linkPoolSize);
+    }
+
+    private static class LazyHolder {
+        private static final ValuePools INSTANCE = new ValuePools(DEFAULT_STRING_POOL_SIZE,
+                DEFAULT_TAG_POOL_SIZE, DEFAULT_LINK_POOL_SIZE);
+    }
+
+    /**
+     * getInstance
+     *
+     * @return ValuePools shared by the codec and builders
+     */
+    public static ValuePools getInstance() {
+        return LazyHolder.INSTANCE;
+    }
+
+    /**
+     * string
+     *
+     * @param value String low cardinality value, e.g. a source or author
+     * @return String canonical instance
+     */
+    public String string(final String value) {
+        return strings.canonicalize(value);
+    }
+
+    /**
+     * tag
+     *
+     * @param tag String
+     * @param tagType String
+     * @return Tag canonical instance
+     */
+    public Tag tag(final String tag, final String tagType) {
+        return tags.canonicalize(new Tag(tag, strings.canonicalize(tagType)));
+    }
+
+    /**
+     * tag
+     *
+     * @param tag Tag or null
+     * @return Tag canonical instance
+     */
+    public Tag tag(final Tag tag) {
+        return tags.canonicalize(tag);
+    }
+
+    /**
+     * link
+     *
+     * @param href String
+     * @param rel String
+     * @param type String
+     * @return Link canonical instance
+     */
+    public Link link(final String href, final String rel, final String type) {
+        return links.canonicalize(new Link(href, strings.canonicalize(rel), strings.canonicalize(type)));
+    }
+
+    /**
+     * link
+     *
+     * @param link Link or null
+     * @return Link canonical instance
+     */
+    public Link link(final Link link) {
+        return links.canonicalize(link);
+    }
+
+    /**
+     * clear
+     *
+     * Empties every pool.
+     */
+    public void clear() {
+        strings.clear();
+        tags.clear();
+        links.clear();
+    }
+}
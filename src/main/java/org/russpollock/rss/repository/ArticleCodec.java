@@ -0,0 +1,332 @@
+package org.russpollock.rss.repository;
+
+import org.russpollock.rss.models.Article;
+import org.russpollock.rss.models.ArticleHit;
+import org.russpollock.rss.models.Link;
+import org.russpollock.rss.models.Tag;
+import org.russpollock.rss.models.pools.ValuePools;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.search.SearchHit;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ArticleCodec
+ *
+ * Stateless, thread safe codec between Articles and their ES source.
+ * Writes fields straight into an XContentBuilder and reads hits from their source bytes
+ * with a streaming parser, so neither direction builds an intermediate JSON String.
+ * The source layout matches what Gson produces for an Article: null fields are omitted.
+ * Decoded `source`, `author` and `contentType` values, Tags and Links come from the shared ValuePools.
+ */
+public final class ArticleCodec {
+    private static final ValuePools POOLS = ValuePools.getInstance();
+
+    private ArticleCodec() {}
+
+    /**
+     * toXContent
+     *
+     * Serializes an Article into a new JSON XContentBuilder.
+     *
+     * @param article Article
+     * @return XContentBuilder
+     * @throws UncheckedIOException
+     */
+    public static XContentBuilder toXContent(final Article article) throws UncheckedIOException {
+        try {
+            return writeArticle(XContentFactory.jsonBuilder(), article);
+        } catch(IOException e) {
+            throw new UncheckedIOException(String.format("Unable to serialize article %s", article.URL), e);
+        }
+    }
+
+    /**
+     * writeArticle
+     *
+     * Writes an Article as an object into the given builder.
+     *
+     * @param builder XContentBuilder
+     * @param article Article
+     * @return XContentBuilder
+     * @throws IOException
+     */
+    public static XContentBuilder writeArticle(final XContentBuilder builder, final Article article)
+            throws IOException {
+        builder.startObject();
+        writeField(builder, "URL", article.URL);
+        writeField(builder, "published", article.published);
+        writeField(builder, "updated", article.updated);
+        writeField(builder, "contentType", article.contentType);
+        writeField(builder, "content", article.content);
+        writeField(builder, "author", article.author);
+        writeField(builder, "title", article.title);
+        writeField(builder, "description", article.description);
+        if(article.links != null) {
+            builder.startArray("links");
+            for(Link link: article.links) {
+                if(link == null) {
+                    builder.nullValue();
+                    continue;
+                }
+                builder.startObject();
+                writeField(builder, "href", link.href);
+                writeField(builder, "rel", link.rel);
+                writeField(builder, "type", link.type);
+                builder.endObject();
+            }
+            builder.endArray();
+        }
+        if(article.tags != null) {
+            builder.startArray("tags");
+            for(Tag tag: article.tags) {
+                if(tag == null) {
+                    builder.nullValue();
+                    continue;
+                }
+                builder.startObject();
+                writeField(builder, "tag", tag.tag);
+                writeField(builder, "tagType", tag.tagType);
+                builder.endObject();
+            }
+            builder.endArray();
+        }
+        writeField(builder, "source", article.source);
+        writeField(builder, "created", article.created);
+        writeField(builder, "id", article.getID());
+        return builder.endObject();
+    }
+
+    /**
+     * readHit
+     *
+     * Reads a SearchHit into an ArticleHit from its source bytes.
+     * The hit id and score are copied onto the ArticleHit.
+     *
+     * @param hit SearchHit
+     * @return ArticleHit or null if the hit has no source
+     * @throws UncheckedIOException
+     */
+    public static ArticleHit readHit(final SearchHit hit) throws UncheckedIOException {
+        final BytesReference source = hit.getSourceRef();
+        if(source == null) {
+            return null;
+        }
+        final ArticleHit articleHit = new ArticleHit();
+        try {
+            read(source, articleHit);
+        } catch(IOException e) {
+            throw new UncheckedIOException(String.format("Unable to parse article hit %s", hit.getId()), e);
+        }
+        articleHit.searchScore = hit.getScore();
+        articleHit.setID(hit.getId());
+        return articleHit;
+    }
+
+    /**
+     * readGet
+     *
+     * Reads the source of a get or multi get response into an ArticleHit with the document id.
+     *
+     * @param response GetResponse
+     * @return ArticleHit or null if the article does not exist or has no source
+     * @throws UncheckedIOException
+     */
+    public static ArticleHit readGet(final GetResponse response) throws UncheckedIOException {
+        if(!response.isExists() || response.getSourceAsBytesRef() == null) {
+            return null;
+        }
+        final ArticleHit articleHit = new ArticleHit();
+        try {
+            read(response.getSourceAsBytesRef(), articleHit);
+        } catch(IOException e) {
+            throw new UncheckedIOException(String.format("Unable to parse article %s", response.getId()), e);
+        }
+        articleHit.setID(response.getId());
+        return articleHit;
+    }
+
+    /**
+     * read
+     *
+     * Reads Article JSON source bytes into the given Article. Unknown fields are skipped.
+     *
+     * @param source BytesReference
+     * @param article Article to populate
+     * @return the populated Article
+     * @throws IOException
+     */
+    public static <T extends Article> T read(final BytesReference source, final T article) throws IOException {
+        try(XContentParser parser = XContentType.JSON.xContent().createParser(NamedXContentRegistry.EMPTY,
+                source.streamInput())) {
+            return read(parser, parser.nextToken(), article);
+        }
+    }
+
+    /**
+     * read
+     *
+     * Reads an Article object from a parser positioned on its start, e.g. the `_source` of a hit
+     * in a search response. The parser is left on the end of the object.
+     *
+     * @param parser XContentParser
+     * @param token XContentParser.Token current token
+     * @param article Article to populate
+     * @return the populated Article
+     * @throws IOException
+     */
+    public static <T extends Article> T read(final XContentParser parser,
+                                             final XContentParser.Token token,
+                                             final T article) throws IOException {
+        if(token != XContentParser.Token.START_OBJECT) {
+            throw new IOException("Article source must be an object.");
+        }
+        XContentParser.Token value;
+        while((value = parser.nextToken()) == XContentParser.Token.FIELD_NAME) {
+            final String field = parser.currentName();
+            value = parser.nextToken();
+            switch(field) {
+                case "URL":
+                    article.URL = readString(parser, value);
+                    break;
+                case "published":
+                    article.published = readString(parser, value);
+                    break;
+                case "updated":
+                    article.updated = readString(parser, value);
+                    break;
+                case "contentType":
+                    article.contentType = POOLS.string(readString(parser, value));
+                    break;
+                case "content":
+                    article.content = readString(parser, value);
+                    break;
+                case "author":
+                    article.author = POOLS.string(readString(parser, value));
+                    break;
+                case "title":
+                    article.title = readString(parser, value);
+                    break;
+                case "description":
+                    article.description = readString(parser, value);
+                    break;
+                case "source":
+                    article.source = POOLS.string(readString(parser, value));
+                    break;
+                case "created":
+                    article.created = readString(parser, value);
+                    break;
+                case "id":
+                    article.setID(readString(parser, value));
+                    break;
+                case "links":
+                    article.links = readLinks(parser, value);
+                    break;
+                case "tags":
+                    article.tags = readTags(parser, value);
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return article;
+    }
+
+    private static void writeField(final XContentBuilder builder, final String name, final String value)
+            throws IOException {
+        if(value != null) {
+            builder.field(name, value);
+        }
+    }
+
+    private static String readString(final XContentParser parser, final XContentParser.Token token)
+            throws IOException {
+        if(token == XContentParser.Token.VALUE_NULL) {
+            return null;
+        }
+        if(token.isValue()) {
+            return parser.text();
+        }
+        parser.skipChildren();
+        return null;
+    }
+
+    private static List<Link> readLinks(final XContentParser parser, final XContentParser.Token token)
+            throws IOException {
+        if(token != XContentParser.Token.START_ARRAY) {
+            parser.skipChildren();
+            return null;
+        }
+        final List<Link> links = new ArrayList<>();
+        XContentParser.Token element;
+        while((element = parser.nextToken()) != XContentParser.Token.END_ARRAY) {
+            if(element != XContentParser.Token.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            String href = null;
+            String rel = null;
+            String type = null;
+            while(parser.nextToken() == XContentParser.Token.FIELD_NAME) {
+                final String field = parser.currentName();
+                final String value = readString(parser, parser.nextToken());
+                switch(field) {
+                    case "href":
+                        href = value;
+                        break;
+                    case "rel":
+                        rel = value;
+                        break;
+                    case "type":
+                        type = value;
+                        break;
+                    default:
+                }
+            }
+            links.add(POOLS.link(href, rel, type));
+        }
+        return links;
+    }
+
+    private static List<Tag> readTags(final XContentParser parser, final XContentParser.Token token)
+            throws IOException {
+        if(token != XContentParser.Token.START_ARRAY) {
+            parser.skipChildren();
+            return null;
+        }
+        final List<Tag> tags = new ArrayList<>();
+        XContentParser.Token element;
+        while((element = parser.nextToken()) != XContentParser.Token.END_ARRAY) {
+            if(element != XContentParser.Token.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            String tag = null;
+            String tagType = null;
+            while(parser.nextToken() == XContentParser.Token.FIELD_NAME) {
+                final String field = parser.currentName();
+                final String value = readString(parser, parser.nextToken());
+                switch(field) {
+                    case "tag":
+                        tag = value;
+                        break;
+                    case "tagType":
+                        tagType = value;
+                        break;
+                    default:
+                }
+            }
+            tags.add(POOLS.tag(tag, tagType));
+        }
+        return tags;
+    }
+}
@@ -2,9 +2,29 @@ package org.russpollock.rss.repository;
 
 import org.russpollock.rss.models.Article;
 import org.russpollock.rss.models.ArticleHit;
+import org.russpollock.rss.repository.aggregations.AggregationCollector;
+import org.russpollock.rss.repository.aggregations.AggregationResults;
+import org.russpollock.rss.repository.aggregations.ArticleAggregation;
 import org.russpollock.rss.repository.queries.SearchQuery;
+import org.russpollock.rss.repository.queries.SearchQueryBuilder;
+import org.russpollock.rss.repository.queries.SourceProjection;
+import org.elasticsearch.index.query.QueryBuilders;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public interface ArticleDatastore {
     /**
@@ -17,6 +37,174 @@ public interface ArticleDatastore {
      */
     List<ArticleHit> search(SearchQuery query);
 
+    /**
+     * searchAll
+     *
+     * Runs several SearchQueries, e.g. the widgets of one page, and returns their hits in query order.
+     * This default searches one query at a time, datastores override it to send every query in one round trip.
+     *
+     * @param queries List of SearchQueries
+     * @return List of the List<ArticleHit> of each query
+     */
+    default List<List<ArticleHit>> searchAll(final List<SearchQuery> queries) {
+        final List<List<ArticleHit>> results = new ArrayList<>(queries.size());
+        for(SearchQuery query: queries) {
+            results.add(search(query));
+        }
+        return results;
+    }
+
+    /**
+     * get
+     *
+     * Gets an article by id, its URL. This default reads it through getAll.
+     *
+     * @param id String
+     * @return ArticleHit or null if there is no such article
+     */
+    default ArticleHit get(final String id) {
+        return getAll(Collections.singletonList(id)).get(id);
+    }
+
+    /**
+     * getAll
+     *
+     * Gets articles by id in one request, e.g. the links of a page.
+     * This default searches with an ids filter, datastores override it with a realtime multi get.
+     *
+     * @param ids Collection of article ids
+     * @return Map of the found ArticleHits by id, in the order of ids
+     */
+    default Map<String, ArticleHit> getAll(final Collection<String> ids) {
+        if(ids.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        final SearchQuery query = new SearchQueryBuilder()
+                .setFilters(QueryBuilders.idsQuery().addIds(ids.toArray(new String[ids.size()])))
+                .setLimit(ids.size())
+                .build();
+        final Map<String, ArticleHit> found = new HashMap<>();
+        for(ArticleHit hit: search(query)) {
+            found.putIfAbsent(hit.getID(), hit);
+        }
+        final Map<String, ArticleHit> articles = new LinkedHashMap<>();
+        for(String id: ids) {
+            final ArticleHit hit = found.get(id);
+            if(hit != null) {
+                articles.put(id, hit);
+            }
+        }
+        return articles;
+    }
+
+    /**
+     * stream
+     *
+     * Streams every article matching a SearchQuery, paging through the datastore
+     * so memory stays constant regardless of the number of matches.
+     * SearchQuery from and limit are ignored. The stream must be closed when done.
+     * This default pages through search with from and limit, 500 hits a page, and ends at the first short page.
+     * Pages are separate searches, so writes while streaming can shift hits between pages;
+     * datastores override it with a scroll.
+     *
+     * @param query SearchQuery
+     * @return Stream<ArticleHit>
+     */
+    default Stream<ArticleHit> stream(final SearchQuery query) {
+        final int pageSize = 500;
+        final Spliterator<ArticleHit> pages = new Spliterators.AbstractSpliterator<ArticleHit>(
+                Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            private Iterator<ArticleHit> page = Collections.emptyIterator();
+            private int from = 0;
+            private boolean last = false;
+
+            @Override
+            public boolean tryAdvance(final Consumer<? super ArticleHit> action) {
+                if(!page.hasNext() && !last) {
+                    final List<ArticleHit> hits = search(new SearchQueryBuilder(query)
+                            .setFrom(from)
+                            .setLimit(pageSize)
+                            .build());
+                    from += hits.size();
+                    last = hits.size() < pageSize;
+                    page = hits.iterator();
+                }
+                if(!page.hasNext()) {
+                    return false;
+                }
+                action.accept(page.next());
+                return true;
+            }
+        };
+        return StreamSupport.stream(pages, false);
+    }
+
+    /**
+     * count
+     *
+     * Counts the articles matching a SearchQuery without fetching them. SearchQuery from and limit are ignored.
+     * This default streams the matching ids, datastores override it with a count that reads no documents.
+     *
+     * @param query SearchQuery
+     * @return long
+     */
+    default long count(final SearchQuery query) {
+        try(Stream<ArticleHit> hits = stream(new SearchQueryBuilder(query).setProjection(SourceProjection.NONE).build())) {
+            return hits.count();
+        }
+    }
+
+    /**
+     * exists
+     *
+     * Tests whether any article matches a SearchQuery without fetching it.
+     * This default reads the first matching id, datastores override it with a check that stops at the first match.
+     *
+     * @param query SearchQuery
+     * @return boolean
+     */
+    default boolean exists(final SearchQuery query) {
+        try(Stream<ArticleHit> hits = stream(new SearchQueryBuilder(query).setProjection(SourceProjection.NONE).build())) {
+            return hits.findAny().isPresent();
+        }
+    }
+
+    /**
+     * aggregate
+     *
+     * Computes ArticleAggregations over the articles matching a SearchQuery.
+     *
+     * @param query SearchQuery
+     * @param aggregations ArticleAggregations
+     * @return AggregationResults
+     */
+    default AggregationResults aggregate(final SearchQuery query, final ArticleAggregation... aggregations) {
+        return aggregate(query, Arrays.asList(aggregations));
+    }
+
+    /**
+     * aggregate
+     *
+     * Computes ArticleAggregations, e.g. tag, source and author counts or a published histogram,
+     * over the articles matching a SearchQuery without returning any hits. SearchQuery from and limit are ignored.
+     * This default streams the matching articles with only the aggregated fields and counts them in process,
+     * datastores override it with server side aggregations.
+     *
+     * @param query SearchQuery
+     * @param aggregations List of ArticleAggregations
+     * @return AggregationResults
+     */
+    default AggregationResults aggregate(final SearchQuery query, final List<ArticleAggregation> aggregations) {
+        final AggregationCollector collector = new AggregationCollector(aggregations);
+        final SearchQuery projected = new SearchQueryBuilder(query)
+                .setProjection(AggregationCollector.projectionFor(aggregations))
+                .build();
+        try(Stream<ArticleHit> hits = stream(projected)) {
+            hits.forEach(collector::collect);
+        }
+        return collector.getResults();
+    }
+
     /**
      * saveAll
      *
@@ -43,4 +231,81 @@ public interface ArticleDatastore {
      * @param id String
      */
     void delete(final String id);
+
+    /**
+     * deleteAll
+     *
+     * Removes articles by id with the default DeleteOptions.
+     *
+     * @param ids Collection of article ids
+     * @return DeleteResult
+     */
+    default DeleteResult deleteAll(final Collection<String> ids) {
+        return deleteAll(ids, new DeleteOptions());
+    }
+
+    /**
+     * deleteAll
+     *
+     * Removes articles by id in batches, reporting progress after each batch and throttled by the options.
+     * Failed deletes are counted in the result rather than thrown.
+     * This default deletes one id at a time, datastores override it with a bulk delete.
+     *
+     * @param ids Collection of article ids
+     * @param options DeleteOptions
+     * @return DeleteResult
+     */
+    default DeleteResult deleteAll(final Collection<String> ids, final DeleteOptions options) {
+        final DeleteTracker tracker = new DeleteTracker(options);
+        int batch = 0;
+        for(String id: ids) {
+            try {
+                delete(id);
+                tracker.deleted(1);
+            } catch(RuntimeException e) {
+                tracker.failed(id, e.toString());
+            }
+            if(++batch >= options.getBatchSize()) {
+                batch = 0;
+                if(!tracker.batchDone()) {
+                    return tracker.result();
+                }
+            }
+        }
+        if(batch > 0) {
+            tracker.batchDone();
+        }
+        return tracker.result();
+    }
+
+    /**
+     * deleteByQuery
+     *
+     * Removes every article matching a SearchQuery with the default DeleteOptions.
+     *
+     * @param query SearchQuery
+     * @return DeleteResult
+     */
+    default DeleteResult deleteByQuery(final SearchQuery query) {
+        return deleteByQuery(query, new DeleteOptions());
+    }
+
+    /**
+     * deleteByQuery
+     *
+     * Removes every article matching a SearchQuery, e.g. the articles of a source published before a date.
+     * SearchQuery from and limit are ignored.
+     * This default streams the matching ids and passes them to deleteAll.
+     *
+     * @param query SearchQuery
+     * @param options DeleteOptions
+     * @return DeleteResult
+     */
+    default DeleteResult deleteByQuery(final SearchQuery query, final DeleteOptions options) {
+        final List<String> ids;
+        try(Stream<ArticleHit> hits = stream(new SearchQueryBuilder(query).setProjection(SourceProjection.NONE).build())) {
+            ids = hits.map(ArticleHit::getID).collect(Collectors.toCollection(ArrayList::new));
+        }
+        return deleteAll(ids, options);
+    }
 }
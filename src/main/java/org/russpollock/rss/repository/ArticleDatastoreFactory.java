@@ -1,15 +1,25 @@
 package org.russpollock.rss.repository;
 
 import org.russpollock.rss.RssEnvironment;
+import org.russpollock.rss.repository.http.HttpArticleDatastore;
+import org.russpollock.rss.repository.ingest.ArticleDeduplicator;
+import org.russpollock.rss.repository.ingest.ArticleSpool;
+import org.russpollock.rss.repository.ingest.FingerprintStore;
+import org.russpollock.rss.repository.ingest.SpoolReplayer;
+import org.russpollock.rss.repository.memory.InMemoryArticleDatastore;
 
+import java.nio.file.Paths;
 import java.security.InvalidParameterException;
 
 public class ArticleDatastoreFactory {
     public static enum DATASTORE_TYPE {
-        ELASTIC_SEARCH
+        ELASTIC_SEARCH,
+        ELASTIC_SEARCH_HTTP,
+        IN_MEMORY
     }
 
     private static final RssEnvironment ENV = RssEnvironment.getInstance();
+    private static ArticleSpool spool;
 
     public static ArticleDatastore getArticleDatastore(DATASTORE_TYPE type)
             throws InvalidParameterException {
@@ -18,27 +28,135 @@ public class ArticleDatastoreFactory {
                 final String searchIndicies = ENV.getEnv(ENV.getESArticleSearchIndiciesProp());
                 final String writeIndex = ENV.getEnv(ENV.getESArticleWriteIndexProp());
 
+                final EsArticleDatastore esDatastore;
                 if(searchIndicies != null && writeIndex != null) {
-                    return new EsArticleDatastore(
+                    esDatastore = new EsArticleDatastore(
                             ElasticSearchClient.getInstance().getClient(),
                             writeIndex,
                             searchIndicies.split("\\s*,\\s*"));
                 } else if(writeIndex != null) {
-                    return new EsArticleDatastore(
+                    esDatastore = new EsArticleDatastore(
                             ElasticSearchClient.getInstance().getClient(),
                             writeIndex);
                 } else if(searchIndicies != null) {
-                    return new EsArticleDatastore(
+                    esDatastore = new EsArticleDatastore(
                             ElasticSearchClient.getInstance().getClient(),
                             searchIndicies.split("\\s*,\\s*"));
                 }
                 else {
-                    return new EsArticleDatastore(
+                    esDatastore = new EsArticleDatastore(
                             ElasticSearchClient.getInstance().getClient());
                 }
+                esDatastore.setPartitioner(getPartitioner());
+                esDatastore.setRouting(getRouting());
+                esDatastore.setDeduplicator(getDeduplicator());
+                if(esDatastore.getPartitioner() != null) {
+                    esDatastore.setSpool(getSpool(esDatastore.getPartitioner().getIndexPattern()));
+                } else if(writeIndex != null) {
+                    esDatastore.setSpool(getSpool(writeIndex));
+                }
+                return esDatastore;
+            case ELASTIC_SEARCH_HTTP:
+                final String httpSearchIndicies = ENV.getEnv(ENV.getESArticleSearchIndiciesProp());
+                final HttpArticleDatastore httpDatastore = new HttpArticleDatastore(
+                        ElasticSearchRestClient.getInstance().getRestClient());
+                httpDatastore.setWriteIndex(ENV.getEnv(ENV.getESArticleWriteIndexProp()));
+                if(httpSearchIndicies != null) {
+                    httpDatastore.setSearchIndicies(httpSearchIndicies.split("\\s*,\\s*"));
+                }
+                httpDatastore.setDeduplicator(getDeduplicator());
+                return httpDatastore;
+            case IN_MEMORY:
+                return InMemoryArticleDatastore.getInstance();
             default:
                 throw new InvalidParameterException(
                         String.format("Unrecognized datastore type: %s", type.toString()));
         }
     }
+
+    /**
+     * getPartitioner
+     *
+     * Gets the TimePartitioner configured in the environment.
+     *
+     * @return TimePartitioner or null if no partition prefix is configured
+     * @throws IllegalArgumentException for an unknown interval or field
+     */
+    public static TimePartitioner getPartitioner() throws IllegalArgumentException {
+        final String prefix = ENV.getEnv(ENV.getESPartitionPrefixProp());
+        if(prefix == null) {
+            return null;
+        }
+        final String interval = ENV.getEnv(ENV.getESPartitionIntervalProp());
+        final String field = ENV.getEnv(ENV.getESPartitionFieldProp());
+        final TimePartitioner.INTERVAL partitionInterval = (interval == null)
+                ? TimePartitioner.INTERVAL.MONTHLY : TimePartitioner.INTERVAL.valueOf(interval.toUpperCase());
+        return new TimePartitioner(prefix, partitionInterval, (field == null) ? "published" : field);
+    }
+
+    /**
+     * getRouting
+     *
+     * Gets the ArticleRouting configured in the environment.
+     *
+     * @return ArticleRouting or null if no routing field is configured
+     * @throws IllegalArgumentException for an unknown field
+     */
+    public static ArticleRouting getRouting() throws IllegalArgumentException {
+        final String field = ENV.getEnv(ENV.getESRoutingFieldProp());
+        return (field == null) ? null : ArticleRouting.byField(field);
+    }
+
+    /**
+     * getDeduplicator
+     *
+     * Gets the ArticleDeduplicator shared by the ES datastores, backed by the fingerprint spill file
+     * from the environment. The store is flushed when the JVM exits.
+     *
+     * @return ArticleDeduplicator or null if no fingerprint file is configured
+     */
+    public static ArticleDeduplicator getDeduplicator() {
+        return DeduplicatorHolder.INSTANCE;
+    }
+
+    private static class DeduplicatorHolder {
+        private static final ArticleDeduplicator INSTANCE = buildDeduplicator();
+
+        private static ArticleDeduplicator buildDeduplicator() {
+            final String fingerprintFile = ENV.getEnv(ENV.getIngestFingerprintFileProp());
+            if(fingerprintFile == null) {
+                return null;
+            }
+            final ArticleDeduplicator deduplicator = new ArticleDeduplicator(new FingerprintStore(
+                    Paths.get(fingerprintFile), FingerprintStore.DEFAULT_MAX_IN_MEMORY_ENTRIES));
+            Runtime.getRuntime().addShutdownHook(new Thread(deduplicator::close, "fingerprint-store-flush"));
+            return deduplicator;
+        }
+    }
+
+    /**
+     * getSpool
+     *
+     * Gets the ArticleSpool of the spool directory from the environment, replayed by a SpoolReplayer
+     * started on first use that checks the health of writeIndex. The spool is forced to disk when the JVM exits.
+     *
+     * @param writeIndex String write index or partition pattern
+     * @return ArticleSpool or null if no spool directory is configured
+     */
+    public static synchronized ArticleSpool getSpool(final String writeIndex) {
+        final String spoolDirectory = ENV.getEnv(ENV.getIngestSpoolDirectoryProp());
+        if(spoolDirectory == null) {
+            return null;
+        }
+        if(spool == null) {
+            spool = new ArticleSpool(Paths.get(spoolDirectory));
+            final SpoolReplayer replayer = new SpoolReplayer(
+                    ElasticSearchClient.getInstance().getClient(), writeIndex, spool).start();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                replayer.close();
+                spool.close();
+            }, "article-spool-close"));
+        }
+        return spool;
+    }
 }
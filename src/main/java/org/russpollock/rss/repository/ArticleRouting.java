@@ -0,0 +1,133 @@
+package org.russpollock.rss.repository;
+
+import org.russpollock.rss.models.Article;
+import org.russpollock.rss.repository.queries.SearchQuery;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.ConstantScoreQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.TermQueryBuilder;
+import org.elasticsearch.index.query.TermsQueryBuilder;
+
+import java.util.function.Function;
+
+/**
+ * ArticleRouting
+ *
+ * Routes articles to shards by a key field instead of their id, `source` by default, so every article
+ * of one feed lives in the same shard. Searches whose must or filter clauses hold a single term on the
+ * key field (or its `.raw` subfield) then only query that shard.
+ * Articles without a key value are routed by id as usual.
+ *
+ * Changing the routing of an existing index requires reindexing it, articles indexed without
+ * routing are not found by routed searches.
+ */
+public class ArticleRouting {
+    public static final String DEFAULT_FIELD = "source";
+    private final String field;
+    private final Function<Article, String> key;
+
+    /**
+     * ArticleRouting
+     *
+     * @param field String mapped field the key is indexed in
+     * @param key Function reading the key from an Article
+     */
+    public ArticleRouting(final String field, final Function<Article, String> key) {
+        this.field = field;
+        this.key = key;
+    }
+
+    /**
+     * bySource
+     *
+     * @return ArticleRouting on `source`
+     */
+    public static ArticleRouting bySource() {
+        return byField(DEFAULT_FIELD);
+    }
+
+    /**
+     * byField
+     *
+     * @param field String `source`, `author` or `contentType`
+     * @return ArticleRouting
+     * @throws IllegalArgumentException
+     */
+    public static ArticleRouting byField(final String field) throws IllegalArgumentException {
+        switch(field) {
+            case "source":
+                return new ArticleRouting(field, article -> article.source);
+            case "author":
+                return new ArticleRouting(field, article -> article.author);
+            case "contentType":
+                return new ArticleRouting(field, article -> article.contentType);
+            default:
+                throw new IllegalArgumentException(String.format("Can not route articles by %s", field));
+        }
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    /**
+     * routingFor
+     *
+     * @param article Article
+     * @return String routing value or null to route by id
+     */
+    public String routingFor(final Article article) {
+        final String value = key.apply(article);
+        return (value == null || value.isEmpty()) ? null : value;
+    }
+
+    /**
+     * routingFor
+     *
+     * Gets the routing of the only key value a SearchQuery can match, from the term and single value
+     * terms filters on the key field that every hit must match. Queries in POST_FILTER mode are not routed
+     * since their aggregations must see unfiltered results.
+     *
+     * @param query SearchQuery
+     * @return String routing value or null to search every shard
+     */
+    public String routingFor(final SearchQuery query) {
+        if(query.toPostFilter() != null || query.getFilters() == null) {
+            return null;
+        }
+        final String[] value = new String[1];
+        narrow(query.getFilters(), value);
+        return (value[0] == null || value[0].isEmpty()) ? null : value[0];
+    }
+
+    private void narrow(final QueryBuilder filter, final String[] value) {
+        if(filter instanceof BoolQueryBuilder) {
+            final BoolQueryBuilder bool = (BoolQueryBuilder) filter;
+            for(QueryBuilder must: bool.must()) {
+                narrow(must, value);
+            }
+            for(QueryBuilder clause: bool.filter()) {
+                narrow(clause, value);
+            }
+        } else if(filter instanceof ConstantScoreQueryBuilder) {
+            narrow(((ConstantScoreQueryBuilder) filter).innerQuery(), value);
+        } else if(filter instanceof TermQueryBuilder) {
+            final TermQueryBuilder term = (TermQueryBuilder) filter;
+            if(isKeyField(term.fieldName()) && term.value() instanceof String) {
+                // Two different values match nothing, either shard gives the empty result
+                value[0] = (String) term.value();
+            }
+        } else if(filter instanceof TermsQueryBuilder) {
+            final TermsQueryBuilder terms = (TermsQueryBuilder) filter;
+            if(isKeyField(terms.fieldName()) && terms.values().size() == 1
+                    && terms.values().get(0) instanceof String) {
+                value[0] = (String) terms.values().get(0);
+            }
+        }
+    }
+
+    private boolean isKeyField(final String name) {
+        // The analyzed field holds tokens, only exact values map to a routing
+        return name.equals(field + ".raw") || (name.equals(field) && "contentType".equals(field));
+    }
+}
@@ -0,0 +1,50 @@
+package org.russpollock.rss.repository;
+
+import org.russpollock.rss.models.Article;
+import org.russpollock.rss.models.ArticleHit;
+import org.russpollock.rss.repository.queries.SearchQuery;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public interface AsyncArticleDatastore {
+    /**
+     * searchAsync
+     *
+     * Searches article datastore using a SearchQuery without blocking the caller.
+     *
+     * @param query SearchQuery
+     * @return CompletableFuture<List<ArticleHit>>
+     */
+    CompletableFuture<List<ArticleHit>> searchAsync(final SearchQuery query);
+
+    /**
+     * saveAllAsync
+     *
+     * Saves a list of articles to the article datastore without blocking the caller.
+     *
+     * @param documents List of Articles
+     * @return CompletableFuture<Void>
+     */
+    CompletableFuture<Void> saveAllAsync(final List<Article> documents);
+
+    /**
+     * saveAsync
+     *
+     * Saves an article to the article datastore without blocking the caller.
+     *
+     * @param article Article
+     * @return CompletableFuture<Void>
+     */
+    CompletableFuture<Void> saveAsync(final Article article);
+
+    /**
+     * deleteAsync
+     *
+     * Removes an article from the article datastore without blocking the caller.
+     *
+     * @param id String
+     * @return CompletableFuture<Void>
+     */
+    CompletableFuture<Void> deleteAsync(final String id);
+}
@@ -0,0 +1,258 @@
+package org.russpollock.rss.repository;
+
+import org.russpollock.rss.metrics.Counter;
+import org.russpollock.rss.metrics.Histogram;
+import org.russpollock.rss.metrics.MetricsRegistry;
+import org.russpollock.rss.repository.ingest.ArticleVersion;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkResponse;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * DatastoreMetrics
+ *
+ * Metrics recorded by the ES datastore and ingestor in a MetricsRegistry:
+ * - `<operation>.latencyMicros` histogram, `<operation>.inFlight` gauge and `<operation>.errors` counter
+ * for search, save, saveAll, delete, deleteAll and deleteByQuery, sync and async calls alike
+ * - `search.hits` histogram of hits returned and `search.deserializeMicros` time spent reading them
+ * - `bulk.documents` and `bulk.bytes` histograms of every bulk sent
+ * - `bulk.failures.<reason>` counters of failed bulk items by ES exception name, e.g. es_rejected_execution_exception
+ * - `bulk.superseded` counter of bulk items refused because a newer copy of the article was already indexed
+ *
+ * Instances are shared per registry so in flight gauges count every datastore using the registry.
+ * They only weakly reference their registry, so a registry nothing else uses can be collected.
+ */
+public class DatastoreMetrics {
+    public static enum OPERATION {
+        SEARCH("search"),
+        SEARCH_ALL("searchAll"),
+        GET("get"),
+        GET_ALL("getAll"),
+        AGGREGATE("aggregate"),
+        COUNT("count"),
+        EXISTS("exists"),
+        SAVE("save"),
+        SAVE_ALL("saveAll"),
+        SAVE_BATCH("saveBatch"),
+        DELETE("delete"),
+        DELETE_ALL("deleteAll"),
+        DELETE_BY_QUERY("deleteByQuery");
+
+        private final String metricName;
+
+        OPERATION(final String metricName) {
+            this.metricName = metricName;
+        }
+
+        public String getMetricName() {
+            return metricName;
+        }
+    }
+
+    private static final List<DatastoreMetrics> SHARED = new ArrayList<>();
+    private final WeakReference<MetricsRegistry> registry;
+    private final Histogram[] latencies = new Histogram[OPERATION.values().length];
+    private final Counter[] errors = new Counter[OPERATION.values().length];
+    private final AtomicLong[] inFlight = new AtomicLong[OPERATION.values().length];
+    private final Histogram hits;
+    private final Histogram deserializeMicros;
+    private final Histogram bulkDocuments;
+    private final Histogram bulkBytes;
+    private final Counter bulkSuperseded;
+
+    private DatastoreMetrics(final MetricsRegistry registry) {
+        this.registry = new WeakReference<>(registry);
+        for(OPERATION operation: OPERATION.values()) {
+            final int i = operation.ordinal();
+            final AtomicLong current = new AtomicLong();
+            latencies[i] = registry.histogram(operation.getMetricName() + ".latencyMicros");
+            errors[i] = registry.counter(operation.getMetricName() + ".errors");
+            inFlight[i] = current;
+            registry.gauge(operation.getMetricName() + ".inFlight", current::get);
+        }
+        this.hits = registry.histogram("search.hits");
+        this.deserializeMicros = registry.histogram("search.deserializeMicros");
+        this.bulkDocuments = registry.histogram("bulk.documents");
+        this.bulkBytes = registry.histogram("bulk.bytes");
+        this.bulkSuperseded = registry.counter("bulk.superseded");
+    }
+
+    /**
+     * of
+     *
+     * Gets the DatastoreMetrics recording in a registry, looked up by identity.
+     *
+     * @param registry MetricsRegistry
+     * @return DatastoreMetrics
+     */
+    public static DatastoreMetrics of(final MetricsRegistry registry) {
+        synchronized(SHARED) {
+            final Iterator<DatastoreMetrics> shared = SHARED.iterator();
+            while(shared.hasNext()) {
+                final DatastoreMetrics metrics = shared.next();
+                final MetricsRegistry current = metrics.registry.get();
+                if(current == null) {
+                    shared.remove();
+                } else if(current == registry) {
+                    return metrics;
+                }
+            }
+            final DatastoreMetrics metrics = new DatastoreMetrics(registry);
+            SHARED.add(metrics);
+            return metrics;
+        }
+    }
+
+    /**
+     * begin
+     *
+     * Marks an operation in flight.
+     *
+     * @param operation OPERATION
+     * @return long start time in nanos to pass to end
+     */
+    public long begin(final OPERATION operation) {
+        inFlight[operation.ordinal()].incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /**
+     * end
+     *
+     * Records the latency of an operation started with begin.
+     *
+     * @param operation OPERATION
+     * @param startNanos long
+     * @param failure Throwable or null if the operation succeeded
+     */
+    public void end(final OPERATION operation, final long startNanos, final Throwable failure) {
+        final int i = operation.ordinal();
+        inFlight[i].decrementAndGet();
+        latencies[i].record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+        if(failure != null) {
+            errors[i].increment();
+        }
+    }
+
+    /**
+     * time
+     *
+     * Runs an operation between begin and end.
+     *
+     * @param operation OPERATION
+     * @param call Supplier
+     * @return T result of call
+     */
+    public <T> T time(final OPERATION operation, final Supplier<T> call) {
+        final long start = begin(operation);
+        Throwable failure = null;
+        try {
+            return call.get();
+        } catch(RuntimeException | Error e) {
+            failure = e;
+            throw e;
+        } finally {
+            end(operation, start, failure);
+        }
+    }
+
+    public void time(final OPERATION operation, final Runnable call) {
+        time(operation, () -> {
+            call.run();
+            return null;
+        });
+    }
+
+    /**
+     * recordHits
+     *
+     * @param count int hits returned
+     * @param deserializeNanos long time spent reading the hits
+     */
+    public void recordHits(final int count, final long deserializeNanos) {
+        hits.record(count);
+        deserializeMicros.record(TimeUnit.NANOSECONDS.toMicros(deserializeNanos));
+    }
+
+    /**
+     * recordBulk
+     *
+     * @param documents int number of actions in the bulk
+     * @param bytes long estimated size of the bulk
+     */
+    public void recordBulk(final int documents, final long bytes) {
+        bulkDocuments.record(documents);
+        bulkBytes.record(bytes);
+    }
+
+    /**
+     * recordBulkResponse
+     *
+     * Counts the failed items of a bulk by reason. Items refused as superseded are counted apart and
+     * are not failures.
+     *
+     * @param response BulkResponse
+     * @return int number of failed items
+     */
+    public int recordBulkResponse(final BulkResponse response) {
+        if(!response.hasFailures()) {
+            return 0;
+        }
+        int failures = 0;
+        for(BulkItemResponse item: response.getItems()) {
+            if(ArticleVersion.isSuperseded(item)) {
+                bulkSuperseded.increment();
+            } else if(item.isFailed()) {
+                failures++;
+                recordBulkFailure(1, item.getFailure().getCause());
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * recordBulkSuperseded
+     *
+     * Counts bulk items refused because a newer copy of the article is already indexed, e.g. over http.
+     *
+     * @param documents int
+     */
+    public void recordBulkSuperseded(final int documents) {
+        bulkSuperseded.add(documents);
+    }
+
+    /**
+     * recordBulkFailure
+     *
+     * Counts bulk items that failed, e.g. all items of a bulk that could not be sent.
+     *
+     * @param documents int
+     * @param cause Throwable
+     */
+    public void recordBulkFailure(final int documents, final Throwable cause) {
+        recordBulkFailure(documents, (cause == null) ? null : ElasticsearchException.getExceptionName(cause));
+    }
+
+    /**
+     * recordBulkFailure
+     *
+     * Counts bulk items that failed for a reason, e.g. the error type of a bulk item over http.
+     *
+     * @param documents int
+     * @param reason String ES exception name
+     */
+    public void recordBulkFailure(final int documents, final String reason) {
+        final MetricsRegistry current = registry.get();
+        if(current != null) {
+            current.counter("bulk.failures." + ((reason == null) ? "unknown" : reason)).add(documents);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package org.russpollock.rss.repository;
+
+public class DeleteOptions {
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private double documentsPerSecond = 0;
+    private DeleteProgressListener progressListener;
+
+    public DeleteOptions() {}
+
+    /**
+     * setBatchSize
+     *
+     * Number of articles deleted per bulk, and per scroll page of a deleteByQuery.
+     *
+     * @param batchSize int
+     * @return DeleteOptions
+     */
+    public DeleteOptions setBatchSize(final int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+        return this;
+    }
+
+    /**
+     * setDocumentsPerSecond
+     *
+     * Throttles the delete to about this many articles per second by pausing between batches,
+     * leaving cluster capacity for searches. 0 or less deletes as fast as possible.
+     *
+     * @param documentsPerSecond double
+     * @return DeleteOptions
+     */
+    public DeleteOptions setDocumentsPerSecond(final double documentsPerSecond) {
+        this.documentsPerSecond = Math.max(0, documentsPerSecond);
+        return this;
+    }
+
+    /**
+     * setProgressListener
+     *
+     * @param progressListener DeleteProgressListener called after each batch
+     * @return DeleteOptions
+     */
+    public DeleteOptions setProgressListener(final DeleteProgressListener progressListener) {
+        this.progressListener = progressListener;
+        return this;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public double getDocumentsPerSecond() {
+        return documentsPerSecond;
+    }
+
+    public DeleteProgressListener getProgressListener() {
+        return progressListener;
+    }
+}
@@ -0,0 +1,11 @@
+package org.russpollock.rss.repository;
+
+/**
+ * DeleteProgressListener
+ *
+ * Called after each batch of a deleteAll or deleteByQuery with the totals so far.
+ */
+@FunctionalInterface
+public interface DeleteProgressListener {
+    void onProgress(DeleteResult progress);
+}
@@ -0,0 +1,73 @@
+package org.russpollock.rss.repository;
+
+import java.util.Collections;
+import java.util.Map;
+
+public class DeleteResult {
+    private final long deleted;
+    private final long notFound;
+    private final long failed;
+    private final Map<String, String> failures;
+    private final long elapsedMillis;
+    private final boolean interrupted;
+
+    public DeleteResult(final long deleted,
+                        final long notFound,
+                        final long failed,
+                        final Map<String, String> failures,
+                        final long elapsedMillis,
+                        final boolean interrupted) {
+        this.deleted = deleted;
+        this.notFound = notFound;
+        this.failed = failed;
+        this.failures = Collections.unmodifiableMap(failures);
+        this.elapsedMillis = elapsedMillis;
+        this.interrupted = interrupted;
+    }
+
+    public long getDeleted() {
+        return deleted;
+    }
+
+    public long getNotFound() {
+        return notFound;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    /**
+     * getFailures
+     *
+     * Gets the reason of failed deletes by article id, limited to the first DeleteTracker.MAX_REPORTED_FAILURES.
+     *
+     * @return Map<String, String>
+     */
+    public Map<String, String> getFailures() {
+        return failures;
+    }
+
+    public long getProcessed() {
+        return deleted + notFound + failed;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * isInterrupted
+     *
+     * @return boolean true if the delete stopped early because the thread was interrupted
+     */
+    public boolean isInterrupted() {
+        return interrupted;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("DeleteResult [deleted: %s, notFound: %s, failed: %s, elapsedMillis: %s, interrupted: %s]",
+                this.deleted, this.notFound, this.failed, this.elapsedMillis, this.interrupted);
+    }
+}
@@ -0,0 +1,88 @@
+package org.russpollock.rss.repository;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DeleteTracker
+ *
+ * Counts the outcome of a batched delete, reports progress after each batch and
+ * throttles batches to DeleteOptions.getDocumentsPerSecond(). Not thread safe.
+ */
+public class DeleteTracker {
+    public static final int MAX_REPORTED_FAILURES = 100;
+    private static final Logger LOGGER = LogManager.getLogger(DeleteTracker.class);
+    private final DeleteOptions options;
+    private final long startNanos = System.nanoTime();
+    private final Map<String, String> failures = new LinkedHashMap<>();
+    private long deleted;
+    private long notFound;
+    private long failed;
+    private boolean interrupted;
+
+    public DeleteTracker(final DeleteOptions options) {
+        this.options = options;
+    }
+
+    public void deleted(final long count) {
+        deleted += count;
+    }
+
+    public void notFound(final long count) {
+        notFound += count;
+    }
+
+    public void failed(final String id, final String reason) {
+        failed++;
+        if(failures.size() < MAX_REPORTED_FAILURES) {
+            failures.put(id, reason);
+        }
+    }
+
+    /**
+     * batchDone
+     *
+     * Reports progress, then pauses until the throttle allows the next batch.
+     *
+     * @return boolean false if the thread was interrupted and the delete should stop
+     */
+    public boolean batchDone() {
+        final DeleteResult progress = result();
+        LOGGER.debug(String.format("Delete progress: %s", progress));
+        if(options.getProgressListener() != null) {
+            options.getProgressListener().onProgress(progress);
+        }
+        if(options.getDocumentsPerSecond() <= 0) {
+            return !Thread.currentThread().isInterrupted();
+        }
+
+        final long targetNanos = startNanos
+                + (long) (progress.getProcessed() / options.getDocumentsPerSecond() * TimeUnit.SECONDS.toNanos(1));
+        final long waitNanos = targetNanos - System.nanoTime();
+        try {
+            if(waitNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+            return true;
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            interrupted = true;
+            LOGGER.warn(String.format("Interrupted while deleting, stopping after %s articles", progress.getProcessed()));
+            return false;
+        }
+    }
+
+    public int getBatchSize() {
+        return options.getBatchSize();
+    }
+
+    public DeleteResult result() {
+        return new DeleteResult(deleted, notFound, failed, new LinkedHashMap<>(failures),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos),
+                interrupted || Thread.currentThread().isInterrupted());
+    }
+}
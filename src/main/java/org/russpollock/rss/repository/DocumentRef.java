@@ -0,0 +1,44 @@
+package org.russpollock.rss.repository;
+
+/**
+ * DocumentRef
+ *
+ * Index, id and routing of a stored article.
+ */
+public class DocumentRef {
+    private final String index;
+    private final String id;
+    private final String routing;
+
+    public DocumentRef(final String index, final String id) {
+        this(index, id, null);
+    }
+
+    public DocumentRef(final String index, final String id, final String routing) {
+        this.index = index;
+        this.id = id;
+        this.routing = routing;
+    }
+
+    public String getIndex() {
+        return index;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * getRouting
+     *
+     * @return String shard routing or null when the article is routed by id
+     */
+    public String getRouting() {
+        return routing;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("DocumentRef [index: %s, id: %s, routing: %s]", this.index, this.id, this.routing);
+    }
+}
@@ -1,6 +1,8 @@
 package org.russpollock.rss.repository;
 
 import org.russpollock.rss.RssEnvironment;
+import org.russpollock.rss.metrics.DefaultMetricsRegistry;
+import org.russpollock.rss.metrics.MetricsRegistry;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.elasticsearch.client.Client;
@@ -14,6 +16,7 @@ import java.util.Arrays;
 import java.util.List;
 
 public final class ElasticSearchClient {
+    public static final int DEFAULT_TRANSPORT_PORT = 9300;
     private Client client;
     private static final Logger logger = LogManager.getLogger(ElasticSearchClient.class.getName());
     private static final RssEnvironment ENV = RssEnvironment.getInstance();
@@ -22,8 +25,24 @@ public final class ElasticSearchClient {
         return client;
     }
 
+    /**
+     * getMetricsRegistry
+     *
+     * Gets the registry the datastores record in by default, also exposed over JMX.
+     * Holds a `transport.connectedNodes` gauge of the nodes the client is connected to.
+     *
+     * @return MetricsRegistry
+     */
+    public MetricsRegistry getMetricsRegistry() {
+        return DefaultMetricsRegistry.getInstance();
+    }
+
     public ElasticSearchClient() {
         client = connect();
+        if(client instanceof TransportClient) {
+            final TransportClient transportClient = (TransportClient) client;
+            getMetricsRegistry().gauge("transport.connectedNodes", () -> transportClient.connectedNodes().size());
+        }
     }
 
     private static class LazyHolder {
@@ -60,11 +79,24 @@ public final class ElasticSearchClient {
         return Arrays.asList(transportAddresses.split("\\s*,\\s*"));
     }
 
+    /**
+     * getTransportPort
+     *
+     * Gets the default transport port from environment variable, 9300 when not set.
+     *
+     * @return int
+     */
+    private static int getTransportPort() {
+        final String transportPort = ENV.getEnv(ENV.getESTransportPortProp());
+        return (transportPort == null) ? DEFAULT_TRANSPORT_PORT : Integer.parseInt(transportPort.trim());
+    }
+
     /**
      * connect
      *
      * Prepares a PreBuiltTransportClient and joins the ES cluster.
-     * Uses environment variables `cluster.name` an `transportAddresses`
+     * Uses environment variables `cluster.name`, `transportAddresses` and `transportPort`.
+     * A transport address may give its own port as `host:port`, or `[v6]:port` for IPv6 addresses.
      *
      * @return Client
      */
@@ -73,16 +105,38 @@ public final class ElasticSearchClient {
         Settings settings = Settings.builder()
                 .put("cluster.name", ElasticSearchClient.getClusterName()).build();
         List<String> transportAddrs = ElasticSearchClient.getTransportAddresses();
+        final int transportPort = ElasticSearchClient.getTransportPort();
         TransportClient transportClient = new PreBuiltTransportClient(settings);
         for(String addr : transportAddrs) {
             try {
                 logger.info("Adding transport address: " + addr);
+                final int split = portSeparator(addr);
+                final String host = (split < 0) ? addr : addr.substring(0, split);
+                final int port = (split < 0) ? transportPort : Integer.parseInt(addr.substring(split + 1));
                 transportClient.addTransportAddress(
-                        new InetSocketTransportAddress(InetAddress.getByName(addr), 9300));
+                        new InetSocketTransportAddress(InetAddress.getByName(host), port));
             } catch(Exception e) {
                 logger.error("Unable to add transport address:" + addr, e);
             }
         }
         return transportClient;
     }
+
+    /**
+     * portSeparator
+     *
+     * Finds the colon before the port of a `host:port` or `[v6]:port` address.
+     * A bare IPv6 address, e.g. `::1`, has more than one colon and no port.
+     *
+     * @param addr String
+     * @return int index of the colon or -1 if the address has no port
+     */
+    static int portSeparator(final String addr) {
+        if(addr.startsWith("[")) {
+            final int close = addr.indexOf(']');
+            return (close > 0 && addr.indexOf(':', close) == close + 1) ? close + 1 : -1;
+        }
+        final int split = addr.indexOf(':');
+        return (split >= 0 && split == addr.lastIndexOf(':')) ? split : -1;
+    }
 }
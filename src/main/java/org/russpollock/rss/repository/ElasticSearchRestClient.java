@@ -0,0 +1,125 @@
+package org.russpollock.rss.repository;
+
+import org.russpollock.rss.RssEnvironment;
+import org.russpollock.rss.metrics.DefaultMetricsRegistry;
+import org.russpollock.rss.metrics.MetricsRegistry;
+import org.apache.http.HttpHost;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.client.RestClient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ElasticSearchRestClient
+ *
+ * Shared low level ES RestClient for HttpArticleDatastore.
+ * Requests are spread round robin over the nodes. A node that fails a request is marked dead and
+ * skipped until its backoff expires, starting at one minute and growing up to thirty minutes with
+ * each consecutive failure; the request is retried on the next node.
+ * Connections are pooled per node and kept alive between requests.
+ */
+public final class ElasticSearchRestClient {
+    public static final int DEFAULT_HTTP_PORT = 9200;
+    public static final int DEFAULT_MAX_CONNECTIONS = 30;
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_NODE = 10;
+    public static final long DEFAULT_KEEP_ALIVE_MILLIS = 60000;
+    private static final Logger LOGGER = LogManager.getLogger(ElasticSearchRestClient.class);
+    private static final RssEnvironment ENV = RssEnvironment.getInstance();
+    private final RestClient restClient;
+
+    public RestClient getRestClient() {
+        return restClient;
+    }
+
+    public MetricsRegistry getMetricsRegistry() {
+        return DefaultMetricsRegistry.getInstance();
+    }
+
+    public ElasticSearchRestClient() {
+        restClient = build(getHttpHosts(),
+                DEFAULT_MAX_CONNECTIONS,
+                DEFAULT_MAX_CONNECTIONS_PER_NODE,
+                DEFAULT_KEEP_ALIVE_MILLIS,
+                getMetricsRegistry());
+    }
+
+    private static class LazyHolder {
+        private static final ElasticSearchRestClient INSTANCE = new ElasticSearchRestClient();
+    }
+
+    public static ElasticSearchRestClient getInstance() {
+        return LazyHolder.INSTANCE;
+    }
+
+    /**
+     * getHttpHosts
+     *
+     * Gets http hosts from the comma separated `httpAddresses` environment variable.
+     * An address may give its own port as `host:port`, or `[v6]:port` for IPv6 addresses,
+     * otherwise `httpPort` or 9200 is used.
+     *
+     * @return List<HttpHost>
+     * @throws NullPointerException
+     */
+    private static List<HttpHost> getHttpHosts() throws NullPointerException {
+        final String httpAddresses = ENV.getEnv(ENV.getESHttpAddressesProp());
+        if(httpAddresses == null) {
+            throw new NullPointerException(
+                    String.format("Environment variable null: %s", ENV.getESHttpAddressesProp()));
+        }
+        final String httpPort = ENV.getEnv(ENV.getESHttpPortProp());
+        final int port = (httpPort == null) ? DEFAULT_HTTP_PORT : Integer.parseInt(httpPort.trim());
+
+        final List<HttpHost> hosts = new ArrayList<>();
+        for(String addr: Arrays.asList(httpAddresses.split("\\s*,\\s*"))) {
+            final int split = ElasticSearchClient.portSeparator(addr);
+            final String host = (split < 0) ? addr : addr.substring(0, split);
+            // HttpHost writes the host name into urls as is, IPv6 literals need their brackets
+            hosts.add(new HttpHost((host.contains(":") && !host.startsWith("[")) ? "[" + host + "]" : host,
+                    (split < 0) ? port : Integer.parseInt(addr.substring(split + 1)), "http"));
+        }
+        return hosts;
+    }
+
+    /**
+     * build
+     *
+     * Builds a RestClient with a pooled keep alive connection manager.
+     * Node failures are logged and counted in the `http.nodeFailures` counter.
+     *
+     * @param hosts List<HttpHost>
+     * @param maxConnections int pooled connections over all nodes
+     * @param maxConnectionsPerNode int pooled connections per node
+     * @param keepAliveMillis long longest an idle connection is kept, unless the node asks for less
+     * @param metricsRegistry MetricsRegistry
+     * @return RestClient
+     */
+    public static RestClient build(final List<HttpHost> hosts,
+                                   final int maxConnections,
+                                   final int maxConnectionsPerNode,
+                                   final long keepAliveMillis,
+                                   final MetricsRegistry metricsRegistry) {
+        LOGGER.info(String.format("Connecting to ES http nodes: %s", hosts));
+        return RestClient.builder(hosts.toArray(new HttpHost[hosts.size()]))
+                .setHttpClientConfigCallback(httpClientBuilder -> httpClientBuilder
+                        .setMaxConnTotal(maxConnections)
+                        .setMaxConnPerRoute(maxConnectionsPerNode)
+                        .setKeepAliveStrategy((response, context) -> {
+                            final long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE
+                                    .getKeepAliveDuration(response, context);
+                            return (keepAlive > 0) ? Math.min(keepAlive, keepAliveMillis) : keepAliveMillis;
+                        }))
+                .setFailureListener(new RestClient.FailureListener() {
+                    @Override
+                    public void onFailure(final HttpHost host) {
+                        LOGGER.warn(String.format("ES http node %s failed and is marked dead", host));
+                        metricsRegistry.counter("http.nodeFailures").increment();
+                    }
+                })
+                .build();
+    }
+}
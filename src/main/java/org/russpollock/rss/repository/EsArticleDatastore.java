@@ -1,33 +1,106 @@
 package org.russpollock.rss.repository;
 
-import com.google.gson.Gson;
 import org.russpollock.rss.models.Article;
+import org.russpollock.rss.models.ArticleBatch;
 import org.russpollock.rss.models.ArticleHit;
+import org.russpollock.rss.metrics.DefaultMetricsRegistry;
+import org.russpollock.rss.metrics.MetricsRegistry;
+import org.russpollock.rss.repository.DatastoreMetrics.OPERATION;
+import org.russpollock.rss.repository.aggregations.AggregationResults;
+import org.russpollock.rss.repository.aggregations.ArticleAggregation;
+import org.russpollock.rss.repository.ingest.ArticleDeduplicator;
+import org.russpollock.rss.repository.ingest.ArticleIngestor;
+import org.russpollock.rss.repository.ingest.ArticleIngestorBuilder;
+import org.russpollock.rss.repository.ingest.ArticleSpool;
+import org.russpollock.rss.repository.ingest.ArticleVersion;
+import org.russpollock.rss.repository.ingest.SpoolReplayer;
+import org.russpollock.rss.repository.queries.SearchPlan;
+import org.russpollock.rss.repository.queries.SearchPlanner;
 import org.russpollock.rss.repository.queries.SearchQuery;
+import org.russpollock.rss.repository.queries.SourceProjection;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ActionRequestBuilder;
+import org.elasticsearch.action.ActionResponse;
+import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkRequestBuilder;
 import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetRequestBuilder;
+import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.search.MultiSearchRequestBuilder;
+import org.elasticsearch.action.search.MultiSearchResponse;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.action.search.SearchType;
+import org.elasticsearch.action.support.IndicesOptions;
 import org.elasticsearch.client.Client;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
 import org.elasticsearch.common.xcontent.XContentType;
-import org.elasticsearch.index.query.MultiMatchQueryBuilder;
+import org.elasticsearch.index.engine.VersionConflictEngineException;
+import org.elasticsearch.index.mapper.RoutingFieldMapper;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.index.query.SimpleQueryStringBuilder;
 import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHitField;
+import org.elasticsearch.search.sort.SortOrder;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-public class EsArticleDatastore implements ArticleDatastore {
+public class EsArticleDatastore implements ArticleDatastore, AsyncArticleDatastore {
+    public static final String ARTICLE_TYPE = "article";
+    public static final int DEFAULT_STREAM_PAGE_SIZE = 500;
+    public static final TimeValue DEFAULT_SCROLL_KEEP_ALIVE = TimeValue.timeValueMinutes(1);
+    private static final int MAX_LOCATE_HITS = 10000;
+    // Ids per locate search, leaving room for a second copy of each
+    private static final int MAX_LOCATE_IDS = MAX_LOCATE_HITS / 2;
+    private static final int BATCH_BULK_ACTIONS = 1000;
+    private static final long BATCH_BULK_SIZE_BYTES = 5 * 1024 * 1024;
     private static final Logger LOGGER = LogManager.getLogger(ElasticSearchClient.class);
     private Client client;
     private String[] searchIndicies;
     private String writeIndex;
-    private final String ARTICLE_TYPE = "article";
+    private Executor callbackExecutor = ForkJoinPool.commonPool();
+    private MetricsRegistry metricsRegistry = DefaultMetricsRegistry.getInstance();
+    private DatastoreMetrics metrics = DatastoreMetrics.of(metricsRegistry);
+    private ArticleDeduplicator deduplicator;
+    private ArticleSpool spool;
+    private TimePartitioner partitioner;
+    private ArticleRouting routing;
 
     public EsArticleDatastore(final Client client) {
         this.client = client;
@@ -97,26 +170,209 @@ public class EsArticleDatastore implements ArticleDatastore {
         return this.writeIndex;
     }
 
+    /**
+     * setCallbackExecutor
+     *
+     * Sets the executor used to complete futures returned by the async operations.
+     * Responses arrive on transport threads, so hit deserialization and dependent stages
+     * are handed off to this executor. Defaults to the common ForkJoinPool.
+     *
+     * @param callbackExecutor Executor
+     */
+    public void setCallbackExecutor(final Executor callbackExecutor) {
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    /**
+     * getCallbackExecutor
+     *
+     * Gets the executor used to complete futures returned by the async operations.
+     *
+     * @return Executor
+     */
+    public Executor getCallbackExecutor() {
+        return this.callbackExecutor;
+    }
+
+    /**
+     * setMetricsRegistry
+     *
+     * Sets the registry operation latencies, bulk sizes and failures are recorded in.
+     * Defaults to the shared DefaultMetricsRegistry.
+     *
+     * @param metricsRegistry MetricsRegistry
+     */
+    public void setMetricsRegistry(final MetricsRegistry metricsRegistry) {
+        this.metricsRegistry = metricsRegistry;
+        this.metrics = DatastoreMetrics.of(metricsRegistry);
+    }
+
+    /**
+     * getMetricsRegistry
+     *
+     * Gets the registry operation metrics are recorded in.
+     *
+     * @return MetricsRegistry
+     */
+    public MetricsRegistry getMetricsRegistry() {
+        return this.metricsRegistry;
+    }
+
+    /**
+     * setDeduplicator
+     *
+     * Sets the ArticleDeduplicator saveAll and saveAllAsync use to skip unchanged articles.
+     * save always indexes but records the fingerprint, deletes forget it. Not set by default.
+     *
+     * @param deduplicator ArticleDeduplicator
+     */
+    public void setDeduplicator(final ArticleDeduplicator deduplicator) {
+        this.deduplicator = deduplicator;
+    }
+
+    public ArticleDeduplicator getDeduplicator() {
+        return this.deduplicator;
+    }
+
+    /**
+     * setSpool
+     *
+     * Sets the ArticleSpool saveAll writes articles to when the cluster rejects them or can not be reached.
+     * A SpoolReplayer must replay it. Not set by default.
+     *
+     * @param spool ArticleSpool
+     */
+    public void setSpool(final ArticleSpool spool) {
+        this.spool = spool;
+    }
+
+    public ArticleSpool getSpool() {
+        return this.spool;
+    }
+
+    /**
+     * setPartitioner
+     *
+     * Sets the TimePartitioner that routes each article to a time partitioned index instead of the writeIndex.
+     * Searches then target the partitions overlapping the query's range filters on the partition field,
+     * and deletes locate articles with an ids query across them, refreshing the partitions only for ids not found.
+     *
+     * @param partitioner TimePartitioner
+     */
+    public void setPartitioner(final TimePartitioner partitioner) {
+        this.partitioner = partitioner;
+    }
+
+    public TimePartitioner getPartitioner() {
+        return this.partitioner;
+    }
+
+    /**
+     * setRouting
+     *
+     * Sets the ArticleRouting that picks each article's shard by its routing key, e.g. `source`, instead of its id.
+     * Searches with a single exact value filter on the key only query that shard.
+     * Deletes locate articles with an ids query to find their routing, refreshing the writeIndex only for ids
+     * not found. Not set by default.
+     *
+     * @param routing ArticleRouting
+     */
+    public void setRouting(final ArticleRouting routing) {
+        this.routing = routing;
+    }
+
+    public ArticleRouting getRouting() {
+        return this.routing;
+    }
+
+    /**
+     * ingestorBuilder
+     *
+     * Gets an ArticleIngestorBuilder targeting this datastore's client and writeIndex.
+     *
+     * @return ArticleIngestorBuilder
+     * @throws NullPointerException
+     */
+    public ArticleIngestorBuilder ingestorBuilder() throws NullPointerException {
+        if(this.writeIndex == null && this.partitioner == null) {
+            throw new NullPointerException("writeIndex or partitioner must be set before ingesting.");
+        }
+        return new ArticleIngestorBuilder(this.client, this.writeIndex)
+                .setMetricsRegistry(this.metricsRegistry)
+                .setDeduplicator(this.deduplicator)
+                .setSpool(this.spool)
+                .setPartitioner(this.partitioner)
+                .setRouting(this.routing);
+    }
+
+    private String indexFor(final Article article) {
+        return (this.partitioner == null) ? this.writeIndex : this.partitioner.indexFor(article);
+    }
+
     private IndexRequestBuilder buildArticleIndexRequest(final Article article, final String index) {
-        return client.prepareIndex(index, ARTICLE_TYPE, article.URL)
-                .setSource(article.serializeJSON(), XContentType.JSON);
+        return ArticleVersion.apply(client.prepareIndex(index, ARTICLE_TYPE, article.URL)
+                .setRouting((this.routing == null) ? null : this.routing.routingFor(article))
+                .setSource(ArticleCodec.toXContent(article)), ArticleVersion.of(article));
+    }
+
+    /**
+     * isLocating
+     *
+     * Whether an article's index or shard can not be derived from its id, so deletes have to find it first.
+     */
+    private boolean isLocating() {
+        return this.partitioner != null || this.routing != null;
     }
 
     /**
      * save
      *
      * Indexes a single Article using the writeIndex as a target.
+     * Like every write of this datastore the article carries its ArticleVersion as external version,
+     * a save refused because a newer copy is already indexed throws a VersionConflictEngineException.
      * Implements ArticleDatastore.save
      *
      * @param article Article
      * @throws NullPointerException
+     * @throws VersionConflictEngineException
      */
-    public void save(final Article article) throws NullPointerException {
-        LOGGER.info(String.format("Indexing article in %s URL: %s", this.writeIndex, article.URL));
-        if(this.writeIndex == null) {
-            throw new NullPointerException("writeIndex must be set before indexing.");
+    public void save(final Article article) throws NullPointerException, VersionConflictEngineException {
+        if(this.writeIndex == null && this.partitioner == null) {
+            throw new NullPointerException("writeIndex or partitioner must be set before indexing.");
+        }
+        final String index = indexFor(article);
+        LOGGER.info(String.format("Indexing article in %s URL: %s", index, article.URL));
+        metrics.time(OPERATION.SAVE, () -> {
+            buildArticleIndexRequest(article, index).get();
+        });
+        if(this.deduplicator != null) {
+            this.deduplicator.recordIndexed(article);
         }
-        buildArticleIndexRequest(article, this.writeIndex).get();
+    }
+
+    /**
+     * saveAsync
+     *
+     * Indexes a single Article using the writeIndex as a target without blocking the caller.
+     * A save refused because a newer copy is already indexed completes exceptionally, see save.
+     * Implements AsyncArticleDatastore.saveAsync
+     *
+     * @param article Article
+     * @return CompletableFuture<Void>
+     * @throws NullPointerException
+     */
+    public CompletableFuture<Void> saveAsync(final Article article) throws NullPointerException {
+        if(this.writeIndex == null && this.partitioner == null) {
+            throw new NullPointerException("writeIndex or partitioner must be set before indexing.");
+        }
+        final String index = indexFor(article);
+        LOGGER.info(String.format("Indexing article in %s URL: %s", index, article.URL));
+        return executeAsync(OPERATION.SAVE, buildArticleIndexRequest(article, index), response -> {
+            if(this.deduplicator != null) {
+                this.deduplicator.recordIndexed(article);
+            }
+            return null;
+        });
     }
 
     /**
@@ -125,22 +381,276 @@ public class EsArticleDatastore implements ArticleDatastore {
      * Saves a list of Articles using the writeIndex as a target.
      * Implements ArticleDatastore.saveAll
      *
+     * Articles are sent through a short lived ArticleIngestor, so large lists are split into
+     * size bounded bulks and items rejected by the cluster are retried with backoff.
+     * Unchanged articles are skipped when a deduplicator is set, failed ones are spooled when a spool is set.
+     * Blocks until every bulk has completed.
+     *
      * @param articles List of Articles
      * @throws NullPointerException
      */
     public void saveAll(final List<Article> articles) throws NullPointerException {
         LOGGER.info(String.format("Indexing %s articles to %s", articles.size(), this.writeIndex));
-        if(this.writeIndex == null) {
-            throw new NullPointerException("writeIndex must be set before indexing all.");
+        if(this.writeIndex == null && this.partitioner == null) {
+            throw new NullPointerException("writeIndex or partitioner must be set before indexing all.");
+        }
+        final ArticleIngestor ingestor = ingestorBuilder()
+                .setFlushIntervalMillis(0)
+                .setConcurrentRequests(1)
+                .build();
+        final long start = metrics.begin(OPERATION.SAVE_ALL);
+        Throwable failure = null;
+        try {
+            ingestor.addAll(articles);
+            ingestor.awaitClose(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch(InterruptedException e) {
+            failure = e;
+            Thread.currentThread().interrupt();
+            LOGGER.error(String.format("Interrupted while indexing %s articles to %s",
+                    articles.size(), this.writeIndex), e);
+        } catch(RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            ingestor.close();
+            metrics.end(OPERATION.SAVE_ALL, start, failure);
+        }
+    }
+
+    /**
+     * saveBatch
+     *
+     * Saves every article of an ArticleBatch using the writeIndex, or the partitions, as a target.
+     * Sources are written straight from the batch's buffer into the bulk bytes and sent in bulks of up to
+     * 1000 articles or 5MB, one at a time. Only the fields the partitioner and routing read are decoded.
+     * Like the ArticleIngestor, items rejected by the cluster are retried with exponential backoff, and when a
+     * spool is set the ones still rejected, or a bulk that could not be sent, are spooled. While the spool is
+     * diverting articles are spooled instead of sent. The deduplicator forgets the ids of the batch, its articles
+     * are not fingerprinted. Articles superseded by a newer copy do not count as failed.
+     *
+     * @param batch ArticleBatch
+     * @return int number of articles that were neither indexed nor spooled
+     * @throws NullPointerException
+     * @throws UncheckedIOException
+     */
+    public int saveBatch(final ArticleBatch batch) throws NullPointerException, UncheckedIOException {
+        LOGGER.info(String.format("Indexing batch of %s articles to %s", batch.size(), this.writeIndex));
+        if(this.writeIndex == null && this.partitioner == null) {
+            throw new NullPointerException("writeIndex or partitioner must be set before indexing a batch.");
+        }
+        final ArticleIngestorBuilder retries = ingestorBuilder();
+        final int failed = metrics.time(OPERATION.SAVE_BATCH, () -> {
+            final BytesStreamOutput body = new BytesStreamOutput();
+            int actions = 0;
+            int failures = 0;
+            for(int i = 0; i < batch.size(); i++) {
+                appendBatchAction(body, batch, i);
+                actions++;
+                if(actions >= BATCH_BULK_ACTIONS || body.size() >= BATCH_BULK_SIZE_BYTES) {
+                    failures += executeBatchBulk(body, retries);
+                    body.reset();
+                    actions = 0;
+                }
+            }
+            if(actions > 0) {
+                failures += executeBatchBulk(body, retries);
+            }
+            return failures;
+        });
+        if(failed > 0) {
+            LOGGER.error(String.format("Failed to index %s of %s articles of the batch", failed, batch.size()));
+        }
+        return failed;
+    }
+
+    private void appendBatchAction(final BytesStreamOutput body, final ArticleBatch batch, final int i) {
+        final String id = batch.getString(i, ArticleBatch.FIELD.URL);
+        try {
+            String index = this.writeIndex;
+            String shardRouting = null;
+            if(isLocating()) {
+                final Article keys = batch.toArticle(i, ArticleBatch.FIELD.PUBLISHED, ArticleBatch.FIELD.SOURCE,
+                        ArticleBatch.FIELD.AUTHOR, ArticleBatch.FIELD.CONTENT_TYPE);
+                index = indexFor(keys);
+                shardRouting = (this.routing == null) ? null : this.routing.routingFor(keys);
+            }
+            final XContentBuilder action = XContentFactory.jsonBuilder()
+                    .startObject()
+                    .startObject("index")
+                    .field("_index", index)
+                    .field("_type", ARTICLE_TYPE)
+                    .field("_id", id);
+            if(shardRouting != null) {
+                action.field("_routing", shardRouting);
+            }
+            final long version = ArticleVersion.of(batch.getString(i, ArticleBatch.FIELD.UPDATED),
+                    batch.getString(i, ArticleBatch.FIELD.PUBLISHED));
+            if(version != ArticleVersion.NONE) {
+                action.field("_version", version).field("_version_type", ArticleVersion.VERSION_TYPE_NAME);
+            }
+            action.endObject().endObject().bytes().writeTo(body);
+            body.write('\n');
+            batch.writeSource(i, body);
+            body.write('\n');
+        } catch(IOException e) {
+            throw new UncheckedIOException(String.format("Unable to serialize article %s", id), e);
+        }
+    }
+
+    /**
+     * executeBatchBulk
+     *
+     * Sends the bulk body of an ArticleBatch, retrying rejected items with the backoff of retries.
+     *
+     * @param body BytesStreamOutput bulk body
+     * @param retries ArticleIngestorBuilder the retry backoff is read from
+     * @return int number of articles that were neither indexed nor spooled
+     */
+    private int executeBatchBulk(final BytesStreamOutput body, final ArticleIngestorBuilder retries) {
+        final BulkRequest parsed = new BulkRequest();
+        try {
+            parsed.add(body.bytes(), null, null, XContentType.JSON);
+        } catch(IOException e) {
+            throw new UncheckedIOException("Unable to build bulk from article batch", e);
+        }
+        List<IndexRequest> pending = new ArrayList<>(parsed.numberOfActions());
+        for(DocWriteRequest<?> action: parsed.requests()) {
+            final IndexRequest request = (IndexRequest) action;
+            if(this.deduplicator != null) {
+                this.deduplicator.forget(request.id());
+            }
+            if(this.spool == null || !this.spool.appendIfDiverting(request.index(), request.id(), request.routing(),
+                    ArticleVersion.of(request), request.source())) {
+                pending.add(request);
+            }
+        }
+        final Iterator<TimeValue> backoff = BackoffPolicy.exponentialBackoff(
+                TimeValue.timeValueMillis(retries.getRetryInitialDelayMillis()), retries.getMaxRetries()).iterator();
+        int failed = 0;
+        while(!pending.isEmpty()) {
+            final BulkRequestBuilder bulk = client.prepareBulk();
+            for(IndexRequest request: pending) {
+                bulk.add(request);
+            }
+            final int actions = pending.size();
+            metrics.recordBulk(actions, bulk.request().estimatedSizeInBytes());
+            final BulkResponse response;
+            try {
+                response = bulk.get();
+            } catch(RuntimeException e) {
+                LOGGER.error(String.format("Failed to execute bulk with %s articles", actions), e);
+                metrics.recordBulkFailure(actions, e);
+                return failed + spoolOrFail(pending);
+            }
+            if(metrics.recordBulkResponse(response) > 0) {
+                LOGGER.error(String.format("Failed to index all %s articles \n%s", actions,
+                        response.buildFailureMessage()));
+            }
+            final List<IndexRequest> rejected = new ArrayList<>();
+            final BulkItemResponse[] items = response.getItems();
+            for(int i = 0; i < items.length; i++) {
+                if(!items[i].isFailed() || ArticleVersion.isSuperseded(items[i])) {
+                    continue;
+                }
+                if(SpoolReplayer.isRetryable(items[i].getFailure().getStatus())) {
+                    rejected.add(pending.get(i));
+                } else {
+                    failed++;
+                }
+            }
+            if(rejected.isEmpty()) {
+                break;
+            }
+            if(!backoff.hasNext() || !sleep(backoff.next())) {
+                return failed + spoolOrFail(rejected);
+            }
+            LOGGER.warn(String.format("Cluster rejected %s articles, retrying", rejected.size()));
+            pending = rejected;
+        }
+        return failed;
+    }
+
+    /**
+     * spoolOrFail
+     *
+     * Spools articles the cluster kept rejecting or could not be reached for, when a spool is set.
+     *
+     * @param requests List of IndexRequests
+     * @return int number of articles that were not spooled
+     */
+    private int spoolOrFail(final List<IndexRequest> requests) {
+        if(this.spool == null) {
+            return requests.size();
+        }
+        this.spool.divert();
+        for(IndexRequest request: requests) {
+            this.spool.append(request.index(), request.id(), request.routing(), ArticleVersion.of(request),
+                    request.source());
+        }
+        LOGGER.warn(String.format("Spooled %s rejected articles to %s", requests.size(), this.spool.getDirectory()));
+        return 0;
+    }
+
+    private static boolean sleep(final TimeValue delay) {
+        try {
+            Thread.sleep(delay.millis());
+            return true;
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * saveAllAsync
+     *
+     * Saves a list of Articles using the writeIndex as a target without blocking the caller.
+     * Unchanged articles are skipped when a deduplicator is set.
+     * Implements AsyncArticleDatastore.saveAllAsync
+     *
+     * @param articles List of Articles
+     * @return CompletableFuture<Void>
+     * @throws NullPointerException
+     */
+    public CompletableFuture<Void> saveAllAsync(final List<Article> articles) throws NullPointerException {
+        LOGGER.info(String.format("Indexing %s articles to %s", articles.size(), this.writeIndex));
+        if(this.writeIndex == null && this.partitioner == null) {
+            throw new NullPointerException("writeIndex or partitioner must be set before indexing all.");
+        }
+        final List<Long> fingerprints = new ArrayList<>();
+        final List<Article> changed = (this.deduplicator == null) ? articles
+                : this.deduplicator.filterChanged(articles, fingerprints);
+        if(changed.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
         }
+        final BulkRequestBuilder bulk = buildArticleBulkRequest(changed);
+        metrics.recordBulk(bulk.numberOfActions(), bulk.request().estimatedSizeInBytes());
+        return executeAsync(OPERATION.SAVE_ALL, bulk, response -> {
+            logBulkFailures(changed, response);
+            if(this.deduplicator != null) {
+                final BulkItemResponse[] items = response.getItems();
+                for(int i = 0; i < items.length; i++) {
+                    if(!items[i].isFailed()) {
+                        this.deduplicator.recordIndexed(changed.get(i).URL, fingerprints.get(i));
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    private BulkRequestBuilder buildArticleBulkRequest(final List<Article> articles) {
         BulkRequestBuilder builder = client.prepareBulk();
         for(Article article: articles) {
-            LOGGER.info(String.format("Indexing article in %s URL: %s", this.writeIndex, article.URL));
-            builder.add(buildArticleIndexRequest(article, this.writeIndex));
+            final String index = indexFor(article);
+            LOGGER.debug(String.format("Indexing article in %s URL: %s", index, article.URL));
+            builder.add(buildArticleIndexRequest(article, index));
         }
+        return builder;
+    }
 
-        BulkResponse response = builder.get();
-        if(response.hasFailures()) {
+    private void logBulkFailures(final List<Article> articles, final BulkResponse response) {
+        if(metrics.recordBulkResponse(response) > 0) {
             LOGGER.error(String.format("Failed to index all %s articles \n%s", articles.size(),
                     response.buildFailureMessage()));
         }
@@ -149,7 +659,8 @@ public class EsArticleDatastore implements ArticleDatastore {
     /**
      * delete
      *
-     * Removes an article from the datastore by id using writeIndex as the target.
+     * Removes an article from the datastore by id using writeIndex as the target,
+     * or from the partitions and shard it is found in when a partitioner or routing is set.
      * Implements ArticleDatastore.delete
      *
      * @param id String
@@ -157,23 +668,523 @@ public class EsArticleDatastore implements ArticleDatastore {
      */
     public void delete(final String id) throws NullPointerException {
         LOGGER.info(String.format("Deleting article %s", id));
-        if(this.writeIndex == null) {
-            throw new NullPointerException("writeIndex must be set before deleting.");
+        if(this.writeIndex == null && this.partitioner == null) {
+            throw new NullPointerException("writeIndex or partitioner must be set before deleting.");
+        }
+        spoolDeletes(Collections.singletonList(id));
+        metrics.time(OPERATION.DELETE, () -> {
+            if(!isLocating()) {
+                client.prepareDelete(this.writeIndex, ARTICLE_TYPE, id).get();
+                return;
+            }
+            for(DocumentRef ref: locateOrRefresh(Collections.singletonList(id))) {
+                client.prepareDelete(ref.getIndex(), ARTICLE_TYPE, ref.getId()).setRouting(ref.getRouting()).get();
+            }
+        });
+        if(this.deduplicator != null) {
+            this.deduplicator.forget(id);
+        }
+    }
+
+    /**
+     * deleteAsync
+     *
+     * Removes an article from the datastore by id using writeIndex as the target,
+     * or from the partitions and shard it is found in when a partitioner or routing is set, without blocking the caller.
+     * Implements AsyncArticleDatastore.deleteAsync
+     *
+     * @param id String
+     * @return CompletableFuture<Void>
+     * @throws NullPointerException
+     */
+    public CompletableFuture<Void> deleteAsync(final String id) throws NullPointerException {
+        LOGGER.info(String.format("Deleting article %s", id));
+        if(this.writeIndex == null && this.partitioner == null) {
+            throw new NullPointerException("writeIndex or partitioner must be set before deleting.");
+        }
+        spoolDeletes(Collections.singletonList(id));
+        if(!isLocating()) {
+            return executeAsync(OPERATION.DELETE, client.prepareDelete(this.writeIndex, ARTICLE_TYPE, id),
+                    response -> {
+                        if(this.deduplicator != null) {
+                            this.deduplicator.forget(id);
+                        }
+                        return null;
+                    });
         }
-        client.prepareDelete(this.writeIndex, ARTICLE_TYPE, id).get();
+        return locateOrRefreshAsync(Collections.singletonList(id)).thenCompose(refs -> {
+            final BulkRequestBuilder bulk = client.prepareBulk();
+            for(DocumentRef ref: refs) {
+                bulk.add(client.prepareDelete(ref.getIndex(), ARTICLE_TYPE, ref.getId()).setRouting(ref.getRouting()));
+            }
+            final CompletableFuture<Void> deleted = refs.isEmpty() ? CompletableFuture.<Void>completedFuture(null)
+                    : executeAsync(OPERATION.DELETE, bulk, response -> null);
+            return deleted.thenRun(() -> {
+                if(this.deduplicator != null) {
+                    this.deduplicator.forget(id);
+                }
+            });
+        });
+    }
+
+    /**
+     * deleteAll
+     *
+     * Removes articles by id from writeIndex with bulk deletes of DeleteOptions.getBatchSize() ids.
+     * When a partitioner or routing is set each batch is located with ids queries of up to 5000 ids, and the
+     * indices are refreshed and searched again only when some ids of the batch were not found.
+     * Ids that do not exist are counted as not found. Implements ArticleDatastore.deleteAll
+     *
+     * @param ids Collection of article ids
+     * @param options DeleteOptions
+     * @return DeleteResult
+     * @throws NullPointerException
+     */
+    public DeleteResult deleteAll(final Collection<String> ids, final DeleteOptions options)
+            throws NullPointerException {
+        LOGGER.info(String.format("Deleting %s articles from %s", ids.size(), this.writeIndex));
+        if(this.writeIndex == null && this.partitioner == null) {
+            throw new NullPointerException("writeIndex or partitioner must be set before deleting all.");
+        }
+        return metrics.time(OPERATION.DELETE_ALL, () -> {
+            final DeleteTracker tracker = new DeleteTracker(options);
+            final List<String> batch = new ArrayList<>(Math.min(ids.size(), options.getBatchSize()));
+            for(String id: ids) {
+                batch.add(id);
+                if(batch.size() >= options.getBatchSize()) {
+                    deleteIds(batch, tracker);
+                    batch.clear();
+                    if(!tracker.batchDone()) {
+                        return tracker.result();
+                    }
+                }
+            }
+            if(!batch.isEmpty()) {
+                deleteIds(batch, tracker);
+                tracker.batchDone();
+            }
+            final DeleteResult result = tracker.result();
+            LOGGER.info(String.format("Deleted articles from %s: %s", this.writeIndex, result));
+            return result;
+        });
+    }
+
+    /**
+     * deleteByQuery
+     *
+     * Removes every article matching a SearchQuery from the searchIndicies.
+     * Matching ids are scrolled without their source in `_doc` order, one page of DeleteOptions.getBatchSize()
+     * at a time, and each page is deleted with a bulk from the index the article was found in.
+     * Progress is reported and throttled per page. Implements ArticleDatastore.deleteByQuery
+     *
+     * @param query SearchQuery
+     * @param options DeleteOptions
+     * @return DeleteResult
+     * @throws NullPointerException
+     */
+    public DeleteResult deleteByQuery(final SearchQuery query, final DeleteOptions options)
+            throws NullPointerException {
+        LOGGER.info(String.format("Deleting articles matching: %s", query.toString()));
+        final SearchRequestBuilder request = prepareSearchRequest(query)
+                .setSearchType(SearchType.QUERY_THEN_FETCH)
+                .setFetchSource(false)
+                .addSort("_doc", SortOrder.ASC)
+                .setSize(options.getBatchSize())
+                .setScroll(DEFAULT_SCROLL_KEEP_ALIVE);
+
+        return metrics.time(OPERATION.DELETE_BY_QUERY, () -> {
+            final DeleteTracker tracker = new DeleteTracker(options);
+            SearchResponse page = request.get();
+            try {
+                while(page.getHits().getHits().length > 0) {
+                    final List<DocumentRef> batch = new ArrayList<>(page.getHits().getHits().length);
+                    final List<String> ids = new ArrayList<>(page.getHits().getHits().length);
+                    for(SearchHit hit: page.getHits().getHits()) {
+                        batch.add(toDocumentRef(hit));
+                        ids.add(hit.getId());
+                    }
+                    spoolDeletes(ids);
+                    executeDeleteBulk(batch, tracker);
+                    if(!tracker.batchDone()) {
+                        break;
+                    }
+                    page = client.prepareSearchScroll(page.getScrollId())
+                            .setScroll(DEFAULT_SCROLL_KEEP_ALIVE)
+                            .get();
+                }
+            } finally {
+                if(page.getScrollId() != null) {
+                    client.prepareClearScroll().addScrollId(page.getScrollId()).get();
+                }
+            }
+            final DeleteResult result = tracker.result();
+            LOGGER.info(String.format("Deleted articles matching query: %s", result));
+            return result;
+        });
+    }
+
+    private void deleteIds(final List<String> ids, final DeleteTracker tracker) {
+        spoolDeletes(ids);
+        final List<DocumentRef> refs;
+        if(!isLocating()) {
+            refs = new ArrayList<>(ids.size());
+            for(String id: ids) {
+                refs.add(new DocumentRef(this.writeIndex, id));
+            }
+        } else {
+            refs = locateOrRefresh(ids);
+            tracker.notFound(missingIds(ids, refs).size());
+            if(refs.isEmpty()) {
+                return;
+            }
+        }
+        executeDeleteBulk(refs, tracker);
+    }
+
+    /**
+     * spoolDeletes
+     *
+     * Spools deletes of ids while the spool holds articles, so replaying a copy spooled before
+     * the delete does not bring the article back once ES forgot the delete.
+     */
+    private void spoolDeletes(final Collection<String> ids) {
+        if(this.spool == null) {
+            return;
+        }
+        for(String id: ids) {
+            if(!this.spool.appendDeleteIfPending(getLocateIndex(), id)) {
+                return;
+            }
+        }
+    }
+
+    private String getLocateIndex() {
+        return (this.partitioner == null) ? this.writeIndex : this.partitioner.getIndexPattern();
+    }
+
+    /**
+     * refreshLocatable
+     *
+     * Refreshes the writeIndex or partitions, so a locate finds every article saved before.
+     * Locate searches, unlike gets, only see refreshed documents.
+     * A refresh of every partition is costly, it is only done once a locate missed ids.
+     */
+    private void refreshLocatable() {
+        client.admin().indices().prepareRefresh(getLocateIndex())
+                .setIndicesOptions(IndicesOptions.lenientExpandOpen())
+                .get();
+    }
+
+    private CompletableFuture<Void> refreshLocatableAsync() {
+        final CompletableFuture<Void> refreshed = new CompletableFuture<>();
+        client.admin().indices().prepareRefresh(getLocateIndex())
+                .setIndicesOptions(IndicesOptions.lenientExpandOpen())
+                .execute(ActionListener.wrap(response -> refreshed.complete(null), refreshed::completeExceptionally));
+        return refreshed;
+    }
+
+    /**
+     * locateOrRefresh
+     *
+     * Locates articles by id, then refreshes and locates again only the ids that were not found,
+     * e.g. articles saved since the last refresh. An id with a refreshed copy is not searched again,
+     * so a second copy saved to another partition since the last refresh is missed.
+     */
+    private List<DocumentRef> locateOrRefresh(final List<String> ids) {
+        final List<DocumentRef> refs = locate(ids);
+        final List<String> missing = missingIds(ids, refs);
+        if(!missing.isEmpty()) {
+            refreshLocatable();
+            refs.addAll(locate(missing));
+        }
+        return refs;
+    }
+
+    private static List<String> missingIds(final List<String> ids, final List<DocumentRef> refs) {
+        final Set<String> found = new HashSet<>();
+        for(DocumentRef ref: refs) {
+            found.add(ref.getId());
+        }
+        final List<String> missing = new ArrayList<>();
+        for(String id: ids) {
+            if(!found.contains(id)) {
+                missing.add(id);
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * locate
+     *
+     * Finds the partitions and routing of articles by id, with ids searches of up to MAX_LOCATE_IDS ids.
+     * Only articles visible to search, i.e. refreshed, are found.
+     */
+    private List<DocumentRef> locate(final List<String> ids) {
+        final List<DocumentRef> refs = new ArrayList<>(ids.size());
+        for(int from = 0; from < ids.size(); from += MAX_LOCATE_IDS) {
+            locate(ids.subList(from, Math.min(ids.size(), from + MAX_LOCATE_IDS)), refs);
+        }
+        return refs;
+    }
+
+    private void locate(final List<String> ids, final List<DocumentRef> refs) {
+        SearchResponse response = prepareLocateRequest(ids, ids.size() * 2).get();
+        final long total = response.getHits().getTotalHits();
+        if(total > response.getHits().getHits().length) {
+            if(total > MAX_LOCATE_HITS && ids.size() > 1) {
+                // More copies than one search returns, split until each half fits
+                locate(ids.subList(0, ids.size() / 2), refs);
+                locate(ids.subList(ids.size() / 2, ids.size()), refs);
+                return;
+            }
+            response = prepareLocateRequest(ids, (int) Math.min(MAX_LOCATE_HITS, total)).get();
+        }
+        refs.addAll(toDocumentRefs(response));
+    }
+
+    /**
+     * locateOrRefreshAsync
+     *
+     * Locates up to MAX_LOCATE_IDS ids like locateOrRefresh without blocking the caller.
+     */
+    private CompletableFuture<List<DocumentRef>> locateOrRefreshAsync(final List<String> ids) {
+        return locateAsync(ids).thenCompose(refs -> {
+            final List<String> missing = missingIds(ids, refs);
+            if(missing.isEmpty()) {
+                return CompletableFuture.completedFuture(refs);
+            }
+            return refreshLocatableAsync()
+                    .thenCompose(refreshed -> locateAsync(missing))
+                    .thenApply(located -> {
+                        final List<DocumentRef> all = new ArrayList<>(refs);
+                        all.addAll(located);
+                        return all;
+                    });
+        });
+    }
+
+    private CompletableFuture<List<DocumentRef>> locateAsync(final List<String> ids) {
+        return executeAsync(OPERATION.SEARCH, prepareLocateRequest(ids, ids.size() * 2),
+                Function.<SearchResponse>identity())
+                .thenCompose(response -> {
+                    final long total = response.getHits().getTotalHits();
+                    if(total <= response.getHits().getHits().length) {
+                        return CompletableFuture.completedFuture(toDocumentRefs(response));
+                    }
+                    return executeAsync(OPERATION.SEARCH, prepareLocateRequest(ids,
+                            (int) Math.min(MAX_LOCATE_HITS, total)), EsArticleDatastore::toDocumentRefs);
+                });
+    }
+
+    private SearchRequestBuilder prepareLocateRequest(final Collection<String> ids, final int size) {
+        // An article whose date or routing key changed can have a second copy
+        return client.prepareSearch(getLocateIndex())
+                .setTypes(ARTICLE_TYPE)
+                .setIndicesOptions(IndicesOptions.lenientExpandOpen())
+                .setQuery(QueryBuilders.constantScoreQuery(
+                        QueryBuilders.idsQuery(ARTICLE_TYPE).addIds(ids.toArray(new String[ids.size()]))))
+                .setFetchSource(false)
+                .setSize(Math.min(MAX_LOCATE_HITS, size));
+    }
+
+    private static List<DocumentRef> toDocumentRefs(final SearchResponse response) {
+        final SearchHit[] hits = response.getHits().getHits();
+        final List<DocumentRef> refs = new ArrayList<>(hits.length);
+        for(SearchHit hit: hits) {
+            refs.add(toDocumentRef(hit));
+        }
+        return refs;
+    }
+
+    private static DocumentRef toDocumentRef(final SearchHit hit) {
+        final SearchHitField routing = hit.getField(RoutingFieldMapper.NAME);
+        return new DocumentRef(hit.getIndex(), hit.getId(), (routing == null) ? null : routing.getValue());
+    }
+
+    /**
+     * dropPartitionsOlderThan
+     *
+     * Deletes the partition indices that only hold articles dated before a cutoff.
+     *
+     * @param cutoffMillis long epoch millis
+     * @return List of dropped index names
+     * @throws NullPointerException
+     */
+    public List<String> dropPartitionsOlderThan(final long cutoffMillis) throws NullPointerException {
+        if(this.partitioner == null) {
+            throw new NullPointerException("partitioner must be set before dropping partitions.");
+        }
+        final String[] indices = client.admin().indices().prepareGetIndex()
+                .setIndices(this.partitioner.getIndexPattern())
+                .setIndicesOptions(IndicesOptions.lenientExpandOpen())
+                .get()
+                .getIndices();
+        final List<String> dropped = new ArrayList<>();
+        for(String index: indices) {
+            if(this.partitioner.isOlderThan(index, cutoffMillis)) {
+                dropped.add(index);
+            }
+        }
+        if(!dropped.isEmpty()) {
+            LOGGER.info(String.format("Dropping partitions %s", dropped));
+            client.admin().indices().prepareDelete(dropped.toArray(new String[dropped.size()])).get();
+        }
+        return dropped;
+    }
+
+    private void executeDeleteBulk(final List<DocumentRef> batch, final DeleteTracker tracker) {
+        final BulkRequestBuilder bulk = client.prepareBulk();
+        for(DocumentRef ref: batch) {
+            bulk.add(client.prepareDelete(ref.getIndex(), ARTICLE_TYPE, ref.getId()).setRouting(ref.getRouting()));
+        }
+        metrics.recordBulk(bulk.numberOfActions(), bulk.request().estimatedSizeInBytes());
+
+        final BulkResponse response;
+        try {
+            response = bulk.get();
+        } catch(RuntimeException e) {
+            LOGGER.error(String.format("Failed to execute delete bulk with %s articles", batch.size()), e);
+            metrics.recordBulkFailure(batch.size(), e);
+            for(DocumentRef ref: batch) {
+                tracker.failed(ref.getId(), e.toString());
+            }
+            return;
+        }
+        metrics.recordBulkResponse(response);
+        for(BulkItemResponse item: response.getItems()) {
+            if(item.isFailed()) {
+                tracker.failed(item.getId(), item.getFailureMessage());
+                continue;
+            }
+            if(this.deduplicator != null) {
+                this.deduplicator.forget(item.getId());
+            }
+            if(item.getResponse().getResult() == DocWriteResponse.Result.NOT_FOUND) {
+                tracker.notFound(1);
+            } else {
+                tracker.deleted(1);
+            }
+        }
+    }
+
+    /**
+     * get
+     *
+     * Gets an article by id with a realtime get of writeIndex, which sees saves that are not refreshed yet.
+     * When a partitioner or routing is set the article is found like getAll(Collection) finds it.
+     * Implements ArticleDatastore.get
+     *
+     * @param id String
+     * @return ArticleHit or null if there is no such article
+     * @throws NullPointerException
+     */
+    public ArticleHit get(final String id) throws NullPointerException {
+        LOGGER.debug(String.format("Getting article %s", id));
+        if(this.writeIndex == null && this.partitioner == null) {
+            throw new NullPointerException("writeIndex or partitioner must be set before getting.");
+        }
+        if(isLocating()) {
+            return getAll(Collections.singletonList(id)).get(id);
+        }
+        return metrics.time(OPERATION.GET, () ->
+                ArticleCodec.readGet(client.prepareGet(this.writeIndex, ARTICLE_TYPE, id).get()));
+    }
+
+    /**
+     * getAll
+     *
+     * Gets articles by id with one realtime multi get of writeIndex.
+     * When a partitioner or routing is set the partition and shard of an id are unknown, they are first located
+     * with ids searches of up to 5000 ids and the located copies are then read with a realtime multi get.
+     * Like delete, the indices are refreshed and searched again only when some ids were not found, so articles
+     * saved since the last refresh are read too. An article found in several partitions is read from
+     * the copy with the highest version, i.e. the most recently updated one.
+     * Implements ArticleDatastore.getAll
+     *
+     * @param ids Collection of article ids
+     * @return Map of the found ArticleHits by id, in the order of ids
+     * @throws NullPointerException
+     * @throws RuntimeException the failure of the first get that failed
+     */
+    public Map<String, ArticleHit> getAll(final Collection<String> ids) throws NullPointerException {
+        LOGGER.debug(String.format("Getting %s articles", ids.size()));
+        if(this.writeIndex == null && this.partitioner == null) {
+            throw new NullPointerException("writeIndex or partitioner must be set before getting.");
+        }
+        if(ids.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        final Map<String, ArticleHit> articles = new LinkedHashMap<>();
+        if(!isLocating()) {
+            final MultiGetRequestBuilder request = client.prepareMultiGet().add(this.writeIndex, ARTICLE_TYPE, ids);
+            return metrics.time(OPERATION.GET_ALL, () -> {
+                for(MultiGetItemResponse item: request.get().getResponses()) {
+                    if(item.isFailed()) {
+                        throw ExceptionsHelper.convertToRuntime(item.getFailure().getFailure());
+                    }
+                    final ArticleHit hit = ArticleCodec.readGet(item.getResponse());
+                    if(hit != null) {
+                        articles.put(hit.getID(), hit);
+                    }
+                }
+                return articles;
+            });
+        }
+        final List<String> idList = new ArrayList<>(new LinkedHashSet<>(ids));
+        return metrics.time(OPERATION.GET_ALL, () -> {
+            final List<DocumentRef> refs = locateOrRefresh(idList);
+            if(refs.isEmpty()) {
+                return articles;
+            }
+            final MultiGetRequestBuilder request = client.prepareMultiGet();
+            for(DocumentRef ref: refs) {
+                request.add(new MultiGetRequest.Item(ref.getIndex(), ARTICLE_TYPE, ref.getId())
+                        .routing(ref.getRouting()));
+            }
+            final Map<String, GetResponse> latest = new HashMap<>();
+            for(MultiGetItemResponse item: request.get().getResponses()) {
+                if(item.isFailed()) {
+                    throw ExceptionsHelper.convertToRuntime(item.getFailure().getFailure());
+                }
+                if(item.getResponse().isExists()) {
+                    latest.merge(item.getId(), item.getResponse(), EsArticleDatastore::latestCopy);
+                }
+            }
+            for(String id: idList) {
+                final GetResponse copy = latest.get(id);
+                final ArticleHit article = (copy == null) ? null : ArticleCodec.readGet(copy);
+                if(article != null) {
+                    articles.put(id, article);
+                }
+            }
+            return articles;
+        });
+    }
+
+    private static GetResponse latestCopy(final GetResponse a, final GetResponse b) {
+        if(a.getVersion() != b.getVersion()) {
+            return (a.getVersion() > b.getVersion()) ? a : b;
+        }
+        return (a.getIndex().compareTo(b.getIndex()) >= 0) ? a : b;
     }
 
     /**
      * search
      *
      * Performs a search against the datastore using searchIndicies as the target and a SearchQuery.
+     * When a partitioner is set only the partitions overlapping the query's range filters are searched,
+     * when routing is set a query filtering on a single routing key value only searches its shard.
      * Returns a list of ArticleHits.
      * Implements ArticleDatastore.search
      *
      * If SearchQuery getSearchQuery() is null a match all query is used.
      * If not null than a MultiMatchQuery is used against the SearchQuery fields.
+     * The search type, score tracking, sort and request cache come from SearchPlanner.plan.
+     * Only the source fields of SearchQuery.getProjection() are fetched and parsed.
      *
-     * SearchQuery.getFilters() will be applied to the post filter of the ES search.
+     * SearchQuery.getFilters() will be applied to the filter clause of a bool query around it,
+     * or to the post filter of the ES search in SearchQuery.FILTER_MODE.POST_FILTER.
      * If present SearchQuery.getFrom() will be used as the `from` of the ES search.
      * If present SearchQuery.getLimit() will be used as the `size` of the ES search.
      *
@@ -183,26 +1194,186 @@ public class EsArticleDatastore implements ArticleDatastore {
      */
     public List<ArticleHit> search(final SearchQuery query) throws NullPointerException {
         LOGGER.debug(String.format("Performing article search: %s", query.toString()));
-        if(this.searchIndicies == null) {
-            throw new NullPointerException("searchIndicies must be set before searching.");
-        }
-        // Perform search
-        SearchRequestBuilder builder = client.prepareSearch(searchIndicies)
-                .setTypes(ARTICLE_TYPE)
-                .setSearchType(SearchType.DFS_QUERY_THEN_FETCH);
+        final SearchRequestBuilder request = buildSearchRequest(query);
+        return metrics.time(OPERATION.SEARCH, () -> {
+            SearchResponse res = request.execute().actionGet();
+
+            // Transform search hits to ArticleHits
+            return readHits(res.getHits().getHits());
+        });
+    }
 
-        if(query.getSearchQuery() == null) {
-            builder = builder.setQuery(QueryBuilders.matchAllQuery());
+    /**
+     * searchAll
+     *
+     * Runs several searches in one msearch round trip. Each query is built like search(SearchQuery),
+     * with its own plan, partitions and routing, and ES runs them concurrently.
+     * Implements ArticleDatastore.searchAll
+     *
+     * @param queries List of SearchQueries
+     * @return List of the List<ArticleHit> of each query, in query order
+     * @throws NullPointerException
+     * @throws RuntimeException the failure of the first query that failed
+     */
+    public List<List<ArticleHit>> searchAll(final List<SearchQuery> queries) throws NullPointerException {
+        LOGGER.debug(String.format("Performing %s article searches", queries.size()));
+        if(queries.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final MultiSearchRequestBuilder request = client.prepareMultiSearch();
+        for(SearchQuery query: queries) {
+            request.add(buildSearchRequest(query));
         }
-        else {
-            if(query.getFields() == null) {
-                throw new NullPointerException("SearchQuery fields must be set to perform search term query.");
+        return metrics.time(OPERATION.SEARCH_ALL, () -> {
+            final MultiSearchResponse.Item[] items = request.get().getResponses();
+            final List<List<ArticleHit>> results = new ArrayList<>(items.length);
+            for(MultiSearchResponse.Item item: items) {
+                if(item.isFailure()) {
+                    throw ExceptionsHelper.convertToRuntime(item.getFailure());
+                }
+                results.add(readHits(item.getResponse().getHits().getHits()));
             }
-            builder = builder.setQuery(new MultiMatchQueryBuilder(query.getSearchQuery(), query.getFields()));
+            return results;
+        });
+    }
+
+    /**
+     * searchAsync
+     *
+     * Performs the same search as search(SearchQuery) without blocking the caller.
+     * Implements AsyncArticleDatastore.searchAsync
+     *
+     * @param query SearchQuery
+     * @return CompletableFuture<List<ArticleHit>>
+     * @throws NullPointerException
+     */
+    public CompletableFuture<List<ArticleHit>> searchAsync(final SearchQuery query) throws NullPointerException {
+        LOGGER.debug(String.format("Performing async article search: %s", query.toString()));
+        return executeAsync(OPERATION.SEARCH, buildSearchRequest(query),
+                response -> readHits(response.getHits().getHits()));
+    }
+
+    /**
+     * count
+     *
+     * Counts the articles matching a SearchQuery with a size 0 search of SearchQuery.toCountQueryBuilder(),
+     * so no documents are scored, fetched or parsed and ES can answer repeated counts from its shard request cache.
+     * Implements ArticleDatastore.count
+     *
+     * @param query SearchQuery
+     * @return long
+     * @throws NullPointerException
+     */
+    public long count(final SearchQuery query) throws NullPointerException {
+        LOGGER.debug(String.format("Performing article count: %s", query.toString()));
+        final SearchRequestBuilder request = prepareTargetedRequest(query)
+                .setQuery(query.toCountQueryBuilder())
+                .setSize(0);
+        return metrics.time(OPERATION.COUNT, () -> request.get().getHits().getTotalHits());
+    }
+
+    /**
+     * exists
+     *
+     * Tests whether any article matches a SearchQuery with a size 0 count that each shard terminates
+     * after its first match. Implements ArticleDatastore.exists
+     *
+     * @param query SearchQuery
+     * @return boolean
+     * @throws NullPointerException
+     */
+    public boolean exists(final SearchQuery query) throws NullPointerException {
+        LOGGER.debug(String.format("Performing article exists: %s", query.toString()));
+        final SearchRequestBuilder request = prepareTargetedRequest(query)
+                .setQuery(query.toCountQueryBuilder())
+                .setSize(0)
+                .setTerminateAfter(1);
+        return metrics.time(OPERATION.EXISTS, () -> request.get().getHits().getTotalHits() > 0);
+    }
+
+    /**
+     * aggregate
+     *
+     * Computes ArticleAggregations with a size 0 search, so only the bucket counts cross the wire and
+     * ES can answer repeated requests from its shard request cache. The search targets the same partitions
+     * and shard as search(SearchQuery). In SearchQuery.FILTER_MODE.POST_FILTER the aggregations see the
+     * articles matching the query before the filters. Implements ArticleDatastore.aggregate
+     *
+     * @param query SearchQuery
+     * @param aggregations List of ArticleAggregations
+     * @return AggregationResults
+     * @throws NullPointerException
+     */
+    public AggregationResults aggregate(final SearchQuery query, final List<ArticleAggregation> aggregations)
+            throws NullPointerException {
+        LOGGER.debug(String.format("Performing article aggregations %s: %s", aggregations, query.toString()));
+        final SearchRequestBuilder request = prepareSearchRequest(query)
+                .setSize(0);
+        for(ArticleAggregation aggregation: aggregations) {
+            request.addAggregation(aggregation.toAggregationBuilder());
+        }
+        return metrics.time(OPERATION.AGGREGATE, () -> {
+            final SearchResponse response = request.get();
+            return AggregationResults.fromAggregations(response.getHits().getTotalHits(),
+                    response.getAggregations(), aggregations);
+        });
+    }
+
+    /**
+     * stream
+     *
+     * Streams every hit matching a SearchQuery using a scroll sorted by `_doc`,
+     * with the default page size. Implements ArticleDatastore.stream
+     *
+     * @param query SearchQuery
+     * @return Stream<ArticleHit>
+     * @throws NullPointerException
+     */
+    public Stream<ArticleHit> stream(final SearchQuery query) throws NullPointerException {
+        return stream(query, DEFAULT_STREAM_PAGE_SIZE);
+    }
+
+    /**
+     * stream
+     *
+     * Streams every hit matching a SearchQuery using a scroll sorted by `_doc`.
+     * `_doc` order is stable for the life of the scroll and is the cheapest order to page through,
+     * hits are therefore not ordered by score. SearchQuery from and limit are ignored.
+     * The next page is prefetched while the current one is consumed.
+     * The returned stream holds a scroll context until it is exhausted or closed.
+     *
+     * @param query SearchQuery
+     * @param pageSize int number of hits fetched per page
+     * @return Stream<ArticleHit>
+     * @throws NullPointerException
+     */
+    public Stream<ArticleHit> stream(final SearchQuery query, final int pageSize) throws NullPointerException {
+        LOGGER.debug(String.format("Performing article scroll: %s", query.toString()));
+        final SearchRequestBuilder builder = prepareSearchRequest(query)
+                .setSearchType(SearchType.QUERY_THEN_FETCH)
+                .addSort("_doc", SortOrder.ASC)
+                .setSize((pageSize < 1) ? DEFAULT_STREAM_PAGE_SIZE : pageSize);
+
+        final ScrollingArticleIterator iterator =
+                new ScrollingArticleIterator(client, builder, DEFAULT_SCROLL_KEEP_ALIVE);
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL),
+                false).onClose(iterator::close);
+    }
+
+    private SearchRequestBuilder buildSearchRequest(final SearchQuery query) throws NullPointerException {
+        final SearchPlan plan = SearchPlanner.plan(query);
+        LOGGER.debug(String.format("Search plan: %s", plan));
+        SearchRequestBuilder builder = prepareSearchRequest(query)
+                .setSearchType(plan.getSearchType())
+                .setTrackScores(plan.isTrackScores());
+
+        if(plan.isSortByDoc()) {
+            builder = builder.addSort("_doc", SortOrder.ASC);
         }
 
-        if(query.getFilters() != null) {
-            builder = builder.setPostFilter(query.getFilters());
+        if(plan.getRequestCache() != null) {
+            builder = builder.setRequestCache(plan.getRequestCache());
         }
 
         if(query.getFrom() != null) {
@@ -212,11 +1383,51 @@ public class EsArticleDatastore implements ArticleDatastore {
         if(query.getLimit() != null) {
             builder = builder.setSize(query.getLimit());
         }
+        return builder;
+    }
+
+    private SearchRequestBuilder prepareSearchRequest(final SearchQuery query) throws NullPointerException {
+        SearchRequestBuilder builder = prepareTargetedRequest(query)
+                .setQuery(query.toQueryBuilder());
 
-        SearchResponse res = builder.execute().actionGet();
+        if(query.toPostFilter() != null) {
+            builder = builder.setPostFilter(query.toPostFilter());
+        }
 
-        // Transform search hits to ArticleHits
-        return searchHitsToArticleHits(res.getHits().getHits());
+        final SourceProjection projection = query.getProjection();
+        if(projection != null && !projection.isFull()) {
+            builder = builder.setFetchSource(projection.getIncludes(), projection.getExcludes());
+        }
+        return builder;
+    }
+
+    /**
+     * prepareTargetedRequest
+     *
+     * Prepares a search of the searchIndicies, or of the partitions and shard the query can match.
+     */
+    private SearchRequestBuilder prepareTargetedRequest(final SearchQuery query) throws NullPointerException {
+        if(this.searchIndicies == null && this.partitioner == null) {
+            throw new NullPointerException("searchIndicies or partitioner must be set before searching.");
+        }
+        SearchRequestBuilder builder;
+        if(this.partitioner == null) {
+            builder = client.prepareSearch(searchIndicies);
+        } else {
+            // Partitions in the range that were never written to do not exist
+            final String[] partitions = this.partitioner.searchIndicesFor(query);
+            LOGGER.debug(String.format("Searching partitions %s", Arrays.toString(partitions)));
+            builder = client.prepareSearch(partitions)
+                    .setIndicesOptions(IndicesOptions.lenientExpandOpen());
+        }
+        builder = builder.setTypes(ARTICLE_TYPE);
+
+        final String shardRouting = (this.routing == null) ? null : this.routing.routingFor(query);
+        if(shardRouting != null) {
+            LOGGER.debug(String.format("Searching shard routed by %s", shardRouting));
+            builder = builder.setRouting(shardRouting);
+        }
+        return builder;
     }
 
     /**
@@ -232,32 +1443,91 @@ public class EsArticleDatastore implements ArticleDatastore {
      */
     public List<ArticleHit> search(final String queryStr) throws NullPointerException {
         LOGGER.debug(String.format("Performing article simple query string search: %s", queryStr));
-        if(this.searchIndicies == null) {
-            throw new NullPointerException("searchIndicies must be set before searching.");
+        if(this.searchIndicies == null && this.partitioner == null) {
+            throw new NullPointerException("searchIndicies or partitioner must be set before searching.");
         }
-        // Perform search
-        SearchResponse res = client.prepareSearch(searchIndicies)
-                .setTypes(ARTICLE_TYPE)
-                .setSearchType(SearchType.DFS_QUERY_THEN_FETCH)
-                .setQuery(new SimpleQueryStringBuilder(queryStr))
-                .execute()
-                .actionGet();
+        final String[] indices = (this.partitioner == null) ? searchIndicies
+                : new String[] {this.partitioner.getIndexPattern()};
+        return metrics.time(OPERATION.SEARCH, () -> {
+            // Perform search
+            SearchResponse res = client.prepareSearch(indices)
+                    .setTypes(ARTICLE_TYPE)
+                    .setSearchType(SearchType.DFS_QUERY_THEN_FETCH)
+                    .setQuery(new SimpleQueryStringBuilder(queryStr))
+                    .execute()
+                    .actionGet();
+
+            // Transform search hits to ArticleHits
+            return readHits(res.getHits().getHits());
+        });
+    }
 
-        // Transform search hits to ArticleHits
-        return searchHitsToArticleHits(res.getHits().getHits());
+    private List<ArticleHit> readHits(final SearchHit[] hits) {
+        final long start = System.nanoTime();
+        final List<ArticleHit> articleHits = searchHitsToArticleHits(hits);
+        metrics.recordHits(articleHits.size(), System.nanoTime() - start);
+        return articleHits;
     }
 
-    private List<ArticleHit> searchHitsToArticleHits(final SearchHit[] hits) {
-        ArrayList<ArticleHit> articleHits = new ArrayList<>();
+    static List<ArticleHit> searchHitsToArticleHits(final SearchHit[] hits) {
+        ArrayList<ArticleHit> articleHits = new ArrayList<>(hits.length);
         for(SearchHit hit: hits) {
-            LOGGER.debug(String.format("searchHitsToArticleHits hit: %s", hit.getSourceAsString()));
-            ArticleHit a = new Gson().fromJson(hit.getSourceAsString(), ArticleHit.class);
+            if(LOGGER.isDebugEnabled()) {
+                LOGGER.debug(String.format("searchHitsToArticleHits hit: %s", hit.getSourceAsString()));
+            }
+            ArticleHit a = ArticleCodec.readHit(hit);
             if(a != null) {
-                a.searchScore = hit.getScore();
-                a.setID(hit.getId());
                 articleHits.add(a);
             }
         }
         return articleHits;
     }
+
+    /**
+     * executeAsync
+     *
+     * Executes a request with an ActionListener and completes the returned future on the
+     * callbackExecutor with the transformed response. The operation is timed until the future completes.
+     *
+     * @param operation DatastoreMetrics.OPERATION
+     * @param request ActionRequestBuilder
+     * @param transform Function applied to the response
+     * @return CompletableFuture
+     */
+    private <R extends ActionResponse, T> CompletableFuture<T> executeAsync(
+            final OPERATION operation,
+            final ActionRequestBuilder<?, R, ?> request,
+            final Function<R, T> transform) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        final long start = metrics.begin(operation);
+        future.whenComplete((result, failure) -> metrics.end(operation, start, failure));
+        final ActionListener<R> listener = new ActionListener<R>() {
+            @Override
+            public void onResponse(final R response) {
+                try {
+                    callbackExecutor.execute(() -> {
+                        try {
+                            future.complete(transform.apply(response));
+                        } catch(Exception e) {
+                            future.completeExceptionally(e);
+                        }
+                    });
+                } catch(Exception e) {
+                    future.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void onFailure(final Exception e) {
+                future.completeExceptionally(e);
+            }
+        };
+
+        try {
+            request.execute(listener);
+        } catch(Exception e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
 }
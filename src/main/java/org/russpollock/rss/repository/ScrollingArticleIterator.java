@@ -0,0 +1,132 @@
+package org.russpollock.rss.repository;
+
+import org.russpollock.rss.models.ArticleHit;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.ListenableActionFuture;
+import org.elasticsearch.action.search.ClearScrollResponse;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.search.SearchHit;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * ScrollingArticleIterator
+ *
+ * Closeable iterator over every hit of a scroll search.
+ * Only the current page and the next one are held in memory: as soon as a page arrives the
+ * request for the following page is sent, so the caller consumes one page while the next is fetched.
+ * The scroll context is cleared when the iterator is exhausted or closed.
+ */
+public class ScrollingArticleIterator implements Iterator<ArticleHit>, Closeable {
+    private static final Logger LOGGER = LogManager.getLogger(ScrollingArticleIterator.class);
+    private final Client client;
+    private final TimeValue keepAlive;
+    private SearchHit[] page;
+    private int position;
+    private String scrollId;
+    private ListenableActionFuture<SearchResponse> nextPage;
+    private boolean closed;
+
+    public ScrollingArticleIterator(final Client client,
+                                    final SearchRequestBuilder request,
+                                    final TimeValue keepAlive) {
+        this.client = client;
+        this.keepAlive = keepAlive;
+        acceptPage(request.setScroll(keepAlive).execute().actionGet());
+    }
+
+    @Override
+    public boolean hasNext() {
+        if(closed) {
+            return false;
+        }
+        if(position < page.length) {
+            return true;
+        }
+        if(nextPage == null) {
+            close();
+            return false;
+        }
+        final ListenableActionFuture<SearchResponse> pending = nextPage;
+        nextPage = null;
+        acceptPage(pending.actionGet());
+        if(position < page.length) {
+            return true;
+        }
+        close();
+        return false;
+    }
+
+    @Override
+    public ArticleHit next() {
+        if(!hasNext()) {
+            throw new NoSuchElementException("Scroll has no more article hits.");
+        }
+        return ArticleCodec.readHit(page[position++]);
+    }
+
+    /**
+     * close
+     *
+     * Clears the scroll context. Safe to call more than once.
+     */
+    @Override
+    public void close() {
+        if(closed) {
+            return;
+        }
+        closed = true;
+        page = new SearchHit[0];
+        if(nextPage != null) {
+            // Clear the scroll once the prefetch settles, it may carry a newer scroll id.
+            nextPage.addListener(new ActionListener<SearchResponse>() {
+                @Override
+                public void onResponse(final SearchResponse response) {
+                    clearScroll(response.getScrollId());
+                }
+
+                @Override
+                public void onFailure(final Exception e) {
+                    clearScroll(scrollId);
+                }
+            });
+            nextPage = null;
+        } else {
+            clearScroll(scrollId);
+        }
+    }
+
+    private void acceptPage(final SearchResponse response) {
+        this.scrollId = response.getScrollId();
+        this.page = response.getHits().getHits();
+        this.position = 0;
+        if(page.length > 0 && scrollId != null) {
+            // Prefetch the next page while the caller consumes this one
+            this.nextPage = client.prepareSearchScroll(scrollId).setScroll(keepAlive).execute();
+        }
+    }
+
+    private void clearScroll(final String id) {
+        if(id == null) {
+            return;
+        }
+        client.prepareClearScroll().addScrollId(id).execute(new ActionListener<ClearScrollResponse>() {
+            @Override
+            public void onResponse(final ClearScrollResponse response) {
+                LOGGER.debug(String.format("Cleared scroll %s", id));
+            }
+
+            @Override
+            public void onFailure(final Exception e) {
+                LOGGER.warn(String.format("Unable to clear scroll %s", id), e);
+            }
+        });
+    }
+}
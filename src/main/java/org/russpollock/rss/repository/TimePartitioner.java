@@ -0,0 +1,306 @@
+package org.russpollock.rss.repository;
+
+import org.russpollock.rss.models.Article;
+import org.russpollock.rss.repository.queries.SearchQuery;
+import org.russpollock.rss.utils.Dates;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.ConstantScoreQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.RangeQueryBuilder;
+
+import java.time.DateTimeException;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.IsoFields;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * TimePartitioner
+ *
+ * Maps Articles to time partitioned indices named `<prefix>-<period>` by their `published` date,
+ * in UTC: `2017.06.21` daily, `2017.w25` (ISO week) weekly or `2017.06` monthly.
+ * The partition must not change when an article is saved again, or its id ends up in several partitions.
+ * Articles without a parseable `published` date therefore all go to the `<prefix>-undated` partition, which
+ * is never dropped, and `created`, which is set at ingest time on every poll, can not be partitioned by.
+ * For searches, the range filters on the partition field give the partitions a query can match, so
+ * recent queries only touch recent indices. Old partitions are retired by dropping whole indices.
+ */
+public class TimePartitioner {
+    public static final int DEFAULT_MAX_SEARCH_PARTITIONS = 400;
+    public static final String UNDATED = "undated";
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+    private final String prefix;
+    private final INTERVAL interval;
+    private final String field;
+    private int maxSearchPartitions = DEFAULT_MAX_SEARCH_PARTITIONS;
+
+    public static enum INTERVAL {
+        DAILY,
+        WEEKLY,
+        MONTHLY
+    }
+
+    /**
+     * TimePartitioner
+     *
+     * @param prefix String index name prefix
+     * @param interval INTERVAL
+     * @param field String `published`
+     * @throws IllegalArgumentException
+     */
+    public TimePartitioner(final String prefix, final INTERVAL interval, final String field)
+            throws IllegalArgumentException {
+        if("created".equals(field)) {
+            throw new IllegalArgumentException(
+                    "Can not partition articles by created, it changes every time an article is saved");
+        }
+        if(!"published".equals(field)) {
+            throw new IllegalArgumentException(String.format("Can not partition articles by %s", field));
+        }
+        this.prefix = prefix;
+        this.interval = interval;
+        this.field = field;
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public INTERVAL getInterval() {
+        return interval;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    /**
+     * setMaxSearchPartitions
+     *
+     * Ranges spanning more partitions than this search the index pattern instead of listing every partition.
+     *
+     * @param maxSearchPartitions int
+     * @return TimePartitioner
+     */
+    public TimePartitioner setMaxSearchPartitions(final int maxSearchPartitions) {
+        this.maxSearchPartitions = Math.max(1, maxSearchPartitions);
+        return this;
+    }
+
+    /**
+     * getIndexPattern
+     *
+     * Gets the wildcard pattern matching every partition, e.g. for an index template.
+     *
+     * @return String
+     */
+    public String getIndexPattern() {
+        return prefix + "-*";
+    }
+
+    /**
+     * getUndatedIndex
+     *
+     * Gets the partition of the articles without a parseable `published` date.
+     *
+     * @return String
+     */
+    public String getUndatedIndex() {
+        return prefix + "-" + UNDATED;
+    }
+
+    /**
+     * indexFor
+     *
+     * @param article Article
+     * @return String name of the partition the article belongs in, the undated partition if it has no date
+     */
+    public String indexFor(final Article article) {
+        final Long millis = Dates.parseMillis(article.published);
+        return (millis == null) ? getUndatedIndex() : indexFor(millis);
+    }
+
+    /**
+     * indexFor
+     *
+     * @param epochMillis long
+     * @return String name of the partition holding the instant
+     */
+    public String indexFor(final long epochMillis) {
+        final LocalDate date = Instant.ofEpochMilli(epochMillis).atZone(ZoneOffset.UTC).toLocalDate();
+        switch(interval) {
+            case DAILY:
+                return String.format("%s-%04d.%02d.%02d", prefix, date.getYear(), date.getMonthValue(),
+                        date.getDayOfMonth());
+            case WEEKLY:
+                return String.format("%s-%04d.w%02d", prefix, date.get(IsoFields.WEEK_BASED_YEAR),
+                        date.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+            default:
+                return String.format("%s-%04d.%02d", prefix, date.getYear(), date.getMonthValue());
+        }
+    }
+
+    /**
+     * indicesFor
+     *
+     * Lists the partitions overlapping a range of epoch millis, both ends inclusive.
+     * A range without an upper bound ends a day from now, articles are not expected to be dated later.
+     *
+     * @param fromMillis Long or null for unbounded
+     * @param toMillis Long or null for unbounded
+     * @return String[] partition names, the index pattern when there is no lower bound or
+     * the range spans more than maxSearchPartitions
+     */
+    public String[] indicesFor(final Long fromMillis, final Long toMillis) {
+        if(fromMillis == null) {
+            return new String[] {getIndexPattern()};
+        }
+        final long to = (toMillis == null) ? System.currentTimeMillis() + DAY_MILLIS : toMillis;
+        if(fromMillis > to) {
+            // An empty array would search every index, the range filter matches nothing in this one
+            return new String[] {indexFor(fromMillis)};
+        }
+        final LocalDate last = Instant.ofEpochMilli(to).atZone(ZoneOffset.UTC).toLocalDate();
+        final List<String> indices = new ArrayList<>();
+        for(LocalDate period = periodStart(Instant.ofEpochMilli(fromMillis).atZone(ZoneOffset.UTC).toLocalDate());
+            !period.isAfter(last); period = nextPeriod(period)) {
+            if(indices.size() >= maxSearchPartitions) {
+                return new String[] {getIndexPattern()};
+            }
+            indices.add(indexFor(period.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli()));
+        }
+        return indices.toArray(new String[indices.size()]);
+    }
+
+    /**
+     * searchIndicesFor
+     *
+     * Gets the partitions a SearchQuery can match from the range filters on the partition field
+     * that every hit must match (must and filter clauses). Ranges with a format are not read, and queries
+     * in POST_FILTER mode search every partition since their aggregations must see unfiltered results.
+     *
+     * @param query SearchQuery
+     * @return String[]
+     */
+    public String[] searchIndicesFor(final SearchQuery query) {
+        if(query.toPostFilter() != null || query.getFilters() == null) {
+            return new String[] {getIndexPattern()};
+        }
+        final Long[] bounds = new Long[2];
+        narrow(query.getFilters(), bounds);
+        return indicesFor(bounds[0], bounds[1]);
+    }
+
+    /**
+     * partitionStart
+     *
+     * Parses the start of the period of a partition name, as indexFor names it.
+     *
+     * @param index String
+     * @return Long epoch millis or null if index is not a partition of this partitioner
+     */
+    public Long partitionStart(final String index) {
+        if(!index.startsWith(prefix + "-")) {
+            return null;
+        }
+        final String period = index.substring(prefix.length() + 1);
+        try {
+            final LocalDate start;
+            switch(interval) {
+                case DAILY:
+                    start = LocalDate.parse(period.replace('.', '-'));
+                    break;
+                case WEEKLY:
+                    final String[] parts = period.split("\\.w");
+                    if(parts.length != 2) {
+                        return null;
+                    }
+                    start = LocalDate.of(Integer.parseInt(parts[0]), 1, 4)
+                            .with(IsoFields.WEEK_OF_WEEK_BASED_YEAR, Integer.parseInt(parts[1]))
+                            .with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+                    break;
+                default:
+                    start = LocalDate.parse(period.replace('.', '-') + "-01");
+            }
+            final long millis = start.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+            // Names indexFor would not produce, e.g. week 53 of a 52 week year, are not partitions
+            return index.equals(indexFor(millis)) ? millis : null;
+        } catch(DateTimeException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * isOlderThan
+     *
+     * Whether a partition only holds articles dated before a cutoff.
+     *
+     * @param index String
+     * @param cutoffMillis long
+     * @return boolean false for indices that are not partitions of this partitioner
+     */
+    public boolean isOlderThan(final String index, final long cutoffMillis) {
+        final Long start = partitionStart(index);
+        if(start == null) {
+            return false;
+        }
+        final LocalDate end = nextPeriod(Instant.ofEpochMilli(start).atZone(ZoneOffset.UTC).toLocalDate());
+        return end.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli() <= cutoffMillis;
+    }
+
+    private void narrow(final QueryBuilder filter, final Long[] bounds) {
+        if(filter instanceof BoolQueryBuilder) {
+            final BoolQueryBuilder bool = (BoolQueryBuilder) filter;
+            for(QueryBuilder must: bool.must()) {
+                narrow(must, bounds);
+            }
+            for(QueryBuilder clause: bool.filter()) {
+                narrow(clause, bounds);
+            }
+        } else if(filter instanceof ConstantScoreQueryBuilder) {
+            narrow(((ConstantScoreQueryBuilder) filter).innerQuery(), bounds);
+        } else if(filter instanceof RangeQueryBuilder) {
+            final RangeQueryBuilder range = (RangeQueryBuilder) filter;
+            // Bounds in a custom format, e.g. yyyyMMddHH, would be misread as epoch millis
+            if(!field.equals(range.fieldName()) || range.format() != null) {
+                return;
+            }
+            // Partitions are in UTC, a range in another time zone may reach a day further either way
+            final long slack = (range.timeZone() == null) ? 0 : DAY_MILLIS;
+            final Long from = Dates.parseMillis(range.from());
+            final Long to = Dates.parseMillis(range.to());
+            if(from != null && (bounds[0] == null || from - slack > bounds[0])) {
+                bounds[0] = from - slack;
+            }
+            if(to != null && (bounds[1] == null || to + slack < bounds[1])) {
+                bounds[1] = to + slack;
+            }
+        }
+    }
+
+    private LocalDate periodStart(final LocalDate date) {
+        switch(interval) {
+            case DAILY:
+                return date;
+            case WEEKLY:
+                return date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            default:
+                return date.withDayOfMonth(1);
+        }
+    }
+
+    private LocalDate nextPeriod(final LocalDate start) {
+        switch(interval) {
+            case DAILY:
+                return start.plusDays(1);
+            case WEEKLY:
+                return start.plusWeeks(1);
+            default:
+                return start.plusMonths(1);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package org.russpollock.rss.repository.aggregations;
+
+import org.russpollock.rss.models.Article;
+import org.russpollock.rss.models.Tag;
+import org.russpollock.rss.repository.queries.SourceProjection;
+import org.russpollock.rss.utils.Dates;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * AggregationCollector
+ *
+ * Computes ArticleAggregations over articles in process, for datastores that can not aggregate
+ * server side. Terms are matched exactly like the `.raw` and tag fields, histogram intervals are in UTC.
+ * Results follow the ES ordering: terms by count descending then term, histograms by start.
+ */
+public class AggregationCollector {
+    private final List<ArticleAggregation> aggregations;
+    private final List<Map<String, long[]>> termCounts = new ArrayList<>();
+    private final List<TreeMap<Long, long[]>> histogramCounts = new ArrayList<>();
+    private long totalHits;
+
+    public AggregationCollector(final List<ArticleAggregation> aggregations) {
+        this.aggregations = aggregations;
+        for(int i = 0; i < aggregations.size(); i++) {
+            termCounts.add(new HashMap<>());
+            histogramCounts.add(new TreeMap<>());
+        }
+    }
+
+    /**
+     * projectionFor
+     *
+     * Gets the source fields the aggregations read.
+     *
+     * @param aggregations List of ArticleAggregations
+     * @return SourceProjection
+     */
+    public static SourceProjection projectionFor(final List<ArticleAggregation> aggregations) {
+        final Set<String> fields = new LinkedHashSet<>();
+        for(ArticleAggregation aggregation: aggregations) {
+            final String field = aggregation.getField();
+            fields.add(field.contains(".") ? field.substring(0, field.indexOf('.')) : field);
+        }
+        return fields.isEmpty() ? SourceProjection.NONE
+                : new SourceProjection(fields.toArray(new String[fields.size()]), null);
+    }
+
+    /**
+     * collect
+     *
+     * @param article Article matching the query
+     */
+    public void collect(final Article article) {
+        totalHits++;
+        for(int i = 0; i < aggregations.size(); i++) {
+            final ArticleAggregation aggregation = aggregations.get(i);
+            if(aggregation.getType() == ArticleAggregation.TYPE.DATE_HISTOGRAM) {
+                final Long millis = Dates.parseMillis(article.published);
+                if(millis != null) {
+                    histogramCounts.get(i).computeIfAbsent(intervalStart(millis, aggregation.getInterval()),
+                            start -> new long[1])[0]++;
+                }
+                continue;
+            }
+            final Map<String, long[]> counts = termCounts.get(i);
+            switch(aggregation.getField()) {
+                case "tags.tag":
+                    if(article.tags != null) {
+                        final Set<String> tags = new HashSet<>();
+                        for(Tag tag: article.tags) {
+                            if(tag != null && tag.tag != null && tags.add(tag.tag)) {
+                                counts.computeIfAbsent(tag.tag, term -> new long[1])[0]++;
+                            }
+                        }
+                    }
+                    break;
+                case "source.raw":
+                    increment(counts, article.source);
+                    break;
+                case "author.raw":
+                    increment(counts, article.author);
+                    break;
+                default:
+                    throw new UnsupportedOperationException(
+                            String.format("Can not aggregate articles on %s", aggregation.getField()));
+            }
+        }
+    }
+
+    private static void increment(final Map<String, long[]> counts, final String term) {
+        if(term != null) {
+            counts.computeIfAbsent(term, key -> new long[1])[0]++;
+        }
+    }
+
+    /**
+     * getResults
+     *
+     * @return AggregationResults of the collected articles
+     */
+    public AggregationResults getResults() {
+        final Map<String, List<TermsBucket>> terms = new HashMap<>();
+        final Map<String, List<DateHistogramBucket>> histograms = new HashMap<>();
+        for(int i = 0; i < aggregations.size(); i++) {
+            final ArticleAggregation aggregation = aggregations.get(i);
+            if(aggregation.getType() == ArticleAggregation.TYPE.DATE_HISTOGRAM) {
+                final List<DateHistogramBucket> buckets = new ArrayList<>(histogramCounts.get(i).size());
+                for(Map.Entry<Long, long[]> entry: histogramCounts.get(i).entrySet()) {
+                    buckets.add(new DateHistogramBucket(entry.getKey(), entry.getValue()[0]));
+                }
+                histograms.put(aggregation.getName(), buckets);
+                continue;
+            }
+            final List<TermsBucket> buckets = new ArrayList<>(termCounts.get(i).size());
+            for(Map.Entry<String, long[]> entry: termCounts.get(i).entrySet()) {
+                buckets.add(new TermsBucket(entry.getKey(), entry.getValue()[0]));
+            }
+            buckets.sort((a, b) -> (a.getCount() != b.getCount())
+                    ? Long.compare(b.getCount(), a.getCount()) : a.getTerm().compareTo(b.getTerm()));
+            terms.put(aggregation.getName(),
+                    new ArrayList<>(buckets.subList(0, Math.min(aggregation.getSize(), buckets.size()))));
+        }
+        return new AggregationResults(totalHits, terms, histograms);
+    }
+
+    /**
+     * intervalStart
+     *
+     * @param epochMillis long
+     * @param interval ArticleAggregation.INTERVAL
+     * @return long epoch millis of the start of the UTC interval holding the instant
+     */
+    static long intervalStart(final long epochMillis, final ArticleAggregation.INTERVAL interval) {
+        final ZonedDateTime time = Instant.ofEpochMilli(epochMillis).atZone(ZoneOffset.UTC);
+        if(interval == ArticleAggregation.INTERVAL.HOUR) {
+            return time.truncatedTo(ChronoUnit.HOURS).toInstant().toEpochMilli();
+        }
+        LocalDate date = time.toLocalDate();
+        switch(interval) {
+            case WEEK:
+                date = date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+                break;
+            case MONTH:
+                date = date.withDayOfMonth(1);
+                break;
+            case QUARTER:
+                date = date.withDayOfMonth(1).withMonth((date.getMonthValue() - 1) / 3 * 3 + 1);
+                break;
+            case YEAR:
+                date = date.withDayOfYear(1);
+                break;
+            default:
+                break;
+        }
+        return date.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,117 @@
+package org.russpollock.rss.repository.aggregations;
+
+import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.aggregations.bucket.histogram.Histogram;
+import org.elasticsearch.search.aggregations.bucket.nested.Nested;
+import org.elasticsearch.search.aggregations.bucket.nested.ReverseNested;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.joda.time.ReadableInstant;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * AggregationResults
+ *
+ * Buckets of the ArticleAggregations of one request, by aggregation name,
+ * and the number of articles the aggregations ran over.
+ */
+public class AggregationResults {
+    private final long totalHits;
+    private final Map<String, List<TermsBucket>> terms;
+    private final Map<String, List<DateHistogramBucket>> histograms;
+
+    public AggregationResults(final long totalHits,
+                              final Map<String, List<TermsBucket>> terms,
+                              final Map<String, List<DateHistogramBucket>> histograms) {
+        this.totalHits = totalHits;
+        this.terms = Collections.unmodifiableMap(terms);
+        this.histograms = Collections.unmodifiableMap(histograms);
+    }
+
+    /**
+     * fromAggregations
+     *
+     * Reads the buckets of ArticleAggregation.toAggregationBuilder aggregations from a transport client response.
+     *
+     * @param totalHits long
+     * @param response Aggregations of the search response, may be null when nothing matched
+     * @param aggregations List of the requested ArticleAggregations
+     * @return AggregationResults
+     */
+    public static AggregationResults fromAggregations(final long totalHits,
+                                                      final Aggregations response,
+                                                      final List<ArticleAggregation> aggregations) {
+        final Map<String, List<TermsBucket>> terms = new HashMap<>();
+        final Map<String, List<DateHistogramBucket>> histograms = new HashMap<>();
+        for(ArticleAggregation aggregation: aggregations) {
+            if(aggregation.getType() == ArticleAggregation.TYPE.DATE_HISTOGRAM) {
+                final Histogram histogram = (response == null) ? null : response.get(aggregation.getName());
+                final List<DateHistogramBucket> buckets = new ArrayList<>();
+                if(histogram != null) {
+                    for(Histogram.Bucket bucket: histogram.getBuckets()) {
+                        final Object key = bucket.getKey();
+                        final long start = (key instanceof ReadableInstant)
+                                ? ((ReadableInstant) key).getMillis() : ((Number) key).longValue();
+                        buckets.add(new DateHistogramBucket(start, bucket.getDocCount()));
+                    }
+                }
+                histograms.put(aggregation.getName(), buckets);
+                continue;
+            }
+            Terms agg = null;
+            if(response != null && aggregation.isNested()) {
+                final Nested nested = response.get(aggregation.getName());
+                agg = (nested == null) ? null : nested.getAggregations().get(ArticleAggregation.NESTED_TERMS);
+            } else if(response != null) {
+                agg = response.get(aggregation.getName());
+            }
+            final List<TermsBucket> buckets = new ArrayList<>();
+            if(agg != null) {
+                for(Terms.Bucket bucket: agg.getBuckets()) {
+                    final ReverseNested articles = aggregation.isNested()
+                            ? bucket.getAggregations().get(ArticleAggregation.REVERSE_NESTED) : null;
+                    buckets.add(new TermsBucket(bucket.getKeyAsString(),
+                            (articles == null) ? bucket.getDocCount() : articles.getDocCount()));
+                }
+            }
+            terms.put(aggregation.getName(), buckets);
+        }
+        return new AggregationResults(totalHits, terms, histograms);
+    }
+
+    public long getTotalHits() {
+        return totalHits;
+    }
+
+    /**
+     * getTerms
+     *
+     * @param name String aggregation name, e.g. `tags`
+     * @return List<TermsBucket> ordered by count descending, empty if there is no such terms aggregation
+     */
+    public List<TermsBucket> getTerms(final String name) {
+        final List<TermsBucket> buckets = terms.get(name);
+        return (buckets == null) ? Collections.<TermsBucket>emptyList() : buckets;
+    }
+
+    /**
+     * getHistogram
+     *
+     * @param name String aggregation name, e.g. `published`
+     * @return List<DateHistogramBucket> ordered by start, empty if there is no such date histogram
+     */
+    public List<DateHistogramBucket> getHistogram(final String name) {
+        final List<DateHistogramBucket> buckets = histograms.get(name);
+        return (buckets == null) ? Collections.<DateHistogramBucket>emptyList() : buckets;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AggregationResults [totalHits: %s, terms: %s, histograms: %s]",
+                this.totalHits, this.terms, this.histograms);
+    }
+}
@@ -0,0 +1,174 @@
+package org.russpollock.rss.repository.aggregations;
+
+import org.elasticsearch.search.aggregations.AggregationBuilder;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.bucket.histogram.DateHistogramInterval;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+
+/**
+ * ArticleAggregation
+ *
+ * A facet computed by the datastore over the articles matching a SearchQuery: the top terms of
+ * `tags.tag`, `source.raw` or `author.raw` with their article counts, or a date histogram of `published`.
+ * Tags are counted through the nested `tags` mapping and reverse nested back to the articles,
+ * so an article tagged twice with one tag counts once.
+ */
+public class ArticleAggregation {
+    public static final int DEFAULT_SIZE = 10;
+    public static final String NESTED_TERMS = "terms";
+    public static final String REVERSE_NESTED = "articles";
+    private static final String TAGS_PATH = "tags";
+    private final String name;
+    private final TYPE type;
+    private final String field;
+    private final int size;
+    private final INTERVAL interval;
+
+    public static enum TYPE {
+        TERMS,
+        DATE_HISTOGRAM
+    }
+
+    /**
+     * INTERVAL
+     *
+     * Calendar intervals of a date histogram, in UTC. Weeks start on Monday.
+     */
+    public static enum INTERVAL {
+        HOUR(DateHistogramInterval.HOUR),
+        DAY(DateHistogramInterval.DAY),
+        WEEK(DateHistogramInterval.WEEK),
+        MONTH(DateHistogramInterval.MONTH),
+        QUARTER(DateHistogramInterval.QUARTER),
+        YEAR(DateHistogramInterval.YEAR);
+
+        private final DateHistogramInterval esInterval;
+
+        INTERVAL(final DateHistogramInterval esInterval) {
+            this.esInterval = esInterval;
+        }
+
+        public DateHistogramInterval getEsInterval() {
+            return esInterval;
+        }
+    }
+
+    private ArticleAggregation(final String name,
+                               final TYPE type,
+                               final String field,
+                               final int size,
+                               final INTERVAL interval) {
+        this.name = name;
+        this.type = type;
+        this.field = field;
+        this.size = size;
+        this.interval = interval;
+    }
+
+    /**
+     * tags
+     *
+     * @param size int number of top tags
+     * @return ArticleAggregation named `tags` on `tags.tag`
+     */
+    public static ArticleAggregation tags(final int size) {
+        return new ArticleAggregation("tags", TYPE.TERMS, "tags.tag", Math.max(1, size), null);
+    }
+
+    /**
+     * sources
+     *
+     * @param size int number of top sources
+     * @return ArticleAggregation named `sources` on `source.raw`
+     */
+    public static ArticleAggregation sources(final int size) {
+        return new ArticleAggregation("sources", TYPE.TERMS, "source.raw", Math.max(1, size), null);
+    }
+
+    /**
+     * authors
+     *
+     * @param size int number of top authors
+     * @return ArticleAggregation named `authors` on `author.raw`
+     */
+    public static ArticleAggregation authors(final int size) {
+        return new ArticleAggregation("authors", TYPE.TERMS, "author.raw", Math.max(1, size), null);
+    }
+
+    /**
+     * published
+     *
+     * Counts articles per interval of `published`, empty intervals are left out.
+     *
+     * @param interval INTERVAL
+     * @return ArticleAggregation named `published`
+     */
+    public static ArticleAggregation published(final INTERVAL interval) {
+        return new ArticleAggregation("published", TYPE.DATE_HISTOGRAM, "published", 0, interval);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public TYPE getType() {
+        return type;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public INTERVAL getInterval() {
+        return interval;
+    }
+
+    /**
+     * isNested
+     *
+     * @return boolean true when the field is in the nested `tags` objects
+     */
+    public boolean isNested() {
+        return field.startsWith(TAGS_PATH + ".");
+    }
+
+    /**
+     * toAggregationBuilder
+     *
+     * Builds the ES aggregation. Nested fields get a nested aggregation named after this one holding a
+     * `terms` aggregation ordered by the article count of the `articles` reverse nested aggregation in its buckets.
+     *
+     * @return AggregationBuilder
+     */
+    public AggregationBuilder toAggregationBuilder() {
+        if(type == TYPE.DATE_HISTOGRAM) {
+            return AggregationBuilders.dateHistogram(name)
+                    .field(field)
+                    .dateHistogramInterval(interval.getEsInterval())
+                    .minDocCount(1);
+        }
+        if(isNested()) {
+            return AggregationBuilders.nested(name, TAGS_PATH)
+                    .subAggregation(AggregationBuilders.terms(NESTED_TERMS)
+                            .field(field)
+                            .size(size)
+                            .order(Terms.Order.compound(Terms.Order.aggregation(REVERSE_NESTED, false),
+                                    Terms.Order.term(true)))
+                            .subAggregation(AggregationBuilders.reverseNested(REVERSE_NESTED)));
+        }
+        return AggregationBuilders.terms(name)
+                .field(field)
+                .size(size);
+    }
+
+    @Override
+    public String toString() {
+        return (type == TYPE.DATE_HISTOGRAM)
+                ? String.format("ArticleAggregation [name: %s, field: %s, interval: %s]", name, field, interval)
+                : String.format("ArticleAggregation [name: %s, field: %s, size: %s]", name, field, size);
+    }
+}
@@ -0,0 +1,40 @@
+package org.russpollock.rss.repository.aggregations;
+
+import java.time.Instant;
+
+/**
+ * DateHistogramBucket
+ *
+ * The start of a date histogram interval and the number of matching articles in it.
+ */
+public class DateHistogramBucket {
+    private final long startMillis;
+    private final long count;
+
+    public DateHistogramBucket(final long startMillis, final long count) {
+        this.startMillis = startMillis;
+        this.count = count;
+    }
+
+    /**
+     * getStartMillis
+     *
+     * @return long epoch millis of the start of the interval
+     */
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    public Instant getStart() {
+        return Instant.ofEpochMilli(startMillis);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("DateHistogramBucket [start: %s, count: %s]", getStart(), this.count);
+    }
+}
@@ -0,0 +1,29 @@
+package org.russpollock.rss.repository.aggregations;
+
+/**
+ * TermsBucket
+ *
+ * A term of a terms aggregation and the number of matching articles holding it.
+ */
+public class TermsBucket {
+    private final String term;
+    private final long count;
+
+    public TermsBucket(final String term, final long count) {
+        this.term = term;
+        this.count = count;
+    }
+
+    public String getTerm() {
+        return term;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TermsBucket [term: %s, count: %s]", this.term, this.count);
+    }
+}
@@ -0,0 +1,266 @@
+package org.russpollock.rss.repository.batch;
+
+import org.russpollock.rss.metrics.Counter;
+import org.russpollock.rss.metrics.DefaultMetricsRegistry;
+import org.russpollock.rss.metrics.Histogram;
+import org.russpollock.rss.metrics.MetricsRegistry;
+import org.russpollock.rss.models.Article;
+import org.russpollock.rss.models.ArticleHit;
+import org.russpollock.rss.repository.ArticleDatastore;
+import org.russpollock.rss.repository.DeleteOptions;
+import org.russpollock.rss.repository.DeleteResult;
+import org.russpollock.rss.repository.aggregations.AggregationResults;
+import org.russpollock.rss.repository.aggregations.ArticleAggregation;
+import org.russpollock.rss.repository.queries.SearchQuery;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * BatchingArticleDatastore
+ *
+ * ArticleDatastore decorator that merges concurrent searches into one delegate searchAll, e.g. one msearch.
+ * The first search of a batch waits up to the batch window for other callers to join, then runs the batch on its
+ * own thread while the other callers wait for their hits; a batch that reaches the max batch size runs at once.
+ * No threads are started, so a search waits at most the window plus the batch's round trip.
+ * When the batched searchAll fails each query is retried on its own, so a bad query only fails its caller.
+ * Every other operation goes straight to the delegate.
+ */
+public class BatchingArticleDatastore implements ArticleDatastore {
+    private static final Logger LOGGER = LogManager.getLogger(BatchingArticleDatastore.class);
+    public static final long DEFAULT_WINDOW_MICROS = 2000;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 32;
+    private final ArticleDatastore delegate;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final Object lock = new Object();
+    private Batch open;
+    private Histogram batchSizes;
+    private Counter batchFailures;
+
+    public BatchingArticleDatastore(final ArticleDatastore delegate) {
+        this(delegate, DEFAULT_WINDOW_MICROS, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    /**
+     * BatchingArticleDatastore
+     *
+     * @param delegate ArticleDatastore whose searchAll runs the batches
+     * @param windowMicros long how long the first search of a batch waits for others
+     * @param maxBatchSize int number of searches that run a batch without waiting out the window
+     */
+    public BatchingArticleDatastore(final ArticleDatastore delegate,
+                                    final long windowMicros,
+                                    final int maxBatchSize) {
+        this.delegate = delegate;
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(0, windowMicros));
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        setMetricsRegistry(DefaultMetricsRegistry.getInstance());
+    }
+
+    public ArticleDatastore getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * setMetricsRegistry
+     *
+     * Sets the registry batch sizes and batch failures are recorded in, as `search.batchSize` and
+     * `search.batchFailures`. Defaults to the shared DefaultMetricsRegistry.
+     *
+     * @param metricsRegistry MetricsRegistry
+     */
+    public void setMetricsRegistry(final MetricsRegistry metricsRegistry) {
+        this.batchSizes = metricsRegistry.histogram("search.batchSize");
+        this.batchFailures = metricsRegistry.counter("search.batchFailures");
+    }
+
+    /**
+     * search
+     *
+     * Adds the query to the open batch, or opens one, and waits for its hits.
+     * Implements ArticleDatastore.search
+     *
+     * @param query SearchQuery
+     * @return List<ArticleHit>
+     */
+    public List<ArticleHit> search(final SearchQuery query) {
+        final Batch batch;
+        final CompletableFuture<List<ArticleHit>> result = new CompletableFuture<>();
+        boolean leader = false;
+        synchronized(lock) {
+            if(open == null) {
+                open = new Batch();
+                leader = true;
+            }
+            batch = open;
+            batch.queries.add(query);
+            batch.results.add(result);
+            if(batch.queries.size() >= maxBatchSize) {
+                open = null;
+                lock.notifyAll();
+            }
+        }
+
+        if(leader) {
+            awaitWindow(batch);
+            execute(batch);
+        }
+        try {
+            return result.join();
+        } catch(CompletionException e) {
+            if(e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private void awaitWindow(final Batch batch) {
+        boolean interrupted = false;
+        synchronized(lock) {
+            final long deadline = System.nanoTime() + windowNanos;
+            long remaining = windowNanos;
+            while(open == batch && remaining > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+                } catch(InterruptedException e) {
+                    // Run the batch anyway, the other callers are waiting on it
+                    interrupted = true;
+                    break;
+                }
+                remaining = deadline - System.nanoTime();
+            }
+            if(open == batch) {
+                open = null;
+            }
+        }
+        if(interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * execute
+     *
+     * Runs a closed batch and completes the result of every caller in it. Whatever goes wrong, e.g. a
+     * delegate returning fewer result lists than queries or an Error, the results left incomplete are
+     * completed exceptionally so no caller waits forever.
+     */
+    private void execute(final Batch batch) {
+        Throwable failure = null;
+        try {
+            batchSizes.record(batch.queries.size());
+            if(batch.queries.size() == 1) {
+                complete(batch.results.get(0), batch.queries.get(0));
+                return;
+            }
+            final List<List<ArticleHit>> hits;
+            try {
+                hits = delegate.searchAll(batch.queries);
+            } catch(RuntimeException e) {
+                LOGGER.warn(String.format("Batch of %s searches failed, retrying them one at a time",
+                        batch.queries.size()), e);
+                batchFailures.increment();
+                for(int i = 0; i < batch.queries.size(); i++) {
+                    complete(batch.results.get(i), batch.queries.get(i));
+                }
+                return;
+            }
+            if(hits.size() != batch.results.size()) {
+                throw new IllegalStateException(String.format("searchAll returned %s results for %s searches",
+                        hits.size(), batch.results.size()));
+            }
+            for(int i = 0; i < batch.results.size(); i++) {
+                batch.results.get(i).complete(hits.get(i));
+            }
+        } catch(RuntimeException | Error e) {
+            failure = e;
+            throw e;
+        } finally {
+            for(CompletableFuture<List<ArticleHit>> result: batch.results) {
+                if(!result.isDone()) {
+                    result.completeExceptionally((failure == null)
+                            ? new IllegalStateException("Batched search was not completed") : failure);
+                }
+            }
+        }
+    }
+
+    private void complete(final CompletableFuture<List<ArticleHit>> result, final SearchQuery query) {
+        try {
+            result.complete(delegate.search(query));
+        } catch(RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * searchAll
+     *
+     * Already batched, goes straight to the delegate. Implements ArticleDatastore.searchAll
+     *
+     * @param queries List of SearchQueries
+     * @return List of the List<ArticleHit> of each query
+     */
+    public List<List<ArticleHit>> searchAll(final List<SearchQuery> queries) {
+        return delegate.searchAll(queries);
+    }
+
+    public ArticleHit get(final String id) {
+        return delegate.get(id);
+    }
+
+    public Map<String, ArticleHit> getAll(final Collection<String> ids) {
+        return delegate.getAll(ids);
+    }
+
+    public Stream<ArticleHit> stream(final SearchQuery query) {
+        return delegate.stream(query);
+    }
+
+    public long count(final SearchQuery query) {
+        return delegate.count(query);
+    }
+
+    public boolean exists(final SearchQuery query) {
+        return delegate.exists(query);
+    }
+
+    public AggregationResults aggregate(final SearchQuery query, final List<ArticleAggregation> aggregations) {
+        return delegate.aggregate(query, aggregations);
+    }
+
+    public void saveAll(final List<Article> documents) {
+        delegate.saveAll(documents);
+    }
+
+    public void save(final Article article) {
+        delegate.save(article);
+    }
+
+    public void delete(final String id) {
+        delegate.delete(id);
+    }
+
+    public DeleteResult deleteAll(final Collection<String> ids, final DeleteOptions options) {
+        return delegate.deleteAll(ids, options);
+    }
+
+    public DeleteResult deleteByQuery(final SearchQuery query, final DeleteOptions options) {
+        return delegate.deleteByQuery(query, options);
+    }
+
+    private static class Batch {
+        private final List<SearchQuery> queries = new ArrayList<>();
+        private final List<CompletableFuture<List<ArticleHit>>> results = new ArrayList<>();
+    }
+}
@@ -0,0 +1,208 @@
+package org.russpollock.rss.repository.batch;
+
+import org.russpollock.rss.metrics.Counter;
+import org.russpollock.rss.metrics.DefaultMetricsRegistry;
+import org.russpollock.rss.metrics.MetricsRegistry;
+import org.russpollock.rss.models.Article;
+import org.russpollock.rss.models.ArticleHit;
+import org.russpollock.rss.repository.ArticleDatastore;
+import org.russpollock.rss.repository.DeleteOptions;
+import org.russpollock.rss.repository.DeleteResult;
+import org.russpollock.rss.repository.aggregations.AggregationResults;
+import org.russpollock.rss.repository.aggregations.ArticleAggregation;
+import org.russpollock.rss.repository.queries.SearchQuery;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * CoalescingArticleDatastore
+ *
+ * ArticleDatastore decorator that runs identical concurrent searches once. A search whose
+ * SearchQuery.getCanonicalKey() equals one already in flight waits for that search instead of
+ * sending its own, then gets its own copy of the hits. A burst of readers sending the same query
+ * costs one delegate search per distinct query. Nothing is kept once a search completes, so results
+ * are never staler than a search started at the same time. Every other operation goes straight to the delegate.
+ */
+public class CoalescingArticleDatastore implements ArticleDatastore {
+    private static final Logger LOGGER = LogManager.getLogger(CoalescingArticleDatastore.class);
+    private final ArticleDatastore delegate;
+    private final Map<String, Flight> inFlight = new ConcurrentHashMap<>();
+    private Counter coalesced;
+
+    public CoalescingArticleDatastore(final ArticleDatastore delegate) {
+        this.delegate = delegate;
+        setMetricsRegistry(DefaultMetricsRegistry.getInstance());
+    }
+
+    public ArticleDatastore getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * setMetricsRegistry
+     *
+     * Sets the registry searches that joined an in flight search are counted in, as `search.coalesced`.
+     * Defaults to the shared DefaultMetricsRegistry.
+     *
+     * @param metricsRegistry MetricsRegistry
+     */
+    public void setMetricsRegistry(final MetricsRegistry metricsRegistry) {
+        this.coalesced = metricsRegistry.counter("search.coalesced");
+    }
+
+    /**
+     * search
+     *
+     * Joins the in flight search of an equal query, or searches the delegate and shares the hits
+     * with the searches that joined meanwhile. Implements ArticleDatastore.search
+     *
+     * @param query SearchQuery
+     * @return List<ArticleHit>
+     */
+    public List<ArticleHit> search(final SearchQuery query) {
+        final String key = query.getCanonicalKey();
+        while(true) {
+            final Flight flight = new Flight();
+            final Flight pending = inFlight.putIfAbsent(key, flight);
+            if(pending == null) {
+                return lead(key, flight, query);
+            }
+            if(pending.join()) {
+                LOGGER.debug(String.format("Joined in flight search: %s", key));
+                coalesced.increment();
+                return copyHits(await(pending.result));
+            }
+            // The pending search completed as we found it, its hits may already be handed out
+        }
+    }
+
+    private List<ArticleHit> lead(final String key, final Flight flight, final SearchQuery query) {
+        final List<ArticleHit> hits;
+        try {
+            hits = delegate.search(query);
+        } catch(RuntimeException e) {
+            inFlight.remove(key, flight);
+            flight.close();
+            flight.result.completeExceptionally(e);
+            throw e;
+        }
+        inFlight.remove(key, flight);
+        final boolean shared = flight.close();
+        flight.result.complete(hits);
+        // Followers copy from the shared list, the leader only keeps it when nobody else reads it
+        return shared ? copyHits(hits) : hits;
+    }
+
+    private static List<ArticleHit> await(final CompletableFuture<List<ArticleHit>> result) {
+        try {
+            return result.join();
+        } catch(CompletionException e) {
+            if(e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * searchAll
+     *
+     * Already batched, goes straight to the delegate. Implements ArticleDatastore.searchAll
+     *
+     * @param queries List of SearchQueries
+     * @return List of the List<ArticleHit> of each query
+     */
+    public List<List<ArticleHit>> searchAll(final List<SearchQuery> queries) {
+        return delegate.searchAll(queries);
+    }
+
+    public ArticleHit get(final String id) {
+        return delegate.get(id);
+    }
+
+    public Map<String, ArticleHit> getAll(final Collection<String> ids) {
+        return delegate.getAll(ids);
+    }
+
+    public Stream<ArticleHit> stream(final SearchQuery query) {
+        return delegate.stream(query);
+    }
+
+    public long count(final SearchQuery query) {
+        return delegate.count(query);
+    }
+
+    public boolean exists(final SearchQuery query) {
+        return delegate.exists(query);
+    }
+
+    public AggregationResults aggregate(final SearchQuery query, final List<ArticleAggregation> aggregations) {
+        return delegate.aggregate(query, aggregations);
+    }
+
+    public void saveAll(final List<Article> documents) {
+        delegate.saveAll(documents);
+    }
+
+    public void save(final Article article) {
+        delegate.save(article);
+    }
+
+    public void delete(final String id) {
+        delegate.delete(id);
+    }
+
+    public DeleteResult deleteAll(final Collection<String> ids, final DeleteOptions options) {
+        return delegate.deleteAll(ids, options);
+    }
+
+    public DeleteResult deleteByQuery(final SearchQuery query, final DeleteOptions options) {
+        return delegate.deleteByQuery(query, options);
+    }
+
+    private static List<ArticleHit> copyHits(final List<ArticleHit> hits) {
+        final List<ArticleHit> copies = new ArrayList<>(hits.size());
+        for(ArticleHit hit: hits) {
+            copies.add(new ArticleHit(hit));
+        }
+        return copies;
+    }
+
+    private static class Flight {
+        private final CompletableFuture<List<ArticleHit>> result = new CompletableFuture<>();
+        private int followers;
+        private boolean closed;
+
+        /**
+         * join
+         *
+         * @return boolean false if the search already completed
+         */
+        private synchronized boolean join() {
+            if(closed) {
+                return false;
+            }
+            followers++;
+            return true;
+        }
+
+        /**
+         * close
+         *
+         * @return boolean true if any search joined
+         */
+        private synchronized boolean close() {
+            closed = true;
+            return followers > 0;
+        }
+    }
+}
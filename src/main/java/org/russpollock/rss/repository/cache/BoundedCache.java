@@ -0,0 +1,244 @@
+package org.russpollock.rss.repository.cache;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+/**
+ * BoundedCache
+ *
+ * Size bounded cache with an optional time to live and LRU or LFU eviction.
+ * LFU keeps keys in frequency buckets linked in frequency order, the least frequent first, so access,
+ * removal and eviction are O(1); ties are broken by age.
+ * All operations are synchronized on the cache.
+ */
+public class BoundedCache<K, V> {
+    public static enum EVICTION {
+        LRU,
+        LFU
+    }
+
+    private final int maxSize;
+    private final long ttlMillis;
+    private final EVICTION eviction;
+    private final Map<K, Entry<K, V>> entries;
+    private Bucket<K> lowest;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+    private long invalidations;
+
+    /**
+     * BoundedCache
+     *
+     * @param maxSize int maximum number of entries, at least 1
+     * @param ttlMillis long entry time to live, 0 or less to never expire
+     * @param eviction EVICTION policy used once maxSize is reached
+     */
+    public BoundedCache(final int maxSize, final long ttlMillis, final EVICTION eviction) {
+        this.maxSize = Math.max(1, maxSize);
+        this.ttlMillis = ttlMillis;
+        this.eviction = eviction;
+        this.entries = (eviction == EVICTION.LRU)
+                ? new LinkedHashMap<K, Entry<K, V>>(16, 0.75f, true)
+                : new HashMap<K, Entry<K, V>>();
+    }
+
+    /**
+     * get
+     *
+     * Gets a live entry, counting a hit or a miss.
+     *
+     * @param key K
+     * @return V or null if missing or expired
+     */
+    public synchronized V get(final K key) {
+        final Entry<K, V> entry = entries.get(key);
+        if(entry == null) {
+            misses++;
+            return null;
+        }
+        if(entry.isExpired()) {
+            removeEntry(key, entry);
+            expirations++;
+            misses++;
+            return null;
+        }
+        touch(key, entry);
+        hits++;
+        return entry.value;
+    }
+
+    /**
+     * put
+     *
+     * Adds or replaces an entry, evicting one entry if the cache is full.
+     *
+     * @param key K
+     * @param value V
+     */
+    public synchronized void put(final K key, final V value) {
+        final long expiresAt = (ttlMillis > 0) ? System.currentTimeMillis() + ttlMillis : Long.MAX_VALUE;
+        final Entry<K, V> existing = entries.get(key);
+        if(existing != null) {
+            existing.value = value;
+            existing.expiresAt = expiresAt;
+            touch(key, existing);
+            return;
+        }
+        if(entries.size() >= maxSize) {
+            evict();
+        }
+        final Entry<K, V> entry = new Entry<>(value, expiresAt);
+        entries.put(key, entry);
+        if(eviction == EVICTION.LFU) {
+            if(lowest == null || lowest.frequency != 1) {
+                lowest = link(new Bucket<K>(1), null, lowest);
+            }
+            lowest.keys.add(key);
+            entry.bucket = lowest;
+        }
+    }
+
+    /**
+     * remove
+     *
+     * Invalidates a single entry.
+     *
+     * @param key K
+     * @return V removed value or null
+     */
+    public synchronized V remove(final K key) {
+        final Entry<K, V> entry = entries.get(key);
+        if(entry == null) {
+            return null;
+        }
+        removeEntry(key, entry);
+        invalidations++;
+        return entry.value;
+    }
+
+    /**
+     * clear
+     *
+     * Invalidates every entry.
+     */
+    public synchronized void clear() {
+        invalidations += entries.size();
+        entries.clear();
+        lowest = null;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized CacheStats getStats() {
+        return new CacheStats(hits, misses, evictions, expirations, invalidations, entries.size());
+    }
+
+    private void touch(final K key, final Entry<K, V> entry) {
+        if(eviction != EVICTION.LFU) {
+            return;
+        }
+        final Bucket<K> current = entry.bucket;
+        Bucket<K> next = current.next;
+        if(next == null || next.frequency != current.frequency + 1) {
+            next = link(new Bucket<K>(current.frequency + 1), current, next);
+        }
+        next.keys.add(key);
+        entry.bucket = next;
+        current.keys.remove(key);
+        if(current.keys.isEmpty()) {
+            unlink(current);
+        }
+    }
+
+    private void evict() {
+        if(eviction == EVICTION.LRU) {
+            final Iterator<Map.Entry<K, Entry<K, V>>> eldest = entries.entrySet().iterator();
+            if(eldest.hasNext()) {
+                eldest.next();
+                eldest.remove();
+                evictions++;
+            }
+            return;
+        }
+        if(lowest == null) {
+            return;
+        }
+        final K key = lowest.keys.iterator().next();
+        removeEntry(key, entries.get(key));
+        evictions++;
+    }
+
+    private void removeEntry(final K key, final Entry<K, V> entry) {
+        entries.remove(key);
+        if(eviction != EVICTION.LFU) {
+            return;
+        }
+        entry.bucket.keys.remove(key);
+        if(entry.bucket.keys.isEmpty()) {
+            unlink(entry.bucket);
+        }
+    }
+
+    private Bucket<K> link(final Bucket<K> bucket, final Bucket<K> previous, final Bucket<K> next) {
+        bucket.previous = previous;
+        bucket.next = next;
+        if(previous == null) {
+            lowest = bucket;
+        } else {
+            previous.next = bucket;
+        }
+        if(next != null) {
+            next.previous = bucket;
+        }
+        return bucket;
+    }
+
+    private void unlink(final Bucket<K> bucket) {
+        if(bucket.previous == null) {
+            lowest = bucket.next;
+        } else {
+            bucket.previous.next = bucket.next;
+        }
+        if(bucket.next != null) {
+            bucket.next.previous = bucket.previous;
+        }
+    }
+
+    /**
+     * Bucket
+     *
+     * Keys accessed the same number of times, oldest first.
+     */
+    private static class Bucket<K> {
+        private final int frequency;
+        private final LinkedHashSet<K> keys = new LinkedHashSet<>();
+        private Bucket<K> previous;
+        private Bucket<K> next;
+
+        private Bucket(final int frequency) {
+            this.frequency = frequency;
+        }
+    }
+
+    private static class Entry<K, V> {
+        private V value;
+        private long expiresAt;
+        private Bucket<K> bucket;
+
+        private Entry(final V value, final long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() >= expiresAt;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package org.russpollock.rss.repository.cache;
+
+public class CacheStats {
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long expirations;
+    private final long invalidations;
+    private final int size;
+
+    public CacheStats(final long hits,
+                      final long misses,
+                      final long evictions,
+                      final long expirations,
+                      final long invalidations,
+                      final int size) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.expirations = expirations;
+        this.invalidations = invalidations;
+        this.size = size;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public long getExpirations() {
+        return expirations;
+    }
+
+    public long getInvalidations() {
+        return invalidations;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * getHitRate
+     *
+     * Gets hits / (hits + misses), 0 when the cache has not been read.
+     *
+     * @return double
+     */
+    public double getHitRate() {
+        final long requests = hits + misses;
+        return (requests == 0) ? 0d : (double) hits / requests;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CacheStats [hits: %s, misses: %s, evictions: %s, expirations: %s, invalidations: %s, size: %s]",
+                this.hits, this.misses, this.evictions, this.expirations, this.invalidations, this.size);
+    }
+}
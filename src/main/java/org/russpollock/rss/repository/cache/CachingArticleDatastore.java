@@ -0,0 +1,473 @@
+package org.russpollock.rss.repository.cache;
+
+import org.russpollock.rss.models.Article;
+import org.russpollock.rss.models.ArticleHit;
+import org.russpollock.rss.repository.ArticleDatastore;
+import org.russpollock.rss.repository.DeleteOptions;
+import org.russpollock.rss.repository.DeleteResult;
+import org.russpollock.rss.repository.aggregations.AggregationResults;
+import org.russpollock.rss.repository.aggregations.ArticleAggregation;
+import org.russpollock.rss.repository.queries.SearchQuery;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * CachingArticleDatastore
+ *
+ * ArticleDatastore decorator that caches search results by SearchQuery.getCanonicalKey().
+ * Any save, saveAll or delete through the decorator invalidates every cached result.
+ * Searches that started before a write, or that run within the refresh interval after one,
+ * are not cached since they may not see the write yet. Callers get their own copies of the hits.
+ *
+ * An optional article cache keeps recently read articles for get and getAll. Writes through the decorator
+ * drop the articles they touch from it, and a read that overlaps a write is not cached.
+ */
+public class CachingArticleDatastore implements ArticleDatastore {
+    private static final Logger LOGGER = LogManager.getLogger(CachingArticleDatastore.class);
+    public static final long DEFAULT_REFRESH_INTERVAL_MILLIS = 1000;
+    private final ArticleDatastore delegate;
+    private final BoundedCache<String, List<ArticleHit>> searchCache;
+    private final AtomicLong generation = new AtomicLong();
+    private final Object articleLock = new Object();
+    private volatile BoundedCache<String, ArticleHit> articleCache;
+    private volatile long lastWriteMillis;
+    private long refreshIntervalMillis = DEFAULT_REFRESH_INTERVAL_MILLIS;
+
+    /**
+     * CachingArticleDatastore
+     *
+     * @param delegate ArticleDatastore to cache
+     * @param maxSize int maximum number of cached searches
+     * @param ttlMillis long time to live of a cached search, 0 or less to never expire
+     * @param eviction BoundedCache.EVICTION policy
+     */
+    public CachingArticleDatastore(final ArticleDatastore delegate,
+                                   final int maxSize,
+                                   final long ttlMillis,
+                                   final BoundedCache.EVICTION eviction) {
+        this.delegate = delegate;
+        this.searchCache = new BoundedCache<>(maxSize, ttlMillis, eviction);
+    }
+
+    public ArticleDatastore getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * setRefreshIntervalMillis
+     *
+     * Sets how long after a write search results are not cached,
+     * should match the refresh interval of the delegate's index.
+     *
+     * @param refreshIntervalMillis long
+     */
+    public void setRefreshIntervalMillis(final long refreshIntervalMillis) {
+        this.refreshIntervalMillis = Math.max(0, refreshIntervalMillis);
+    }
+
+    public long getRefreshIntervalMillis() {
+        return refreshIntervalMillis;
+    }
+
+    /**
+     * setArticleCache
+     *
+     * Enables the cache of recently read articles used by get and getAll.
+     *
+     * @param maxSize int maximum number of cached articles
+     * @param ttlMillis long time to live of a cached article, 0 or less to never expire
+     * @param eviction BoundedCache.EVICTION policy
+     */
+    public void setArticleCache(final int maxSize, final long ttlMillis, final BoundedCache.EVICTION eviction) {
+        this.articleCache = new BoundedCache<>(maxSize, ttlMillis, eviction);
+    }
+
+    /**
+     * getArticleStats
+     *
+     * Gets hit, miss, eviction and invalidation counts of the article cache.
+     *
+     * @return CacheStats or null if the article cache is not enabled
+     */
+    public CacheStats getArticleStats() {
+        final BoundedCache<String, ArticleHit> articles = this.articleCache;
+        return (articles == null) ? null : articles.getStats();
+    }
+
+    /**
+     * getSearchStats
+     *
+     * Gets hit, miss, eviction and invalidation counts of the search cache.
+     *
+     * @return CacheStats
+     */
+    public CacheStats getSearchStats() {
+        return searchCache.getStats();
+    }
+
+    /**
+     * invalidateAll
+     *
+     * Drops every cached search result and article.
+     */
+    public void invalidateAll() {
+        synchronized(articleLock) {
+            generation.incrementAndGet();
+            searchCache.clear();
+        }
+        forgetAllArticles();
+    }
+
+    /**
+     * get
+     *
+     * Returns a copy of the cached article, or gets it from the delegate and caches it.
+     * Implements ArticleDatastore.get
+     *
+     * @param id String
+     * @return ArticleHit or null if there is no such article
+     */
+    public ArticleHit get(final String id) {
+        final BoundedCache<String, ArticleHit> articles = this.articleCache;
+        if(articles == null) {
+            return delegate.get(id);
+        }
+        final ArticleHit cached = articles.get(id);
+        if(cached != null) {
+            return new ArticleHit(cached);
+        }
+
+        final long startGeneration = generation.get();
+        final ArticleHit hit = delegate.get(id);
+        if(hit != null) {
+            cacheArticles(articles, Collections.singletonMap(id, hit), startGeneration);
+        }
+        return hit;
+    }
+
+    /**
+     * getAll
+     *
+     * Returns copies of the cached articles and gets the others with one delegate getAll, caching them like get.
+     * Implements ArticleDatastore.getAll
+     *
+     * @param ids Collection of article ids
+     * @return Map of the found ArticleHits by id, in the order of ids
+     */
+    public Map<String, ArticleHit> getAll(final Collection<String> ids) {
+        final BoundedCache<String, ArticleHit> articles = this.articleCache;
+        if(articles == null) {
+            return delegate.getAll(ids);
+        }
+        final Map<String, ArticleHit> cached = new HashMap<>();
+        final List<String> misses = new ArrayList<>();
+        for(String id: ids) {
+            final ArticleHit hit = articles.get(id);
+            if(hit == null) {
+                misses.add(id);
+            } else {
+                cached.put(id, new ArticleHit(hit));
+            }
+        }
+        if(misses.isEmpty()) {
+            return ordered(ids, cached);
+        }
+
+        final long startGeneration = generation.get();
+        final Map<String, ArticleHit> hits = delegate.getAll(misses);
+        cacheArticles(articles, hits, startGeneration);
+        cached.putAll(hits);
+        return ordered(ids, cached);
+    }
+
+    private void cacheArticles(final BoundedCache<String, ArticleHit> articles,
+                               final Map<String, ArticleHit> hits,
+                               final long startGeneration) {
+        // Writes bump the generation before dropping their articles under the same lock,
+        // so a read that overlapped one can not put its stale copy back after the drop
+        synchronized(articleLock) {
+            if(generation.get() != startGeneration) {
+                return;
+            }
+            for(Map.Entry<String, ArticleHit> entry: hits.entrySet()) {
+                articles.put(entry.getKey(), new ArticleHit(entry.getValue()));
+            }
+        }
+    }
+
+    private static Map<String, ArticleHit> ordered(final Collection<String> ids, final Map<String, ArticleHit> hits) {
+        final Map<String, ArticleHit> articles = new LinkedHashMap<>();
+        for(String id: ids) {
+            final ArticleHit hit = hits.get(id);
+            if(hit != null) {
+                articles.put(id, hit);
+            }
+        }
+        return articles;
+    }
+
+    /**
+     * search
+     *
+     * Returns a copy of the cached hits for an equal query, or searches the delegate and caches the hits.
+     * Implements ArticleDatastore.search
+     *
+     * @param query SearchQuery
+     * @return List<ArticleHit>
+     */
+    public List<ArticleHit> search(final SearchQuery query) {
+        final String key = query.getCanonicalKey();
+        final List<ArticleHit> cached = searchCache.get(key);
+        if(cached != null) {
+            LOGGER.debug(String.format("Search cache hit: %s", key));
+            return copyHits(cached);
+        }
+
+        final long startGeneration = generation.get();
+        final List<ArticleHit> hits = delegate.search(query);
+        cacheSearches(Collections.singletonList(query), Collections.singletonList(hits), startGeneration);
+        return hits;
+    }
+
+    /**
+     * searchAll
+     *
+     * Returns copies of the cached hits of the queries that are cached and searches the others
+     * with one delegate searchAll, caching their hits like search. Implements ArticleDatastore.searchAll
+     *
+     * @param queries List of SearchQueries
+     * @return List of the List<ArticleHit> of each query
+     */
+    public List<List<ArticleHit>> searchAll(final List<SearchQuery> queries) {
+        final List<List<ArticleHit>> results = new ArrayList<>(queries.size());
+        final List<SearchQuery> misses = new ArrayList<>();
+        final List<Integer> missIndexes = new ArrayList<>();
+        for(SearchQuery query: queries) {
+            final List<ArticleHit> cached = searchCache.get(query.getCanonicalKey());
+            if(cached == null) {
+                misses.add(query);
+                missIndexes.add(results.size());
+            }
+            results.add((cached == null) ? null : copyHits(cached));
+        }
+        if(misses.isEmpty()) {
+            return results;
+        }
+
+        final long startGeneration = generation.get();
+        final List<List<ArticleHit>> hits = delegate.searchAll(misses);
+        cacheSearches(misses, hits, startGeneration);
+        for(int i = 0; i < misses.size(); i++) {
+            results.set(missIndexes.get(i), hits.get(i));
+        }
+        return results;
+    }
+
+    private void cacheSearches(final List<SearchQuery> queries,
+                               final List<List<ArticleHit>> hits,
+                               final long startGeneration) {
+        // Checked and put under the lock writes bump the generation and clear the cache under,
+        // so hits read before a write can not be put back after its clear
+        synchronized(articleLock) {
+            if(generation.get() != startGeneration
+                    || System.currentTimeMillis() - lastWriteMillis < refreshIntervalMillis) {
+                return;
+            }
+            for(int i = 0; i < queries.size(); i++) {
+                searchCache.put(queries.get(i).getCanonicalKey(), copyHits(hits.get(i)));
+            }
+        }
+    }
+
+    /**
+     * stream
+     *
+     * Streams are not cached. Implements ArticleDatastore.stream
+     *
+     * @param query SearchQuery
+     * @return Stream<ArticleHit>
+     */
+    public Stream<ArticleHit> stream(final SearchQuery query) {
+        return delegate.stream(query);
+    }
+
+    /**
+     * count
+     *
+     * Counts are not cached. Implements ArticleDatastore.count
+     *
+     * @param query SearchQuery
+     * @return long
+     */
+    public long count(final SearchQuery query) {
+        return delegate.count(query);
+    }
+
+    /**
+     * exists
+     *
+     * Existence checks are not cached. Implements ArticleDatastore.exists
+     *
+     * @param query SearchQuery
+     * @return boolean
+     */
+    public boolean exists(final SearchQuery query) {
+        return delegate.exists(query);
+    }
+
+    /**
+     * aggregate
+     *
+     * Aggregations are not cached. Implements ArticleDatastore.aggregate
+     *
+     * @param query SearchQuery
+     * @param aggregations List of ArticleAggregations
+     * @return AggregationResults
+     */
+    public AggregationResults aggregate(final SearchQuery query, final List<ArticleAggregation> aggregations) {
+        return delegate.aggregate(query, aggregations);
+    }
+
+    /**
+     * saveAll
+     *
+     * Saves through the delegate, invalidates cached searches and drops the saved articles from the article cache.
+     * Implements ArticleDatastore.saveAll
+     *
+     * @param documents List of Articles
+     */
+    public void saveAll(final List<Article> documents) {
+        try {
+            delegate.saveAll(documents);
+        } finally {
+            onWrite();
+            final List<String> ids = new ArrayList<>(documents.size());
+            for(Article article: documents) {
+                ids.add(article.URL);
+            }
+            forgetArticles(ids);
+        }
+    }
+
+    /**
+     * save
+     *
+     * Saves through the delegate, invalidates cached searches and drops the saved articles from the article cache.
+     * Implements ArticleDatastore.save
+     *
+     * @param article Article
+     */
+    public void save(final Article article) {
+        try {
+            delegate.save(article);
+        } finally {
+            onWrite();
+            forgetArticles(Collections.singletonList(article.URL));
+        }
+    }
+
+    /**
+     * delete
+     *
+     * Deletes through the delegate, invalidates cached searches and drops the deleted articles from the article cache.
+     * Implements ArticleDatastore.delete
+     *
+     * @param id String
+     */
+    public void delete(final String id) {
+        try {
+            delegate.delete(id);
+        } finally {
+            onWrite();
+            forgetArticles(Collections.singletonList(id));
+        }
+    }
+
+    /**
+     * deleteAll
+     *
+     * Deletes through the delegate, invalidates cached searches and drops the deleted articles from the article cache.
+     * Implements ArticleDatastore.deleteAll
+     *
+     * @param ids Collection of article ids
+     * @param options DeleteOptions
+     * @return DeleteResult
+     */
+    public DeleteResult deleteAll(final Collection<String> ids, final DeleteOptions options) {
+        try {
+            return delegate.deleteAll(ids, options);
+        } finally {
+            onWrite();
+            forgetArticles(ids);
+        }
+    }
+
+    /**
+     * deleteByQuery
+     *
+     * Deletes through the delegate, invalidates cached searches and clears the article cache.
+     * Implements ArticleDatastore.deleteByQuery
+     *
+     * @param query SearchQuery
+     * @param options DeleteOptions
+     * @return DeleteResult
+     */
+    public DeleteResult deleteByQuery(final SearchQuery query, final DeleteOptions options) {
+        try {
+            return delegate.deleteByQuery(query, options);
+        } finally {
+            onWrite();
+            forgetAllArticles();
+        }
+    }
+
+    private void onWrite() {
+        synchronized(articleLock) {
+            lastWriteMillis = System.currentTimeMillis();
+            generation.incrementAndGet();
+            searchCache.clear();
+        }
+    }
+
+    private void forgetArticles(final Collection<String> ids) {
+        final BoundedCache<String, ArticleHit> articles = this.articleCache;
+        if(articles == null) {
+            return;
+        }
+        synchronized(articleLock) {
+            for(String id: ids) {
+                if(id != null) {
+                    articles.remove(id);
+                }
+            }
+        }
+    }
+
+    private void forgetAllArticles() {
+        final BoundedCache<String, ArticleHit> articles = this.articleCache;
+        if(articles == null) {
+            return;
+        }
+        synchronized(articleLock) {
+            articles.clear();
+        }
+    }
+
+    private static List<ArticleHit> copyHits(final List<ArticleHit> hits) {
+        final List<ArticleHit> copies = new ArrayList<>(hits.size());
+        for(ArticleHit hit: hits) {
+            copies.add(new ArticleHit(hit));
+        }
+        return copies;
+    }
+}
@@ -0,0 +1,1029 @@
+package org.russpollock.rss.repository.http;
+
+import org.russpollock.rss.metrics.DefaultMetricsRegistry;
+import org.russpollock.rss.metrics.MetricsRegistry;
+import org.russpollock.rss.models.Article;
+import org.russpollock.rss.models.ArticleHit;
+import org.russpollock.rss.repository.ArticleCodec;
+import org.russpollock.rss.repository.ArticleDatastore;
+import org.russpollock.rss.repository.DatastoreMetrics;
+import org.russpollock.rss.repository.DatastoreMetrics.OPERATION;
+import org.russpollock.rss.repository.DeleteOptions;
+import org.russpollock.rss.repository.DeleteResult;
+import org.russpollock.rss.repository.DeleteTracker;
+import org.russpollock.rss.repository.DocumentRef;
+import org.russpollock.rss.repository.EsArticleDatastore;
+import org.russpollock.rss.repository.aggregations.AggregationResults;
+import org.russpollock.rss.repository.aggregations.ArticleAggregation;
+import org.russpollock.rss.repository.ingest.ArticleDeduplicator;
+import org.russpollock.rss.repository.ingest.ArticleVersion;
+import org.russpollock.rss.repository.ingest.SpoolReplayer;
+import org.russpollock.rss.repository.queries.SearchPlan;
+import org.russpollock.rss.repository.queries.SearchPlanner;
+import org.russpollock.rss.repository.queries.SearchQuery;
+import org.russpollock.rss.repository.queries.SourceProjection;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.message.BasicHeader;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseException;
+import org.elasticsearch.client.ResponseListener;
+import org.elasticsearch.client.RestClient;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.search.builder.SearchSourceBuilder;
+import org.elasticsearch.search.sort.SortOrder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * HttpArticleDatastore
+ *
+ * ArticleDatastore over the ES http API using the low level RestClient, see ElasticSearchRestClient
+ * for connection pooling, round robin and dead node handling. Unlike the transport client it does not
+ * join the cluster and only needs the http port, so it starts quickly and holds little memory.
+ *
+ * Request bodies of at least compressionThresholdBytes are sent gzipped and responses are requested gzipped.
+ * Searches are planned and built like EsArticleDatastore searches, and hits are read straight from the
+ * response stream. saveAll sends size bounded bulks and retries items rejected by the cluster with backoff,
+ * retrying the same statuses as the ArticleIngestor and SpoolReplayer.
+ * Like EsArticleDatastore, articles are written with their ArticleVersion as external version, so an older
+ * copy of an indexed article is refused.
+ */
+public class HttpArticleDatastore implements ArticleDatastore {
+    public static final int DEFAULT_COMPRESSION_THRESHOLD_BYTES = 1024;
+    public static final int DEFAULT_BULK_ACTIONS = 1000;
+    public static final long DEFAULT_BULK_SIZE_BYTES = 5 * 1024 * 1024;
+    private static final Logger LOGGER = LogManager.getLogger(HttpArticleDatastore.class);
+    private static final ContentType NDJSON = ContentType.create("application/x-ndjson", StandardCharsets.UTF_8);
+    private static final Header ACCEPT_GZIP = new BasicHeader("Accept-Encoding", "gzip");
+    private static final Header CONTENT_GZIP = new BasicHeader("Content-Encoding", "gzip");
+    private static final String SCROLL_KEEP_ALIVE = "1m";
+    private static final int CONFLICT = 409;
+    private final RestClient restClient;
+    private String[] searchIndicies;
+    private String writeIndex;
+    private int compressionThresholdBytes = DEFAULT_COMPRESSION_THRESHOLD_BYTES;
+    private int bulkActions = DEFAULT_BULK_ACTIONS;
+    private long bulkSizeBytes = DEFAULT_BULK_SIZE_BYTES;
+    private long retryInitialDelayMillis = 50;
+    private int maxRetries = 8;
+    private MetricsRegistry metricsRegistry = DefaultMetricsRegistry.getInstance();
+    private DatastoreMetrics metrics = DatastoreMetrics.of(metricsRegistry);
+    private ArticleDeduplicator deduplicator;
+
+    public HttpArticleDatastore(final RestClient restClient) {
+        this.restClient = restClient;
+    }
+
+    public HttpArticleDatastore(final RestClient restClient,
+                                final String writeIndex,
+                                final String[] searchIndicies) {
+        this.restClient = restClient;
+        this.writeIndex = writeIndex;
+        this.searchIndicies = searchIndicies;
+    }
+
+    public void setSearchIndicies(final String[] searchIndicies) {
+        this.searchIndicies = searchIndicies;
+    }
+
+    public String[] getSearchIndicies() {
+        return this.searchIndicies;
+    }
+
+    public void setWriteIndex(final String writeIndex) {
+        this.writeIndex = writeIndex;
+    }
+
+    public String getWriteIndex() {
+        return this.writeIndex;
+    }
+
+    /**
+     * setCompressionThresholdBytes
+     *
+     * Request bodies of at least this many bytes are gzipped. Values below 0 disable compression.
+     *
+     * @param compressionThresholdBytes int
+     */
+    public void setCompressionThresholdBytes(final int compressionThresholdBytes) {
+        this.compressionThresholdBytes = compressionThresholdBytes;
+    }
+
+    public int getCompressionThresholdBytes() {
+        return this.compressionThresholdBytes;
+    }
+
+    /**
+     * setBulkLimits
+     *
+     * saveAll sends a bulk once it holds bulkActions articles or bulkSizeBytes bytes, whichever comes first.
+     *
+     * @param bulkActions int
+     * @param bulkSizeBytes long
+     */
+    public void setBulkLimits(final int bulkActions, final long bulkSizeBytes) {
+        this.bulkActions = Math.max(1, bulkActions);
+        this.bulkSizeBytes = Math.max(1, bulkSizeBytes);
+    }
+
+    /**
+     * setRetryBackoff
+     *
+     * Exponential backoff used to retry bulk items rejected by the cluster.
+     *
+     * @param initialDelayMillis long
+     * @param maxRetries int
+     */
+    public void setRetryBackoff(final long initialDelayMillis, final int maxRetries) {
+        this.retryInitialDelayMillis = Math.max(0, initialDelayMillis);
+        this.maxRetries = Math.max(0, maxRetries);
+    }
+
+    public void setMetricsRegistry(final MetricsRegistry metricsRegistry) {
+        this.metricsRegistry = metricsRegistry;
+        this.metrics = DatastoreMetrics.of(metricsRegistry);
+    }
+
+    public MetricsRegistry getMetricsRegistry() {
+        return this.metricsRegistry;
+    }
+
+    /**
+     * setDeduplicator
+     *
+     * Sets the ArticleDeduplicator saveAll uses to skip unchanged articles, see EsArticleDatastore.setDeduplicator.
+     *
+     * @param deduplicator ArticleDeduplicator
+     */
+    public void setDeduplicator(final ArticleDeduplicator deduplicator) {
+        this.deduplicator = deduplicator;
+    }
+
+    public ArticleDeduplicator getDeduplicator() {
+        return this.deduplicator;
+    }
+
+    /**
+     * save
+     *
+     * Indexes a single Article using the writeIndex as a target.
+     * A save refused because a newer copy is already indexed throws an UncheckedIOException caused by a
+     * ResponseException with status 409.
+     * Implements ArticleDatastore.save
+     *
+     * @param article Article
+     * @throws NullPointerException
+     * @throws UncheckedIOException
+     */
+    public void save(final Article article) throws NullPointerException, UncheckedIOException {
+        LOGGER.info(String.format("Indexing article in %s URL: %s", this.writeIndex, article.URL));
+        if(this.writeIndex == null) {
+            throw new NullPointerException("writeIndex must be set before indexing.");
+        }
+        final String endpoint = documentEndpoint(this.writeIndex, article.URL);
+        final Map<String, String> params = new HashMap<>();
+        final long version = ArticleVersion.of(article);
+        if(version != ArticleVersion.NONE) {
+            params.put("version", Long.toString(version));
+            params.put("version_type", ArticleVersion.VERSION_TYPE_NAME);
+        }
+        metrics.time(OPERATION.SAVE, () -> {
+            try {
+                perform("PUT", endpoint, params,
+                        toBytes(ArticleCodec.toXContent(article).bytes()), ContentType.APPLICATION_JSON);
+            } catch(IOException e) {
+                throw new UncheckedIOException(String.format("Unable to index article %s", article.URL), e);
+            }
+        });
+        if(this.deduplicator != null) {
+            this.deduplicator.recordIndexed(article);
+        }
+    }
+
+    /**
+     * saveAll
+     *
+     * Saves a list of Articles using the writeIndex as a target.
+     * Implements ArticleDatastore.saveAll
+     *
+     * Articles are sent in bulks bounded by the bulk limits. Items rejected by the cluster, and bulks that could
+     * not be sent, are resent with exponential backoff, other failures are logged and counted. Blocks until every
+     * bulk completed. Unlike EsArticleDatastore there is no spool: a bulk still not sent after the retries throws,
+     * the bulks before it stay indexed. Unchanged articles are skipped when a deduplicator is set.
+     *
+     * @param articles List of Articles
+     * @throws NullPointerException
+     * @throws UncheckedIOException
+     */
+    public void saveAll(final List<Article> articles) throws NullPointerException, UncheckedIOException {
+        LOGGER.info(String.format("Indexing %s articles to %s", articles.size(), this.writeIndex));
+        if(this.writeIndex == null) {
+            throw new NullPointerException("writeIndex must be set before indexing all.");
+        }
+        final List<Article> changed = (this.deduplicator == null) ? articles
+                : this.deduplicator.filterChanged(articles, null);
+        metrics.time(OPERATION.SAVE_ALL, () -> {
+            final ByteArrayOutputStream body = new ByteArrayOutputStream();
+            final List<Article> bulk = new ArrayList<>();
+            for(Article article: changed) {
+                appendIndexAction(body, article);
+                bulk.add(article);
+                if(bulk.size() >= bulkActions || body.size() >= bulkSizeBytes) {
+                    executeBulk(bulk, body.toByteArray());
+                    bulk.clear();
+                    body.reset();
+                }
+            }
+            if(!bulk.isEmpty()) {
+                executeBulk(bulk, body.toByteArray());
+            }
+        });
+    }
+
+    private void appendIndexAction(final ByteArrayOutputStream body, final Article article) {
+        LOGGER.debug(String.format("Indexing article in %s URL: %s", this.writeIndex, article.URL));
+        try {
+            final XContentBuilder action = XContentFactory.jsonBuilder()
+                    .startObject()
+                    .startObject("index")
+                    .field("_index", this.writeIndex)
+                    .field("_type", EsArticleDatastore.ARTICLE_TYPE)
+                    .field("_id", article.URL);
+            final long version = ArticleVersion.of(article);
+            if(version != ArticleVersion.NONE) {
+                action.field("_version", version).field("_version_type", ArticleVersion.VERSION_TYPE_NAME);
+            }
+            action.endObject().endObject();
+            action.bytes().writeTo(body);
+            body.write('\n');
+            ArticleCodec.toXContent(article).bytes().writeTo(body);
+            body.write('\n');
+        } catch(IOException e) {
+            throw new UncheckedIOException(String.format("Unable to serialize article %s", article.URL), e);
+        }
+    }
+
+    /**
+     * executeBulk
+     *
+     * Sends a bulk, resending the items rejected for cluster load or availability (see SpoolReplayer.isRetryable)
+     * with exponential backoff. A bulk that can not be sent, e.g. no node is reachable, is resent the same way.
+     * There is no spool over http, so once the retries are exhausted an UncheckedIOException is thrown instead.
+     */
+    private void executeBulk(final List<Article> articles, final byte[] body) throws UncheckedIOException {
+        List<Article> pending = articles;
+        byte[] pendingBody = body;
+        for(int attempt = 0; ; attempt++) {
+            metrics.recordBulk(pending.size(), pendingBody.length);
+            final List<ResponseReader.BulkItem> items;
+            try {
+                final Response response = perform("POST", "/_bulk", Collections.<String, String>emptyMap(),
+                        pendingBody, NDJSON);
+                try(InputStream content = content(response)) {
+                    items = ResponseReader.readBulk(content);
+                }
+            } catch(IOException e) {
+                final boolean retryable = !(e instanceof ResponseException) || isRetryable(
+                        ((ResponseException) e).getResponse().getStatusLine().getStatusCode());
+                if(retryable && attempt < maxRetries) {
+                    LOGGER.warn(String.format("Failed to execute bulk with %s articles", pending.size()), e);
+                    if(backoff(attempt, pending.size())) {
+                        continue;
+                    }
+                }
+                LOGGER.error(String.format("Failed to execute bulk with %s articles", pending.size()), e);
+                metrics.recordBulkFailure(pending.size(), e);
+                throw new UncheckedIOException(String.format("Unable to index %s articles", pending.size()), e);
+            }
+
+            final List<Article> rejected = new ArrayList<>();
+            for(int i = 0; i < items.size() && i < pending.size(); i++) {
+                final ResponseReader.BulkItem item = items.get(i);
+                if(!item.isFailed()) {
+                    if(this.deduplicator != null) {
+                        this.deduplicator.recordIndexed(pending.get(i));
+                    }
+                    continue;
+                }
+                if(item.status == CONFLICT) {
+                    LOGGER.debug(String.format("Article %s is superseded by the indexed one", pending.get(i).URL));
+                    metrics.recordBulkSuperseded(1);
+                } else if(isRetryable(item.status) && attempt < maxRetries) {
+                    rejected.add(pending.get(i));
+                } else {
+                    LOGGER.error(String.format("Failed to index article %s: [%s] %s",
+                            pending.get(i).URL, item.errorType, item.errorReason));
+                    metrics.recordBulkFailure(1, item.errorType);
+                }
+            }
+            if(rejected.isEmpty()) {
+                return;
+            }
+            if(!backoff(attempt, rejected.size())) {
+                metrics.recordBulkFailure(rejected.size(), "es_rejected_execution_exception");
+                return;
+            }
+            final ByteArrayOutputStream retryBody = new ByteArrayOutputStream();
+            for(Article article: rejected) {
+                appendIndexAction(retryBody, article);
+            }
+            pending = rejected;
+            pendingBody = retryBody.toByteArray();
+        }
+    }
+
+    private static boolean isRetryable(final int status) {
+        final RestStatus restStatus = RestStatus.fromCode(status);
+        return restStatus != null && SpoolReplayer.isRetryable(restStatus);
+    }
+
+    /**
+     * backoff
+     *
+     * Waits before the next attempt of a bulk.
+     *
+     * @return boolean false if interrupted
+     */
+    private boolean backoff(final int attempt, final int articles) {
+        final long delay = retryInitialDelayMillis << Math.min(attempt, 20);
+        LOGGER.warn(String.format("Retrying %s articles in %sms", articles, delay));
+        try {
+            TimeUnit.MILLISECONDS.sleep(delay);
+            return true;
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.error(String.format("Interrupted while retrying %s articles", articles), e);
+            return false;
+        }
+    }
+
+    /**
+     * delete
+     *
+     * Removes an article from the datastore by id using writeIndex as the target.
+     * Deleting a missing article is not an error.
+     * Implements ArticleDatastore.delete
+     *
+     * @param id String
+     * @throws NullPointerException
+     * @throws UncheckedIOException
+     */
+    public void delete(final String id) throws NullPointerException, UncheckedIOException {
+        LOGGER.info(String.format("Deleting article %s", id));
+        if(this.writeIndex == null) {
+            throw new NullPointerException("writeIndex must be set before deleting.");
+        }
+        final Map<String, String> params = new HashMap<>();
+        params.put("ignore", "404");
+        metrics.time(OPERATION.DELETE, () -> {
+            try {
+                perform("DELETE", documentEndpoint(this.writeIndex, id), params, null, null);
+            } catch(IOException e) {
+                throw new UncheckedIOException(String.format("Unable to delete article %s", id), e);
+            }
+        });
+        if(this.deduplicator != null) {
+            this.deduplicator.forget(id);
+        }
+    }
+
+    /**
+     * deleteAll
+     *
+     * Removes articles by id from writeIndex with bulk deletes, see EsArticleDatastore.deleteAll.
+     * Implements ArticleDatastore.deleteAll
+     *
+     * @param ids Collection of article ids
+     * @param options DeleteOptions
+     * @return DeleteResult
+     * @throws NullPointerException
+     */
+    public DeleteResult deleteAll(final Collection<String> ids, final DeleteOptions options)
+            throws NullPointerException {
+        LOGGER.info(String.format("Deleting %s articles from %s", ids.size(), this.writeIndex));
+        if(this.writeIndex == null) {
+            throw new NullPointerException("writeIndex must be set before deleting all.");
+        }
+        return metrics.time(OPERATION.DELETE_ALL, () -> {
+            final DeleteTracker tracker = new DeleteTracker(options);
+            final List<DocumentRef> batch = new ArrayList<>(Math.min(ids.size(), options.getBatchSize()));
+            for(String id: ids) {
+                batch.add(new DocumentRef(this.writeIndex, id));
+                if(batch.size() >= options.getBatchSize()) {
+                    executeDeleteBulk(batch, tracker);
+                    batch.clear();
+                    if(!tracker.batchDone()) {
+                        return tracker.result();
+                    }
+                }
+            }
+            if(!batch.isEmpty()) {
+                executeDeleteBulk(batch, tracker);
+                tracker.batchDone();
+            }
+            return tracker.result();
+        });
+    }
+
+    /**
+     * deleteByQuery
+     *
+     * Removes every article matching a SearchQuery from the searchIndicies by scrolling the matching ids
+     * and deleting them page by page, see EsArticleDatastore.deleteByQuery.
+     * Implements ArticleDatastore.deleteByQuery
+     *
+     * @param query SearchQuery
+     * @param options DeleteOptions
+     * @return DeleteResult
+     * @throws NullPointerException
+     * @throws UncheckedIOException
+     */
+    public DeleteResult deleteByQuery(final SearchQuery query, final DeleteOptions options)
+            throws NullPointerException, UncheckedIOException {
+        LOGGER.info(String.format("Deleting articles matching: %s", query.toString()));
+        final Map<String, String> params = new HashMap<>();
+        params.put("scroll", SCROLL_KEEP_ALIVE);
+        final SearchSourceBuilder source = toSearchSource(query)
+                .fetchSource(false)
+                .sort("_doc", SortOrder.ASC)
+                .size(options.getBatchSize());
+        final String endpoint = searchEndpoint();
+
+        return metrics.time(OPERATION.DELETE_BY_QUERY, () -> {
+            final DeleteTracker tracker = new DeleteTracker(options);
+            String scrollId = null;
+            try {
+                ResponseReader.SearchPage page = readSearch(
+                        perform("POST", endpoint, params, toBytes(source), ContentType.APPLICATION_JSON));
+                scrollId = page.scrollId;
+                while(!page.refs.isEmpty() && scrollId != null) {
+                    executeDeleteBulk(page.refs, tracker);
+                    if(!tracker.batchDone()) {
+                        break;
+                    }
+                    page = scrollAsync(scrollId).get();
+                    scrollId = page.scrollId;
+                }
+            } catch(IOException e) {
+                throw new UncheckedIOException("Unable to scroll articles to delete", e);
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                LOGGER.warn("Interrupted while scrolling articles to delete");
+            } catch(ExecutionException e) {
+                throw new UncheckedIOException("Unable to scroll articles to delete", (e.getCause() instanceof IOException)
+                        ? (IOException) e.getCause() : new IOException(e.getCause()));
+            } finally {
+                clearScroll(scrollId);
+            }
+            return tracker.result();
+        });
+    }
+
+    private void executeDeleteBulk(final List<DocumentRef> batch, final DeleteTracker tracker) {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try {
+            for(DocumentRef ref: batch) {
+                XContentFactory.jsonBuilder()
+                        .startObject()
+                        .startObject("delete")
+                        .field("_index", ref.getIndex())
+                        .field("_type", EsArticleDatastore.ARTICLE_TYPE)
+                        .field("_id", ref.getId())
+                        .endObject()
+                        .endObject()
+                        .bytes().writeTo(body);
+                body.write('\n');
+            }
+        } catch(IOException e) {
+            throw new UncheckedIOException("Unable to serialize delete bulk", e);
+        }
+        metrics.recordBulk(batch.size(), body.size());
+
+        final List<ResponseReader.BulkItem> items;
+        try {
+            final Response response = perform("POST", "/_bulk", Collections.<String, String>emptyMap(),
+                    body.toByteArray(), NDJSON);
+            try(InputStream content = content(response)) {
+                items = ResponseReader.readBulk(content);
+            }
+        } catch(IOException e) {
+            LOGGER.error(String.format("Failed to execute delete bulk with %s articles", batch.size()), e);
+            metrics.recordBulkFailure(batch.size(), e);
+            for(DocumentRef ref: batch) {
+                tracker.failed(ref.getId(), e.toString());
+            }
+            return;
+        }
+        for(int i = 0; i < items.size() && i < batch.size(); i++) {
+            final ResponseReader.BulkItem item = items.get(i);
+            if(item.isFailed()) {
+                tracker.failed(batch.get(i).getId(), String.format("[%s] %s", item.errorType, item.errorReason));
+                metrics.recordBulkFailure(1, item.errorType);
+                continue;
+            }
+            if(this.deduplicator != null) {
+                this.deduplicator.forget(batch.get(i).getId());
+            }
+            if(item.isNotFound()) {
+                tracker.notFound(1);
+            } else {
+                tracker.deleted(1);
+            }
+        }
+    }
+
+    /**
+     * getAll
+     *
+     * Gets articles by id from writeIndex with one realtime `_mget` request. Implements ArticleDatastore.getAll
+     *
+     * @param ids Collection of article ids
+     * @return Map of the found ArticleHits by id, in the order of ids
+     * @throws NullPointerException
+     * @throws UncheckedIOException
+     * @throws IllegalStateException if one of the gets failed
+     */
+    public Map<String, ArticleHit> getAll(final Collection<String> ids)
+            throws NullPointerException, UncheckedIOException, IllegalStateException {
+        LOGGER.debug(String.format("Getting %s articles", ids.size()));
+        if(this.writeIndex == null) {
+            throw new NullPointerException("writeIndex must be set before getting.");
+        }
+        if(ids.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        final byte[] body;
+        try {
+            body = toBytes(XContentFactory.jsonBuilder()
+                    .startObject()
+                    .array("ids", ids.toArray(new String[ids.size()]))
+                    .endObject()
+                    .bytes());
+        } catch(IOException e) {
+            throw new UncheckedIOException("Unable to serialize article ids", e);
+        }
+        final String endpoint = "/" + this.writeIndex + "/" + EsArticleDatastore.ARTICLE_TYPE + "/_mget";
+        return metrics.time(OPERATION.GET_ALL, () -> {
+            final ResponseReader.SearchPage page;
+            try(InputStream content = content(perform("POST", endpoint, Collections.<String, String>emptyMap(),
+                    body, ContentType.APPLICATION_JSON))) {
+                page = ResponseReader.readMultiGet(content);
+            } catch(IOException e) {
+                throw new UncheckedIOException("Unable to get articles", e);
+            }
+            if(page.error != null) {
+                throw new IllegalStateException(String.format("Article get failed: %s", page.error));
+            }
+            final Map<String, ArticleHit> articles = new LinkedHashMap<>();
+            for(ArticleHit hit: page.hits) {
+                articles.put(hit.getID(), hit);
+            }
+            return articles;
+        });
+    }
+
+    /**
+     * search
+     *
+     * Performs the same search as EsArticleDatastore.search over http.
+     * Implements ArticleDatastore.search
+     *
+     * @param query SearchQuery
+     * @return List<ArticleHit>
+     * @throws NullPointerException
+     * @throws UncheckedIOException
+     */
+    public List<ArticleHit> search(final SearchQuery query) throws NullPointerException, UncheckedIOException {
+        LOGGER.debug(String.format("Performing article search: %s", query.toString()));
+        final SearchPlan plan = SearchPlanner.plan(query);
+        final Map<String, String> params = new HashMap<>();
+        params.put("search_type", plan.getSearchType().name().toLowerCase(Locale.ROOT));
+        if(plan.getRequestCache() != null) {
+            params.put("request_cache", plan.getRequestCache().toString());
+        }
+
+        final SearchSourceBuilder source = toPlannedSearchSource(query, plan);
+        final String endpoint = searchEndpoint();
+        return metrics.time(OPERATION.SEARCH, () -> {
+            try {
+                return readSearch(perform("POST", endpoint, params, toBytes(source), ContentType.APPLICATION_JSON)).hits;
+            } catch(IOException e) {
+                throw new UncheckedIOException("Unable to search articles", e);
+            }
+        });
+    }
+
+    /**
+     * searchAll
+     *
+     * Performs the same searches as EsArticleDatastore.searchAll in one `_msearch` request.
+     * Implements ArticleDatastore.searchAll
+     *
+     * @param queries List of SearchQueries
+     * @return List of the List<ArticleHit> of each query, in query order
+     * @throws NullPointerException
+     * @throws UncheckedIOException
+     * @throws IllegalStateException if one of the searches failed
+     */
+    public List<List<ArticleHit>> searchAll(final List<SearchQuery> queries)
+            throws NullPointerException, UncheckedIOException, IllegalStateException {
+        LOGGER.debug(String.format("Performing %s article searches", queries.size()));
+        if(queries.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if(this.searchIndicies == null) {
+            throw new NullPointerException("searchIndicies must be set before searching.");
+        }
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try {
+            for(SearchQuery query: queries) {
+                final SearchPlan plan = SearchPlanner.plan(query);
+                final XContentBuilder header = XContentFactory.jsonBuilder()
+                        .startObject()
+                        .array("index", this.searchIndicies)
+                        .field("type", EsArticleDatastore.ARTICLE_TYPE)
+                        .field("search_type", plan.getSearchType().name().toLowerCase(Locale.ROOT));
+                if(plan.getRequestCache() != null) {
+                    header.field("request_cache", plan.getRequestCache());
+                }
+                header.endObject().bytes().writeTo(body);
+                body.write('\n');
+                toPlannedSearchSource(query, plan).toXContent(XContentFactory.jsonBuilder(), ToXContent.EMPTY_PARAMS)
+                        .bytes().writeTo(body);
+                body.write('\n');
+            }
+        } catch(IOException e) {
+            throw new UncheckedIOException("Unable to serialize article searches", e);
+        }
+
+        return metrics.time(OPERATION.SEARCH_ALL, () -> {
+            final List<ResponseReader.SearchPage> pages;
+            final long start;
+            try {
+                final Response response = perform("POST", "/_msearch", Collections.<String, String>emptyMap(),
+                        body.toByteArray(), NDJSON);
+                start = System.nanoTime();
+                try(InputStream content = content(response)) {
+                    pages = ResponseReader.readMultiSearch(content);
+                }
+            } catch(IOException e) {
+                throw new UncheckedIOException("Unable to search articles", e);
+            }
+            final List<List<ArticleHit>> results = new ArrayList<>(pages.size());
+            int hits = 0;
+            for(ResponseReader.SearchPage page: pages) {
+                if(page.error != null) {
+                    throw new IllegalStateException(String.format("Article search failed: %s", page.error));
+                }
+                results.add(page.hits);
+                hits += page.hits.size();
+            }
+            metrics.recordHits(hits, System.nanoTime() - start);
+            return results;
+        });
+    }
+
+    /**
+     * count
+     *
+     * Performs the same size 0 count as EsArticleDatastore.count over http. Implements ArticleDatastore.count
+     *
+     * @param query SearchQuery
+     * @return long
+     * @throws NullPointerException
+     * @throws UncheckedIOException
+     */
+    public long count(final SearchQuery query) throws NullPointerException, UncheckedIOException {
+        LOGGER.debug(String.format("Performing article count: %s", query.toString()));
+        return metrics.time(OPERATION.COUNT, () -> countHits(query, Collections.<String, String>emptyMap()));
+    }
+
+    /**
+     * exists
+     *
+     * Performs the same terminate_after 1 count as EsArticleDatastore.exists over http.
+     * Implements ArticleDatastore.exists
+     *
+     * @param query SearchQuery
+     * @return boolean
+     * @throws NullPointerException
+     * @throws UncheckedIOException
+     */
+    public boolean exists(final SearchQuery query) throws NullPointerException, UncheckedIOException {
+        LOGGER.debug(String.format("Performing article exists: %s", query.toString()));
+        return metrics.time(OPERATION.EXISTS,
+                () -> countHits(query, Collections.singletonMap("terminate_after", "1")) > 0);
+    }
+
+    private long countHits(final SearchQuery query, final Map<String, String> params) {
+        final SearchSourceBuilder source = new SearchSourceBuilder()
+                .query(query.toCountQueryBuilder())
+                .size(0);
+        try {
+            final Response response = perform("POST", searchEndpoint(), params, toBytes(source),
+                    ContentType.APPLICATION_JSON);
+            try(InputStream content = content(response)) {
+                return ResponseReader.readAggregations(content, Collections.<ArticleAggregation>emptyList())
+                        .getTotalHits();
+            }
+        } catch(IOException e) {
+            throw new UncheckedIOException("Unable to count articles", e);
+        }
+    }
+
+    /**
+     * aggregate
+     *
+     * Performs the same size 0 aggregation search as EsArticleDatastore.aggregate over http,
+     * the buckets are read straight from the response stream. Implements ArticleDatastore.aggregate
+     *
+     * @param query SearchQuery
+     * @param aggregations List of ArticleAggregations
+     * @return AggregationResults
+     * @throws NullPointerException
+     * @throws UncheckedIOException
+     */
+    public AggregationResults aggregate(final SearchQuery query, final List<ArticleAggregation> aggregations)
+            throws NullPointerException, UncheckedIOException {
+        LOGGER.debug(String.format("Performing article aggregations %s: %s", aggregations, query.toString()));
+        final SearchSourceBuilder source = toSearchSource(query)
+                .size(0);
+        for(ArticleAggregation aggregation: aggregations) {
+            source.aggregation(aggregation.toAggregationBuilder());
+        }
+        final String endpoint = searchEndpoint();
+        return metrics.time(OPERATION.AGGREGATE, () -> {
+            try {
+                final Response response = perform("POST", endpoint, Collections.<String, String>emptyMap(),
+                        toBytes(source), ContentType.APPLICATION_JSON);
+                try(InputStream content = content(response)) {
+                    return ResponseReader.readAggregations(content, aggregations);
+                }
+            } catch(IOException e) {
+                throw new UncheckedIOException("Unable to aggregate articles", e);
+            }
+        });
+    }
+
+    /**
+     * stream
+     *
+     * Streams every hit matching a SearchQuery using a scroll sorted by `_doc`,
+     * with the EsArticleDatastore default page size. Implements ArticleDatastore.stream
+     *
+     * @param query SearchQuery
+     * @return Stream<ArticleHit>
+     * @throws NullPointerException
+     * @throws UncheckedIOException
+     */
+    public Stream<ArticleHit> stream(final SearchQuery query) throws NullPointerException, UncheckedIOException {
+        return stream(query, EsArticleDatastore.DEFAULT_STREAM_PAGE_SIZE);
+    }
+
+    /**
+     * stream
+     *
+     * Streams every hit matching a SearchQuery using a scroll sorted by `_doc`, see EsArticleDatastore.stream.
+     * The returned stream holds a scroll context until it is exhausted or closed.
+     *
+     * @param query SearchQuery
+     * @param pageSize int number of hits fetched per page
+     * @return Stream<ArticleHit>
+     * @throws NullPointerException
+     * @throws UncheckedIOException
+     */
+    public Stream<ArticleHit> stream(final SearchQuery query, final int pageSize)
+            throws NullPointerException, UncheckedIOException {
+        LOGGER.debug(String.format("Performing article scroll: %s", query.toString()));
+        final Map<String, String> params = new HashMap<>();
+        params.put("scroll", SCROLL_KEEP_ALIVE);
+        final SearchSourceBuilder source = toSearchSource(query)
+                .sort("_doc", SortOrder.ASC)
+                .size((pageSize < 1) ? EsArticleDatastore.DEFAULT_STREAM_PAGE_SIZE : pageSize);
+
+        final ResponseReader.SearchPage firstPage;
+        try {
+            firstPage = readSearch(perform("POST", searchEndpoint(), params, toBytes(source),
+                    ContentType.APPLICATION_JSON));
+        } catch(IOException e) {
+            throw new UncheckedIOException("Unable to scroll articles", e);
+        }
+        final HttpScrollIterator iterator = new HttpScrollIterator(this, firstPage);
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL),
+                false).onClose(iterator::close);
+    }
+
+    /**
+     * scrollAsync
+     *
+     * Requests the next page of a scroll without blocking.
+     *
+     * @param scrollId String
+     * @return CompletableFuture<ResponseReader.SearchPage>
+     */
+    CompletableFuture<ResponseReader.SearchPage> scrollAsync(final String scrollId) {
+        final CompletableFuture<ResponseReader.SearchPage> future = new CompletableFuture<>();
+        final byte[] body;
+        try {
+            body = toBytes(XContentFactory.jsonBuilder()
+                    .startObject()
+                    .field("scroll", SCROLL_KEEP_ALIVE)
+                    .field("scroll_id", scrollId)
+                    .endObject()
+                    .bytes());
+        } catch(IOException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+        restClient.performRequestAsync("POST", "/_search/scroll", Collections.<String, String>emptyMap(),
+                new ByteArrayEntity(body, ContentType.APPLICATION_JSON), new ResponseListener() {
+                    @Override
+                    public void onSuccess(final Response response) {
+                        try {
+                            future.complete(readSearch(response));
+                        } catch(Exception e) {
+                            future.completeExceptionally(e);
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(final Exception e) {
+                        future.completeExceptionally(e);
+                    }
+                }, ACCEPT_GZIP);
+        return future;
+    }
+
+    /**
+     * clearScroll
+     *
+     * Releases a scroll context without blocking.
+     *
+     * @param scrollId String
+     */
+    void clearScroll(final String scrollId) {
+        if(scrollId == null) {
+            return;
+        }
+        final byte[] body;
+        try {
+            body = toBytes(XContentFactory.jsonBuilder()
+                    .startObject()
+                    .array("scroll_id", scrollId)
+                    .endObject()
+                    .bytes());
+        } catch(IOException e) {
+            LOGGER.warn(String.format("Unable to clear scroll %s", scrollId), e);
+            return;
+        }
+        restClient.performRequestAsync("DELETE", "/_search/scroll", Collections.<String, String>emptyMap(),
+                new ByteArrayEntity(body, ContentType.APPLICATION_JSON), new ResponseListener() {
+                    @Override
+                    public void onSuccess(final Response response) {
+                        LOGGER.debug(String.format("Cleared scroll %s", scrollId));
+                    }
+
+                    @Override
+                    public void onFailure(final Exception e) {
+                        LOGGER.warn(String.format("Unable to clear scroll %s", scrollId), e);
+                    }
+                });
+    }
+
+    private SearchSourceBuilder toPlannedSearchSource(final SearchQuery query, final SearchPlan plan) {
+        final SearchSourceBuilder source = toSearchSource(query)
+                .trackScores(plan.isTrackScores());
+        if(plan.isSortByDoc()) {
+            source.sort("_doc", SortOrder.ASC);
+        }
+        if(query.getFrom() != null) {
+            source.from(query.getFrom());
+        }
+        if(query.getLimit() != null) {
+            source.size(query.getLimit());
+        }
+        return source;
+    }
+
+    private SearchSourceBuilder toSearchSource(final SearchQuery query) {
+        final SearchSourceBuilder source = new SearchSourceBuilder().query(query.toQueryBuilder());
+        if(query.toPostFilter() != null) {
+            source.postFilter(query.toPostFilter());
+        }
+        final SourceProjection projection = query.getProjection();
+        if(projection != null && !projection.isFull()) {
+            source.fetchSource(projection.getIncludes(), projection.getExcludes());
+        }
+        return source;
+    }
+
+    private String searchEndpoint() throws NullPointerException {
+        if(this.searchIndicies == null) {
+            throw new NullPointerException("searchIndicies must be set before searching.");
+        }
+        return "/" + String.join(",", this.searchIndicies) + "/" + EsArticleDatastore.ARTICLE_TYPE + "/_search";
+    }
+
+    private static String documentEndpoint(final String index, final String id) {
+        try {
+            return "/" + index + "/" + EsArticleDatastore.ARTICLE_TYPE + "/"
+                    + URLEncoder.encode(id, "UTF-8").replace("+", "%20");
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ResponseReader.SearchPage readSearch(final Response response) throws IOException {
+        final long start = System.nanoTime();
+        final ResponseReader.SearchPage page;
+        try(InputStream content = content(response)) {
+            page = ResponseReader.readSearch(content);
+        }
+        metrics.recordHits(page.hits.size(), System.nanoTime() - start);
+        return page;
+    }
+
+    /**
+     * perform
+     *
+     * Performs a request, gzipping the body when it reaches compressionThresholdBytes.
+     *
+     * @param method String
+     * @param endpoint String
+     * @param params Map<String, String>
+     * @param body byte[] or null
+     * @param contentType ContentType of the body
+     * @return Response
+     * @throws IOException
+     */
+    private Response perform(final String method,
+                             final String endpoint,
+                             final Map<String, String> params,
+                             final byte[] body,
+                             final ContentType contentType) throws IOException {
+        if(body == null) {
+            return restClient.performRequest(method, endpoint, params, ACCEPT_GZIP);
+        }
+        if(compressionThresholdBytes >= 0 && body.length >= compressionThresholdBytes) {
+            final HttpEntity entity = new ByteArrayEntity(gzip(body), contentType);
+            return restClient.performRequest(method, endpoint, params, entity, ACCEPT_GZIP, CONTENT_GZIP);
+        }
+        return restClient.performRequest(method, endpoint, params,
+                new ByteArrayEntity(body, contentType), ACCEPT_GZIP);
+    }
+
+    private static InputStream content(final Response response) throws IOException {
+        final InputStream content = response.getEntity().getContent();
+        final String encoding = response.getHeader("Content-Encoding");
+        return "gzip".equalsIgnoreCase(encoding)
+                ? new GZIPInputStream(content) : content;
+    }
+
+    private static byte[] gzip(final byte[] body) throws IOException {
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4 + 64);
+        try(GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(body);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static byte[] toBytes(final SearchSourceBuilder source) throws IOException {
+        return toBytes(source.toXContent(XContentFactory.jsonBuilder(), ToXContent.EMPTY_PARAMS).bytes());
+    }
+
+    private static byte[] toBytes(final BytesReference bytes) {
+        return BytesReference.toBytes(bytes);
+    }
+}
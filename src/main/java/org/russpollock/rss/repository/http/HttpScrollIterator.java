@@ -0,0 +1,106 @@
+package org.russpollock.rss.repository.http;
+
+import org.russpollock.rss.models.ArticleHit;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * HttpScrollIterator
+ *
+ * Closeable iterator over every hit of a scroll search over http, see ScrollingArticleIterator.
+ * The next page is requested as soon as a page arrives and the scroll is cleared when the
+ * iterator is exhausted or closed.
+ */
+class HttpScrollIterator implements Iterator<ArticleHit>, Closeable {
+    private final HttpArticleDatastore datastore;
+    private List<ArticleHit> page;
+    private int position;
+    private String scrollId;
+    private CompletableFuture<ResponseReader.SearchPage> nextPage;
+    private boolean closed;
+
+    HttpScrollIterator(final HttpArticleDatastore datastore, final ResponseReader.SearchPage firstPage) {
+        this.datastore = datastore;
+        acceptPage(firstPage);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if(closed) {
+            return false;
+        }
+        if(position < page.size()) {
+            return true;
+        }
+        if(nextPage == null) {
+            close();
+            return false;
+        }
+        final CompletableFuture<ResponseReader.SearchPage> pending = nextPage;
+        nextPage = null;
+        try {
+            acceptPage(pending.get());
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new IllegalStateException("Interrupted while scrolling articles.", e);
+        } catch(ExecutionException e) {
+            close();
+            throw new UncheckedIOException("Unable to scroll articles", (e.getCause() instanceof IOException)
+                    ? (IOException) e.getCause() : new IOException(e.getCause()));
+        }
+        if(position < page.size()) {
+            return true;
+        }
+        close();
+        return false;
+    }
+
+    @Override
+    public ArticleHit next() {
+        if(!hasNext()) {
+            throw new NoSuchElementException("Scroll has no more article hits.");
+        }
+        return page.get(position++);
+    }
+
+    /**
+     * close
+     *
+     * Clears the scroll context. Safe to call more than once.
+     */
+    @Override
+    public void close() {
+        if(closed) {
+            return;
+        }
+        closed = true;
+        page = Collections.emptyList();
+        if(nextPage != null) {
+            // Clear the scroll once the prefetch settles, it may carry a newer scroll id.
+            nextPage.whenComplete((response, failure) ->
+                    datastore.clearScroll((response == null) ? scrollId : response.scrollId));
+            nextPage = null;
+        } else {
+            datastore.clearScroll(scrollId);
+        }
+    }
+
+    private void acceptPage(final ResponseReader.SearchPage response) {
+        this.scrollId = response.scrollId;
+        this.page = response.hits;
+        this.position = 0;
+        if(!page.isEmpty() && scrollId != null) {
+            // Prefetch the next page while the caller consumes this one
+            this.nextPage = datastore.scrollAsync(scrollId);
+        }
+    }
+}
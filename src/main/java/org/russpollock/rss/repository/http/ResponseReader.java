@@ -0,0 +1,460 @@
+package org.russpollock.rss.repository.http;
+
+import org.russpollock.rss.models.ArticleHit;
+import org.russpollock.rss.repository.ArticleCodec;
+import org.russpollock.rss.repository.DocumentRef;
+import org.russpollock.rss.repository.aggregations.AggregationResults;
+import org.russpollock.rss.repository.aggregations.ArticleAggregation;
+import org.russpollock.rss.repository.aggregations.DateHistogramBucket;
+import org.russpollock.rss.repository.aggregations.TermsBucket;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.XContentType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ResponseReader
+ *
+ * Streaming readers for the ES http responses HttpArticleDatastore needs.
+ * Hit sources are read straight into ArticleHits from the response stream, without buffering
+ * each `_source` separately. Fields that are not needed are skipped.
+ */
+final class ResponseReader {
+
+    private ResponseReader() {}
+
+    static class SearchPage {
+        String scrollId;
+        String error;
+        final List<ArticleHit> hits = new ArrayList<>();
+        final List<DocumentRef> refs = new ArrayList<>();
+    }
+
+    static class BulkItem {
+        final int status;
+        final String errorType;
+        final String errorReason;
+
+        BulkItem(final int status, final String errorType, final String errorReason) {
+            this.status = status;
+            this.errorType = errorType;
+            this.errorReason = errorReason;
+        }
+
+        boolean isFailed() {
+            return errorType != null;
+        }
+
+        boolean isNotFound() {
+            return status == 404 && errorType == null;
+        }
+    }
+
+    /**
+     * readSearch
+     *
+     * Reads the scroll id, the hits with a source and the index and id of every hit
+     * of a search or scroll response.
+     *
+     * @param content InputStream
+     * @return SearchPage
+     * @throws IOException
+     */
+    static SearchPage readSearch(final InputStream content) throws IOException {
+        try(XContentParser parser = XContentType.JSON.xContent().createParser(NamedXContentRegistry.EMPTY, content)) {
+            expect(parser.nextToken(), XContentParser.Token.START_OBJECT);
+            return readSearchObject(parser);
+        }
+    }
+
+    /**
+     * readMultiSearch
+     *
+     * Reads the search responses of an msearch response in request order.
+     * A failed search is read as a SearchPage holding the error.
+     *
+     * @param content InputStream
+     * @return List<SearchPage>
+     * @throws IOException
+     */
+    static List<SearchPage> readMultiSearch(final InputStream content) throws IOException {
+        final List<SearchPage> pages = new ArrayList<>();
+        try(XContentParser parser = XContentType.JSON.xContent().createParser(NamedXContentRegistry.EMPTY, content)) {
+            expect(parser.nextToken(), XContentParser.Token.START_OBJECT);
+            while(parser.nextToken() == XContentParser.Token.FIELD_NAME) {
+                final String field = parser.currentName();
+                final XContentParser.Token token = parser.nextToken();
+                if(!"responses".equals(field) || token != XContentParser.Token.START_ARRAY) {
+                    parser.skipChildren();
+                    continue;
+                }
+                while(parser.nextToken() == XContentParser.Token.START_OBJECT) {
+                    pages.add(readSearchObject(parser));
+                }
+            }
+        }
+        return pages;
+    }
+
+    private static SearchPage readSearchObject(final XContentParser parser) throws IOException {
+        final SearchPage page = new SearchPage();
+        while(parser.nextToken() == XContentParser.Token.FIELD_NAME) {
+            final String field = parser.currentName();
+            final XContentParser.Token token = parser.nextToken();
+            if("_scroll_id".equals(field) && token.isValue()) {
+                page.scrollId = parser.text();
+            } else if("hits".equals(field) && token == XContentParser.Token.START_OBJECT) {
+                readHits(parser, page);
+            } else if("error".equals(field) && token == XContentParser.Token.START_OBJECT) {
+                page.error = readError(parser);
+            } else if("error".equals(field) && token.isValue()) {
+                page.error = parser.text();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return page;
+    }
+
+    private static String readError(final XContentParser parser) throws IOException {
+        String type = null;
+        String reason = null;
+        while(parser.nextToken() == XContentParser.Token.FIELD_NAME) {
+            final String field = parser.currentName();
+            final XContentParser.Token token = parser.nextToken();
+            if("type".equals(field) && token.isValue()) {
+                type = parser.text();
+            } else if("reason".equals(field) && token.isValue()) {
+                reason = parser.text();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return String.format("%s: %s", type, reason);
+    }
+
+    private static void readHits(final XContentParser parser, final SearchPage page) throws IOException {
+        while(parser.nextToken() == XContentParser.Token.FIELD_NAME) {
+            final String field = parser.currentName();
+            final XContentParser.Token token = parser.nextToken();
+            if(!"hits".equals(field) || token != XContentParser.Token.START_ARRAY) {
+                parser.skipChildren();
+                continue;
+            }
+            while(parser.nextToken() == XContentParser.Token.START_OBJECT) {
+                readHit(parser, page);
+            }
+        }
+    }
+
+    private static void readHit(final XContentParser parser, final SearchPage page) throws IOException {
+        final ArticleHit hit = new ArticleHit();
+        String index = null;
+        String id = null;
+        float score = Float.NaN;
+        boolean hasSource = false;
+        while(parser.nextToken() == XContentParser.Token.FIELD_NAME) {
+            final String field = parser.currentName();
+            final XContentParser.Token token = parser.nextToken();
+            switch(field) {
+                case "_index":
+                    index = parser.text();
+                    break;
+                case "_id":
+                    id = parser.text();
+                    break;
+                case "_score":
+                    score = (token == XContentParser.Token.VALUE_NUMBER) ? parser.floatValue() : Float.NaN;
+                    break;
+                case "_source":
+                    ArticleCodec.read(parser, token, hit);
+                    hasSource = true;
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        page.refs.add(new DocumentRef(index, id));
+        if(hasSource) {
+            hit.searchScore = score;
+            hit.setID(id);
+            page.hits.add(hit);
+        }
+    }
+
+    /**
+     * readMultiGet
+     *
+     * Reads the found documents of an mget response into SearchPage hits, in request order.
+     * The first failed get is read as the SearchPage error.
+     *
+     * @param content InputStream
+     * @return SearchPage
+     * @throws IOException
+     */
+    static SearchPage readMultiGet(final InputStream content) throws IOException {
+        final SearchPage page = new SearchPage();
+        try(XContentParser parser = XContentType.JSON.xContent().createParser(NamedXContentRegistry.EMPTY, content)) {
+            expect(parser.nextToken(), XContentParser.Token.START_OBJECT);
+            while(parser.nextToken() == XContentParser.Token.FIELD_NAME) {
+                final String field = parser.currentName();
+                final XContentParser.Token token = parser.nextToken();
+                if(!"docs".equals(field) || token != XContentParser.Token.START_ARRAY) {
+                    parser.skipChildren();
+                    continue;
+                }
+                while(parser.nextToken() == XContentParser.Token.START_OBJECT) {
+                    readDoc(parser, page);
+                }
+            }
+        }
+        return page;
+    }
+
+    private static void readDoc(final XContentParser parser, final SearchPage page) throws IOException {
+        final ArticleHit hit = new ArticleHit();
+        String id = null;
+        boolean found = false;
+        boolean hasSource = false;
+        while(parser.nextToken() == XContentParser.Token.FIELD_NAME) {
+            final String field = parser.currentName();
+            final XContentParser.Token token = parser.nextToken();
+            if("_id".equals(field) && token.isValue()) {
+                id = parser.text();
+            } else if("found".equals(field) && token == XContentParser.Token.VALUE_BOOLEAN) {
+                found = parser.booleanValue();
+            } else if("_source".equals(field) && token == XContentParser.Token.START_OBJECT) {
+                ArticleCodec.read(parser, token, hit);
+                hasSource = true;
+            } else if("error".equals(field) && page.error == null) {
+                page.error = (token == XContentParser.Token.START_OBJECT) ? readError(parser) : parser.text();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if(found && hasSource) {
+            hit.setID(id);
+            page.hits.add(hit);
+        }
+    }
+
+    /**
+     * readAggregations
+     *
+     * Reads the total hits and the buckets of ArticleAggregation.toAggregationBuilder aggregations
+     * of a search response. Aggregations that were not requested are skipped.
+     *
+     * @param content InputStream
+     * @param aggregations List of the requested ArticleAggregations
+     * @return AggregationResults
+     * @throws IOException
+     */
+    static AggregationResults readAggregations(final InputStream content, final List<ArticleAggregation> aggregations)
+            throws IOException {
+        final Map<String, ArticleAggregation> requested = new HashMap<>();
+        final Map<String, List<TermsBucket>> terms = new HashMap<>();
+        final Map<String, List<DateHistogramBucket>> histograms = new HashMap<>();
+        for(ArticleAggregation aggregation: aggregations) {
+            requested.put(aggregation.getName(), aggregation);
+            if(aggregation.getType() == ArticleAggregation.TYPE.DATE_HISTOGRAM) {
+                histograms.put(aggregation.getName(), new ArrayList<>());
+            } else {
+                terms.put(aggregation.getName(), new ArrayList<>());
+            }
+        }
+        long totalHits = 0;
+        try(XContentParser parser = XContentType.JSON.xContent().createParser(NamedXContentRegistry.EMPTY, content)) {
+            expect(parser.nextToken(), XContentParser.Token.START_OBJECT);
+            while(parser.nextToken() == XContentParser.Token.FIELD_NAME) {
+                final String field = parser.currentName();
+                final XContentParser.Token token = parser.nextToken();
+                if("hits".equals(field) && token == XContentParser.Token.START_OBJECT) {
+                    while(parser.nextToken() == XContentParser.Token.FIELD_NAME) {
+                        final String hitsField = parser.currentName();
+                        final XContentParser.Token hitsToken = parser.nextToken();
+                        if("total".equals(hitsField) && hitsToken == XContentParser.Token.VALUE_NUMBER) {
+                            totalHits = parser.longValue();
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                } else if("aggregations".equals(field) && token == XContentParser.Token.START_OBJECT) {
+                    while(parser.nextToken() == XContentParser.Token.FIELD_NAME) {
+                        final ArticleAggregation aggregation = requested.get(parser.currentName());
+                        if(parser.nextToken() != XContentParser.Token.START_OBJECT || aggregation == null) {
+                            parser.skipChildren();
+                        } else if(aggregation.getType() == ArticleAggregation.TYPE.DATE_HISTOGRAM) {
+                            readHistogram(parser, histograms.get(aggregation.getName()));
+                        } else if(aggregation.isNested()) {
+                            readNestedTerms(parser, terms.get(aggregation.getName()));
+                        } else {
+                            readTerms(parser, terms.get(aggregation.getName()));
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return new AggregationResults(totalHits, terms, histograms);
+    }
+
+    private static void readNestedTerms(final XContentParser parser, final List<TermsBucket> buckets)
+            throws IOException {
+        while(parser.nextToken() == XContentParser.Token.FIELD_NAME) {
+            final String field = parser.currentName();
+            if(parser.nextToken() == XContentParser.Token.START_OBJECT && ArticleAggregation.NESTED_TERMS.equals(field)) {
+                readTerms(parser, buckets);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private static void readTerms(final XContentParser parser, final List<TermsBucket> buckets) throws IOException {
+        while(parser.nextToken() == XContentParser.Token.FIELD_NAME) {
+            final String field = parser.currentName();
+            if(parser.nextToken() != XContentParser.Token.START_ARRAY || !"buckets".equals(field)) {
+                parser.skipChildren();
+                continue;
+            }
+            while(parser.nextToken() == XContentParser.Token.START_OBJECT) {
+                String key = null;
+                long count = 0;
+                Long articles = null;
+                while(parser.nextToken() == XContentParser.Token.FIELD_NAME) {
+                    final String bucketField = parser.currentName();
+                    final XContentParser.Token token = parser.nextToken();
+                    if("key".equals(bucketField) && token.isValue()) {
+                        key = parser.text();
+                    } else if("doc_count".equals(bucketField) && token == XContentParser.Token.VALUE_NUMBER) {
+                        count = parser.longValue();
+                    } else if(ArticleAggregation.REVERSE_NESTED.equals(bucketField)
+                            && token == XContentParser.Token.START_OBJECT) {
+                        articles = readDocCount(parser);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                buckets.add(new TermsBucket(key, (articles == null) ? count : articles));
+            }
+        }
+    }
+
+    private static void readHistogram(final XContentParser parser, final List<DateHistogramBucket> buckets)
+            throws IOException {
+        while(parser.nextToken() == XContentParser.Token.FIELD_NAME) {
+            final String field = parser.currentName();
+            if(parser.nextToken() != XContentParser.Token.START_ARRAY || !"buckets".equals(field)) {
+                parser.skipChildren();
+                continue;
+            }
+            while(parser.nextToken() == XContentParser.Token.START_OBJECT) {
+                long start = 0;
+                long count = 0;
+                while(parser.nextToken() == XContentParser.Token.FIELD_NAME) {
+                    final String bucketField = parser.currentName();
+                    final XContentParser.Token token = parser.nextToken();
+                    if("key".equals(bucketField) && token == XContentParser.Token.VALUE_NUMBER) {
+                        start = parser.longValue();
+                    } else if("doc_count".equals(bucketField) && token == XContentParser.Token.VALUE_NUMBER) {
+                        count = parser.longValue();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                buckets.add(new DateHistogramBucket(start, count));
+            }
+        }
+    }
+
+    private static long readDocCount(final XContentParser parser) throws IOException {
+        long count = 0;
+        while(parser.nextToken() == XContentParser.Token.FIELD_NAME) {
+            final String field = parser.currentName();
+            final XContentParser.Token token = parser.nextToken();
+            if("doc_count".equals(field) && token == XContentParser.Token.VALUE_NUMBER) {
+                count = parser.longValue();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * readBulk
+     *
+     * Reads the items of a bulk response, in the order of the bulk request.
+     *
+     * @param content InputStream
+     * @return List<BulkItem>
+     * @throws IOException
+     */
+    static List<BulkItem> readBulk(final InputStream content) throws IOException {
+        final List<BulkItem> items = new ArrayList<>();
+        try(XContentParser parser = XContentType.JSON.xContent().createParser(NamedXContentRegistry.EMPTY, content)) {
+            expect(parser.nextToken(), XContentParser.Token.START_OBJECT);
+            while(parser.nextToken() == XContentParser.Token.FIELD_NAME) {
+                final String field = parser.currentName();
+                final XContentParser.Token token = parser.nextToken();
+                if(!"items".equals(field) || token != XContentParser.Token.START_ARRAY) {
+                    parser.skipChildren();
+                    continue;
+                }
+                while(parser.nextToken() == XContentParser.Token.START_OBJECT) {
+                    // Each item is keyed by its action, e.g. {"index": {...}}
+                    expect(parser.nextToken(), XContentParser.Token.FIELD_NAME);
+                    expect(parser.nextToken(), XContentParser.Token.START_OBJECT);
+                    items.add(readBulkItem(parser));
+                    expect(parser.nextToken(), XContentParser.Token.END_OBJECT);
+                }
+            }
+        }
+        return items;
+    }
+
+    private static BulkItem readBulkItem(final XContentParser parser) throws IOException {
+        int status = 0;
+        String errorType = null;
+        String errorReason = null;
+        while(parser.nextToken() == XContentParser.Token.FIELD_NAME) {
+            final String field = parser.currentName();
+            final XContentParser.Token token = parser.nextToken();
+            if("status".equals(field) && token == XContentParser.Token.VALUE_NUMBER) {
+                status = parser.intValue();
+            } else if("error".equals(field) && token == XContentParser.Token.START_OBJECT) {
+                while(parser.nextToken() == XContentParser.Token.FIELD_NAME) {
+                    final String errorField = parser.currentName();
+                    final XContentParser.Token errorToken = parser.nextToken();
+                    if("type".equals(errorField) && errorToken.isValue()) {
+                        errorType = parser.text();
+                    } else if("reason".equals(errorField) && errorToken.isValue()) {
+                        errorReason = parser.text();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else if("error".equals(field) && token.isValue()) {
+                errorType = "error";
+                errorReason = parser.text();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new BulkItem(status, errorType, errorReason);
+    }
+
+    private static void expect(final XContentParser.Token token, final XContentParser.Token expected)
+            throws IOException {
+        if(token != expected) {
+            throw new IOException(String.format("Unexpected ES response, found %s instead of %s", token, expected));
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package org.russpollock.rss.repository.ingest;
+
+import org.russpollock.rss.metrics.Counter;
+import org.russpollock.rss.metrics.DefaultMetricsRegistry;
+import org.russpollock.rss.metrics.MetricsRegistry;
+import org.russpollock.rss.models.Article;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ArticleDeduplicator
+ *
+ * Ingest side filter that drops Articles whose fingerprint matches the one last indexed under the same URL,
+ * so unchanged feed items are not reindexed on every poll.
+ * Fingerprints are only recorded once the cluster acknowledged the index, a failed or rejected item is
+ * therefore sent again next time. Deleted articles must be forgotten so they can be indexed again.
+ * Counts checked and skipped articles as "dedup.checked" and "dedup.skipped".
+ */
+public class ArticleDeduplicator implements Closeable {
+    private static final Logger LOGGER = LogManager.getLogger(ArticleDeduplicator.class);
+    private final FingerprintStore store;
+    private final Counter checked;
+    private final Counter skipped;
+
+    public ArticleDeduplicator(final FingerprintStore store) {
+        this(store, DefaultMetricsRegistry.getInstance());
+    }
+
+    public ArticleDeduplicator(final FingerprintStore store, final MetricsRegistry metricsRegistry) {
+        this.store = store;
+        this.checked = metricsRegistry.counter("dedup.checked");
+        this.skipped = metricsRegistry.counter("dedup.skipped");
+    }
+
+    public FingerprintStore getStore() {
+        return store;
+    }
+
+    /**
+     * changedFingerprint
+     *
+     * @param article Article
+     * @return long fingerprint of the article, or 0 if it is unchanged since it was last indexed
+     */
+    public long changedFingerprint(final Article article) {
+        checked.increment();
+        final long fingerprint = ArticleFingerprinter.fingerprint(article);
+        if(article.URL != null && store.get(ArticleFingerprinter.urlKey(article.URL)) == fingerprint) {
+            LOGGER.debug(String.format("Skipping unchanged article URL: %s", article.URL));
+            skipped.increment();
+            return 0;
+        }
+        return fingerprint;
+    }
+
+    /**
+     * filterChanged
+     *
+     * Removes unchanged articles from a list, fingerprints of the remaining ones are added to fingerprints.
+     *
+     * @param articles List of Articles
+     * @param fingerprints List<Long> receives the fingerprint of each returned article, may be null
+     * @return List of changed Articles
+     */
+    public List<Article> filterChanged(final List<Article> articles, final List<Long> fingerprints) {
+        final List<Article> changed = new ArrayList<>(articles.size());
+        for(Article article: articles) {
+            final long fingerprint = changedFingerprint(article);
+            if(fingerprint != 0) {
+                changed.add(article);
+                if(fingerprints != null) {
+                    fingerprints.add(fingerprint);
+                }
+            }
+        }
+        if(changed.size() < articles.size()) {
+            LOGGER.info(String.format("Skipping %s unchanged of %s articles",
+                    articles.size() - changed.size(), articles.size()));
+        }
+        return changed;
+    }
+
+    /**
+     * recordIndexed
+     *
+     * Records the fingerprint of an article the cluster acknowledged.
+     *
+     * @param url String article URL
+     * @param fingerprint long from changedFingerprint
+     */
+    public void recordIndexed(final String url, final long fingerprint) {
+        if(url != null && fingerprint != 0) {
+            store.put(ArticleFingerprinter.urlKey(url), fingerprint);
+        }
+    }
+
+    /**
+     * recordIndexed
+     *
+     * @param article Article the cluster acknowledged
+     */
+    public void recordIndexed(final Article article) {
+        recordIndexed(article.URL, ArticleFingerprinter.fingerprint(article));
+    }
+
+    /**
+     * forget
+     *
+     * Drops the fingerprint of a deleted or failed article so it is indexed on its next save.
+     *
+     * @param url String article URL
+     */
+    public void forget(final String url) {
+        if(url != null) {
+            store.remove(ArticleFingerprinter.urlKey(url));
+        }
+    }
+
+    public long getCheckedCount() {
+        return checked.getCount();
+    }
+
+    public long getSkippedCount() {
+        return skipped.getCount();
+    }
+
+    /**
+     * close
+     *
+     * Flushes and closes the FingerprintStore.
+     */
+    @Override
+    public void close() {
+        store.close();
+    }
+}
@@ -0,0 +1,124 @@
+package org.russpollock.rss.repository.ingest;
+
+import org.russpollock.rss.models.Article;
+import org.russpollock.rss.models.Link;
+import org.russpollock.rss.models.Tag;
+import org.elasticsearch.common.hash.MurmurHash3;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ArticleFingerprinter
+ *
+ * 64 bit MurmurHash3 fingerprints of Articles and their URLs.
+ * The fingerprint covers every field a reader sees: URL, published, updated, contentType, content,
+ * author, title, description, links, tags and source. `created` and the id are left out since
+ * they are set at ingest time and change on every poll of an unchanged item.
+ * Neither hash is ever 0, which FingerprintStore reserves.
+ */
+public final class ArticleFingerprinter {
+    private static final long SEED = 0x5f3759dfL;
+    private static final ThreadLocal<Buffer> BUFFERS = ThreadLocal.withInitial(Buffer::new);
+
+    private ArticleFingerprinter() {}
+
+    /**
+     * fingerprint
+     *
+     * @param article Article
+     * @return long non zero fingerprint
+     */
+    public static long fingerprint(final Article article) {
+        final Buffer buffer = BUFFERS.get().reset();
+        buffer.write(article.URL);
+        buffer.write(article.published);
+        buffer.write(article.updated);
+        buffer.write(article.contentType);
+        buffer.write(article.content);
+        buffer.write(article.author);
+        buffer.write(article.title);
+        buffer.write(article.description);
+        buffer.write(article.source);
+        final List<Link> links = article.links;
+        buffer.writeInt((links == null) ? -1 : links.size());
+        if(links != null) {
+            for(Link link: links) {
+                buffer.write((link == null) ? null : link.href);
+                buffer.write((link == null) ? null : link.rel);
+                buffer.write((link == null) ? null : link.type);
+            }
+        }
+        final List<Tag> tags = article.tags;
+        buffer.writeInt((tags == null) ? -1 : tags.size());
+        if(tags != null) {
+            for(Tag tag: tags) {
+                buffer.write((tag == null) ? null : tag.tag);
+                buffer.write((tag == null) ? null : tag.tagType);
+            }
+        }
+        return buffer.hash();
+    }
+
+    /**
+     * urlKey
+     *
+     * @param url String article URL
+     * @return long non zero hash of the URL
+     */
+    public static long urlKey(final String url) {
+        return BUFFERS.get().reset().write(url).hash();
+    }
+
+    /**
+     * Buffer
+     *
+     * Reusable per thread byte buffer. Strings are written as their UTF-16 code units with a length
+     * prefix so no charset encoding is needed and field boundaries can not shift between fields.
+     */
+    private static class Buffer {
+        private final MurmurHash3.Hash128 hash = new MurmurHash3.Hash128();
+        private byte[] bytes = new byte[4096];
+        private int length;
+
+        Buffer reset() {
+            length = 0;
+            return this;
+        }
+
+        Buffer write(final String value) {
+            if(value == null) {
+                return writeInt(-1);
+            }
+            writeInt(value.length());
+            ensure(value.length() * 2);
+            for(int i = 0; i < value.length(); i++) {
+                final char c = value.charAt(i);
+                bytes[length++] = (byte) (c >>> 8);
+                bytes[length++] = (byte) c;
+            }
+            return this;
+        }
+
+        Buffer writeInt(final int value) {
+            ensure(4);
+            bytes[length++] = (byte) (value >>> 24);
+            bytes[length++] = (byte) (value >>> 16);
+            bytes[length++] = (byte) (value >>> 8);
+            bytes[length++] = (byte) value;
+            return this;
+        }
+
+        long hash() {
+            MurmurHash3.hash128(bytes, 0, length, SEED, hash);
+            final long value = hash.h1 ^ hash.h2;
+            return (value == 0) ? 1 : value;
+        }
+
+        private void ensure(final int extra) {
+            if(length + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+            }
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package org.russpollock.rss.repository.ingest;
+
+import org.russpollock.rss.models.Article;
+import org.russpollock.rss.repository.ArticleCodec;
+import org.russpollock.rss.repository.ArticleRouting;
+import org.russpollock.rss.repository.DatastoreMetrics;
+import org.russpollock.rss.repository.EsArticleDatastore;
+import org.russpollock.rss.repository.TimePartitioner;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.TimeValue;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ArticleIngestor
+ *
+ * Long lived bulk indexing pipeline for Articles.
+ * Articles are accumulated and flushed as a bulk by document count, estimated byte size or time,
+ * whichever comes first. A bounded number of bulks are kept in flight; once that bound is reached
+ * add blocks the producer until a bulk completes. Items rejected by the cluster are retried on their
+ * own with exponential backoff, the rest of the bulk is not resent.
+ * Articles are indexed with their ArticleVersion as external version, so a copy older than the indexed one,
+ * e.g. from a retried bulk or the spool, is refused and counted as superseded.
+ * With an ArticleDeduplicator unchanged articles are dropped in add, and the fingerprints of the
+ * queued ones are recorded once their bulk item succeeded, unless a newer copy was queued meanwhile or
+ * the spool holds articles whose replay is still to come.
+ * With an ArticleSpool, articles that still fail because the cluster is overloaded or unavailable are
+ * spooled to disk, and add writes new articles straight to the spool until it has been replayed,
+ * so producers are neither blocked nor lose articles while the cluster is down.
+ */
+public class ArticleIngestor implements Closeable {
+    private static final Logger LOGGER = LogManager.getLogger(ArticleIngestor.class);
+    private final String writeIndex;
+    private final BulkProcessor processor;
+    private final DatastoreMetrics metrics;
+    private final ArticleDeduplicator deduplicator;
+    private final Map<String, PendingFingerprint> pendingFingerprints = new ConcurrentHashMap<>();
+    private final ArticleSpool spool;
+    private final TimePartitioner partitioner;
+    private final ArticleRouting routing;
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong indexed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong spooled = new AtomicLong();
+    private final AtomicLong superseded = new AtomicLong();
+
+    public ArticleIngestor(final ArticleIngestorBuilder builder) {
+        this.writeIndex = builder.getWriteIndex();
+        this.metrics = DatastoreMetrics.of(builder.getMetricsRegistry());
+        this.deduplicator = builder.getDeduplicator();
+        this.spool = builder.getSpool();
+        this.partitioner = builder.getPartitioner();
+        this.routing = builder.getRouting();
+        BulkProcessor.Builder processorBuilder = BulkProcessor.builder(builder.getClient(), new IngestListener())
+                .setName("article-ingestor")
+                .setBulkActions(builder.getBulkActions())
+                .setBulkSize(new ByteSizeValue(builder.getBulkSizeBytes()))
+                .setConcurrentRequests(builder.getConcurrentRequests())
+                .setBackoffPolicy(BackoffPolicy.exponentialBackoff(
+                        TimeValue.timeValueMillis(builder.getRetryInitialDelayMillis()),
+                        builder.getMaxRetries()));
+
+        if(builder.getFlushIntervalMillis() > 0) {
+            processorBuilder = processorBuilder.setFlushInterval(
+                    TimeValue.timeValueMillis(builder.getFlushIntervalMillis()));
+        }
+        this.processor = processorBuilder.build();
+    }
+
+    /**
+     * add
+     *
+     * Queues an Article for indexing in the writeIndex, or its partition when a TimePartitioner is set.
+     * Blocks when the configured number of bulks are already in flight.
+     * Articles the deduplicator finds unchanged are skipped, while the spool is diverting articles are spooled.
+     *
+     * @param article Article
+     * @return ArticleIngestor
+     */
+    public ArticleIngestor add(final Article article) {
+        final long fingerprint = (deduplicator == null) ? 0 : deduplicator.changedFingerprint(article);
+        if(deduplicator != null && fingerprint == 0) {
+            skipped.incrementAndGet();
+            return this;
+        }
+        final String index = (partitioner == null) ? this.writeIndex : partitioner.indexFor(article);
+        final long version = ArticleVersion.of(article);
+        final IndexRequest request = ArticleVersion.apply(
+                new IndexRequest(index, EsArticleDatastore.ARTICLE_TYPE, article.URL)
+                        .routing((routing == null) ? null : routing.routingFor(article))
+                        .source(ArticleCodec.toXContent(article)), version);
+        submitted.incrementAndGet();
+        if(spool != null && spool.appendIfDiverting(request.index(), article.URL, request.routing(), version,
+                request.source())) {
+            LOGGER.debug(String.format("Spooling article URL: %s", article.URL));
+            spooled.incrementAndGet();
+            return this;
+        }
+        if(fingerprint != 0 && article.URL != null) {
+            pendingFingerprints.put(article.URL, new PendingFingerprint(request, fingerprint));
+        }
+        LOGGER.debug(String.format("Queueing article in %s URL: %s", index, article.URL));
+        processor.add(request);
+        return this;
+    }
+
+    /**
+     * addAll
+     *
+     * Queues a list of Articles for indexing in the writeIndex.
+     *
+     * @param articles List of Articles
+     * @return ArticleIngestor
+     */
+    public ArticleIngestor addAll(final List<Article> articles) {
+        for(Article article: articles) {
+            add(article);
+        }
+        return this;
+    }
+
+    /**
+     * flush
+     *
+     * Sends any pending articles as a bulk without waiting for a flush trigger.
+     */
+    public void flush() {
+        processor.flush();
+    }
+
+    /**
+     * awaitClose
+     *
+     * Flushes pending articles and waits for all in flight bulks to complete.
+     *
+     * @param timeout long
+     * @param unit TimeUnit
+     * @return boolean true if every bulk completed before the timeout
+     * @throws InterruptedException
+     */
+    public boolean awaitClose(final long timeout, final TimeUnit unit) throws InterruptedException {
+        return processor.awaitClose(timeout, unit);
+    }
+
+    /**
+     * close
+     *
+     * Flushes pending articles and stops accepting new ones. In flight bulks are not awaited.
+     */
+    @Override
+    public void close() {
+        processor.close();
+    }
+
+    public long getSubmittedCount() {
+        return submitted.get();
+    }
+
+    public long getIndexedCount() {
+        return indexed.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    public long getSkippedCount() {
+        return skipped.get();
+    }
+
+    public long getSpooledCount() {
+        return spooled.get();
+    }
+
+    /**
+     * getSupersededCount
+     *
+     * @return long number of articles the cluster refused because a newer copy was already indexed
+     */
+    public long getSupersededCount() {
+        return superseded.get();
+    }
+
+    private class IngestListener implements BulkProcessor.Listener {
+        @Override
+        public void beforeBulk(final long executionId, final BulkRequest request) {
+            LOGGER.debug(String.format("Executing bulk %s with %s articles (%s bytes) to %s",
+                    executionId, request.numberOfActions(), request.estimatedSizeInBytes(), writeIndex));
+            metrics.recordBulk(request.numberOfActions(), request.estimatedSizeInBytes());
+        }
+
+        @Override
+        public void afterBulk(final long executionId, final BulkRequest request, final BulkResponse response) {
+            final int failures = metrics.recordBulkResponse(response);
+            int supersededItems = 0;
+            for(BulkItemResponse item: response.getItems()) {
+                if(ArticleVersion.isSuperseded(item)) {
+                    supersededItems++;
+                }
+            }
+            if(failures > 0) {
+                LOGGER.error(String.format("Failed to index %s of %s articles in bulk %s \n%s",
+                        failures, request.numberOfActions(), executionId, response.buildFailureMessage()));
+            }
+            indexed.addAndGet(request.numberOfActions() - failures - supersededItems);
+            superseded.addAndGet(supersededItems);
+            final int spooledFailures = (failures > 0 && spool != null) ? spoolRetryable(request, response) : 0;
+            failed.addAndGet(failures - spooledFailures);
+            if(deduplicator != null) {
+                recordFingerprints(request, response);
+            }
+        }
+
+        @Override
+        public void afterBulk(final long executionId, final BulkRequest request, final Throwable failure) {
+            LOGGER.error(String.format("Failed to execute bulk %s with %s articles",
+                    executionId, request.numberOfActions()), failure);
+            metrics.recordBulkFailure(request.numberOfActions(), failure);
+            if(deduplicator != null) {
+                recordFingerprints(request, null);
+            }
+            if(spool == null) {
+                failed.addAndGet(request.numberOfActions());
+                return;
+            }
+            spool.divert();
+            for(DocWriteRequest<?> action: request.requests()) {
+                spool.append(action.index(), action.id(), action.routing(), ArticleVersion.of(action),
+                        ((IndexRequest) action).source());
+            }
+            spooled.addAndGet(request.numberOfActions());
+        }
+
+        /**
+         * recordFingerprints
+         *
+         * Resolves the pending fingerprints of a bulk's articles, recording the acknowledged ones.
+         * A fingerprint is left to a newer copy of its article that is pending, and not recorded while the
+         * spool holds articles since a spooled copy of the article may still be replayed.
+         * Bulk items are in the order of the bulk's requests.
+         *
+         * @param request BulkRequest
+         * @param response BulkResponse or null if the bulk failed
+         */
+        private void recordFingerprints(final BulkRequest request, final BulkResponse response) {
+            final BulkItemResponse[] items = (response == null) ? null : response.getItems();
+            final boolean spooling = spool != null && !spool.isEmpty();
+            final List<DocWriteRequest> actions = request.requests();
+            for(int i = 0; i < actions.size(); i++) {
+                final DocWriteRequest<?> action = actions.get(i);
+                final PendingFingerprint pending = pendingFingerprints.get(action.id());
+                if(pending == null || pending.request != action || !pendingFingerprints.remove(action.id(), pending)) {
+                    continue;
+                }
+                if(!spooling && items != null && i < items.length && !items[i].isFailed()) {
+                    deduplicator.recordIndexed(action.id(), pending.fingerprint);
+                }
+            }
+        }
+
+        /**
+         * spoolRetryable
+         *
+         * Spools the items of a bulk that failed because of cluster load or availability.
+         *
+         * @return int number of spooled items
+         */
+        private int spoolRetryable(final BulkRequest request, final BulkResponse response) {
+            final Map<String, IndexRequest> requests = new HashMap<>();
+            for(DocWriteRequest<?> action: request.requests()) {
+                requests.put(action.id(), (IndexRequest) action);
+            }
+            int count = 0;
+            for(BulkItemResponse item: response.getItems()) {
+                if(item.isFailed() && SpoolReplayer.isRetryable(item.getFailure().getStatus())
+                        && requests.containsKey(item.getId())) {
+                    if(count++ == 0) {
+                        spool.divert();
+                    }
+                    final IndexRequest rejected = requests.get(item.getId());
+                    spool.append(item.getIndex(), item.getId(), rejected.routing(), ArticleVersion.of(rejected),
+                            rejected.source());
+                }
+            }
+            if(count > 0) {
+                LOGGER.warn(String.format("Spooled %s rejected articles to %s", count, spool.getDirectory()));
+                spooled.addAndGet(count);
+            }
+            return count;
+        }
+    }
+
+    private static class PendingFingerprint {
+        private final IndexRequest request;
+        private final long fingerprint;
+
+        PendingFingerprint(final IndexRequest request, final long fingerprint) {
+            this.request = request;
+            this.fingerprint = fingerprint;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package org.russpollock.rss.repository.ingest;
+
+import org.russpollock.rss.metrics.DefaultMetricsRegistry;
+import org.russpollock.rss.metrics.MetricsRegistry;
+import org.russpollock.rss.repository.ArticleRouting;
+import org.russpollock.rss.repository.TimePartitioner;
+import org.elasticsearch.client.Client;
+
+public class ArticleIngestorBuilder {
+    private final Client client;
+    private final String writeIndex;
+    private int bulkActions = 1000;
+    private long bulkSizeBytes = 5 * 1024 * 1024;
+    private long flushIntervalMillis = 5000;
+    private int concurrentRequests = 2;
+    private long retryInitialDelayMillis = 50;
+    private int maxRetries = 8;
+    private MetricsRegistry metricsRegistry = DefaultMetricsRegistry.getInstance();
+    private ArticleDeduplicator deduplicator;
+    private ArticleSpool spool;
+    private TimePartitioner partitioner;
+    private ArticleRouting routing;
+
+    public ArticleIngestorBuilder(final Client client, final String writeIndex) {
+        this.client = client;
+        this.writeIndex = writeIndex;
+    }
+
+    /**
+     * setBulkActions
+     *
+     * Flush a bulk once it holds this many articles. Values below 1 disable the count trigger.
+     *
+     * @param bulkActions int
+     * @return ArticleIngestorBuilder
+     */
+    public ArticleIngestorBuilder setBulkActions(final int bulkActions) {
+        this.bulkActions = (bulkActions < 1) ? -1 : bulkActions;
+        return this;
+    }
+
+    /**
+     * setBulkSizeBytes
+     *
+     * Flush a bulk once its estimated size reaches this many bytes. Values below 1 disable the size trigger.
+     *
+     * @param bulkSizeBytes long
+     * @return ArticleIngestorBuilder
+     */
+    public ArticleIngestorBuilder setBulkSizeBytes(final long bulkSizeBytes) {
+        this.bulkSizeBytes = (bulkSizeBytes < 1) ? -1 : bulkSizeBytes;
+        return this;
+    }
+
+    /**
+     * setFlushIntervalMillis
+     *
+     * Flush any pending articles on this interval. Values below 1 disable the time trigger.
+     *
+     * @param flushIntervalMillis long
+     * @return ArticleIngestorBuilder
+     */
+    public ArticleIngestorBuilder setFlushIntervalMillis(final long flushIntervalMillis) {
+        this.flushIntervalMillis = (flushIntervalMillis < 1) ? 0 : flushIntervalMillis;
+        return this;
+    }
+
+    /**
+     * setConcurrentRequests
+     *
+     * Number of bulks allowed in flight while new articles are accumulated.
+     * Producers block in ArticleIngestor.add once this many bulks are outstanding.
+     * 0 executes each bulk synchronously on the producer thread.
+     *
+     * @param concurrentRequests int
+     * @return ArticleIngestorBuilder
+     */
+    public ArticleIngestorBuilder setConcurrentRequests(final int concurrentRequests) {
+        this.concurrentRequests = (concurrentRequests < 0) ? 0 : concurrentRequests;
+        return this;
+    }
+
+    /**
+     * setRetryBackoff
+     *
+     * Exponential backoff used to retry the items of a bulk that were rejected by the cluster.
+     *
+     * @param initialDelayMillis long
+     * @param maxRetries int
+     * @return ArticleIngestorBuilder
+     */
+    public ArticleIngestorBuilder setRetryBackoff(final long initialDelayMillis, final int maxRetries) {
+        this.retryInitialDelayMillis = (initialDelayMillis < 0) ? 0 : initialDelayMillis;
+        this.maxRetries = (maxRetries < 0) ? 0 : maxRetries;
+        return this;
+    }
+
+    /**
+     * setMetricsRegistry
+     *
+     * Registry bulk sizes and failed items are recorded in. Defaults to the shared DefaultMetricsRegistry.
+     *
+     * @param metricsRegistry MetricsRegistry
+     * @return ArticleIngestorBuilder
+     */
+    public ArticleIngestorBuilder setMetricsRegistry(final MetricsRegistry metricsRegistry) {
+        this.metricsRegistry = metricsRegistry;
+        return this;
+    }
+
+    /**
+     * setDeduplicator
+     *
+     * Drops articles that are unchanged since they were last indexed before they are queued.
+     * Not set by default, every added article is indexed.
+     *
+     * @param deduplicator ArticleDeduplicator
+     * @return ArticleIngestorBuilder
+     */
+    public ArticleIngestorBuilder setDeduplicator(final ArticleDeduplicator deduplicator) {
+        this.deduplicator = deduplicator;
+        return this;
+    }
+
+    /**
+     * setSpool
+     *
+     * Spools articles the cluster rejected or could not be reached for instead of dropping them,
+     * and diverts new articles to the spool until a SpoolReplayer drained it.
+     * Not set by default, failed articles are logged and counted.
+     *
+     * @param spool ArticleSpool
+     * @return ArticleIngestorBuilder
+     */
+    public ArticleIngestorBuilder setSpool(final ArticleSpool spool) {
+        this.spool = spool;
+        return this;
+    }
+
+    /**
+     * setPartitioner
+     *
+     * Indexes each article in its time partition instead of the writeIndex.
+     *
+     * @param partitioner TimePartitioner
+     * @return ArticleIngestorBuilder
+     */
+    public ArticleIngestorBuilder setPartitioner(final TimePartitioner partitioner) {
+        this.partitioner = partitioner;
+        return this;
+    }
+
+    /**
+     * setRouting
+     *
+     * Routes each article to a shard by its routing key instead of its id.
+     *
+     * @param routing ArticleRouting
+     * @return ArticleIngestorBuilder
+     */
+    public ArticleIngestorBuilder setRouting(final ArticleRouting routing) {
+        this.routing = routing;
+        return this;
+    }
+
+    public Client getClient() {
+        return client;
+    }
+
+    public String getWriteIndex() {
+        return writeIndex;
+    }
+
+    public int getBulkActions() {
+        return bulkActions;
+    }
+
+    public long getBulkSizeBytes() {
+        return bulkSizeBytes;
+    }
+
+    public long getFlushIntervalMillis() {
+        return flushIntervalMillis;
+    }
+
+    public int getConcurrentRequests() {
+        return concurrentRequests;
+    }
+
+    public long getRetryInitialDelayMillis() {
+        return retryInitialDelayMillis;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public MetricsRegistry getMetricsRegistry() {
+        return metricsRegistry;
+    }
+
+    public ArticleDeduplicator getDeduplicator() {
+        return deduplicator;
+    }
+
+    public ArticleSpool getSpool() {
+        return spool;
+    }
+
+    public TimePartitioner getPartitioner() {
+        return partitioner;
+    }
+
+    public ArticleRouting getRouting() {
+        return routing;
+    }
+
+    /**
+     * build
+     *
+     * Builds and starts an ArticleIngestor
+     *
+     * @return ArticleIngestor
+     * @throws NullPointerException
+     */
+    public ArticleIngestor build() throws NullPointerException {
+        if(this.client == null) {
+            throw new NullPointerException("client must be set before building an ingestor.");
+        }
+        if(this.writeIndex == null && this.partitioner == null) {
+            throw new NullPointerException("writeIndex or partitioner must be set before building an ingestor.");
+        }
+        if(this.metricsRegistry == null) {
+            throw new NullPointerException("metricsRegistry must be set before building an ingestor.");
+        }
+        return new ArticleIngestor(this);
+    }
+}
@@ -0,0 +1,605 @@
+package org.russpollock.rss.repository.ingest;
+
+import org.russpollock.rss.models.Article;
+import org.russpollock.rss.repository.ArticleCodec;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * ArticleSpool
+ *
+ * Disk backed append only log of serialized Articles that could not be indexed.
+ * The log is split into memory mapped segment files named by sequence number. Each record is
+ * [int length][int crc32][int index length][index UTF-8][int id length][id UTF-8]
+ * [int routing length, -1 for none][routing UTF-8][long version][source JSON]; a 0 length ends a segment.
+ * The version is the ArticleVersion of the article, replayed as its external version, or -1 for none.
+ * A record with an empty source is a delete: articles deleted while the spool holds records are spooled
+ * as deletes too, so replay does not bring back a copy spooled before the delete.
+ * Records are read back in append order with poll and only dropped once committed, the committed
+ * position is kept in a cursor file so a restart resumes where replay stopped. Fully committed
+ * segments are deleted. A record torn by a crash fails its checksum and ends the segment.
+ *
+ * While diverting, the ingest path appends every new article to the spool instead of the cluster,
+ * SpoolReplayer ends diverting once it drained the spool. Bulks already in flight when diverting starts
+ * still reach the cluster, so the spool may hold an older copy of an article than the index: the version
+ * makes ES refuse such a copy on replay.
+ *
+ * Appends go to the page cache, force writes the mapped segments to disk.
+ */
+public class ArticleSpool implements Closeable {
+    public static final int DEFAULT_SEGMENT_BYTES = 64 * 1024 * 1024;
+    private static final Logger LOGGER = LogManager.getLogger(ArticleSpool.class);
+    private static final String SEGMENT_SUFFIX = ".spool";
+    private static final String CURSOR_FILE = "cursor";
+    private static final int RECORD_HEADER_BYTES = 8;
+    private final Path directory;
+    private final int segmentBytes;
+    private final TreeMap<Long, Path> segments = new TreeMap<>();
+    private final CRC32 crc = new CRC32();
+    private MappedByteBuffer cursor;
+    private long committedSegment;
+    private int committedPosition;
+    private long writeSegment;
+    private MappedByteBuffer writeBuffer;
+    private long readSegment;
+    private int readPosition;
+    private MappedByteBuffer readBuffer;
+    private long readBufferSegment = -1;
+    private long pendingBytes;
+    private boolean diverting;
+    private boolean closed;
+
+    /**
+     * ArticleSpool
+     *
+     * @param directory Path directory of the segment files, created if missing
+     * @throws UncheckedIOException
+     */
+    public ArticleSpool(final Path directory) throws UncheckedIOException {
+        this(directory, DEFAULT_SEGMENT_BYTES);
+    }
+
+    /**
+     * ArticleSpool
+     *
+     * Opens the spool in directory, resuming from the committed position of a previous run.
+     *
+     * @param directory Path directory of the segment files, created if missing
+     * @param segmentBytes int size of a segment file
+     * @throws UncheckedIOException
+     */
+    public ArticleSpool(final Path directory, final int segmentBytes) throws UncheckedIOException {
+        this.directory = directory;
+        this.segmentBytes = Math.max(segmentBytes, 4096);
+        try {
+            Files.createDirectories(directory);
+            open();
+        } catch(IOException e) {
+            throw new UncheckedIOException(String.format("Unable to open article spool %s", directory), e);
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * append
+     *
+     * @param index String index the article is written to
+     * @param article Article
+     * @throws UncheckedIOException
+     */
+    public void append(final String index, final Article article) throws UncheckedIOException {
+        append(index, article.URL, null, ArticleVersion.of(article), ArticleCodec.toXContent(article).bytes());
+    }
+
+    /**
+     * append
+     *
+     * Appends the JSON source of an article routed by id to the end of the spool, replayed without a version.
+     *
+     * @param index String index the article is written to
+     * @param id String document id, the article URL
+     * @param source BytesReference article JSON source
+     * @throws UncheckedIOException
+     */
+    public void append(final String index, final String id, final BytesReference source)
+            throws UncheckedIOException {
+        append(index, id, null, ArticleVersion.NONE, source);
+    }
+
+    /**
+     * append
+     *
+     * Appends the JSON source of an article to the end of the spool.
+     *
+     * @param index String index the article is written to
+     * @param id String document id, the article URL
+     * @param routing String shard routing or null
+     * @param version long ArticleVersion of the article or ArticleVersion.NONE
+     * @param source BytesReference article JSON source
+     * @throws UncheckedIOException
+     */
+    public synchronized void append(final String index, final String id, final String routing,
+                                    final long version, final BytesReference source) throws UncheckedIOException {
+        if(closed) {
+            throw new IllegalStateException(String.format("Article spool %s is closed", directory));
+        }
+        final byte[] indexBytes = index.getBytes(StandardCharsets.UTF_8);
+        final byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        final byte[] routingBytes = (routing == null) ? new byte[0] : routing.getBytes(StandardCharsets.UTF_8);
+        final int sourceOffset = 20 + indexBytes.length + idBytes.length + routingBytes.length;
+        final byte[] body = new byte[sourceOffset + source.length()];
+        ByteBuffer.wrap(body).putInt(indexBytes.length).put(indexBytes).putInt(idBytes.length).put(idBytes)
+                .putInt((routing == null) ? -1 : routingBytes.length).put(routingBytes).putLong(version);
+        final BytesRef sourceBytes = source.toBytesRef();
+        System.arraycopy(sourceBytes.bytes, sourceBytes.offset, body, sourceOffset, sourceBytes.length);
+        crc.reset();
+        crc.update(body, 0, body.length);
+        try {
+            // Keep room for the 0 length that ends the segment
+            if(writeBuffer.remaining() < RECORD_HEADER_BYTES + body.length + 4) {
+                rollSegment(RECORD_HEADER_BYTES + body.length + 4);
+            }
+        } catch(IOException e) {
+            throw new UncheckedIOException(String.format("Unable to add a segment to article spool %s", directory), e);
+        }
+        writeBuffer.putInt(body.length);
+        writeBuffer.putInt((int) crc.getValue());
+        writeBuffer.put(body);
+        pendingBytes += RECORD_HEADER_BYTES + body.length;
+    }
+
+    /**
+     * appendIfDiverting
+     *
+     * Appends the article only while the spool is diverting, atomically with respect to stopDiverting.
+     *
+     * @param index String index the article is written to
+     * @param id String document id, the article URL
+     * @param routing String shard routing or null
+     * @param version long ArticleVersion of the article or ArticleVersion.NONE
+     * @param source BytesReference article JSON source
+     * @return boolean true if the article was spooled
+     * @throws UncheckedIOException
+     */
+    public synchronized boolean appendIfDiverting(final String index, final String id, final String routing,
+                                                  final long version, final BytesReference source)
+            throws UncheckedIOException {
+        if(!diverting) {
+            return false;
+        }
+        append(index, id, routing, version, source);
+        return true;
+    }
+
+    /**
+     * appendDeleteIfPending
+     *
+     * Appends a delete of an article while the spool holds records, so it is replayed after any
+     * spooled copy of the article. The replay deletes every copy of the id found in index.
+     *
+     * @param index String index or index pattern the article is deleted from
+     * @param id String document id, the article URL
+     * @return boolean true if the delete was spooled
+     * @throws UncheckedIOException
+     */
+    public synchronized boolean appendDeleteIfPending(final String index, final String id)
+            throws UncheckedIOException {
+        if(isEmpty()) {
+            return false;
+        }
+        append(index, id, null, ArticleVersion.NONE, BytesArray.EMPTY);
+        return true;
+    }
+
+    /**
+     * divert
+     *
+     * Sends new articles of the ingest path to the spool until it has been drained.
+     */
+    public synchronized void divert() {
+        if(!diverting) {
+            LOGGER.warn(String.format("Diverting articles to spool %s", directory));
+        }
+        diverting = true;
+    }
+
+    public synchronized boolean isDiverting() {
+        return diverting;
+    }
+
+    /**
+     * stopDivertingIfDrained
+     *
+     * Ends diverting when every record has been committed.
+     *
+     * @return boolean true if the spool is drained
+     */
+    public synchronized boolean stopDivertingIfDrained() {
+        if(!isEmpty()) {
+            return false;
+        }
+        if(diverting) {
+            LOGGER.info(String.format("Article spool %s drained", directory));
+        }
+        diverting = false;
+        return true;
+    }
+
+    /**
+     * poll
+     *
+     * Reads the next records after the last polled one without committing them.
+     *
+     * @param maxRecords int
+     * @return Batch, empty when every appended record has been polled
+     * @throws UncheckedIOException
+     */
+    public synchronized Batch poll(final int maxRecords) throws UncheckedIOException {
+        final List<SpooledArticle> articles = new ArrayList<>(Math.min(maxRecords, 1024));
+        long bytes = 0;
+        try {
+            while(articles.size() < maxRecords) {
+                final ByteBuffer buffer = readBuffer();
+                if(buffer == null) {
+                    break;
+                }
+                buffer.position(readPosition);
+                final int length = (buffer.remaining() < RECORD_HEADER_BYTES) ? 0 : buffer.getInt();
+                if(length <= 0 || length > buffer.remaining() - 4) {
+                    if(readSegment == writeSegment) {
+                        break;
+                    }
+                    // End of a finished segment
+                    readSegment = segments.higherKey(readSegment);
+                    readPosition = 0;
+                    continue;
+                }
+                final int checksum = buffer.getInt();
+                final byte[] body = new byte[length];
+                buffer.get(body);
+                crc.reset();
+                crc.update(body, 0, body.length);
+                if((int) crc.getValue() != checksum) {
+                    LOGGER.error(String.format("Corrupt record in spool segment %s at %s, skipping the rest of the segment",
+                            readSegment, readPosition));
+                    if(readSegment == writeSegment) {
+                        break;
+                    }
+                    readSegment = segments.higherKey(readSegment);
+                    readPosition = 0;
+                    continue;
+                }
+                readPosition = buffer.position();
+                final ByteBuffer record = ByteBuffer.wrap(body);
+                final int indexLength = record.getInt();
+                final String index = new String(body, 4, indexLength, StandardCharsets.UTF_8);
+                record.position(4 + indexLength);
+                final int idLength = record.getInt();
+                record.position(8 + indexLength + idLength);
+                final int routingLength = record.getInt();
+                final int routingOffset = 12 + indexLength + idLength;
+                final int versionOffset = routingOffset + Math.max(0, routingLength);
+                final int sourceOffset = versionOffset + 8;
+                articles.add(new SpooledArticle(index,
+                        new String(body, 8 + indexLength, idLength, StandardCharsets.UTF_8),
+                        (routingLength < 0) ? null : new String(body, routingOffset, routingLength, StandardCharsets.UTF_8),
+                        record.getLong(versionOffset),
+                        new BytesArray(body, sourceOffset, length - sourceOffset)));
+                bytes += RECORD_HEADER_BYTES + length;
+            }
+        } catch(IOException e) {
+            throw new UncheckedIOException(String.format("Unable to read article spool %s", directory), e);
+        }
+        return new Batch(articles, readSegment, readPosition, bytes);
+    }
+
+    /**
+     * commit
+     *
+     * Marks every record up to the end of a polled batch as replayed and deletes finished segments.
+     * Batches must be committed in the order they were polled. Committing an empty batch moves
+     * past corrupt records that poll skipped.
+     *
+     * @param batch Batch
+     * @throws UncheckedIOException
+     */
+    public synchronized void commit(final Batch batch) throws UncheckedIOException {
+        committedSegment = batch.endSegment;
+        committedPosition = batch.endPosition;
+        cursor.putLong(0, committedSegment);
+        cursor.putInt(8, committedPosition);
+        pendingBytes = isEmpty() ? 0 : Math.max(0, pendingBytes - batch.bytes);
+        try {
+            while(!segments.isEmpty() && segments.firstKey() < committedSegment) {
+                final Path finished = segments.remove(segments.firstKey());
+                if(readBufferSegment >= 0 && readBufferSegment < committedSegment) {
+                    readBuffer = null;
+                    readBufferSegment = -1;
+                }
+                Files.deleteIfExists(finished);
+                LOGGER.debug(String.format("Deleted replayed spool segment %s", finished));
+            }
+        } catch(IOException e) {
+            throw new UncheckedIOException(String.format("Unable to delete replayed segments of %s", directory), e);
+        }
+    }
+
+    /**
+     * rewind
+     *
+     * Moves the read position back to the last commit, so polled but uncommitted records are polled again.
+     */
+    public synchronized void rewind() {
+        readSegment = committedSegment;
+        readPosition = committedPosition;
+    }
+
+    /**
+     * getPendingBytes
+     *
+     * @return long bytes of records not committed yet
+     */
+    public synchronized long getPendingBytes() {
+        return isEmpty() ? 0 : pendingBytes;
+    }
+
+    /**
+     * isEmpty
+     *
+     * @return boolean true if every appended record has been committed
+     */
+    public synchronized boolean isEmpty() {
+        return committedSegment == writeSegment && committedPosition == writeBuffer.position();
+    }
+
+    /**
+     * force
+     *
+     * Writes the current segment and the cursor to disk.
+     */
+    public synchronized void force() {
+        if(writeBuffer != null) {
+            writeBuffer.force();
+        }
+        if(cursor != null) {
+            cursor.force();
+        }
+    }
+
+    /**
+     * close
+     *
+     * Forces the spool to disk. Records not committed are replayed after the spool is reopened.
+     */
+    @Override
+    public synchronized void close() {
+        if(closed) {
+            return;
+        }
+        force();
+        closed = true;
+    }
+
+    private void open() throws IOException {
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for(Path file: files) {
+                final String name = file.getFileName().toString();
+                try {
+                    segments.put(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())), file);
+                } catch(NumberFormatException e) {
+                    LOGGER.warn(String.format("Ignoring unexpected file %s in article spool", file));
+                }
+            }
+        }
+
+        final Path cursorFile = directory.resolve(CURSOR_FILE);
+        try(FileChannel channel = FileChannel.open(cursorFile, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            cursor = channel.map(FileChannel.MapMode.READ_WRITE, 0, 12);
+        }
+        committedSegment = cursor.getLong(0);
+        committedPosition = cursor.getInt(8);
+        if(segments.isEmpty() || committedSegment < segments.firstKey()) {
+            committedSegment = segments.isEmpty() ? 0 : segments.firstKey();
+            committedPosition = 0;
+        }
+
+        if(segments.isEmpty()) {
+            writeSegment = committedSegment;
+            writeBuffer = map(createSegment(writeSegment, segmentBytes));
+        } else {
+            writeSegment = segments.lastKey();
+            writeBuffer = map(segments.get(writeSegment));
+            writeBuffer.position(endOfRecords(writeBuffer));
+        }
+        readSegment = committedSegment;
+        readPosition = committedPosition;
+
+        for(Long segment: segments.tailMap(committedSegment, true).keySet()) {
+            final int start = (segment == committedSegment) ? committedPosition : 0;
+            final int end = (segment == writeSegment) ? writeBuffer.position() : endOfRecords(map(segments.get(segment)));
+            pendingBytes += Math.max(0, end - start);
+        }
+        if(pendingBytes > 0) {
+            // Articles left from a previous run are replayed before new ones are indexed
+            diverting = true;
+            LOGGER.info(String.format("Article spool %s has %s bytes to replay", directory, pendingBytes));
+        }
+    }
+
+    /**
+     * endOfRecords
+     *
+     * Scans a segment for the position after its last valid record.
+     */
+    private int endOfRecords(final MappedByteBuffer segment) {
+        final ByteBuffer buffer = segment.duplicate();
+        final byte[] body = new byte[1024];
+        int position = 0;
+        while(buffer.capacity() - position >= RECORD_HEADER_BYTES) {
+            buffer.position(position);
+            final int length = buffer.getInt();
+            if(length <= 0 || length > buffer.remaining() - 4) {
+                break;
+            }
+            final int checksum = buffer.getInt();
+            crc.reset();
+            for(int remaining = length; remaining > 0; ) {
+                final int chunk = Math.min(remaining, body.length);
+                buffer.get(body, 0, chunk);
+                crc.update(body, 0, chunk);
+                remaining -= chunk;
+            }
+            if((int) crc.getValue() != checksum) {
+                break;
+            }
+            position = buffer.position();
+        }
+        return position;
+    }
+
+    private ByteBuffer readBuffer() throws IOException {
+        if(readSegment == writeSegment) {
+            final ByteBuffer buffer = writeBuffer.duplicate();
+            buffer.limit(writeBuffer.position());
+            return buffer;
+        }
+        if(!segments.containsKey(readSegment)) {
+            final Long next = segments.ceilingKey(readSegment);
+            if(next == null) {
+                return null;
+            }
+            readSegment = next;
+            readPosition = 0;
+            return readBuffer();
+        }
+        if(readBufferSegment != readSegment) {
+            readBuffer = map(segments.get(readSegment));
+            readBufferSegment = readSegment;
+        }
+        return readBuffer.duplicate();
+    }
+
+    private void rollSegment(final int recordBytes) throws IOException {
+        writeBuffer.force();
+        writeSegment++;
+        writeBuffer = map(createSegment(writeSegment, Math.max(segmentBytes, recordBytes)));
+        LOGGER.debug(String.format("Rolled article spool %s to segment %s", directory, writeSegment));
+    }
+
+    private Path createSegment(final long segment, final int bytes) throws IOException {
+        final Path file = directory.resolve(String.format("%020d%s", segment, SEGMENT_SUFFIX));
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+        }
+        segments.put(segment, file);
+        return file;
+    }
+
+    private static MappedByteBuffer map(final Path file) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+        }
+    }
+
+    /**
+     * SpooledArticle
+     *
+     * Index, document id, routing, version and JSON source of a spooled article, or a spooled delete.
+     */
+    public static class SpooledArticle {
+        private final String index;
+        private final String id;
+        private final String routing;
+        private final long version;
+        private final BytesReference source;
+
+        SpooledArticle(final String index, final String id, final String routing, final long version,
+                       final BytesReference source) {
+            this.index = index;
+            this.id = id;
+            this.routing = routing;
+            this.version = version;
+            this.source = source;
+        }
+
+        public String getIndex() {
+            return index;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getRouting() {
+            return routing;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public BytesReference getSource() {
+            return source;
+        }
+
+        public boolean isDelete() {
+            return source.length() == 0;
+        }
+    }
+
+    /**
+     * Batch
+     *
+     * Records returned by one poll and the spool position after them.
+     */
+    public static class Batch {
+        private final List<SpooledArticle> articles;
+        private final long endSegment;
+        private final int endPosition;
+        private final long bytes;
+
+        Batch(final List<SpooledArticle> articles, final long endSegment, final int endPosition, final long bytes) {
+            this.articles = Collections.unmodifiableList(articles);
+            this.endSegment = endSegment;
+            this.endPosition = endPosition;
+            this.bytes = bytes;
+        }
+
+        public List<SpooledArticle> getArticles() {
+            return articles;
+        }
+
+        public boolean isEmpty() {
+            return articles.isEmpty();
+        }
+
+        public int size() {
+            return articles.size();
+        }
+    }
+}
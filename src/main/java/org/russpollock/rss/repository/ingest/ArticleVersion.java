@@ -0,0 +1,117 @@
+package org.russpollock.rss.repository.ingest;
+
+import org.russpollock.rss.models.Article;
+import org.russpollock.rss.utils.Dates;
+import org.elasticsearch.ExceptionsHelper;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.index.VersionType;
+import org.elasticsearch.index.engine.VersionConflictEngineException;
+import org.elasticsearch.rest.RestStatus;
+
+import java.util.Locale;
+
+/**
+ * ArticleVersion
+ *
+ * External version of an article derived from the article itself: its `updated` date, or its `published`
+ * date when it has none, in epoch millis. Writes carry it with the external_gte version type, so ES refuses
+ * a copy older than the indexed one with a version conflict, e.g. one replayed from the ArticleSpool or a
+ * retried bulk arriving after a newer copy, while a copy with the same date overwrites it. Being read from the
+ * article, the version does not depend on the clock of the process writing it.
+ * Articles with neither date are written without a version and the last write wins.
+ */
+public final class ArticleVersion {
+    public static final VersionType VERSION_TYPE = VersionType.EXTERNAL_GTE;
+    public static final String VERSION_TYPE_NAME = VERSION_TYPE.name().toLowerCase(Locale.ROOT);
+    public static final long NONE = -1;
+
+    private ArticleVersion() {}
+
+    /**
+     * of
+     *
+     * @param article Article
+     * @return long version or NONE
+     */
+    public static long of(final Article article) {
+        return of(article.updated, article.published);
+    }
+
+    /**
+     * of
+     *
+     * @param updated String updated date or null
+     * @param published String published date or null
+     * @return long version or NONE
+     */
+    public static long of(final String updated, final String published) {
+        Long millis = (updated == null) ? null : Dates.parseMillis(updated);
+        if(millis == null && published != null) {
+            millis = Dates.parseMillis(published);
+        }
+        return (millis == null || millis <= 0) ? NONE : millis;
+    }
+
+    /**
+     * of
+     *
+     * @param request DocWriteRequest
+     * @return long external version the request carries or NONE
+     */
+    public static long of(final DocWriteRequest<?> request) {
+        return (request.versionType() == VERSION_TYPE && request.version() > 0) ? request.version() : NONE;
+    }
+
+    /**
+     * apply
+     *
+     * Sets the external version of an index request, leaves it unversioned for NONE.
+     *
+     * @param request IndexRequest
+     * @param version long
+     * @return IndexRequest
+     */
+    public static IndexRequest apply(final IndexRequest request, final long version) {
+        return (version > 0) ? request.version(version).versionType(VERSION_TYPE) : request;
+    }
+
+    /**
+     * apply
+     *
+     * Sets the external version of an index request, leaves it unversioned for NONE.
+     *
+     * @param request IndexRequestBuilder
+     * @param version long
+     * @return IndexRequestBuilder
+     */
+    public static IndexRequestBuilder apply(final IndexRequestBuilder request, final long version) {
+        return (version > 0) ? request.setVersion(version).setVersionType(VERSION_TYPE) : request;
+    }
+
+    /**
+     * isSuperseded
+     *
+     * Whether a bulk item was refused because a newer copy of the article is already indexed.
+     *
+     * @param item BulkItemResponse
+     * @return boolean
+     */
+    public static boolean isSuperseded(final BulkItemResponse item) {
+        return item.isFailed() && item.getFailure().getStatus() == RestStatus.CONFLICT;
+    }
+
+    /**
+     * isSuperseded
+     *
+     * Whether an index request failed because a newer copy of the article is already indexed.
+     *
+     * @param failure Throwable
+     * @return boolean
+     */
+    public static boolean isSuperseded(final Throwable failure) {
+        return ExceptionsHelper.unwrapCause(failure) instanceof VersionConflictEngineException;
+    }
+}
@@ -0,0 +1,366 @@
+package org.russpollock.rss.repository.ingest;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * FingerprintStore
+ *
+ * Compact map of URL hash to Article fingerprint, both non zero longs, 16 bytes per entry.
+ * Entries live in an open addressing table in memory. With a spill file the in memory table is
+ * bounded: once it holds maxInMemoryEntries it is merged into an open addressing table in the
+ * memory mapped file, which the OS pages in and out as needed. The spill file is kept between runs
+ * so fingerprints survive restarts. All operations are synchronized on the store.
+ */
+public class FingerprintStore implements Closeable {
+    public static final int DEFAULT_MAX_IN_MEMORY_ENTRIES = 1 << 20;
+    private static final Logger LOGGER = LogManager.getLogger(FingerprintStore.class);
+    private static final long MAGIC = 0x5253534650303031L;
+    private static final int HEADER_BYTES = 16;
+    private static final int SLOT_BYTES = 16;
+    private static final long MIN_FILE_CAPACITY = 1 << 16;
+    private static final long MAX_FILE_CAPACITY = (Integer.MAX_VALUE - HEADER_BYTES) / SLOT_BYTES;
+    private final Path spillFile;
+    private final int maxInMemoryEntries;
+    private LongTable memory;
+    private MappedByteBuffer mapped;
+    private long fileCapacity;
+    private long fileUsed;
+
+    /**
+     * FingerprintStore
+     *
+     * Keeps every entry in memory.
+     */
+    public FingerprintStore() {
+        this.spillFile = null;
+        this.maxInMemoryEntries = Integer.MAX_VALUE;
+        this.memory = new LongTable(1024);
+    }
+
+    /**
+     * FingerprintStore
+     *
+     * Keeps up to maxInMemoryEntries entries in memory and spills the rest to a memory mapped file.
+     * An existing spill file is reopened.
+     *
+     * @param spillFile Path
+     * @param maxInMemoryEntries int
+     * @throws UncheckedIOException
+     */
+    public FingerprintStore(final Path spillFile, final int maxInMemoryEntries) throws UncheckedIOException {
+        this.spillFile = spillFile;
+        this.maxInMemoryEntries = Math.max(1, maxInMemoryEntries);
+        this.memory = new LongTable(Math.min(this.maxInMemoryEntries, 1024));
+        try {
+            if(Files.exists(spillFile) && Files.size(spillFile) > HEADER_BYTES) {
+                openFile(spillFile);
+            } else {
+                createFile(spillFile, MIN_FILE_CAPACITY);
+                openFile(spillFile);
+            }
+        } catch(IOException e) {
+            throw new UncheckedIOException(String.format("Unable to open fingerprint spill file %s", spillFile), e);
+        }
+    }
+
+    /**
+     * get
+     *
+     * @param key long non zero URL hash
+     * @return long fingerprint or 0 if absent
+     */
+    public synchronized long get(final long key) {
+        final int slot = memory.find(key);
+        if(slot >= 0) {
+            return memory.values[slot];
+        }
+        return (mapped == null) ? 0 : fileGet(key);
+    }
+
+    /**
+     * put
+     *
+     * @param key long non zero URL hash
+     * @param fingerprint long non zero fingerprint
+     */
+    public synchronized void put(final long key, final long fingerprint) {
+        memoryPut(key, fingerprint);
+    }
+
+    /**
+     * remove
+     *
+     * @param key long non zero URL hash
+     */
+    public synchronized void remove(final long key) {
+        if(mapped == null) {
+            memory.remove(key);
+        } else {
+            // Mask any spilled entry until the next merge removes it
+            memoryPut(key, 0);
+        }
+    }
+
+    /**
+     * flush
+     *
+     * Merges the in memory entries into the spill file and forces it to disk.
+     * Does nothing without a spill file.
+     *
+     * @throws UncheckedIOException
+     */
+    public synchronized void flush() throws UncheckedIOException {
+        if(mapped == null) {
+            return;
+        }
+        try {
+            spill();
+            mapped.force();
+        } catch(IOException e) {
+            throw new UncheckedIOException(String.format("Unable to spill fingerprints to %s", spillFile), e);
+        }
+    }
+
+    public synchronized int getInMemorySize() {
+        return memory.size;
+    }
+
+    public synchronized long getSpilledSlots() {
+        return fileUsed;
+    }
+
+    @Override
+    public synchronized void close() {
+        flush();
+        mapped = null;
+    }
+
+    private void memoryPut(final long key, final long fingerprint) {
+        memory.put(key, fingerprint);
+        if(mapped != null && memory.size >= maxInMemoryEntries) {
+            try {
+                spill();
+            } catch(IOException e) {
+                throw new UncheckedIOException(String.format("Unable to spill fingerprints to %s", spillFile), e);
+            }
+        }
+    }
+
+    private void spill() throws IOException {
+        if(memory.size == 0) {
+            return;
+        }
+        LOGGER.debug(String.format("Spilling %s fingerprints to %s", memory.size, spillFile));
+        if((fileUsed + memory.size) * 10 > fileCapacity * 7) {
+            growFile(fileUsed + memory.size);
+        }
+        for(int i = 0; i < memory.keys.length; i++) {
+            if(memory.keys[i] != 0) {
+                filePut(memory.keys[i], memory.values[i]);
+            }
+        }
+        memory = new LongTable(Math.min(maxInMemoryEntries, 1024));
+    }
+
+    private long fileGet(final long key) {
+        final long mask = fileCapacity - 1;
+        for(long slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            final int position = HEADER_BYTES + (int) slot * SLOT_BYTES;
+            final long slotKey = mapped.getLong(position);
+            if(slotKey == 0) {
+                return 0;
+            }
+            if(slotKey == key) {
+                return mapped.getLong(position + 8);
+            }
+        }
+    }
+
+    private void filePut(final long key, final long fingerprint) {
+        final long mask = fileCapacity - 1;
+        for(long slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            final int position = HEADER_BYTES + (int) slot * SLOT_BYTES;
+            final long slotKey = mapped.getLong(position);
+            if(slotKey == key) {
+                // A 0 fingerprint leaves a tombstone so probing continues past the slot
+                mapped.putLong(position + 8, fingerprint);
+                return;
+            }
+            if(slotKey == 0) {
+                if(fingerprint == 0) {
+                    return;
+                }
+                mapped.putLong(position, key);
+                mapped.putLong(position + 8, fingerprint);
+                fileUsed++;
+                return;
+            }
+        }
+    }
+
+    /**
+     * growFile
+     *
+     * Rehashes the live entries of the spill file into a new file of at least twice the capacity
+     * needed, then replaces the spill file with it.
+     */
+    private void growFile(final long needed) throws IOException {
+        long capacity = fileCapacity;
+        while(needed * 10 > capacity * 7 / 2) {
+            capacity <<= 1;
+        }
+        if(capacity > MAX_FILE_CAPACITY) {
+            throw new IOException(String.format("Fingerprint spill file %s can not hold %s entries", spillFile, needed));
+        }
+        LOGGER.info(String.format("Growing fingerprint spill file %s to %s slots", spillFile, capacity));
+        final MappedByteBuffer previous = mapped;
+        final long previousCapacity = fileCapacity;
+        final Path grown = spillFile.resolveSibling(spillFile.getFileName() + ".grow");
+        createFile(grown, capacity);
+        mapped = map(grown, capacity);
+        fileCapacity = capacity;
+        fileUsed = 0;
+        for(long slot = 0; slot < previousCapacity; slot++) {
+            final int position = HEADER_BYTES + (int) slot * SLOT_BYTES;
+            final long key = previous.getLong(position);
+            final long fingerprint = previous.getLong(position + 8);
+            if(key != 0 && fingerprint != 0) {
+                filePut(key, fingerprint);
+            }
+        }
+        mapped.force();
+        Files.move(grown, spillFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void openFile(final Path file) throws IOException {
+        final long capacity = (Files.size(file) - HEADER_BYTES) / SLOT_BYTES;
+        mapped = map(file, capacity);
+        if(mapped.getLong(0) != MAGIC || mapped.getLong(8) != capacity || Long.bitCount(capacity) != 1) {
+            throw new IOException(String.format("%s is not a fingerprint spill file", file));
+        }
+        fileCapacity = capacity;
+        fileUsed = 0;
+        for(long slot = 0; slot < capacity; slot++) {
+            if(mapped.getLong(HEADER_BYTES + (int) slot * SLOT_BYTES) != 0) {
+                fileUsed++;
+            }
+        }
+        LOGGER.info(String.format("Opened fingerprint spill file %s with %s of %s slots used", file, fileUsed, capacity));
+    }
+
+    private static void createFile(final Path file, final long capacity) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    HEADER_BYTES + capacity * SLOT_BYTES);
+            header.putLong(0, MAGIC);
+            header.putLong(8, capacity);
+        }
+    }
+
+    private static MappedByteBuffer map(final Path file, final long capacity) throws IOException {
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + capacity * SLOT_BYTES);
+        }
+    }
+
+    private static long mix(final long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+
+    /**
+     * LongTable
+     *
+     * Linear probing long to long table, 0 keys are empty slots. Grows at half load.
+     */
+    private static class LongTable {
+        long[] keys;
+        long[] values;
+        int size;
+
+        LongTable(final int expected) {
+            int capacity = 16;
+            while(capacity < expected * 2) {
+                capacity <<= 1;
+            }
+            keys = new long[capacity];
+            values = new long[capacity];
+        }
+
+        int find(final long key) {
+            final int mask = keys.length - 1;
+            for(int slot = (int) mix(key) & mask; ; slot = (slot + 1) & mask) {
+                if(keys[slot] == key) {
+                    return slot;
+                }
+                if(keys[slot] == 0) {
+                    return -1;
+                }
+            }
+        }
+
+        void put(final long key, final long value) {
+            if((size + 1) * 2 > keys.length) {
+                grow();
+            }
+            final int mask = keys.length - 1;
+            for(int slot = (int) mix(key) & mask; ; slot = (slot + 1) & mask) {
+                if(keys[slot] == key) {
+                    values[slot] = value;
+                    return;
+                }
+                if(keys[slot] == 0) {
+                    keys[slot] = key;
+                    values[slot] = value;
+                    size++;
+                    return;
+                }
+            }
+        }
+
+        void remove(final long key) {
+            int slot = find(key);
+            if(slot < 0) {
+                return;
+            }
+            // Backward shift deletion keeps probe sequences intact without tombstones
+            final int mask = keys.length - 1;
+            keys[slot] = 0;
+            size--;
+            for(int next = (slot + 1) & mask; keys[next] != 0; next = (next + 1) & mask) {
+                final int home = (int) mix(keys[next]) & mask;
+                if(((next - home) & mask) >= ((next - slot) & mask)) {
+                    keys[slot] = keys[next];
+                    values[slot] = values[next];
+                    keys[next] = 0;
+                    slot = next;
+                }
+            }
+        }
+
+        private void grow() {
+            final long[] oldKeys = keys;
+            final long[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new long[oldValues.length * 2];
+            size = 0;
+            for(int i = 0; i < oldKeys.length; i++) {
+                if(oldKeys[i] != 0) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+    }
+}
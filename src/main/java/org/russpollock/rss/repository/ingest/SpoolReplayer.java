@@ -0,0 +1,427 @@
+package org.russpollock.rss.repository.ingest;
+
+import org.russpollock.rss.metrics.Counter;
+import org.russpollock.rss.metrics.DefaultMetricsRegistry;
+import org.russpollock.rss.metrics.MetricsRegistry;
+import org.russpollock.rss.repository.DatastoreMetrics;
+import org.russpollock.rss.repository.EsArticleDatastore;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.admin.cluster.health.ClusterHealthResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.support.IndicesOptions;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.health.ClusterHealthStatus;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.mapper.RoutingFieldMapper;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.rest.RestStatus;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHitField;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * SpoolReplayer
+ *
+ * Replays an ArticleSpool into the indices its articles were written to once the cluster is available again.
+ * Every check interval the health of the writeIndex (or index pattern) is checked, when it is not red the spool is
+ * read in order and sent as bulks with a bounded number in flight. A batch is committed once it and
+ * every batch before it succeeded, so the spool only moves past articles the cluster acknowledged.
+ * A batch holding an article of a batch still in flight waits for it, keeping updates to one article in order.
+ * Articles are sent with the version they were spooled with, so a spooled copy older than the indexed one,
+ * e.g. when a later bulk succeeded before the spool took over, is refused by ES and counted as replayed.
+ * A spooled delete is replayed after the articles spooled before it: its index is refreshed, the copies
+ * of its ids are searched and deleted.
+ * When a bulk is rejected or fails the replay stops, the spool rewinds to the last commit and the
+ * next check retries. Items that fail for other reasons, e.g. mapping errors, are logged and dropped.
+ */
+public class SpoolReplayer implements Closeable {
+    private static final Logger LOGGER = LogManager.getLogger(SpoolReplayer.class);
+    private static final int MAX_DELETE_HITS = 10000;
+    private final Client client;
+    private final String writeIndex;
+    private final ArticleSpool spool;
+    private int batchSize = 1000;
+    private int concurrentRequests = 2;
+    private long checkIntervalMillis = 5000;
+    private DatastoreMetrics metrics = DatastoreMetrics.of(DefaultMetricsRegistry.getInstance());
+    private Counter replayed = DefaultMetricsRegistry.getInstance().counter("spool.replayed");
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> schedule;
+
+    public SpoolReplayer(final Client client, final String writeIndex, final ArticleSpool spool) {
+        this.client = client;
+        this.writeIndex = writeIndex;
+        this.spool = spool;
+    }
+
+    /**
+     * setBatchSize
+     *
+     * Number of spooled articles per replayed bulk.
+     *
+     * @param batchSize int
+     * @return SpoolReplayer
+     */
+    public SpoolReplayer setBatchSize(final int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+        return this;
+    }
+
+    /**
+     * setConcurrentRequests
+     *
+     * Number of replayed bulks allowed in flight.
+     *
+     * @param concurrentRequests int
+     * @return SpoolReplayer
+     */
+    public SpoolReplayer setConcurrentRequests(final int concurrentRequests) {
+        this.concurrentRequests = Math.max(1, concurrentRequests);
+        return this;
+    }
+
+    /**
+     * setCheckIntervalMillis
+     *
+     * How often the cluster health is checked while the spool holds articles.
+     *
+     * @param checkIntervalMillis long
+     * @return SpoolReplayer
+     */
+    public SpoolReplayer setCheckIntervalMillis(final long checkIntervalMillis) {
+        this.checkIntervalMillis = Math.max(1, checkIntervalMillis);
+        return this;
+    }
+
+    /**
+     * setMetricsRegistry
+     *
+     * Registry replayed bulks and articles are recorded in. Defaults to the shared DefaultMetricsRegistry.
+     *
+     * @param metricsRegistry MetricsRegistry
+     * @return SpoolReplayer
+     */
+    public SpoolReplayer setMetricsRegistry(final MetricsRegistry metricsRegistry) {
+        this.metrics = DatastoreMetrics.of(metricsRegistry);
+        this.replayed = metricsRegistry.counter("spool.replayed");
+        return this;
+    }
+
+    public ArticleSpool getSpool() {
+        return spool;
+    }
+
+    /**
+     * start
+     *
+     * Starts checking the cluster and replaying the spool on a background thread.
+     *
+     * @return SpoolReplayer
+     */
+    public synchronized SpoolReplayer start() {
+        if(scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "article-spool-replayer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            schedule = scheduler.scheduleWithFixedDelay(this::replayIfHealthy,
+                    0, checkIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+        return this;
+    }
+
+    /**
+     * replayIfHealthy
+     *
+     * Replays the spool when it holds articles and the writeIndex is not red.
+     */
+    public void replayIfHealthy() {
+        if(spool.stopDivertingIfDrained()) {
+            return;
+        }
+        try {
+            final ClusterHealthResponse health = client.admin().cluster().prepareHealth(writeIndex)
+                    .setTimeout(TimeValue.timeValueSeconds(5))
+                    .get();
+            if(health.getStatus() == ClusterHealthStatus.RED || health.isTimedOut()) {
+                LOGGER.info(String.format("Not replaying article spool, %s is %s", writeIndex, health.getStatus()));
+                return;
+            }
+            replay();
+        } catch(RuntimeException e) {
+            LOGGER.warn(String.format("Not replaying article spool, %s is unavailable", writeIndex), e);
+        }
+    }
+
+    /**
+     * replay
+     *
+     * Replays the spool until it is drained or a bulk fails.
+     *
+     * @return long number of articles sent
+     */
+    public long replay() {
+        LOGGER.info(String.format("Replaying %s spooled bytes to %s", spool.getPendingBytes(), writeIndex));
+        final Deque<InFlight> inFlight = new ArrayDeque<>();
+        final Set<String> inFlightIds = new HashSet<>();
+        long count = 0;
+        try {
+            while(true) {
+                final ArticleSpool.Batch batch = spool.poll(batchSize);
+                if(batch.isEmpty()) {
+                    if(!completeAll(inFlight, inFlightIds)) {
+                        return count;
+                    }
+                    spool.commit(batch);
+                    if(spool.stopDivertingIfDrained()) {
+                        LOGGER.info(String.format("Replayed %s spooled articles to %s", count, writeIndex));
+                        return count;
+                    }
+                    // Articles were spooled while replaying
+                    continue;
+                }
+
+                boolean overlaps = false;
+                for(ArticleSpool.SpooledArticle article: batch.getArticles()) {
+                    overlaps |= inFlightIds.contains(article.getId());
+                }
+                if(overlaps && !completeAll(inFlight, inFlightIds)) {
+                    return count;
+                }
+                while(inFlight.size() >= concurrentRequests) {
+                    if(!completeFirst(inFlight, inFlightIds)) {
+                        return count;
+                    }
+                }
+                for(ArticleSpool.SpooledArticle article: batch.getArticles()) {
+                    inFlightIds.add(article.getId());
+                }
+                inFlight.add(new InFlight(batch, send(batch)));
+                count += batch.size();
+            }
+        } finally {
+            completeAll(inFlight, inFlightIds);
+        }
+    }
+
+    private boolean completeAll(final Deque<InFlight> inFlight, final Set<String> inFlightIds) {
+        boolean succeeded = true;
+        while(!inFlight.isEmpty()) {
+            // Later batches are still awaited so the spool is not rewound under them
+            succeeded &= completeFirst(inFlight, inFlightIds);
+        }
+        return succeeded;
+    }
+
+    private boolean completeFirst(final Deque<InFlight> inFlight, final Set<String> inFlightIds) {
+        final InFlight first = inFlight.poll();
+        final boolean succeeded = first.result.join();
+        for(ArticleSpool.SpooledArticle article: first.batch.getArticles()) {
+            inFlightIds.remove(article.getId());
+        }
+        if(succeeded && !first.failedBefore) {
+            spool.commit(first.batch);
+            replayed.add(first.batch.size());
+            return true;
+        }
+        for(InFlight later: inFlight) {
+            later.failedBefore = true;
+        }
+        spool.rewind();
+        return false;
+    }
+
+    /**
+     * send
+     *
+     * Sends a batch as runs of consecutive articles or deletes, each run once the previous one succeeded.
+     */
+    private CompletableFuture<Boolean> send(final ArticleSpool.Batch batch) {
+        final List<ArticleSpool.SpooledArticle> articles = batch.getArticles();
+        CompletableFuture<Boolean> sent = CompletableFuture.completedFuture(true);
+        for(int start = 0; start < articles.size(); ) {
+            int end = start + 1;
+            while(end < articles.size() && articles.get(end).isDelete() == articles.get(start).isDelete()
+                    && (!articles.get(end).isDelete() || articles.get(end).getIndex().equals(articles.get(start).getIndex()))) {
+                end++;
+            }
+            final List<ArticleSpool.SpooledArticle> run = articles.subList(start, end);
+            sent = sent.thenCompose(succeeded -> !succeeded ? CompletableFuture.completedFuture(false)
+                    : run.get(0).isDelete() ? sendDeletes(run) : sendArticles(run));
+            start = end;
+        }
+        return sent;
+    }
+
+    private CompletableFuture<Boolean> sendArticles(final List<ArticleSpool.SpooledArticle> articles) {
+        final BulkRequestBuilder bulk = client.prepareBulk();
+        for(ArticleSpool.SpooledArticle article: articles) {
+            bulk.add(ArticleVersion.apply(
+                    client.prepareIndex(article.getIndex(), EsArticleDatastore.ARTICLE_TYPE, article.getId())
+                            .setRouting(article.getRouting())
+                            .setSource(article.getSource(), XContentType.JSON), article.getVersion()));
+        }
+        metrics.recordBulk(bulk.numberOfActions(), bulk.request().estimatedSizeInBytes());
+
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        bulk.execute(new ActionListener<BulkResponse>() {
+            @Override
+            public void onResponse(final BulkResponse response) {
+                metrics.recordBulkResponse(response);
+                boolean retry = false;
+                for(BulkItemResponse item: response.getItems()) {
+                    if(!item.isFailed()) {
+                        continue;
+                    }
+                    if(ArticleVersion.isSuperseded(item)) {
+                        LOGGER.debug(String.format("Spooled article %s is superseded by the indexed one", item.getId()));
+                    } else if(isRetryable(item.getFailure().getStatus())) {
+                        retry = true;
+                    } else {
+                        LOGGER.error(String.format("Dropping spooled article %s: %s", item.getId(), item.getFailureMessage()));
+                    }
+                }
+                if(retry) {
+                    LOGGER.warn(String.format("Cluster rejected spooled articles, pausing replay to %s", writeIndex));
+                }
+                result.complete(!retry);
+            }
+
+            @Override
+            public void onFailure(final Exception e) {
+                LOGGER.warn(String.format("Failed to replay %s spooled articles to %s", articles.size(), writeIndex), e);
+                metrics.recordBulkFailure(articles.size(), e);
+                result.complete(false);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * sendDeletes
+     *
+     * Refreshes the index of spooled deletes, so the articles replayed before them are found,
+     * then deletes every copy of their ids. When more copies were found than fetched, the deletes are
+     * replayed again once the fetched ones are deleted.
+     */
+    private CompletableFuture<Boolean> sendDeletes(final List<ArticleSpool.SpooledArticle> deletes) {
+        final String index = deletes.get(0).getIndex();
+        final Set<String> ids = new HashSet<>();
+        for(ArticleSpool.SpooledArticle delete: deletes) {
+            ids.add(delete.getId());
+        }
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        final AtomicBoolean partial = new AtomicBoolean();
+        final ActionListener<BulkResponse> deleted = new ActionListener<BulkResponse>() {
+            @Override
+            public void onResponse(final BulkResponse response) {
+                metrics.recordBulkResponse(response);
+                boolean retry = false;
+                for(BulkItemResponse item: response.getItems()) {
+                    if(item.isFailed() && isRetryable(item.getFailure().getStatus())) {
+                        retry = true;
+                    } else if(item.isFailed()) {
+                        LOGGER.error(String.format("Dropping spooled delete of %s: %s", item.getId(), item.getFailureMessage()));
+                    }
+                }
+                result.complete(!retry && !partial.get());
+            }
+
+            @Override
+            public void onFailure(final Exception e) {
+                LOGGER.warn(String.format("Failed to replay %s spooled deletes to %s", deletes.size(), index), e);
+                result.complete(false);
+            }
+        };
+        final ActionListener<SearchResponse> located = ActionListener.wrap(response -> {
+            final SearchHit[] hits = response.getHits().getHits();
+            if(hits.length < response.getHits().getTotalHits()) {
+                LOGGER.warn(String.format("Spooled deletes found %s of %s copies in %s, deleting the rest on the next replay",
+                        hits.length, response.getHits().getTotalHits(), index));
+                partial.set(true);
+            }
+            if(hits.length == 0) {
+                result.complete(true);
+                return;
+            }
+            final BulkRequestBuilder bulk = client.prepareBulk();
+            for(SearchHit hit: hits) {
+                final SearchHitField routing = hit.getField(RoutingFieldMapper.NAME);
+                bulk.add(client.prepareDelete(hit.getIndex(), EsArticleDatastore.ARTICLE_TYPE, hit.getId())
+                        .setRouting((routing == null) ? null : routing.getValue()));
+            }
+            metrics.recordBulk(bulk.numberOfActions(), bulk.request().estimatedSizeInBytes());
+            bulk.execute(deleted);
+        }, deleted::onFailure);
+        client.admin().indices().prepareRefresh(index)
+                .setIndicesOptions(IndicesOptions.lenientExpandOpen())
+                .execute(ActionListener.wrap(refreshed -> client.prepareSearch(index)
+                        .setTypes(EsArticleDatastore.ARTICLE_TYPE)
+                        .setIndicesOptions(IndicesOptions.lenientExpandOpen())
+                        .setQuery(QueryBuilders.constantScoreQuery(QueryBuilders.idsQuery(EsArticleDatastore.ARTICLE_TYPE)
+                                .addIds(ids.toArray(new String[ids.size()]))))
+                        .setFetchSource(false)
+                        .setSize(Math.min(MAX_DELETE_HITS, ids.size() * 2))
+                        .execute(located), deleted::onFailure));
+        return result;
+    }
+
+    /**
+     * isRetryable
+     *
+     * Whether a bulk item failure is caused by cluster load or availability rather than the article.
+     *
+     * @param status RestStatus
+     * @return boolean
+     */
+    public static boolean isRetryable(final RestStatus status) {
+        return status == RestStatus.TOO_MANY_REQUESTS
+                || status == RestStatus.SERVICE_UNAVAILABLE
+                || status == RestStatus.GATEWAY_TIMEOUT
+                || status == RestStatus.REQUEST_TIMEOUT;
+    }
+
+    /**
+     * close
+     *
+     * Stops the background replay. The spool is not closed.
+     */
+    @Override
+    public synchronized void close() {
+        if(scheduler != null) {
+            schedule.cancel(false);
+            scheduler.shutdown();
+            scheduler = null;
+        }
+    }
+
+    private static class InFlight {
+        private final ArticleSpool.Batch batch;
+        private final CompletableFuture<Boolean> result;
+        private boolean failedBefore;
+
+        InFlight(final ArticleSpool.Batch batch, final CompletableFuture<Boolean> result) {
+            this.batch = batch;
+            this.result = result;
+        }
+    }
+}
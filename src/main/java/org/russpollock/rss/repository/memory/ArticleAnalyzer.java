@@ -0,0 +1,81 @@
+package org.russpollock.rss.repository.memory;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * ArticleAnalyzer
+ *
+ * Approximates the `content_cleaner` analyzer from resources/repository/articles.json:
+ * standard tokenizer, lowercase, english stop words and ascii folding, in that order.
+ */
+final class ArticleAnalyzer {
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Set<String> STOP_WORDS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "a", "an", "and", "are", "as", "at", "be", "but", "by", "for", "if", "in", "into", "is", "it",
+            "no", "not", "of", "on", "or", "such", "that", "the", "their", "then", "there", "these",
+            "they", "this", "to", "was", "will", "with")));
+
+    private ArticleAnalyzer() {}
+
+    /**
+     * analyze
+     *
+     * Splits text into normalized terms.
+     *
+     * @param text String
+     * @return List<String> terms in order of appearance
+     */
+    static List<String> analyze(final String text) {
+        if(text == null || text.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<String> terms = new ArrayList<>();
+        final int length = text.length();
+        int start = -1;
+        for(int i = 0; i <= length; i++) {
+            final boolean wordChar = i < length && isWordChar(text, i, start >= 0);
+            if(wordChar && start < 0) {
+                start = i;
+            } else if(!wordChar && start >= 0) {
+                addTerm(terms, text.substring(start, i));
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    private static boolean isWordChar(final String text, final int i, final boolean inWord) {
+        final char c = text.charAt(i);
+        if(Character.isLetterOrDigit(c) || Character.getType(c) == Character.NON_SPACING_MARK) {
+            return true;
+        }
+        // Keep inner apostrophes and dots between letters/digits, e.g. don't or 5.4
+        return inWord && (c == '\'' || c == '.') && i + 1 < text.length()
+                && Character.isLetterOrDigit(text.charAt(i + 1));
+    }
+
+    private static void addTerm(final List<String> terms, final String token) {
+        final String lower = token.toLowerCase(Locale.ROOT);
+        if(STOP_WORDS.contains(lower)) {
+            return;
+        }
+        terms.add(fold(lower));
+    }
+
+    private static String fold(final String term) {
+        for(int i = 0; i < term.length(); i++) {
+            if(term.charAt(i) > 0x7F) {
+                return DIACRITICS.matcher(Normalizer.normalize(term, Normalizer.Form.NFD)).replaceAll("");
+            }
+        }
+        return term;
+    }
+}
@@ -0,0 +1,87 @@
+package org.russpollock.rss.repository.memory;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * FieldIndex
+ *
+ * Inverted index of a single analyzed Article field.
+ * Holds a postings list per term and the field length of every doc for BM25 length normalization.
+ * Removed docs keep their postings until the index is rebuilt, but no longer count towards the doc count,
+ * the average length or the doc frequencies BM25 is computed from.
+ */
+final class FieldIndex {
+    private final Map<String, PostingsList> postings = new HashMap<>();
+    private int[] lengths = new int[16];
+    private long totalLength;
+    private int docCount;
+
+    void add(final int doc, final List<String> terms) {
+        if(doc >= lengths.length) {
+            lengths = Arrays.copyOf(lengths, Math.max(doc + 1, lengths.length * 2));
+        }
+        lengths[doc] = terms.size();
+        totalLength += terms.size();
+        docCount++;
+        if(terms.isEmpty()) {
+            return;
+        }
+
+        final Map<String, int[]> frequencies = new HashMap<>();
+        for(String term: terms) {
+            final int[] freq = frequencies.get(term);
+            if(freq == null) {
+                frequencies.put(term, new int[] {1});
+            } else {
+                freq[0]++;
+            }
+        }
+        for(Map.Entry<String, int[]> entry: frequencies.entrySet()) {
+            PostingsList list = postings.get(entry.getKey());
+            if(list == null) {
+                list = new PostingsList();
+                postings.put(entry.getKey(), list);
+            }
+            list.add(doc, entry.getValue()[0]);
+        }
+    }
+
+    /**
+     * remove
+     *
+     * Takes a removed doc out of the field stats.
+     *
+     * @param doc int
+     * @param terms List of the terms the doc was added with
+     */
+    void remove(final int doc, final List<String> terms) {
+        totalLength -= length(doc);
+        docCount--;
+        for(String term: new HashSet<>(terms)) {
+            final PostingsList list = postings.get(term);
+            if(list != null) {
+                list.remove();
+            }
+        }
+    }
+
+    PostingsList postings(final String term) {
+        return postings.get(term);
+    }
+
+    int length(final int doc) {
+        return (doc < lengths.length) ? lengths[doc] : 0;
+    }
+
+    float averageLength() {
+        return (docCount == 0) ? 0f : (float) totalLength / docCount;
+    }
+
+    int docCount() {
+        return docCount;
+    }
+}
@@ -0,0 +1,269 @@
+package org.russpollock.rss.repository.memory;
+
+import org.russpollock.rss.models.Article;
+import org.russpollock.rss.models.Link;
+import org.russpollock.rss.models.Tag;
+import org.russpollock.rss.utils.Dates;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.ConstantScoreQueryBuilder;
+import org.elasticsearch.index.query.ExistsQueryBuilder;
+import org.elasticsearch.index.query.IdsQueryBuilder;
+import org.elasticsearch.index.query.MatchAllQueryBuilder;
+import org.elasticsearch.index.query.MatchQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.RangeQueryBuilder;
+import org.elasticsearch.index.query.TermQueryBuilder;
+import org.elasticsearch.index.query.TermsQueryBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * FilterMatcher
+ *
+ * Evaluates the filter queries produced by ArticleSearchQueryBuilder against a single Article,
+ * following the article mapping: `.raw`, contentType, links and tags fields are matched exactly,
+ * other text fields are matched against their analyzed terms and date fields are compared as instants.
+ * Filters are evaluated in filter context, so a bool with should clauses requires one of them to match
+ * unless its minimum_should_match says otherwise. ArticleSearchQueryBuilder sets minimum_should_match on
+ * tag filters, so the POST_FILTER mode, which ES runs in query context, matches the same articles.
+ */
+final class FilterMatcher {
+
+    private FilterMatcher() {}
+
+    /**
+     * matches
+     *
+     * @param filter QueryBuilder
+     * @param article Article
+     * @return boolean
+     * @throws UnsupportedOperationException for query types the in memory datastore does not implement
+     */
+    static boolean matches(final QueryBuilder filter, final Article article) throws UnsupportedOperationException {
+        if(filter == null || filter instanceof MatchAllQueryBuilder) {
+            return true;
+        }
+        if(filter instanceof BoolQueryBuilder) {
+            return matchesBool((BoolQueryBuilder) filter, article);
+        }
+        if(filter instanceof TermQueryBuilder) {
+            final TermQueryBuilder term = (TermQueryBuilder) filter;
+            return matchesTerm(term.fieldName(), term.value(), article);
+        }
+        if(filter instanceof TermsQueryBuilder) {
+            final TermsQueryBuilder terms = (TermsQueryBuilder) filter;
+            for(Object value: terms.values()) {
+                if(matchesTerm(terms.fieldName(), value, article)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if(filter instanceof RangeQueryBuilder) {
+            return matchesRange((RangeQueryBuilder) filter, article);
+        }
+        if(filter instanceof ExistsQueryBuilder) {
+            return !values(article, ((ExistsQueryBuilder) filter).fieldName()).isEmpty();
+        }
+        if(filter instanceof IdsQueryBuilder) {
+            return ((IdsQueryBuilder) filter).ids().contains(article.getID());
+        }
+        if(filter instanceof ConstantScoreQueryBuilder) {
+            return matches(((ConstantScoreQueryBuilder) filter).innerQuery(), article);
+        }
+        if(filter instanceof MatchQueryBuilder) {
+            final MatchQueryBuilder match = (MatchQueryBuilder) filter;
+            final List<String> terms = ArticleAnalyzer.analyze(String.valueOf(match.value()));
+            for(String value: values(article, match.fieldName())) {
+                for(String term: ArticleAnalyzer.analyze(value)) {
+                    if(terms.contains(term)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+        throw new UnsupportedOperationException(
+                String.format("Unsupported filter for in memory datastore: %s", filter.getName()));
+    }
+
+    private static boolean matchesBool(final BoolQueryBuilder bool, final Article article) {
+        for(QueryBuilder must: bool.must()) {
+            if(!matches(must, article)) {
+                return false;
+            }
+        }
+        for(QueryBuilder filter: bool.filter()) {
+            if(!matches(filter, article)) {
+                return false;
+            }
+        }
+        for(QueryBuilder mustNot: bool.mustNot()) {
+            if(matches(mustNot, article)) {
+                return false;
+            }
+        }
+        if(bool.should().isEmpty()) {
+            return true;
+        }
+
+        int required = 1;
+        if(bool.minimumShouldMatch() != null) {
+            try {
+                required = Integer.parseInt(bool.minimumShouldMatch());
+            } catch(NumberFormatException e) {
+                required = 1;
+            }
+        }
+        int matched = 0;
+        for(QueryBuilder should: bool.should()) {
+            if(matches(should, article) && ++matched >= required) {
+                return true;
+            }
+        }
+        return matched >= required;
+    }
+
+    private static boolean matchesTerm(final String field, final Object value, final Article article) {
+        if(value == null) {
+            return false;
+        }
+        final String term = value.toString();
+        final boolean exact = isExact(field);
+        for(String fieldValue: values(article, field)) {
+            if(exact) {
+                if(term.equals(fieldValue)) {
+                    return true;
+                }
+            } else if(isDate(field)) {
+                final Long millis = Dates.parseMillis(fieldValue);
+                if(millis != null && millis.equals(Dates.parseMillis(term))) {
+                    return true;
+                }
+            } else if(ArticleAnalyzer.analyze(fieldValue).contains(term)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matchesRange(final RangeQueryBuilder range, final Article article) {
+        final boolean date = isDate(range.fieldName());
+        for(String fieldValue: values(article, range.fieldName())) {
+            if(date) {
+                final Long millis = Dates.parseMillis(fieldValue);
+                if(millis != null
+                        && inRange(millis, Dates.parseMillis(range.from()), range.includeLower(), true)
+                        && inRange(millis, Dates.parseMillis(range.to()), range.includeUpper(), false)) {
+                    return true;
+                }
+            } else if(inRange(fieldValue, range.from(), range.includeLower(), true)
+                    && inRange(fieldValue, range.to(), range.includeUpper(), false)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean inRange(final long value, final Long bound, final boolean inclusive, final boolean lower) {
+        if(bound == null) {
+            return true;
+        }
+        final int compared = Long.compare(value, bound);
+        return lower ? (compared > 0 || (inclusive && compared == 0)) : (compared < 0 || (inclusive && compared == 0));
+    }
+
+    private static boolean inRange(final String value, final Object bound, final boolean inclusive, final boolean lower) {
+        if(bound == null) {
+            return true;
+        }
+        final int compared = value.compareTo(bound.toString());
+        return lower ? (compared > 0 || (inclusive && compared == 0)) : (compared < 0 || (inclusive && compared == 0));
+    }
+
+    private static boolean isDate(final String field) {
+        return "published".equals(field) || "created".equals(field) || "updated".equals(field);
+    }
+
+    private static boolean isExact(final String field) {
+        return field.endsWith(".raw") || "contentType".equals(field) || "_id".equals(field)
+                || field.startsWith("links.") || field.startsWith("tags.");
+    }
+
+    /**
+     * values
+     *
+     * Resolves a mapped field name to the values it holds for an Article.
+     * Object arrays (links, tags) are flattened the way include_in_parent indexes them.
+     *
+     * @param article Article
+     * @param field String
+     * @return List<String>
+     */
+    static List<String> values(final Article article, final String field) {
+        final String name = field.endsWith(".raw") ? field.substring(0, field.length() - 4) : field;
+        switch(name) {
+            case "_id":
+                return single(article.getID());
+            case "URL":
+                return single(article.URL);
+            case "published":
+                return single(article.published);
+            case "updated":
+                return single(article.updated);
+            case "created":
+                return single(article.created);
+            case "contentType":
+                return single(article.contentType);
+            case "content":
+                return single(article.content);
+            case "author":
+                return single(article.author);
+            case "title":
+                return single(article.title);
+            case "description":
+                return single(article.description);
+            case "source":
+                return single(article.source);
+            case "tags.tag":
+            case "tags.tagType":
+                if(article.tags == null) {
+                    return Collections.emptyList();
+                }
+                final List<String> tagValues = new ArrayList<>(article.tags.size());
+                for(Tag tag: article.tags) {
+                    final String value = (tag == null) ? null : ("tags.tag".equals(name) ? tag.tag : tag.tagType);
+                    if(value != null) {
+                        tagValues.add(value);
+                    }
+                }
+                return tagValues;
+            case "links.href":
+            case "links.rel":
+            case "links.type":
+                if(article.links == null) {
+                    return Collections.emptyList();
+                }
+                final List<String> linkValues = new ArrayList<>(article.links.size());
+                for(Link link: article.links) {
+                    if(link == null) {
+                        continue;
+                    }
+                    final String value = "links.href".equals(name) ? link.href
+                            : ("links.rel".equals(name) ? link.rel : link.type);
+                    if(value != null) {
+                        linkValues.add(value);
+                    }
+                }
+                return linkValues;
+            default:
+                return Collections.emptyList();
+        }
+    }
+
+    private static List<String> single(final String value) {
+        return (value == null) ? Collections.<String>emptyList() : Collections.singletonList(value);
+    }
+}
@@ -0,0 +1,759 @@
+package org.russpollock.rss.repository.memory;
+
+import com.google.gson.Gson;
+import org.russpollock.rss.RssEnvironment;
+import org.russpollock.rss.models.Article;
+import org.russpollock.rss.models.ArticleHit;
+import org.russpollock.rss.repository.ArticleDatastore;
+import org.russpollock.rss.repository.DeleteOptions;
+import org.russpollock.rss.repository.DeleteResult;
+import org.russpollock.rss.repository.DeleteTracker;
+import org.russpollock.rss.repository.aggregations.AggregationCollector;
+import org.russpollock.rss.repository.aggregations.AggregationResults;
+import org.russpollock.rss.repository.aggregations.ArticleAggregation;
+import org.russpollock.rss.repository.queries.SearchQuery;
+import org.russpollock.rss.repository.queries.SourceProjection;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * InMemoryArticleDatastore
+ *
+ * In process ArticleDatastore backed by an inverted index over Article.DEFAULT_SEARCH_FIELDS.
+ * Implements the SearchQuery semantics of EsArticleDatastore: a best_fields multi match scored with BM25,
+ * the term, range and tag filters built by ArticleSearchQueryBuilder, and from/limit paging.
+ * Articles are keyed by URL like the ES datastore. Reads run concurrently, writes are exclusive.
+ * Updates and deletes tombstone the previous doc and take it out of the BM25 stats at once;
+ * the index is rebuilt once half of it is tombstoned. Scoring reuses per thread buffers.
+ * The live articles can be persisted to and reloaded from a gzipped NDJSON snapshot file.
+ */
+public class InMemoryArticleDatastore implements ArticleDatastore {
+    private static final Logger LOGGER = LogManager.getLogger(InMemoryArticleDatastore.class);
+    private static final Gson GSON = new Gson();
+    private static final float BM25_K1 = 1.2f;
+    private static final float BM25_B = 0.75f;
+    private static final int MIN_COMPACT_DOCS = 1024;
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, FieldIndex> fieldIndices = new HashMap<>();
+    private final List<Article> documents = new ArrayList<>();
+    private final BitSet deleted = new BitSet();
+    private final Map<String, Integer> ids = new HashMap<>();
+    private Path snapshotFile;
+
+    public InMemoryArticleDatastore() {
+        resetIndex();
+    }
+
+    /**
+     * InMemoryArticleDatastore
+     *
+     * Creates a datastore persisted to snapshotFile, loading it if it already exists.
+     *
+     * @param snapshotFile Path
+     * @throws UncheckedIOException
+     */
+    public InMemoryArticleDatastore(final Path snapshotFile) throws UncheckedIOException {
+        this();
+        this.snapshotFile = snapshotFile;
+        if(Files.exists(snapshotFile)) {
+            load(snapshotFile);
+        }
+    }
+
+    public Path getSnapshotFile() {
+        return snapshotFile;
+    }
+
+    public void setSnapshotFile(final Path snapshotFile) {
+        this.snapshotFile = snapshotFile;
+    }
+
+    /**
+     * size
+     *
+     * Gets the number of live articles.
+     *
+     * @return int
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return ids.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * save
+     *
+     * Indexes a copy of an Article under its URL, replacing any previous version.
+     * Implements ArticleDatastore.save
+     *
+     * @param article Article
+     * @throws NullPointerException
+     */
+    public void save(final Article article) throws NullPointerException {
+        if(article.URL == null) {
+            throw new NullPointerException("Article URL must be set before indexing.");
+        }
+        lock.writeLock().lock();
+        try {
+            indexArticle(article);
+            maybeCompact();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * saveAll
+     *
+     * Indexes copies of a list of Articles under their URLs.
+     * Implements ArticleDatastore.saveAll
+     *
+     * @param articles List of Articles
+     * @throws NullPointerException
+     */
+    public void saveAll(final List<Article> articles) throws NullPointerException {
+        for(Article article: articles) {
+            if(article.URL == null) {
+                throw new NullPointerException("Article URL must be set before indexing all.");
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            for(Article article: articles) {
+                indexArticle(article);
+            }
+            maybeCompact();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * delete
+     *
+     * Removes an article by id.
+     * Implements ArticleDatastore.delete
+     *
+     * @param id String
+     */
+    public void delete(final String id) {
+        lock.writeLock().lock();
+        try {
+            final Integer doc = ids.remove(id);
+            if(doc != null) {
+                tombstone(doc);
+                maybeCompact();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * deleteAll
+     *
+     * Removes articles by id, taking the write lock once per batch.
+     * Implements ArticleDatastore.deleteAll
+     *
+     * @param ids Collection of article ids
+     * @param options DeleteOptions
+     * @return DeleteResult
+     */
+    public DeleteResult deleteAll(final Collection<String> ids, final DeleteOptions options) {
+        final DeleteTracker tracker = new DeleteTracker(options);
+        final Iterator<String> remaining = ids.iterator();
+        while(remaining.hasNext()) {
+            lock.writeLock().lock();
+            try {
+                for(int i = 0; i < options.getBatchSize() && remaining.hasNext(); i++) {
+                    final Integer doc = this.ids.remove(remaining.next());
+                    if(doc == null) {
+                        tracker.notFound(1);
+                    } else {
+                        tombstone(doc);
+                        tracker.deleted(1);
+                    }
+                }
+                maybeCompact();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            if(!tracker.batchDone()) {
+                break;
+            }
+        }
+        return tracker.result();
+    }
+
+    /**
+     * getAll
+     *
+     * Copies articles by id straight from the id map, without matching a query.
+     * Implements ArticleDatastore.getAll
+     *
+     * @param ids Collection of article ids
+     * @return Map of the found ArticleHits by id, in the order of ids
+     */
+    public Map<String, ArticleHit> getAll(final Collection<String> ids) {
+        final Map<String, ArticleHit> articles = new LinkedHashMap<>();
+        lock.readLock().lock();
+        try {
+            for(String id: ids) {
+                final Integer doc = this.ids.get(id);
+                if(doc != null) {
+                    articles.put(id, new ArticleHit(documents.get(doc), 0f));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return articles;
+    }
+
+    /**
+     * search
+     *
+     * Searches the in memory index with a SearchQuery.
+     * Implements ArticleDatastore.search
+     *
+     * If SearchQuery getSearchQuery() is null every article matches with a score of 1.
+     * If not null a best_fields multi match over the SearchQuery fields is scored with BM25.
+     * SearchQuery.getFilters() restrict the matches, then hits are ordered by score and paged.
+     *
+     * @param query SearchQuery
+     * @return List<ArticleHit>
+     * @throws NullPointerException
+     * @throws UnsupportedOperationException if a filter query type is not supported
+     */
+    public List<ArticleHit> search(final SearchQuery query)
+            throws NullPointerException, UnsupportedOperationException {
+        LOGGER.debug(String.format("Performing in memory article search: %s", query.toString()));
+        final int from = (query.getFrom() == null) ? 0 : query.getFrom();
+        final int limit = (query.getLimit() == null) ? 10 : query.getLimit();
+
+        lock.readLock().lock();
+        try {
+            final Matches matches = match(query);
+            final int end = (int) Math.min((long) from + limit, matches.docs.length);
+            final List<ArticleHit> hits = new ArrayList<>(Math.max(end - from, 0));
+            for(int i = from; i < end; i++) {
+                hits.add(project(new ArticleHit(documents.get(matches.docs[i]), matches.score(i)),
+                        query.getProjection()));
+            }
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * stream
+     *
+     * Streams every article matching a SearchQuery in score order.
+     * Implements ArticleDatastore.stream
+     *
+     * @param query SearchQuery
+     * @return Stream<ArticleHit>
+     * @throws NullPointerException
+     * @throws UnsupportedOperationException if a filter query type is not supported
+     */
+    public Stream<ArticleHit> stream(final SearchQuery query)
+            throws NullPointerException, UnsupportedOperationException {
+        final Article[] articles;
+        final float[] matchScores;
+        lock.readLock().lock();
+        try {
+            final Matches matches = match(query);
+            articles = new Article[matches.docs.length];
+            matchScores = new float[matches.docs.length];
+            for(int i = 0; i < matches.docs.length; i++) {
+                articles[i] = documents.get(matches.docs[i]);
+                matchScores[i] = matches.score(i);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        final SourceProjection projection = query.getProjection();
+        return IntStream.range(0, articles.length)
+                .mapToObj(i -> project(new ArticleHit(articles[i], matchScores[i]), projection));
+    }
+
+    /**
+     * count
+     *
+     * Counts the matching articles without copying them into hits. Implements ArticleDatastore.count
+     *
+     * @param query SearchQuery
+     * @return long
+     * @throws NullPointerException
+     * @throws UnsupportedOperationException if a filter query type is not supported
+     */
+    public long count(final SearchQuery query) throws NullPointerException, UnsupportedOperationException {
+        lock.readLock().lock();
+        try {
+            return match(query).docs.length;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * exists
+     *
+     * Implements ArticleDatastore.exists
+     *
+     * @param query SearchQuery
+     * @return boolean
+     * @throws NullPointerException
+     * @throws UnsupportedOperationException if a filter query type is not supported
+     */
+    public boolean exists(final SearchQuery query) throws NullPointerException, UnsupportedOperationException {
+        return count(query) > 0;
+    }
+
+    /**
+     * aggregate
+     *
+     * Counts the ArticleAggregations over the matching articles in place, without copying them into hits.
+     * Implements ArticleDatastore.aggregate
+     *
+     * @param query SearchQuery
+     * @param aggregations List of ArticleAggregations
+     * @return AggregationResults
+     * @throws NullPointerException
+     * @throws UnsupportedOperationException if a filter query type is not supported
+     */
+    public AggregationResults aggregate(final SearchQuery query, final List<ArticleAggregation> aggregations)
+            throws NullPointerException, UnsupportedOperationException {
+        final AggregationCollector collector = new AggregationCollector(aggregations);
+        lock.readLock().lock();
+        try {
+            for(int match: match(query).docs) {
+                collector.collect(documents.get(match));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return collector.getResults();
+    }
+
+    /**
+     * snapshot
+     *
+     * Writes the live articles to the snapshot file. The file is replaced atomically.
+     *
+     * @throws NullPointerException
+     * @throws UncheckedIOException
+     */
+    public void snapshot() throws NullPointerException, UncheckedIOException {
+        if(this.snapshotFile == null) {
+            throw new NullPointerException("snapshotFile must be set before taking a snapshot.");
+        }
+        snapshot(this.snapshotFile);
+    }
+
+    /**
+     * snapshot
+     *
+     * Writes the live articles to a gzipped NDJSON file. The file is replaced atomically.
+     *
+     * @param file Path
+     * @throws UncheckedIOException
+     */
+    public void snapshot(final Path file) throws UncheckedIOException {
+        final Path absolute = file.toAbsolutePath();
+        final Path tmp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        int count = 0;
+        lock.readLock().lock();
+        try(BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(tmp)), StandardCharsets.UTF_8))) {
+            for(int doc: ids.values()) {
+                writer.write(GSON.toJson(documents.get(doc)));
+                writer.newLine();
+                count++;
+            }
+        } catch(IOException e) {
+            throw new UncheckedIOException(String.format("Unable to write snapshot %s", tmp), e);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        try {
+            Files.move(tmp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch(IOException e) {
+            throw new UncheckedIOException(String.format("Unable to replace snapshot %s", absolute), e);
+        }
+        LOGGER.info(String.format("Wrote %s articles to snapshot %s", count, absolute));
+    }
+
+    /**
+     * load
+     *
+     * Indexes every article from a gzipped NDJSON snapshot file.
+     *
+     * @param file Path
+     * @throws UncheckedIOException
+     */
+    public void load(final Path file) throws UncheckedIOException {
+        int count = 0;
+        lock.writeLock().lock();
+        try(BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+            String line;
+            while((line = reader.readLine()) != null) {
+                if(line.isEmpty()) {
+                    continue;
+                }
+                final Article article = GSON.fromJson(line, Article.class);
+                if(article != null && article.URL != null) {
+                    indexArticle(article);
+                    count++;
+                }
+            }
+            maybeCompact();
+        } catch(IOException e) {
+            throw new UncheckedIOException(String.format("Unable to load snapshot %s", file), e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        LOGGER.info(String.format("Loaded %s articles from snapshot %s", count, file));
+    }
+
+    /**
+     * match
+     *
+     * Finds the docs matching a query ordered by score then insertion, with their scores.
+     * Caller must hold the read lock.
+     */
+    private Matches match(final SearchQuery query) throws NullPointerException {
+        if(query.getSearchQuery() == null) {
+            final int[] docs = new int[ids.size()];
+            int count = 0;
+            for(int doc = deleted.nextClearBit(0); doc < documents.size(); doc = deleted.nextClearBit(doc + 1)) {
+                if(query.getFilters() == null || FilterMatcher.matches(query.getFilters(), documents.get(doc))) {
+                    docs[count++] = doc;
+                }
+            }
+            return new Matches(Arrays.copyOf(docs, count), null);
+        }
+        if(query.getFields() == null) {
+            throw new NullPointerException("SearchQuery fields must be set to perform search term query.");
+        }
+
+        final Scratch scratch = SCRATCH.get().reserve(documents.size());
+        try {
+            scoreMultiMatch(query.getSearchQuery().toString(), query.getFields(), scratch);
+            final BitSet matched = scratch.matched;
+            final float[] scores = scratch.scores;
+            final int[] docs = new int[matched.cardinality()];
+            int count = 0;
+            for(int doc = matched.nextSetBit(0); doc >= 0; doc = matched.nextSetBit(doc + 1)) {
+                if(query.getFilters() == null || FilterMatcher.matches(query.getFilters(), documents.get(doc))) {
+                    docs[count++] = doc;
+                }
+            }
+            final int[] sorted = IntStream.of(docs).limit(count).boxed()
+                    .sorted((a, b) -> {
+                        final int compared = Float.compare(scores[b], scores[a]);
+                        return (compared != 0) ? compared : Integer.compare(a, b);
+                    })
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+            final float[] sortedScores = new float[sorted.length];
+            for(int i = 0; i < sorted.length; i++) {
+                sortedScores[i] = scores[sorted[i]];
+            }
+            return new Matches(sorted, sortedScores);
+        } finally {
+            scratch.clear();
+        }
+    }
+
+    private void scoreMultiMatch(final String text, final String[] fields, final Scratch scratch) {
+        final List<String> terms = ArticleAnalyzer.analyze(text);
+        final float[] scores = scratch.scores;
+        final float[] fieldScores = scratch.fieldScores;
+        final BitSet touched = scratch.touched;
+
+        for(String fieldSpec: fields) {
+            final int boostAt = fieldSpec.indexOf('^');
+            final String field = (boostAt < 0) ? fieldSpec : fieldSpec.substring(0, boostAt);
+            final float boost = (boostAt < 0) ? 1f : Float.parseFloat(fieldSpec.substring(boostAt + 1));
+            final FieldIndex index = fieldIndices.get(field);
+
+            if(index != null) {
+                scoreIndexedField(index, terms, fieldScores, touched);
+            } else {
+                scoreUnindexedField(field, terms, fieldScores, touched);
+            }
+
+            // best_fields: a doc scores as its best matching field
+            for(int doc = touched.nextSetBit(0); doc >= 0; doc = touched.nextSetBit(doc + 1)) {
+                scores[doc] = Math.max(scores[doc], fieldScores[doc] * boost);
+                fieldScores[doc] = 0f;
+                scratch.matched.set(doc);
+            }
+            touched.clear();
+        }
+    }
+
+    private void scoreIndexedField(final FieldIndex index,
+                                   final List<String> terms,
+                                   final float[] fieldScores,
+                                   final BitSet touched) {
+        final int docCount = index.docCount();
+        final float averageLength = index.averageLength();
+        for(String term: terms) {
+            final PostingsList postings = index.postings(term);
+            if(postings == null || postings.docFreq() == 0) {
+                continue;
+            }
+            final int docFreq = postings.docFreq();
+            final float idf = (float) Math.log(1 + (docCount - docFreq + 0.5) / (docFreq + 0.5));
+            for(int i = 0; i < postings.size(); i++) {
+                final int doc = postings.doc(i);
+                if(deleted.get(doc)) {
+                    continue;
+                }
+                fieldScores[doc] += bm25(postings.freq(i), index.length(doc), averageLength, idf);
+                touched.set(doc);
+            }
+        }
+    }
+
+    private void scoreUnindexedField(final String field,
+                                     final List<String> terms,
+                                     final float[] fieldScores,
+                                     final BitSet touched) {
+        for(int doc = deleted.nextClearBit(0); doc < documents.size(); doc = deleted.nextClearBit(doc + 1)) {
+            for(String value: FilterMatcher.values(documents.get(doc), field)) {
+                final List<String> fieldTerms = ArticleAnalyzer.analyze(value);
+                for(String term: terms) {
+                    final int freq = Collections.frequency(fieldTerms, term);
+                    if(freq > 0) {
+                        fieldScores[doc] += bm25(freq, fieldTerms.size(), fieldTerms.size(), 1f);
+                        touched.set(doc);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * project
+     *
+     * Clears the fields of a hit that are not part of the projection.
+     */
+    private static ArticleHit project(final ArticleHit hit, final SourceProjection projection) {
+        if(projection == null || projection.isFull()) {
+            return hit;
+        }
+        hit.URL = projection.isIncluded("URL") ? hit.URL : null;
+        hit.published = projection.isIncluded("published") ? hit.published : null;
+        hit.updated = projection.isIncluded("updated") ? hit.updated : null;
+        hit.contentType = projection.isIncluded("contentType") ? hit.contentType : null;
+        hit.content = projection.isIncluded("content") ? hit.content : null;
+        hit.author = projection.isIncluded("author") ? hit.author : null;
+        hit.title = projection.isIncluded("title") ? hit.title : null;
+        hit.description = projection.isIncluded("description") ? hit.description : null;
+        hit.links = projection.isIncluded("links") ? hit.links : null;
+        hit.tags = projection.isIncluded("tags") ? hit.tags : null;
+        hit.source = projection.isIncluded("source") ? hit.source : null;
+        hit.created = projection.isIncluded("created") ? hit.created : null;
+        return hit;
+    }
+
+    private static float bm25(final int freq, final int length, final float averageLength, final float idf) {
+        final float norm = (averageLength == 0f) ? 1f : (1 - BM25_B + BM25_B * length / averageLength);
+        return idf * (freq * (BM25_K1 + 1)) / (freq + BM25_K1 * norm);
+    }
+
+    /**
+     * tombstone
+     *
+     * Marks a doc deleted and takes it out of the field stats.
+     * Caller must hold the write lock.
+     */
+    private void tombstone(final int doc) {
+        deleted.set(doc);
+        for(Map.Entry<String, FieldIndex> entry: fieldIndices.entrySet()) {
+            entry.getValue().remove(doc, analyze(documents.get(doc), entry.getKey()));
+        }
+    }
+
+    private static List<String> analyze(final Article article, final String field) {
+        final List<String> terms = new ArrayList<>();
+        for(String value: FilterMatcher.values(article, field)) {
+            terms.addAll(ArticleAnalyzer.analyze(value));
+        }
+        return terms;
+    }
+
+    /**
+     * indexArticle
+     *
+     * Appends a copy of the article to the index, tombstoning its previous version.
+     * Caller must hold the write lock.
+     */
+    private void indexArticle(final Article article) {
+        final Article copy = new Article(article);
+        copy.setID(article.URL);
+        final Integer previous = ids.get(copy.URL);
+        if(previous != null) {
+            tombstone(previous);
+        }
+        final int doc = documents.size();
+        documents.add(copy);
+        for(Map.Entry<String, FieldIndex> entry: fieldIndices.entrySet()) {
+            entry.getValue().add(doc, analyze(copy, entry.getKey()));
+        }
+        ids.put(copy.URL, doc);
+    }
+
+    /**
+     * maybeCompact
+     *
+     * Rebuilds the index without tombstoned docs once they make up half of it.
+     * Caller must hold the write lock.
+     */
+    private void maybeCompact() {
+        if(documents.size() < MIN_COMPACT_DOCS || deleted.cardinality() * 2 < documents.size()) {
+            return;
+        }
+        LOGGER.debug(String.format("Compacting in memory index, %s of %s docs deleted",
+                deleted.cardinality(), documents.size()));
+        final List<Article> live = new ArrayList<>(ids.size());
+        for(int doc = 0; doc < documents.size(); doc++) {
+            if(!deleted.get(doc)) {
+                live.add(documents.get(doc));
+            }
+        }
+        documents.clear();
+        deleted.clear();
+        ids.clear();
+        resetIndex();
+        for(Article article: live) {
+            indexArticle(article);
+        }
+    }
+
+    private void resetIndex() {
+        fieldIndices.clear();
+        for(String field: Article.DEFAULT_SEARCH_FIELDS) {
+            fieldIndices.put(field, new FieldIndex());
+        }
+    }
+
+    /**
+     * Matches
+     *
+     * Matching docs in result order and their scores, null when every doc scores 1.
+     */
+    private static final class Matches {
+        private final int[] docs;
+        private final float[] scores;
+
+        private Matches(final int[] docs, final float[] scores) {
+            this.docs = docs;
+            this.scores = scores;
+        }
+
+        private float score(final int index) {
+            return (scores == null) ? 1f : scores[index];
+        }
+    }
+
+    /**
+     * Scratch
+     *
+     * Per thread scoring buffers indexed by doc, grown to the index size and zeroed after each search
+     * by clearing only the docs it touched.
+     */
+    private static final class Scratch {
+        private float[] scores = new float[0];
+        private float[] fieldScores = new float[0];
+        private final BitSet matched = new BitSet();
+        private final BitSet touched = new BitSet();
+
+        private Scratch reserve(final int size) {
+            if(scores.length < size) {
+                final int capacity = Math.max(size, scores.length + (scores.length >> 1));
+                scores = new float[capacity];
+                fieldScores = new float[capacity];
+            }
+            return this;
+        }
+
+        private void clear() {
+            for(int doc = matched.nextSetBit(0); doc >= 0; doc = matched.nextSetBit(doc + 1)) {
+                scores[doc] = 0f;
+            }
+            for(int doc = touched.nextSetBit(0); doc >= 0; doc = touched.nextSetBit(doc + 1)) {
+                fieldScores[doc] = 0f;
+            }
+            matched.clear();
+            touched.clear();
+        }
+    }
+
+    private static class LazyHolder {
+        private static final InMemoryArticleDatastore INSTANCE = createInstance();
+    }
+
+    private static InMemoryArticleDatastore createInstance() {
+        final RssEnvironment env = RssEnvironment.getInstance();
+        final String snapshotFile = env.getEnv(env.getMemorySnapshotFileProp());
+        if(snapshotFile == null) {
+            return new InMemoryArticleDatastore();
+        }
+        final InMemoryArticleDatastore datastore =
+                new InMemoryArticleDatastore(Paths.get(snapshotFile));
+        Runtime.getRuntime().addShutdownHook(new Thread(datastore::snapshot, "in-memory-article-snapshot"));
+        return datastore;
+    }
+
+    /**
+     * getInstance
+     *
+     * Gets the process wide InMemoryArticleDatastore. When rss-data.memory.snapshotFile is set the
+     * snapshot is loaded on first use and written again on JVM shutdown.
+     *
+     * @return InMemoryArticleDatastore
+     */
+    public static InMemoryArticleDatastore getInstance() {
+        return LazyHolder.INSTANCE;
+    }
+}
@@ -0,0 +1,53 @@
+package org.russpollock.rss.repository.memory;
+
+import java.util.Arrays;
+
+/**
+ * PostingsList
+ *
+ * Append only list of (doc, term frequency) pairs kept in parallel primitive arrays.
+ * Docs are appended in increasing order. Removed docs keep their entries, only the doc frequency drops.
+ */
+final class PostingsList {
+    private int[] docs = new int[4];
+    private int[] freqs = new int[4];
+    private int size;
+    private int docFreq;
+
+    void add(final int doc, final int freq) {
+        if(size == docs.length) {
+            final int capacity = size + (size >> 1) + 1;
+            docs = Arrays.copyOf(docs, capacity);
+            freqs = Arrays.copyOf(freqs, capacity);
+        }
+        docs[size] = doc;
+        freqs[size] = freq;
+        size++;
+        docFreq++;
+    }
+
+    void remove() {
+        docFreq--;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * docFreq
+     *
+     * @return int number of live docs holding the term
+     */
+    int docFreq() {
+        return docFreq;
+    }
+
+    int doc(final int index) {
+        return docs[index];
+    }
+
+    int freq(final int index) {
+        return freqs[index];
+    }
+}
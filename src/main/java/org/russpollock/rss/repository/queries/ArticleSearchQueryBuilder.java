@@ -21,7 +21,7 @@ public class ArticleSearchQueryBuilder extends SearchQueryBuilder {
     /**
      * setContentType
      *
-     * Add term query on `contentType`  field (not analyzed) to post filters
+     * Add term query on `contentType`  field (not analyzed) to filters
      *
      * @param contentType String
      * @return ArticleSearchQueryBuilder
@@ -35,7 +35,7 @@ public class ArticleSearchQueryBuilder extends SearchQueryBuilder {
     /**
      * setAuthor
      *
-     * Add term query on `author.raw` field (not analyzed) to post filters
+     * Add term query on `author.raw` field (not analyzed) to filters
      *
      * @param author String
      * @return ArticleSearchQueryBuilder
@@ -46,10 +46,24 @@ public class ArticleSearchQueryBuilder extends SearchQueryBuilder {
         return this;
     }
 
+    /**
+     * setSource
+     *
+     * Add term query on `source.raw` field (not analyzed) to filters
+     *
+     * @param source String
+     * @return ArticleSearchQueryBuilder
+     */
+    public ArticleSearchQueryBuilder setSource(final String source) {
+        TermQueryBuilder termQuery = QueryBuilders.termQuery("source.raw", source);
+        this.filters = ArticleSearchQueryBuilder.addMustQueryToFilters(this.filters, termQuery);
+        return this;
+    }
+
     /**
      * setTitle
      *
-     * Add term query on `title.raw` field (not analyzed) to post filters
+     * Add term query on `title.raw` field (not analyzed) to filters
      *
      * @param title String
      * @return ArticleSearchQueryBuilder
@@ -63,7 +77,7 @@ public class ArticleSearchQueryBuilder extends SearchQueryBuilder {
     /**
      * setCreated
      *
-     * Add directional range query to the post filters for `created`.
+     * Add directional range query to the filters for `created`.
      *
      * @param date String
      * @param direction SearchQuery.RANGE
@@ -77,7 +91,7 @@ public class ArticleSearchQueryBuilder extends SearchQueryBuilder {
     /**
      * setCreated
      *
-     * Add a range query to the post filters for `created`.
+     * Add a range query to the filters for `created`.
      *
      * @param from String
      * @param to String
@@ -96,7 +110,7 @@ public class ArticleSearchQueryBuilder extends SearchQueryBuilder {
     /**
      * setPublished
      *
-     * Add directional range query to the post filters for `published`.
+     * Add directional range query to the filters for `published`.
      *
      * @param date String
      * @param direction SearchQuery.RANGE
@@ -110,7 +124,7 @@ public class ArticleSearchQueryBuilder extends SearchQueryBuilder {
     /**
      * setPublished
      *
-     * Add a range query to the post filters for `published`.
+     * Add a range query to the filters for `published`.
      *
      * @param from String
      * @param to String
@@ -129,7 +143,8 @@ public class ArticleSearchQueryBuilder extends SearchQueryBuilder {
     /**
      * setTags
      *
-     * Adds a list of tag BoolQueries to the post filter should filters.
+     * Adds a list of tag BoolQueries to the should filters.
+     * At least one tag must match, whichever FILTER_MODE the filters are applied in.
      *
      * @param tags An ArrayList of Tag
      * @return ArticleSearchQueryBuilder
@@ -142,13 +157,15 @@ public class ArticleSearchQueryBuilder extends SearchQueryBuilder {
         for(Tag tag: tags) {
             filters = filters.should(ArticleSearchQueryBuilder.buildTagQuery(tag));
         }
+        // A post_filter runs in query context, where should clauses are optional next to a must
+        filters.minimumShouldMatch(1);
         return this;
     }
 
     /**
      * setTags
      *
-     * Adds a tag BoolQuery to the post filter should filters.
+     * Adds a tag BoolQuery to the should filters.
      *
      * @param tag Tag
      * @return ArticleSearchQueryBuilder
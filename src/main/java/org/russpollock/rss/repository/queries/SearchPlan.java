@@ -0,0 +1,57 @@
+package org.russpollock.rss.repository.queries;
+
+import org.elasticsearch.action.search.SearchType;
+
+/**
+ * SearchPlan
+ *
+ * How a SearchQuery is executed: the ES search type, whether scores are tracked,
+ * whether hits are sorted by `_doc` instead of score and whether the shard request cache is used.
+ * When hits are sorted by `_doc` without tracking scores ArticleHit.searchScore is NaN.
+ */
+public class SearchPlan {
+    private final SearchType searchType;
+    private final boolean trackScores;
+    private final boolean sortByDoc;
+    private final Boolean requestCache;
+
+    /**
+     * SearchPlan
+     *
+     * @param searchType SearchType
+     * @param trackScores boolean compute scores even when sorting by `_doc`
+     * @param sortByDoc boolean sort hits by `_doc` instead of score
+     * @param requestCache Boolean use the shard request cache, null for the index default
+     */
+    public SearchPlan(final SearchType searchType,
+                      final boolean trackScores,
+                      final boolean sortByDoc,
+                      final Boolean requestCache) {
+        this.searchType = searchType;
+        this.trackScores = trackScores;
+        this.sortByDoc = sortByDoc;
+        this.requestCache = requestCache;
+    }
+
+    public SearchType getSearchType() {
+        return searchType;
+    }
+
+    public boolean isTrackScores() {
+        return trackScores;
+    }
+
+    public boolean isSortByDoc() {
+        return sortByDoc;
+    }
+
+    public Boolean getRequestCache() {
+        return requestCache;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SearchPlan [searchType: %s, trackScores: %s, sortByDoc: %s, requestCache: %s]",
+                this.searchType, this.trackScores, this.sortByDoc, this.requestCache);
+    }
+}
@@ -0,0 +1,43 @@
+package org.russpollock.rss.repository.queries;
+
+import org.elasticsearch.action.search.SearchType;
+
+/**
+ * SearchPlanner
+ *
+ * Picks a SearchPlan from the shape of a SearchQuery.
+ *
+ * Scored queries (a search term) that fetch hits use DFS_QUERY_THEN_FETCH for accurate global term
+ * statistics. Queries that do not need scores (match all with or without filters) and queries that
+ * fetch no hits skip the DFS round trip with QUERY_THEN_FETCH. Unscored queries are sorted by `_doc`
+ * without tracking scores. The shard request cache is only requested for size 0 queries whose
+ * filters do not use `now`, since ES only caches size 0 results and `now` changes on every request.
+ */
+public class SearchPlanner {
+
+    /**
+     * plan
+     *
+     * Gets the SearchPlan set on the query, or plans one from its shape.
+     *
+     * @param query SearchQuery
+     * @return SearchPlan
+     */
+    public static SearchPlan plan(final SearchQuery query) {
+        if(query.getSearchPlan() != null) {
+            return query.getSearchPlan();
+        }
+
+        final boolean scored = query.getSearchQuery() != null;
+        final boolean fetchesHits = query.getLimit() == null || query.getLimit() > 0;
+        final SearchType searchType = (scored && fetchesHits)
+                ? SearchType.DFS_QUERY_THEN_FETCH
+                : SearchType.QUERY_THEN_FETCH;
+        final Boolean requestCache = (!fetchesHits && !usesNow(query)) ? Boolean.TRUE : null;
+        return new SearchPlan(searchType, scored, !scored && fetchesHits, requestCache);
+    }
+
+    private static boolean usesNow(final SearchQuery query) {
+        return query.getFilters() != null && SearchQuery.toJson(query.getFilters()).contains("\"now");
+    }
+}
@@ -1,9 +1,16 @@
 package org.russpollock.rss.repository.queries;
 
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.MultiMatchQueryBuilder;
 import org.elasticsearch.index.query.RangeQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Arrays;
 
 public class SearchQuery {
@@ -12,6 +19,10 @@ public class SearchQuery {
     private QueryBuilder filters;
     private Integer from;
     private Integer limit;
+    private FILTER_MODE filterMode;
+    private SearchPlan searchPlan;
+    private SourceProjection projection;
+    private String canonicalKey;
 
     public static enum RANGE {
         GREATER_THAN,
@@ -20,12 +31,28 @@ public class SearchQuery {
         LESS_THAN_OR_EQUAL
     }
 
+    /**
+     * FILTER_MODE
+     *
+     * FILTER applies filters in the filter clause of the main bool query: they narrow the candidates
+     * before scoring and are cached by ES as bitsets.
+     * POST_FILTER applies them after the query has run, only useful when aggregations must see the
+     * unfiltered results (faceting).
+     */
+    public static enum FILTER_MODE {
+        FILTER,
+        POST_FILTER
+    }
+
     public SearchQuery(final SearchQueryBuilder sqb) {
         this.fields = sqb.getFields();
         this.searchQuery = sqb.getSearchQuery();
         this.from = sqb.getFrom();
         this.limit = sqb.getLimit();
         this.filters = sqb.getFilters();
+        this.filterMode = sqb.getFilterMode();
+        this.searchPlan = sqb.getSearchPlan();
+        this.projection = sqb.getProjection();
     }
 
     public String[] getFields() {
@@ -48,6 +75,134 @@ public class SearchQuery {
         return filters;
     }
 
+    public FILTER_MODE getFilterMode() {
+        return filterMode;
+    }
+
+    /**
+     * getSearchPlan
+     *
+     * Gets the SearchPlan that overrides SearchPlanner, null when the planner decides.
+     *
+     * @return SearchPlan
+     */
+    public SearchPlan getSearchPlan() {
+        return searchPlan;
+    }
+
+    public SourceProjection getProjection() {
+        return projection;
+    }
+
+    /**
+     * toQueryBuilder
+     *
+     * Builds the main query: a match all query if getSearchQuery() is null,
+     * otherwise a MultiMatchQuery against getFields().
+     * In FILTER mode the filters are added to the filter clause of a bool query around it.
+     *
+     * @return QueryBuilder
+     * @throws NullPointerException
+     */
+    public QueryBuilder toQueryBuilder() throws NullPointerException {
+        QueryBuilder query;
+        if(searchQuery == null) {
+            query = QueryBuilders.matchAllQuery();
+        } else {
+            if(fields == null) {
+                throw new NullPointerException("SearchQuery fields must be set to perform search term query.");
+            }
+            query = new MultiMatchQueryBuilder(searchQuery, fields);
+        }
+
+        if(filters != null && filterMode != FILTER_MODE.POST_FILTER) {
+            query = QueryBuilders.boolQuery().must(query).filter(filters);
+        }
+        return query;
+    }
+
+    /**
+     * toCountQueryBuilder
+     *
+     * Builds the query matching the same articles as a search, for counting them.
+     * The search term and the filters both go in the filter clause whatever the filter mode,
+     * wrapped in a constant_score query: no scores are computed and the filters can be cached.
+     *
+     * @return QueryBuilder
+     * @throws NullPointerException
+     */
+    public QueryBuilder toCountQueryBuilder() throws NullPointerException {
+        if(searchQuery == null && filters == null) {
+            return QueryBuilders.matchAllQuery();
+        }
+        final BoolQueryBuilder query = QueryBuilders.boolQuery();
+        if(searchQuery != null) {
+            if(fields == null) {
+                throw new NullPointerException("SearchQuery fields must be set to perform search term query.");
+            }
+            query.filter(new MultiMatchQueryBuilder(searchQuery, fields));
+        }
+        if(filters != null) {
+            query.filter(filters);
+        }
+        return QueryBuilders.constantScoreQuery(query);
+    }
+
+    /**
+     * toPostFilter
+     *
+     * Gets the filters to apply as a post filter, only set in POST_FILTER mode.
+     *
+     * @return QueryBuilder or null
+     */
+    public QueryBuilder toPostFilter() {
+        return (filterMode == FILTER_MODE.POST_FILTER) ? filters : null;
+    }
+
+    /**
+     * getCanonicalKey
+     *
+     * Gets a canonical String form of this query for use as a cache key.
+     * Two queries with the same key return the same hits: fields are order independent,
+     * filters are rendered as their query JSON along with the mode they are applied in.
+     *
+     * @return String
+     */
+    public String getCanonicalKey() {
+        if(canonicalKey == null) {
+            String[] sortedFields = null;
+            if(fields != null) {
+                sortedFields = fields.clone();
+                Arrays.sort(sortedFields);
+            }
+            canonicalKey = String.format("q=%s|fields=%s|filters=%s|mode=%s|from=%s|limit=%s|plan=%s|source=%s",
+                    searchQuery, Arrays.toString(sortedFields),
+                    (filters == null) ? null : toJson(filters),
+                    (filters == null) ? null : filterMode,
+                    from, limit, searchPlan, projection);
+        }
+        return canonicalKey;
+    }
+
+    /**
+     * toJson
+     *
+     * Renders a QueryBuilder as compact JSON.
+     *
+     * @param query QueryBuilder
+     * @return String
+     * @throws UncheckedIOException
+     */
+    public static String toJson(final QueryBuilder query) throws UncheckedIOException {
+        try {
+            XContentBuilder builder = XContentFactory.jsonBuilder();
+            query.toXContent(builder, ToXContent.EMPTY_PARAMS);
+            return builder.string();
+        } catch(IOException e) {
+            throw new UncheckedIOException("Unable to render query as JSON.", e);
+        }
+    }
+
     public static RangeQueryBuilder buildDirectionalRangeQuery
             (final String field,
              final Object value,
@@ -74,7 +229,8 @@ public class SearchQuery {
 
     @Override
     public String toString() {
-        return String.format("SearchQuery [searchQuery: %s, fields: %s, filters: %s, from: %s, limit: %s]",
-                this.searchQuery, Arrays.toString(this.fields), this.filters, this.from, this.limit);
+        return String.format("SearchQuery [searchQuery: %s, fields: %s, filters: %s, filterMode: %s, from: %s, limit: %s, projection: %s]",
+                this.searchQuery, Arrays.toString(this.fields), this.filters, this.filterMode, this.from, this.limit,
+                this.projection);
     }
 }
@@ -8,9 +8,30 @@ public class SearchQueryBuilder {
     private QueryBuilder filters;
     private Integer from = 0;
     private Integer limit = 10;
+    private SearchQuery.FILTER_MODE filterMode = SearchQuery.FILTER_MODE.FILTER;
+    private SearchPlan searchPlan;
+    private SourceProjection projection = SourceProjection.FULL;
 
     public SearchQueryBuilder() {}
 
+    /**
+     * SearchQueryBuilder
+     *
+     * Starts from the settings of an existing SearchQuery.
+     *
+     * @param query SearchQuery
+     */
+    public SearchQueryBuilder(final SearchQuery query) {
+        this.fields = query.getFields();
+        this.searchQuery = query.getSearchQuery();
+        this.filters = query.getFilters();
+        this.from = query.getFrom();
+        this.limit = query.getLimit();
+        this.filterMode = query.getFilterMode();
+        this.searchPlan = query.getSearchPlan();
+        this.projection = query.getProjection();
+    }
+
     public SearchQueryBuilder setFields(final String... fields) {
         this.fields = fields;
         return this;
@@ -36,6 +57,72 @@ public class SearchQueryBuilder {
         return this;
     }
 
+    /**
+     * setFilterMode
+     *
+     * Sets whether filters run in the filter clause of the query (default)
+     * or as a post filter (only needed for faceting).
+     *
+     * @param filterMode SearchQuery.FILTER_MODE
+     * @return SearchQueryBuilder
+     */
+    public SearchQueryBuilder setFilterMode(final SearchQuery.FILTER_MODE filterMode) {
+        this.filterMode = (filterMode == null) ? SearchQuery.FILTER_MODE.FILTER : filterMode;
+        return this;
+    }
+
+    /**
+     * setSearchPlan
+     *
+     * Overrides the SearchPlan chosen by SearchPlanner for this query.
+     *
+     * @param searchPlan SearchPlan or null to let the planner decide
+     * @return SearchQueryBuilder
+     */
+    public SearchQueryBuilder setSearchPlan(final SearchPlan searchPlan) {
+        this.searchPlan = searchPlan;
+        return this;
+    }
+
+    /**
+     * setProjection
+     *
+     * Sets which source fields are returned on hits, e.g. SourceProjection.HEADLINE.
+     *
+     * @param projection SourceProjection
+     * @return SearchQueryBuilder
+     */
+    public SearchQueryBuilder setProjection(final SourceProjection projection) {
+        this.projection = (projection == null) ? SourceProjection.FULL : projection;
+        return this;
+    }
+
+    /**
+     * setSourceIncludes
+     *
+     * Only return these source fields on hits, keeping any excludes.
+     *
+     * @param includes String field names or patterns ending with `*`
+     * @return SearchQueryBuilder
+     */
+    public SearchQueryBuilder setSourceIncludes(final String... includes) {
+        this.projection = new SourceProjection(includes, this.projection.getExcludes());
+        return this;
+    }
+
+    /**
+     * setSourceExcludes
+     *
+     * Leave these source fields out of hits, keeping any includes.
+     *
+     * @param excludes String field names or patterns ending with `*`
+     * @return SearchQueryBuilder
+     */
+    public SearchQueryBuilder setSourceExcludes(final String... excludes) {
+        this.projection = new SourceProjection(this.projection.getIncludes(), excludes);
+        return this;
+    }
+
     public String[] getFields() {
         return fields;
     }
@@ -56,6 +143,18 @@ public class SearchQueryBuilder {
         return filters;
     }
 
+    public SearchQuery.FILTER_MODE getFilterMode() {
+        return filterMode;
+    }
+
+    public SearchPlan getSearchPlan() {
+        return searchPlan;
+    }
+
+    public SourceProjection getProjection() {
+        return projection;
+    }
+
     public SearchQuery build() {
         return new SearchQuery(this);
     }
@@ -0,0 +1,91 @@
+package org.russpollock.rss.repository.queries;
+
+import java.util.Arrays;
+
+/**
+ * SourceProjection
+ *
+ * Source include/exclude patterns applied to search hits so only the requested Article fields
+ * are transferred and parsed. Patterns are field names and may end with `*`.
+ * Fields left out of a projection are null on the returned ArticleHits.
+ */
+public class SourceProjection {
+    /**
+     * Every field of the article source.
+     */
+    public static final SourceProjection FULL = new SourceProjection(null, null);
+
+    /**
+     * Fields needed to render an article listing.
+     */
+    public static final SourceProjection HEADLINE = new SourceProjection(
+            new String[] {"URL", "title", "source", "published"}, null);
+
+    /**
+     * No source fields, only the hit ids and scores.
+     */
+    public static final SourceProjection NONE = new SourceProjection(null, new String[] {"*"});
+
+    private final String[] includes;
+    private final String[] excludes;
+
+    /**
+     * SourceProjection
+     *
+     * @param includes String[] fields to include, null or empty for all fields
+     * @param excludes String[] fields to exclude, null or empty for none
+     */
+    public SourceProjection(final String[] includes, final String[] excludes) {
+        this.includes = (includes == null || includes.length == 0) ? null : includes.clone();
+        this.excludes = (excludes == null || excludes.length == 0) ? null : excludes.clone();
+    }
+
+    public String[] getIncludes() {
+        return (includes == null) ? null : includes.clone();
+    }
+
+    public String[] getExcludes() {
+        return (excludes == null) ? null : excludes.clone();
+    }
+
+    /**
+     * isFull
+     *
+     * @return boolean true when every field is returned
+     */
+    public boolean isFull() {
+        return includes == null && excludes == null;
+    }
+
+    /**
+     * isIncluded
+     *
+     * Tests whether a top level source field is returned by this projection.
+     *
+     * @param field String
+     * @return boolean
+     */
+    public boolean isIncluded(final String field) {
+        if(excludes != null && matchesAny(excludes, field)) {
+            return false;
+        }
+        return includes == null || matchesAny(includes, field);
+    }
+
+    private static boolean matchesAny(final String[] patterns, final String field) {
+        for(String pattern: patterns) {
+            if(pattern.endsWith("*")
+                    ? field.startsWith(pattern.substring(0, pattern.length() - 1))
+                    : pattern.equals(field) || pattern.startsWith(field + ".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SourceProjection [includes: %s, excludes: %s]",
+                Arrays.toString(this.includes), Arrays.toString(this.excludes));
+    }
+}
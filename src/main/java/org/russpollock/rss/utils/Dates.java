@@ -0,0 +1,121 @@
+package org.russpollock.rss.utils;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class Dates {
+    private static final Pattern DATE_MATH = Pattern.compile("([+-])(\\d+)([yMwdhHms])|/([yMwdhHms])");
+
+    /**
+     * parseMillis
+     *
+     * Parses a date value the way the article mapping's `date` fields accept it
+     * (strict_date_optional_time or epoch_millis) into epoch millis, UTC when no offset is given.
+     * Also accepts ES date math anchored on `now`, e.g. `now-7d/d`.
+     *
+     * @param value date String, epoch millis Number or date math
+     * @return Long epoch millis or null if the value can not be parsed
+     */
+    public static Long parseMillis(final Object value) {
+        if(value == null) {
+            return null;
+        }
+        if(value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        final String date = value.toString().trim();
+        if(date.isEmpty()) {
+            return null;
+        }
+        if(date.startsWith("now")) {
+            return parseDateMath(date.substring(3), System.currentTimeMillis());
+        }
+        if(date.chars().allMatch(Character::isDigit) && date.length() > 8) {
+            return Long.parseLong(date);
+        }
+        try {
+            return OffsetDateTime.parse(date).toInstant().toEpochMilli();
+        } catch(DateTimeParseException e) {
+            // Try the next format
+        }
+        try {
+            return Instant.parse(date).toEpochMilli();
+        } catch(DateTimeParseException e) {
+            // Try the next format
+        }
+        try {
+            return LocalDateTime.parse(date).toInstant(ZoneOffset.UTC).toEpochMilli();
+        } catch(DateTimeParseException e) {
+            // Try the next format
+        }
+        try {
+            return LocalDate.parse(date).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+        } catch(DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static Long parseDateMath(final String math, final long now) {
+        ZonedDateTime time = Instant.ofEpochMilli(now).atZone(ZoneOffset.UTC);
+        final Matcher matcher = DATE_MATH.matcher(math);
+        int position = 0;
+        while(matcher.find()) {
+            if(matcher.start() != position) {
+                return null;
+            }
+            position = matcher.end();
+            if(matcher.group(4) != null) {
+                time = round(time, matcher.group(4).charAt(0));
+            } else {
+                final long amount = Long.parseLong(matcher.group(2));
+                final ChronoUnit unit = unit(matcher.group(3).charAt(0));
+                time = "+".equals(matcher.group(1)) ? time.plus(amount, unit) : time.minus(amount, unit);
+            }
+        }
+        if(position != math.length()) {
+            return null;
+        }
+        return time.toInstant().toEpochMilli();
+    }
+
+    private static ChronoUnit unit(final char unit) {
+        switch(unit) {
+            case 'y':
+                return ChronoUnit.YEARS;
+            case 'M':
+                return ChronoUnit.MONTHS;
+            case 'w':
+                return ChronoUnit.WEEKS;
+            case 'd':
+                return ChronoUnit.DAYS;
+            case 'h':
+            case 'H':
+                return ChronoUnit.HOURS;
+            case 'm':
+                return ChronoUnit.MINUTES;
+            default:
+                return ChronoUnit.SECONDS;
+        }
+    }
+
+    private static ZonedDateTime round(final ZonedDateTime time, final char unit) {
+        switch(unit) {
+            case 'y':
+                return time.truncatedTo(ChronoUnit.DAYS).withDayOfYear(1);
+            case 'M':
+                return time.truncatedTo(ChronoUnit.DAYS).withDayOfMonth(1);
+            case 'w':
+                return time.truncatedTo(ChronoUnit.DAYS).minusDays(time.getDayOfWeek().getValue() - 1);
+            default:
+                return time.truncatedTo(unit(unit));
+        }
+    }
+}
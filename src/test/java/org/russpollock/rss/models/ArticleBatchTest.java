@@ -0,0 +1,153 @@
+package org.russpollock.rss.models;
+
+import org.russpollock.rss.repository.ArticleCodec;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class ArticleBatchTest {
+    private static final String CONTROL = "nul\u0000 soh\u0001 tab\t lf\n cr\r us\u001f del\u007f";
+    private static final String ESCAPED = "quote\" backslash\\ slash/ </script>";
+    private static final String SURROGATES = "emoji \ud83d\ude00 clef \ud834\udd1e han \ud840\udc00";
+    private static final String MULTI_BYTE = "caf\u00e9 \u20ac \u00df \u4e2d\u6587";
+
+    @Test
+    public void writeSourceMatchesCodecOnHeap() throws IOException {
+        assertSourcesMatch(new ArticleBatch(1024, false));
+    }
+
+    @Test
+    public void writeSourceMatchesCodecDirect() throws IOException {
+        assertSourcesMatch(new ArticleBatch(1024, true));
+    }
+
+    @Test
+    public void omitsNullFieldsAndLists() throws IOException {
+        final Article article = new Article();
+        article.URL = "http://example.com/sparse";
+        article.title = CONTROL;
+        final ArticleBatch batch = new ArticleBatch();
+        batch.add(article);
+
+        final Article read = ArticleCodec.read(new BytesArray(source(batch, 0)), new Article());
+        assertNull(read.links);
+        assertNull(read.tags);
+        assertNull(read.published);
+        assertEquals(CONTROL, read.title);
+        // Like ArticleBuilder.build, an article without an id gets its URL as id
+        assertEquals(article.URL, read.getID());
+        article.setID(article.URL);
+        assertEquals(reserialize(BytesReference.toBytes(ArticleCodec.toXContent(article).bytes())),
+                reserialize(source(batch, 0)));
+    }
+
+    @Test
+    public void toArticleRoundTripsStrings() {
+        final ArticleBatch batch = new ArticleBatch(16, true);
+        batch.add(article(0));
+        final Article read = batch.toArticle(0);
+        assertEquals(CONTROL, read.title);
+        assertEquals(SURROGATES, read.description);
+        assertEquals(MULTI_BYTE, read.author);
+        assertEquals(SURROGATES, batch.getString(0, ArticleBatch.FIELD.DESCRIPTION));
+        assertEquals(Arrays.asList(new Tag(SURROGATES, CONTROL), new Tag("plain", null)), read.tags);
+    }
+
+    @Test
+    public void failedPutDiscardsStartedArticle() throws IOException {
+        final ArticleBatch batch = new ArticleBatch(1024, false);
+        batch.add(article(0));
+        final int bytes = batch.sizeInBytes();
+        final List<Link> links = new AbstractList<Link>() {
+            @Override
+            public Link get(final int index) {
+                if(index > 0) {
+                    throw new IllegalStateException("links changed while appending");
+                }
+                return new Link("http://example.com/first", null, null);
+            }
+
+            @Override
+            public int size() {
+                return 2;
+            }
+        };
+        batch.startArticle().putField(ArticleBatch.FIELD.URL, "http://example.com/half");
+        try {
+            batch.putLinks(links);
+            fail("Expected the failing links to be thrown");
+        } catch(IllegalStateException e) {
+            assertEquals("links changed while appending", e.getMessage());
+        }
+        assertEquals(1, batch.size());
+        assertEquals(bytes, batch.sizeInBytes());
+
+        assertEquals(1, batch.add(article(1)));
+        assertEquals(article(1).links, batch.toArticle(1).links);
+        assertEquals(reserialize(BytesReference.toBytes(ArticleCodec.toXContent(article(1)).bytes())),
+                reserialize(source(batch, 1)));
+    }
+
+    private static void assertSourcesMatch(final ArticleBatch batch) throws IOException {
+        for(int i = 0; i < 3; i++) {
+            batch.add(article(i));
+        }
+        for(int i = 0; i < 3; i++) {
+            final Article article = article(i);
+            final byte[] written = source(batch, i);
+            // Escapes may be spelled differently, the parsed articles must be identical
+            assertEquals(reserialize(BytesReference.toBytes(ArticleCodec.toXContent(article).bytes())),
+                    reserialize(written));
+            final Article read = ArticleCodec.read(new BytesArray(written), new Article());
+            assertEquals(article.title, read.title);
+            assertEquals(article.description, read.description);
+            assertEquals(article.content, read.content);
+            assertEquals(article.links, read.links);
+            assertEquals(article.tags, read.tags);
+        }
+    }
+
+    private static Article article(final int i) {
+        final StringBuilder content = new StringBuilder();
+        // Longer than the scratch buffer direct batches escape through
+        while(content.length() < 20000) {
+            content.append(CONTROL).append(SURROGATES).append(ESCAPED).append(MULTI_BYTE);
+        }
+        final Article article = new Article();
+        article.URL = "http://example.com/" + i + "?q=" + ESCAPED;
+        article.published = "2017-06-0" + (i + 1) + "T00:00:00Z";
+        article.contentType = "text/html";
+        article.content = content.toString();
+        article.author = MULTI_BYTE;
+        article.title = CONTROL;
+        article.description = SURROGATES;
+        article.links = Arrays.asList(new Link("http://example.com/" + i, "alternate", null),
+                new Link(ESCAPED, null, SURROGATES));
+        article.tags = Arrays.asList(new Tag(SURROGATES, CONTROL), new Tag("plain", null));
+        article.source = "source \ud83d\udcf0";
+        article.created = "2017-06-10T00:00:00Z";
+        article.setID("id-" + i);
+        return article;
+    }
+
+    private static byte[] source(final ArticleBatch batch, final int index) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        batch.writeSource(index, out);
+        return out.toByteArray();
+    }
+
+    private static String reserialize(final byte[] json) throws IOException {
+        final Article article = ArticleCodec.read(new BytesArray(json), new Article());
+        return ArticleCodec.toXContent(article).string();
+    }
+}
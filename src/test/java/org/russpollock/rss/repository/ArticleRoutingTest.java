@@ -0,0 +1,83 @@
+package org.russpollock.rss.repository;
+
+import org.russpollock.rss.models.Article;
+import org.russpollock.rss.models.Tag;
+import org.russpollock.rss.repository.queries.ArticleSearchQueryBuilder;
+import org.russpollock.rss.repository.queries.SearchQuery;
+import org.russpollock.rss.repository.queries.SearchQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ArticleRoutingTest {
+    private final ArticleRouting routing = ArticleRouting.bySource();
+
+    @Test
+    public void routesArticlesByKeyValue() {
+        final Article article = new Article();
+        article.URL = "http://example.com/a";
+        article.source = "reuters";
+        article.author = "Jane Doe";
+        assertEquals("reuters", routing.routingFor(article));
+        assertEquals("Jane Doe", ArticleRouting.byField("author").routingFor(article));
+
+        // Without a key value the article is routed by its id
+        assertNull(ArticleRouting.byField("contentType").routingFor(article));
+        article.source = "";
+        assertNull(routing.routingFor(article));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void refusesUnknownKeyFields() {
+        ArticleRouting.byField("title");
+    }
+
+    @Test
+    public void routesQueriesWithOneRequiredExactValue() {
+        assertEquals("reuters", routing.routingFor(new ArticleSearchQueryBuilder()
+                .setSource("reuters")
+                .setPublished("2017-06-01", "2017-06-30")
+                .setTags(new Tag("markets", "category"))
+                .build()));
+        assertEquals("reuters", routing.routingFor(new SearchQueryBuilder()
+                .setFilters(QueryBuilders.constantScoreQuery(QueryBuilders.boolQuery()
+                        .filter(QueryBuilders.termsQuery("source.raw", "reuters"))))
+                .build()));
+        assertEquals("text/html", ArticleRouting.byField("contentType").routingFor(new ArticleSearchQueryBuilder()
+                .setContentType("text/html")
+                .build()));
+    }
+
+    @Test
+    public void searchesEveryShardWhenTheValueIsNotPinned() {
+        assertNull(routing.routingFor(new SearchQueryBuilder().build()));
+        assertNull(routing.routingFor(new ArticleSearchQueryBuilder().setAuthor("Jane Doe").build()));
+        // The analyzed field holds tokens, not the source
+        assertNull(routing.routingFor(new SearchQueryBuilder()
+                .setFilters(QueryBuilders.boolQuery().must(QueryBuilders.termQuery("source", "reuters")))
+                .build()));
+        assertNull(routing.routingFor(new SearchQueryBuilder()
+                .setFilters(QueryBuilders.boolQuery().must(QueryBuilders.termsQuery("source.raw", "reuters", "ap")))
+                .build()));
+        assertNull(routing.routingFor(new SearchQueryBuilder()
+                .setFilters(QueryBuilders.boolQuery().should(QueryBuilders.termQuery("source.raw", "reuters")))
+                .build()));
+        assertNull(routing.routingFor(new SearchQueryBuilder()
+                .setFilters(QueryBuilders.boolQuery().mustNot(QueryBuilders.termQuery("source.raw", "reuters")))
+                .build()));
+        assertNull(routing.routingFor(new SearchQueryBuilder()
+                .setFilters(QueryBuilders.boolQuery().must(QueryBuilders.termQuery("source.raw", 42)))
+                .build()));
+        assertNull(routing.routingFor(new ArticleSearchQueryBuilder().setSource("").build()));
+    }
+
+    @Test
+    public void postFilterQueriesAreNotRouted() {
+        assertNull(routing.routingFor(new ArticleSearchQueryBuilder()
+                .setSource("reuters")
+                .setFilterMode(SearchQuery.FILTER_MODE.POST_FILTER)
+                .build()));
+    }
+}
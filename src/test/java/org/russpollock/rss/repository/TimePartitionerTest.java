@@ -0,0 +1,159 @@
+package org.russpollock.rss.repository;
+
+import org.russpollock.rss.models.Article;
+import org.russpollock.rss.repository.queries.ArticleSearchQueryBuilder;
+import org.russpollock.rss.repository.queries.SearchQuery;
+import org.russpollock.rss.repository.queries.SearchQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TimePartitionerTest {
+    private final TimePartitioner daily = new TimePartitioner("articles", TimePartitioner.INTERVAL.DAILY, "published");
+    private final TimePartitioner weekly = new TimePartitioner("articles", TimePartitioner.INTERVAL.WEEKLY, "published");
+    private final TimePartitioner monthly = new TimePartitioner("articles", TimePartitioner.INTERVAL.MONTHLY, "published");
+
+    @Test
+    public void indexForUsesUtcPeriods() {
+        assertEquals("articles-2017.06.16", daily.indexFor(article("2017-06-16T23:30:00Z")));
+        // Still the 16th locally, already the 17th in UTC
+        assertEquals("articles-2017.06.17", daily.indexFor(article("2017-06-16T23:30:00-02:00")));
+        assertEquals("articles-2017.06", monthly.indexFor(article("2017-06-30T23:59:59Z")));
+        assertEquals("articles-2017.w24", weekly.indexFor(article("2017-06-16")));
+        assertEquals("articles-undated", weekly.indexFor(article(null)));
+        assertEquals("articles-undated", daily.indexFor(article("last tuesday")));
+    }
+
+    @Test
+    public void weeksBelongToTheirIsoWeekYear() {
+        // Friday 2016-01-01 is in the last week of 2015, Monday 2018-12-31 in the first week of 2019
+        assertEquals("articles-2015.w53", weekly.indexFor(millis(2016, 1, 1)));
+        assertEquals("articles-2016.w01", weekly.indexFor(millis(2016, 1, 4)));
+        assertEquals("articles-2019.w01", weekly.indexFor(millis(2018, 12, 31)));
+        assertEquals("articles-2020.w53", weekly.indexFor(millis(2021, 1, 3)));
+        assertEquals("articles-2021.w01", weekly.indexFor(millis(2021, 1, 4)));
+
+        assertEquals(Long.valueOf(millis(2015, 12, 28)), weekly.partitionStart("articles-2015.w53"));
+        assertEquals(Long.valueOf(millis(2016, 1, 4)), weekly.partitionStart("articles-2016.w01"));
+        assertEquals(Long.valueOf(millis(2018, 12, 31)), weekly.partitionStart("articles-2019.w01"));
+        assertEquals(Long.valueOf(millis(2020, 12, 28)), weekly.partitionStart("articles-2020.w53"));
+        for(LocalDate date = LocalDate.of(2014, 12, 1); date.isBefore(LocalDate.of(2021, 2, 1)); date = date.plusDays(1)) {
+            final String index = weekly.indexFor(millis(date));
+            assertEquals(index, weekly.indexFor(weekly.partitionStart(index)));
+        }
+    }
+
+    @Test
+    public void partitionStartRejectsOtherIndices() {
+        assertEquals(Long.valueOf(millis(2017, 6, 16)), daily.partitionStart("articles-2017.06.16"));
+        assertEquals(Long.valueOf(millis(2017, 6, 1)), monthly.partitionStart("articles-2017.06"));
+        assertNull(daily.partitionStart("feeds-2017.06.16"));
+        assertNull(daily.partitionStart("articles-undated"));
+        assertNull(monthly.partitionStart("articles-2017.13"));
+        assertNull(weekly.partitionStart("articles-undated"));
+        assertNull(weekly.partitionStart("articles-2017.wxx"));
+        // 2017 has 52 ISO weeks
+        assertNull(weekly.partitionStart("articles-2017.w53"));
+
+        assertTrue(weekly.isOlderThan("articles-2015.w53", millis(2016, 1, 4)));
+        assertFalse(weekly.isOlderThan("articles-2015.w53", millis(2016, 1, 4) - 1));
+        assertFalse(weekly.isOlderThan("articles-undated", Long.MAX_VALUE));
+    }
+
+    @Test
+    public void indicesForListsOverlappingPartitions() {
+        assertArrayEquals(new String[] {"articles-2015.w53", "articles-2016.w01", "articles-2016.w02"},
+                weekly.indicesFor(millis(2015, 12, 31), millis(2016, 1, 11)));
+        assertArrayEquals(new String[] {"articles-2017.06.30", "articles-2017.07.01"},
+                daily.indicesFor(millis(2017, 6, 30) + 1000, millis(2017, 7, 1)));
+        assertArrayEquals(new String[] {"articles-*"}, daily.indicesFor(null, millis(2017, 7, 1)));
+        // An inverted range matches nothing, one partition is searched rather than every index
+        assertArrayEquals(new String[] {"articles-2017.07.01"}, daily.indicesFor(millis(2017, 7, 1), millis(2017, 6, 1)));
+    }
+
+    @Test
+    public void rangesOverMaxSearchPartitionsSearchThePattern() {
+        final TimePartitioner partitioner = new TimePartitioner("articles", TimePartitioner.INTERVAL.DAILY, "published")
+                .setMaxSearchPartitions(3);
+        assertEquals(3, partitioner.indicesFor(millis(2017, 6, 1), millis(2017, 6, 3)).length);
+        assertArrayEquals(new String[] {"articles-*"}, partitioner.indicesFor(millis(2017, 6, 1), millis(2017, 6, 4)));
+        assertEquals(TimePartitioner.DEFAULT_MAX_SEARCH_PARTITIONS,
+                daily.indicesFor(millis(2016, 1, 1), millis(2016, 1, 1) + (TimePartitioner.DEFAULT_MAX_SEARCH_PARTITIONS - 1)
+                        * 24 * 3600 * 1000L).length);
+        // Unbounded above means up to a day from now, ten years of days is far over the limit
+        assertArrayEquals(new String[] {"articles-*"}, daily.indicesFor(millis(2010, 1, 1), null));
+    }
+
+    @Test
+    public void searchIndicesForNarrowsByPublishedRanges() {
+        final SearchQuery query = new ArticleSearchQueryBuilder()
+                .setPublished("2017-06-01", "2017-06-20")
+                .setPublished("2017-06-15", "2017-07-31")
+                .setCreated("2010-01-01", "2010-01-02")
+                .build();
+        assertArrayEquals(new String[] {"articles-2017.w24", "articles-2017.w25"}, weekly.searchIndicesFor(query));
+
+        final SearchQuery math = new ArticleSearchQueryBuilder().setPublished("now-1d/d", "now").build();
+        assertEquals(2, daily.searchIndicesFor(math).length);
+    }
+
+    @Test
+    public void searchIndicesForWidensRangesInOtherTimeZones() {
+        final SearchQuery query = new SearchQueryBuilder()
+                .setFilters(QueryBuilders.boolQuery().filter(QueryBuilders.constantScoreQuery(
+                        QueryBuilders.rangeQuery("published").from("2017-06-16").to("2017-06-16").timeZone("+10:00"))))
+                .build();
+        assertArrayEquals(new String[] {"articles-2017.06.15", "articles-2017.06.16", "articles-2017.06.17"},
+                daily.searchIndicesFor(query));
+    }
+
+    @Test
+    public void searchIndicesForSearchesEveryPartitionWhenRangesCanNotBeRead() {
+        final SearchQuery formatted = new SearchQueryBuilder()
+                .setFilters(QueryBuilders.boolQuery().must(
+                        QueryBuilders.rangeQuery("published").from("2017061600").to("2017061623").format("yyyyMMddHH")))
+                .build();
+        assertArrayEquals(new String[] {"articles-*"}, daily.searchIndicesFor(formatted));
+
+        final SearchQuery should = new SearchQueryBuilder()
+                .setFilters(QueryBuilders.boolQuery().should(
+                        QueryBuilders.rangeQuery("published").from("2017-06-16").to("2017-06-17")))
+                .build();
+        assertArrayEquals(new String[] {"articles-*"}, daily.searchIndicesFor(should));
+
+        final SearchQuery postFilter = new ArticleSearchQueryBuilder()
+                .setPublished("2017-06-16", "2017-06-17")
+                .setFilterMode(SearchQuery.FILTER_MODE.POST_FILTER)
+                .build();
+        assertArrayEquals(new String[] {"articles-*"}, daily.searchIndicesFor(postFilter));
+        assertArrayEquals(new String[] {"articles-*"}, daily.searchIndicesFor(new SearchQueryBuilder().build()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void refusesToPartitionByCreated() {
+        new TimePartitioner("articles", TimePartitioner.INTERVAL.DAILY, "created");
+    }
+
+    private static Article article(final String published) {
+        final Article article = new Article();
+        article.URL = "http://example.com/a";
+        article.published = published;
+        return article;
+    }
+
+    private static long millis(final int year, final int month, final int day) {
+        return millis(LocalDate.of(year, month, day));
+    }
+
+    private static long millis(final LocalDate date) {
+        return date.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+    }
+}
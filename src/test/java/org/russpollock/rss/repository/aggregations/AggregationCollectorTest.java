@@ -0,0 +1,116 @@
+package org.russpollock.rss.repository.aggregations;
+
+import org.russpollock.rss.models.Article;
+import org.russpollock.rss.models.Tag;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AggregationCollectorTest {
+    @Test
+    public void intervalStartTruncatesInUtc() {
+        final long instant = millis("2017-08-16T13:45:30.250Z");
+        assertEquals(millis("2017-08-16T13:00:00Z"), start(instant, ArticleAggregation.INTERVAL.HOUR));
+        assertEquals(millis("2017-08-16T00:00:00Z"), start(instant, ArticleAggregation.INTERVAL.DAY));
+        assertEquals(millis("2017-08-14T00:00:00Z"), start(instant, ArticleAggregation.INTERVAL.WEEK));
+        assertEquals(millis("2017-08-01T00:00:00Z"), start(instant, ArticleAggregation.INTERVAL.MONTH));
+        assertEquals(millis("2017-07-01T00:00:00Z"), start(instant, ArticleAggregation.INTERVAL.QUARTER));
+        assertEquals(millis("2017-01-01T00:00:00Z"), start(instant, ArticleAggregation.INTERVAL.YEAR));
+    }
+
+    @Test
+    public void intervalStartAtBoundaries() {
+        // An interval start is its own start, the millisecond before it belongs to the previous interval
+        for(ArticleAggregation.INTERVAL interval: ArticleAggregation.INTERVAL.values()) {
+            final long start = start(millis("2018-01-01T00:00:00Z"), interval);
+            assertEquals(start, start(start, interval));
+            assertTrue(start(start - 1, interval) < start);
+        }
+        // Monday 2018-01-01 starts a week, Sunday 2017-01-01 is in the week starting 2016-12-26
+        assertEquals(millis("2018-01-01T00:00:00Z"),
+                start(millis("2018-01-07T23:59:59.999Z"), ArticleAggregation.INTERVAL.WEEK));
+        assertEquals(millis("2016-12-26T00:00:00Z"),
+                start(millis("2017-01-01T12:00:00Z"), ArticleAggregation.INTERVAL.WEEK));
+        assertEquals(millis("2017-09-30T23:00:00Z"),
+                start(millis("2017-09-30T23:59:59.999Z"), ArticleAggregation.INTERVAL.HOUR));
+        assertEquals(millis("2017-07-01T00:00:00Z"),
+                start(millis("2017-09-30T23:59:59.999Z"), ArticleAggregation.INTERVAL.QUARTER));
+        assertEquals(millis("2017-10-01T00:00:00Z"),
+                start(millis("2017-10-01T00:00:00Z"), ArticleAggregation.INTERVAL.QUARTER));
+        assertEquals(millis("2017-01-01T00:00:00Z"),
+                start(millis("2017-03-31T23:59:59.999Z"), ArticleAggregation.INTERVAL.QUARTER));
+        // Leap day and instants before the epoch
+        assertEquals(millis("2016-02-29T00:00:00Z"),
+                start(millis("2016-02-29T23:59:59Z"), ArticleAggregation.INTERVAL.DAY));
+        assertEquals(millis("1969-12-31T00:00:00Z"), start(-1, ArticleAggregation.INTERVAL.DAY));
+        assertEquals(millis("1969-10-01T00:00:00Z"), start(-1, ArticleAggregation.INTERVAL.QUARTER));
+    }
+
+    @Test
+    public void countsHistogramInIntervalOrder() {
+        final AggregationCollector collector = new AggregationCollector(
+                Arrays.asList(ArticleAggregation.published(ArticleAggregation.INTERVAL.MONTH)));
+        collector.collect(article("2017-08-31T23:30:00-02:00", null, null));
+        collector.collect(article("2017-06-16", null, null));
+        collector.collect(article("2017-08-31T23:30:00Z", null, null));
+        collector.collect(article(null, null, null));
+
+        final AggregationResults results = collector.getResults();
+        assertEquals(4, results.getTotalHits());
+        // Late on August 31st at -02:00 is already September in UTC
+        final List<DateHistogramBucket> buckets = results.getHistogram("published");
+        assertEquals(3, buckets.size());
+        assertEquals(millis("2017-06-01T00:00:00Z"), buckets.get(0).getStartMillis());
+        assertEquals(millis("2017-08-01T00:00:00Z"), buckets.get(1).getStartMillis());
+        assertEquals(millis("2017-09-01T00:00:00Z"), buckets.get(2).getStartMillis());
+        for(DateHistogramBucket bucket: buckets) {
+            assertEquals(1, bucket.getCount());
+        }
+    }
+
+    @Test
+    public void countsTermsByCountThenTerm() {
+        final AggregationCollector collector = new AggregationCollector(
+                Arrays.asList(ArticleAggregation.sources(2), ArticleAggregation.tags(10)));
+        collector.collect(article(null, "reuters", Arrays.asList(new Tag("markets", "category"),
+                new Tag("markets", "keyword"), new Tag("oil", "keyword"))));
+        collector.collect(article(null, "ap", Arrays.asList(new Tag("oil", "keyword"))));
+        collector.collect(article(null, "bbc", null));
+        collector.collect(article(null, "reuters", null));
+
+        final AggregationResults results = collector.getResults();
+        final List<TermsBucket> sources = results.getTerms("sources");
+        assertEquals(2, sources.size());
+        assertEquals("reuters", sources.get(0).getTerm());
+        assertEquals(2, sources.get(0).getCount());
+        assertEquals("ap", sources.get(1).getTerm());
+        // A tag counts once per article like the reverse nested ES aggregation
+        final List<TermsBucket> tags = results.getTerms("tags");
+        assertEquals(2, tags.size());
+        assertEquals("oil", tags.get(0).getTerm());
+        assertEquals(2, tags.get(0).getCount());
+        assertEquals("markets", tags.get(1).getTerm());
+        assertEquals(1, tags.get(1).getCount());
+    }
+
+    private static long start(final long epochMillis, final ArticleAggregation.INTERVAL interval) {
+        return AggregationCollector.intervalStart(epochMillis, interval);
+    }
+
+    private static long millis(final String instant) {
+        return Instant.parse(instant).toEpochMilli();
+    }
+
+    private static Article article(final String published, final String source, final List<Tag> tags) {
+        final Article article = new Article();
+        article.published = published;
+        article.source = source;
+        article.tags = tags;
+        return article;
+    }
+}
@@ -0,0 +1,128 @@
+package org.russpollock.rss.repository.cache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class BoundedCacheTest {
+    @Test
+    public void lruEvictsLeastRecentlyUsed() {
+        final BoundedCache<String, Integer> cache = new BoundedCache<>(3, 0, BoundedCache.EVICTION.LRU);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.put("c", 3);
+        assertEquals(Integer.valueOf(1), cache.get("a"));
+        cache.put("d", 4);
+        assertNull(cache.get("b"));
+        // Replacing an entry uses it too
+        cache.put("c", 30);
+        cache.put("e", 5);
+        assertNull(cache.get("a"));
+        assertEquals(Integer.valueOf(30), cache.get("c"));
+        assertEquals(Integer.valueOf(4), cache.get("d"));
+        assertEquals(Integer.valueOf(5), cache.get("e"));
+        assertEquals(2, cache.getStats().getEvictions());
+    }
+
+    @Test
+    public void lfuEvictsLeastFrequentlyUsedOldestFirst() {
+        final BoundedCache<String, Integer> cache = new BoundedCache<>(3, 0, BoundedCache.EVICTION.LFU);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.put("c", 3);
+        cache.get("a");
+        cache.get("a");
+        cache.get("c");
+        cache.put("d", 4);
+        assertNull(cache.get("b"));
+
+        // d is the only key used once
+        cache.get("c");
+        cache.put("e", 5);
+        assertNull(cache.get("d"));
+        cache.put("f", 6);
+        assertNull(cache.get("e"));
+        assertEquals(Integer.valueOf(1), cache.get("a"));
+        assertEquals(Integer.valueOf(3), cache.get("c"));
+        assertEquals(Integer.valueOf(6), cache.get("f"));
+    }
+
+    @Test
+    public void lfuEvictsFromNextBucketOnceLowestEmpties() {
+        final BoundedCache<String, Integer> cache = new BoundedCache<>(3, 0, BoundedCache.EVICTION.LFU);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.put("c", 3);
+        cache.get("b");
+        cache.get("c");
+        cache.get("c");
+        // a was the only key used once, b used twice is now the least frequent
+        assertEquals(Integer.valueOf(1), cache.remove("a"));
+        cache.put("d", 4);
+        cache.get("d");
+        cache.get("d");
+        cache.get("d");
+        cache.put("e", 5);
+        assertNull(cache.get("b"));
+        assertEquals(Integer.valueOf(3), cache.get("c"));
+        assertEquals(Integer.valueOf(4), cache.get("d"));
+        assertEquals(Integer.valueOf(5), cache.get("e"));
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        cache.put("f", 6);
+        cache.put("g", 7);
+        cache.get("g");
+        cache.put("h", 8);
+        cache.put("i", 9);
+        assertNull(cache.get("f"));
+        assertEquals(Integer.valueOf(7), cache.get("g"));
+    }
+
+    @Test
+    public void expiredEntriesAreMissesAndFreeTheirSlot() throws InterruptedException {
+        for(BoundedCache.EVICTION eviction: BoundedCache.EVICTION.values()) {
+            final BoundedCache<String, Integer> cache = new BoundedCache<>(2, 50, eviction);
+            cache.put("a", 1);
+            cache.put("b", 2);
+            cache.get("b");
+            Thread.sleep(100);
+            cache.put("c", 3);
+            assertNull(cache.get("b"));
+            assertEquals(Integer.valueOf(3), cache.get("c"));
+            assertEquals(1, cache.size());
+
+            // c is both the least recently and the least frequently used
+            cache.put("d", 4);
+            cache.get("d");
+            cache.get("d");
+            cache.put("e", 5);
+            assertEquals(Integer.valueOf(4), cache.get("d"));
+            assertEquals(Integer.valueOf(5), cache.get("e"));
+
+            final CacheStats stats = cache.getStats();
+            assertEquals(1, stats.getExpirations());
+            assertEquals(2, stats.getEvictions());
+            assertEquals(6, stats.getHits());
+            assertEquals(1, stats.getMisses());
+        }
+    }
+
+    @Test
+    public void statsCountInvalidations() {
+        final BoundedCache<String, Integer> cache = new BoundedCache<>(10, 0, BoundedCache.EVICTION.LFU);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.put("c", 3);
+        assertNull(cache.remove("z"));
+        cache.remove("a");
+        cache.clear();
+        assertNull(cache.get("b"));
+
+        final CacheStats stats = cache.getStats();
+        assertEquals(3, stats.getInvalidations());
+        assertEquals(1, stats.getMisses());
+        assertEquals(0, stats.getSize());
+    }
+}
@@ -0,0 +1,118 @@
+package org.russpollock.rss.repository.cache;
+
+import org.russpollock.rss.models.Article;
+import org.russpollock.rss.models.ArticleHit;
+import org.russpollock.rss.repository.memory.InMemoryArticleDatastore;
+import org.russpollock.rss.repository.queries.SearchQuery;
+import org.russpollock.rss.repository.queries.SearchQueryBuilder;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CachingArticleDatastoreTest {
+    private static final String URL = "http://example.com/a";
+
+    @Test
+    public void cachesSearchesUntilAWrite() {
+        final InMemoryArticleDatastore delegate = new InMemoryArticleDatastore();
+        delegate.save(article("first"));
+        final CachingArticleDatastore cache = cachingDatastore(delegate);
+        final SearchQuery query = new SearchQueryBuilder().build();
+
+        assertEquals("first", cache.search(query).get(0).title);
+        delegate.save(article("behind the cache"));
+        assertEquals("first", cache.search(query).get(0).title);
+        assertEquals(1, cache.getSearchStats().getHits());
+
+        cache.save(article("second"));
+        assertEquals("second", cache.search(query).get(0).title);
+        assertEquals(1, cache.getSearchStats().getSize());
+    }
+
+    @Test
+    public void searchOverlappingAWriteIsNotCached() {
+        final WritingDatastore delegate = new WritingDatastore();
+        delegate.save(article("first"));
+        final CachingArticleDatastore cache = cachingDatastore(delegate);
+        delegate.cache = cache;
+        final SearchQuery query = new SearchQueryBuilder().build();
+
+        // The write lands after the delegate read the first title, its hits must not be cached
+        assertEquals("first", cache.search(query).get(0).title);
+        assertEquals(0, cache.getSearchStats().getSize());
+        assertEquals("second", cache.search(query).get(0).title);
+        assertEquals(1, cache.getSearchStats().getSize());
+        assertEquals("second", cache.search(query).get(0).title);
+        assertEquals(1, cache.getSearchStats().getHits());
+    }
+
+    @Test
+    public void getOverlappingAWriteIsNotCached() {
+        final WritingDatastore delegate = new WritingDatastore();
+        delegate.save(article("first"));
+        final CachingArticleDatastore cache = cachingDatastore(delegate);
+        delegate.cache = cache;
+
+        assertEquals("first", cache.get(URL).title);
+        assertEquals(0, cache.getArticleStats().getSize());
+        assertEquals("second", cache.get(URL).title);
+        assertEquals(1, cache.getArticleStats().getSize());
+        assertEquals("second", cache.get(URL).title);
+        assertEquals(1, cache.getArticleStats().getHits());
+
+        cache.delete(URL);
+        assertNull(cache.get(URL));
+    }
+
+    private static CachingArticleDatastore cachingDatastore(final InMemoryArticleDatastore delegate) {
+        final CachingArticleDatastore cache =
+                new CachingArticleDatastore(delegate, 10, 0, BoundedCache.EVICTION.LRU);
+        // Only the generation check guards the caches, not the time since the last write
+        cache.setRefreshIntervalMillis(0);
+        cache.setArticleCache(10, 0, BoundedCache.EVICTION.LRU);
+        return cache;
+    }
+
+    private static Article article(final String title) {
+        final Article article = new Article();
+        article.URL = URL;
+        article.title = title;
+        return article;
+    }
+
+    /**
+     * WritingDatastore
+     *
+     * Saves a second title through the cache right after its first read, like a write racing the read.
+     */
+    private static class WritingDatastore extends InMemoryArticleDatastore {
+        private CachingArticleDatastore cache;
+        private boolean written;
+
+        @Override
+        public List<ArticleHit> search(final SearchQuery query) {
+            final List<ArticleHit> hits = super.search(query);
+            write();
+            return hits;
+        }
+
+        @Override
+        public Map<String, ArticleHit> getAll(final Collection<String> ids) {
+            final Map<String, ArticleHit> hits = super.getAll(ids);
+            write();
+            return hits;
+        }
+
+        private void write() {
+            if(!written) {
+                written = true;
+                cache.save(article("second"));
+            }
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package org.russpollock.rss.repository.ingest;
+
+import org.elasticsearch.common.bytes.BytesArray;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ArticleSpoolTest {
+    private static final int SEGMENT_BYTES = 4096;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void pollReturnsAppendedRecords() throws IOException {
+        try(ArticleSpool spool = new ArticleSpool(folder.getRoot().toPath(), SEGMENT_BYTES)) {
+            spool.append("articles-2017-06", "http://example.com/a", "reuters", 42, source(1));
+            spool.append("articles-undated", "http://example.com/b", null, 43, source(2));
+
+            final ArticleSpool.Batch batch = spool.poll(10);
+            assertEquals(2, batch.size());
+            final ArticleSpool.SpooledArticle first = batch.getArticles().get(0);
+            assertEquals("articles-2017-06", first.getIndex());
+            assertEquals("http://example.com/a", first.getId());
+            assertEquals("reuters", first.getRouting());
+            assertEquals(42, first.getVersion());
+            assertEquals(source(1).utf8ToString(), first.getSource().utf8ToString());
+            final ArticleSpool.SpooledArticle second = batch.getArticles().get(1);
+            assertNull(second.getRouting());
+            assertEquals(43, second.getVersion());
+
+            assertFalse(spool.isEmpty());
+            assertTrue(spool.poll(10).isEmpty());
+            spool.commit(batch);
+            assertTrue(spool.isEmpty());
+            assertEquals(0, spool.getPendingBytes());
+        }
+    }
+
+    @Test
+    public void rollsSegmentsAndDeletesCommittedOnes() throws IOException {
+        final Path directory = folder.getRoot().toPath();
+        try(ArticleSpool spool = new ArticleSpool(directory, SEGMENT_BYTES)) {
+            for(int i = 0; i < 100; i++) {
+                spool.append("articles", id(i), null, i + 1, source(i));
+            }
+            assertTrue(segments(directory).size() > 3);
+
+            int expected = 0;
+            for(ArticleSpool.Batch batch = spool.poll(7); !batch.isEmpty(); batch = spool.poll(7)) {
+                for(ArticleSpool.SpooledArticle article: batch.getArticles()) {
+                    assertEquals(id(expected), article.getId());
+                    assertEquals(expected + 1, article.getVersion());
+                    expected++;
+                }
+                spool.commit(batch);
+            }
+            assertEquals(100, expected);
+            assertTrue(spool.isEmpty());
+            assertEquals(1, segments(directory).size());
+        }
+    }
+
+    @Test
+    public void reopenResumesFromCommittedCursor() throws IOException {
+        final Path directory = folder.getRoot().toPath();
+        try(ArticleSpool spool = new ArticleSpool(directory, SEGMENT_BYTES)) {
+            for(int i = 0; i < 30; i++) {
+                spool.append("articles", id(i), null, i + 1, source(i));
+            }
+            spool.commit(spool.poll(12));
+            // Polled but never committed, replayed again after the restart
+            spool.poll(5);
+        }
+        try(ArticleSpool spool = new ArticleSpool(directory, SEGMENT_BYTES)) {
+            assertTrue(spool.isDiverting());
+            assertTrue(spool.getPendingBytes() > 0);
+            final List<String> ids = ids(spool.poll(100));
+            assertEquals(18, ids.size());
+            assertEquals(id(12), ids.get(0));
+            assertEquals(id(29), ids.get(17));
+        }
+    }
+
+    @Test
+    public void rewindPollsUncommittedRecordsAgain() throws IOException {
+        try(ArticleSpool spool = new ArticleSpool(folder.getRoot().toPath(), SEGMENT_BYTES)) {
+            for(int i = 0; i < 5; i++) {
+                spool.append("articles", id(i), null, i + 1, source(i));
+            }
+            spool.commit(spool.poll(2));
+            assertEquals(3, spool.poll(10).size());
+            spool.rewind();
+            final List<String> ids = ids(spool.poll(10));
+            assertEquals(3, ids.size());
+            assertEquals(id(2), ids.get(0));
+        }
+    }
+
+    @Test
+    public void drainedSpoolStopsDiverting() throws IOException {
+        try(ArticleSpool spool = new ArticleSpool(folder.getRoot().toPath(), SEGMENT_BYTES)) {
+            assertFalse(spool.appendIfDiverting("articles", id(0), null, 1, source(0)));
+            spool.divert();
+            assertTrue(spool.appendIfDiverting("articles", id(1), null, 2, source(1)));
+            assertFalse(spool.stopDivertingIfDrained());
+            spool.commit(spool.poll(10));
+            assertTrue(spool.stopDivertingIfDrained());
+            assertFalse(spool.isDiverting());
+        }
+    }
+
+    @Test
+    public void deletesAreSpooledOnlyWhilePending() throws IOException {
+        try(ArticleSpool spool = new ArticleSpool(folder.getRoot().toPath(), SEGMENT_BYTES)) {
+            assertFalse(spool.appendDeleteIfPending("articles-*", id(0)));
+            spool.append("articles-2017-06", id(0), null, 1, source(0));
+            assertTrue(spool.appendDeleteIfPending("articles-*", id(0)));
+
+            final ArticleSpool.Batch batch = spool.poll(10);
+            assertEquals(2, batch.size());
+            assertFalse(batch.getArticles().get(0).isDelete());
+            final ArticleSpool.SpooledArticle delete = batch.getArticles().get(1);
+            assertTrue(delete.isDelete());
+            assertEquals("articles-*", delete.getIndex());
+            assertEquals(id(0), delete.getId());
+            assertEquals(ArticleVersion.NONE, delete.getVersion());
+            spool.commit(batch);
+            assertFalse(spool.appendDeleteIfPending("articles-*", id(0)));
+        }
+    }
+
+    @Test
+    public void reopenAfterTornWriteDropsTornRecord() throws IOException {
+        final Path directory = folder.getRoot().toPath();
+        try(ArticleSpool spool = new ArticleSpool(directory, SEGMENT_BYTES)) {
+            for(int i = 0; i < 5; i++) {
+                spool.append("articles", id(i), null, i + 1, source(i));
+            }
+        }
+        // A crash part way through the last record leaves its tail unwritten
+        final Path segment = segments(directory).get(0);
+        final List<Integer> records = recordOffsets(segment);
+        assertEquals(5, records.size());
+        final int last = records.get(4);
+        final int length = readInt(segment, last);
+        write(segment, last + 8 + length / 2, new byte[length - length / 2]);
+
+        try(ArticleSpool spool = new ArticleSpool(directory, SEGMENT_BYTES)) {
+            spool.append("articles", id(5), null, 6, source(5));
+            final List<String> ids = ids(spool.poll(100));
+            assertEquals(5, ids.size());
+            assertEquals(id(3), ids.get(3));
+            assertEquals(id(5), ids.get(4));
+        }
+    }
+
+    @Test
+    public void corruptRecordSkipsRestOfFinishedSegment() throws IOException {
+        final Path directory = folder.getRoot().toPath();
+        try(ArticleSpool spool = new ArticleSpool(directory, SEGMENT_BYTES)) {
+            for(int i = 0; i < 40; i++) {
+                spool.append("articles", id(i), null, i + 1, source(i));
+            }
+        }
+        final List<Path> files = segments(directory);
+        assertTrue(files.size() > 1);
+        final List<Integer> firstSegment = recordOffsets(files.get(0));
+        final int perSegment = firstSegment.size();
+        // Flip a source byte of the second record so its checksum no longer matches
+        final int corrupt = firstSegment.get(1) + 8 + readInt(files.get(0), firstSegment.get(1)) - 2;
+        write(files.get(0), corrupt, new byte[]{'#'});
+
+        try(ArticleSpool spool = new ArticleSpool(directory, SEGMENT_BYTES)) {
+            final List<String> ids = new ArrayList<>();
+            for(ArticleSpool.Batch batch = spool.poll(10); !batch.isEmpty(); batch = spool.poll(10)) {
+                ids.addAll(ids(batch));
+                spool.commit(batch);
+            }
+            assertEquals(id(0), ids.get(0));
+            assertEquals(id(perSegment), ids.get(1));
+            assertEquals(id(39), ids.get(ids.size() - 1));
+            assertEquals(1 + 40 - perSegment, ids.size());
+            assertTrue(spool.isEmpty());
+        }
+    }
+
+    private static String id(final int i) {
+        return "http://example.com/" + i;
+    }
+
+    private static BytesArray source(final int i) {
+        final StringBuilder description = new StringBuilder();
+        for(int j = 0; j < 20; j++) {
+            description.append("word").append(j).append(' ');
+        }
+        return new BytesArray(String.format("{\"title\":\"article %s\",\"description\":\"%s\"}", i, description));
+    }
+
+    private static List<String> ids(final ArticleSpool.Batch batch) {
+        final List<String> ids = new ArrayList<>();
+        for(ArticleSpool.SpooledArticle article: batch.getArticles()) {
+            ids.add(article.getId());
+        }
+        return ids;
+    }
+
+    private static List<Path> segments(final Path directory) throws IOException {
+        final List<Path> files = new ArrayList<>();
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.spool")) {
+            stream.forEach(files::add);
+        }
+        files.sort(null);
+        return files;
+    }
+
+    private static List<Integer> recordOffsets(final Path segment) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segment));
+        final List<Integer> offsets = new ArrayList<>();
+        for(int position = 0; position + 8 <= buffer.capacity(); ) {
+            final int length = buffer.getInt(position);
+            if(length <= 0) {
+                break;
+            }
+            offsets.add(position);
+            position += 8 + length;
+        }
+        return offsets;
+    }
+
+    private static int readInt(final Path segment, final int position) throws IOException {
+        return ByteBuffer.wrap(Files.readAllBytes(segment)).getInt(position);
+    }
+
+    private static void write(final Path segment, final int position, final byte[] bytes) throws IOException {
+        try(FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(bytes), position);
+        }
+    }
+}
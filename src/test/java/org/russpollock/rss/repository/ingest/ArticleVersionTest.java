@@ -0,0 +1,32 @@
+package org.russpollock.rss.repository.ingest;
+
+import org.russpollock.rss.models.Article;
+import org.elasticsearch.action.index.IndexRequest;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ArticleVersionTest {
+
+    @Test
+    public void versionIsUpdatedThenPublishedMillis() {
+        final Article article = new Article();
+        assertEquals(ArticleVersion.NONE, ArticleVersion.of(article));
+        article.published = "2017-06-01T00:00:00Z";
+        assertEquals(1496275200000L, ArticleVersion.of(article));
+        article.updated = "2017-06-02T00:00:00Z";
+        assertEquals(1496361600000L, ArticleVersion.of(article));
+        article.updated = "not a date";
+        assertEquals(1496275200000L, ArticleVersion.of(article));
+    }
+
+    @Test
+    public void unversionedRequestsStayInternal() {
+        final IndexRequest unversioned = ArticleVersion.apply(new IndexRequest("articles"), ArticleVersion.NONE);
+        assertEquals(ArticleVersion.NONE, ArticleVersion.of(unversioned));
+
+        final IndexRequest versioned = ArticleVersion.apply(new IndexRequest("articles"), 1496275200000L);
+        assertEquals(ArticleVersion.VERSION_TYPE, versioned.versionType());
+        assertEquals(1496275200000L, ArticleVersion.of(versioned));
+    }
+}
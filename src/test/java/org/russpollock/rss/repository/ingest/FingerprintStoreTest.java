@@ -0,0 +1,160 @@
+package org.russpollock.rss.repository.ingest;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FingerprintStoreTest {
+    private static final int HEADER_BYTES = 16;
+    private static final int SLOT_BYTES = 16;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void putGetRemoveInMemory() {
+        final FingerprintStore store = new FingerprintStore();
+        for(long key = 1; key <= 5000; key++) {
+            store.put(key, fingerprint(key));
+        }
+        for(long key = 1; key <= 5000; key += 2) {
+            store.remove(key);
+        }
+        for(long key = 1; key <= 5000; key++) {
+            assertEquals(key % 2 == 0 ? fingerprint(key) : 0, store.get(key));
+        }
+        assertEquals(2500, store.getInMemorySize());
+    }
+
+    @Test
+    public void spilledEntriesSurviveReopen() throws IOException {
+        final Path file = folder.getRoot().toPath().resolve("fingerprints.bin");
+        try(FingerprintStore store = new FingerprintStore(file, 16)) {
+            for(long key = 1; key <= 1000; key++) {
+                store.put(key, fingerprint(key));
+            }
+            assertTrue(store.getSpilledSlots() > 0);
+        }
+        try(FingerprintStore store = new FingerprintStore(file, 16)) {
+            for(long key = 1; key <= 1000; key++) {
+                assertEquals(fingerprint(key), store.get(key));
+            }
+            assertEquals(1000, store.getSpilledSlots());
+        }
+    }
+
+    @Test
+    public void removeMasksSpilledEntry() throws IOException {
+        final Path file = folder.getRoot().toPath().resolve("fingerprints.bin");
+        try(FingerprintStore store = new FingerprintStore(file, 16)) {
+            store.put(7, 70);
+            store.put(8, 80);
+            store.flush();
+            store.remove(7);
+            assertEquals(0, store.get(7));
+        }
+        try(FingerprintStore store = new FingerprintStore(file, 16)) {
+            assertEquals(0, store.get(7));
+            assertEquals(80, store.get(8));
+            store.put(7, 71);
+            assertEquals(71, store.get(7));
+        }
+    }
+
+    @Test
+    public void growsSpillFile() throws IOException {
+        final Path file = folder.getRoot().toPath().resolve("fingerprints.bin");
+        final long initialSize;
+        try(FingerprintStore store = new FingerprintStore(file, 1024)) {
+            initialSize = Files.size(file);
+            for(long key = 1; key <= 100000; key++) {
+                store.put(key, fingerprint(key));
+            }
+        }
+        assertTrue(Files.size(file) > initialSize);
+        try(FingerprintStore store = new FingerprintStore(file, 1024)) {
+            for(long key = 1; key <= 100000; key++) {
+                assertEquals(fingerprint(key), store.get(key));
+            }
+        }
+    }
+
+    @Test
+    public void tornSlotReadsAsAbsent() throws IOException {
+        final Path file = folder.getRoot().toPath().resolve("fingerprints.bin");
+        try(FingerprintStore store = new FingerprintStore(file, 16)) {
+            for(long key = 1; key <= 100; key++) {
+                store.put(key, fingerprint(key));
+            }
+        }
+        // A crash between writing a slot's key and its fingerprint leaves the key with a 0 fingerprint
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final ByteBuffer slot = ByteBuffer.allocate(SLOT_BYTES);
+            for(long position = HEADER_BYTES; position < channel.size(); position += SLOT_BYTES) {
+                slot.clear();
+                channel.read(slot, position);
+                if(slot.getLong(0) == 42) {
+                    channel.write(ByteBuffer.allocate(8), position + 8);
+                }
+            }
+        }
+        try(FingerprintStore store = new FingerprintStore(file, 16)) {
+            assertEquals(0, store.get(42));
+            for(long key = 1; key <= 100; key++) {
+                if(key != 42) {
+                    assertEquals(fingerprint(key), store.get(key));
+                }
+            }
+            store.put(42, 4242);
+        }
+        try(FingerprintStore store = new FingerprintStore(file, 16)) {
+            assertEquals(4242, store.get(42));
+        }
+    }
+
+    @Test
+    public void leftoverGrowFileIsReplaced() throws IOException {
+        final Path file = folder.getRoot().toPath().resolve("fingerprints.bin");
+        // A crash while growing leaves a partly written grow file next to the intact spill file
+        Files.write(file.resolveSibling("fingerprints.bin.grow"), new byte[]{1, 2, 3, 4, 5});
+        try(FingerprintStore store = new FingerprintStore(file, 1024)) {
+            for(long key = 1; key <= 60000; key++) {
+                store.put(key, fingerprint(key));
+            }
+        }
+        try(FingerprintStore store = new FingerprintStore(file, 1024)) {
+            for(long key = 1; key <= 60000; key++) {
+                assertEquals(fingerprint(key), store.get(key));
+            }
+        }
+    }
+
+    @Test
+    public void rejectsFileWithTornHeader() throws IOException {
+        final Path file = folder.getRoot().toPath().resolve("fingerprints.bin");
+        // A crash while creating the file leaves it sized but without its header
+        Files.write(file, new byte[HEADER_BYTES + SLOT_BYTES * 1024]);
+        try {
+            new FingerprintStore(file, 16).close();
+            fail("Expected a spill file without a header to be rejected");
+        } catch(UncheckedIOException e) {
+            assertTrue(e.getMessage().contains(file.toString()));
+        }
+    }
+
+    private static long fingerprint(final long key) {
+        return key * 31 + 7;
+    }
+}
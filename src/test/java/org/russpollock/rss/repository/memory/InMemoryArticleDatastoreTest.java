@@ -0,0 +1,193 @@
+package org.russpollock.rss.repository.memory;
+
+import org.russpollock.rss.models.Article;
+import org.russpollock.rss.models.ArticleHit;
+import org.russpollock.rss.models.Tag;
+import org.russpollock.rss.repository.DeleteResult;
+import org.russpollock.rss.repository.queries.ArticleSearchQueryBuilder;
+import org.russpollock.rss.repository.queries.SearchQuery;
+import org.russpollock.rss.repository.queries.SearchQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class InMemoryArticleDatastoreTest {
+    private InMemoryArticleDatastore datastore;
+
+    @Before
+    public void setUp() {
+        datastore = new InMemoryArticleDatastore();
+        datastore.saveAll(Arrays.asList(
+                article("a", "Oil prices rise", "reuters", "Jane Doe", "2017-06-01T08:00:00Z",
+                        new Tag("markets", "category"), new Tag("oil", "keyword")),
+                article("b", "Oil output cut", "ap", "John Roe", "2017-06-15T00:00:00Z",
+                        new Tag("oil", "keyword")),
+                article("c", "Central bank holds rates", "reuters", "John Roe", "2017-06-30T23:59:59Z",
+                        new Tag("markets", "category")),
+                article("d", "Weather warning", "bbc", null, null)));
+    }
+
+    @Test
+    public void termFiltersMatchExactValues() {
+        assertEquals(Arrays.asList("a", "c"), ids(new ArticleSearchQueryBuilder().setSource("reuters")));
+        assertEquals(Arrays.asList("b", "c"), ids(new ArticleSearchQueryBuilder().setAuthor("John Roe")));
+        // `.raw` holds the whole value, the analyzed field its terms
+        assertEquals(Arrays.asList(), ids(new ArticleSearchQueryBuilder().setAuthor("john roe")));
+        assertEquals(Arrays.asList("b", "c"), ids(new SearchQueryBuilder()
+                .setFilters(QueryBuilders.termQuery("author", "roe"))));
+        assertEquals(Arrays.asList("a", "b", "c", "d"), ids(new ArticleSearchQueryBuilder().setContentType("text/html")));
+        assertEquals(Arrays.asList("a", "b"), ids(new SearchQueryBuilder()
+                .setFilters(QueryBuilders.boolQuery()
+                        .filter(QueryBuilders.termsQuery("source.raw", "ap", "reuters"))
+                        .filter(QueryBuilders.termQuery("tags.tag", "oil")))));
+    }
+
+    @Test
+    public void rangeFiltersCompareInstants() {
+        assertEquals(Arrays.asList("b", "c"), ids(new ArticleSearchQueryBuilder()
+                .setPublished("2017-06-15T00:00:00Z", "2017-07-01")));
+        assertEquals(Arrays.asList("c"), ids(new ArticleSearchQueryBuilder()
+                .setPublished("2017-06-15T00:00:00Z", SearchQuery.RANGE.GREATER_THAN)));
+        assertEquals(Arrays.asList("a", "b"), ids(new ArticleSearchQueryBuilder()
+                .setPublished("2017-06-15T02:00:00+02:00", SearchQuery.RANGE.LESS_THAN_OR_EQUAL)));
+        assertEquals(Arrays.asList("a"), ids(new ArticleSearchQueryBuilder()
+                .setPublished("1496304000000", SearchQuery.RANGE.LESS_THAN_OR_EQUAL)));
+    }
+
+    @Test
+    public void boolShouldRequiresOneClause() {
+        final ArrayList<Tag> tags = new ArrayList<>(Arrays.asList(new Tag("oil", "keyword"), new Tag("rates", "keyword")));
+        assertEquals(Arrays.asList("a", "b"), ids(new ArticleSearchQueryBuilder().setTags(tags)));
+        assertEquals(Arrays.asList("a"), ids(new ArticleSearchQueryBuilder().setTags(tags).setSource("reuters")));
+        assertEquals(Arrays.asList("a"), ids(new ArticleSearchQueryBuilder().setTags(tags).setSource("reuters")
+                .setFilterMode(SearchQuery.FILTER_MODE.POST_FILTER)));
+        assertEquals(Arrays.asList(), ids(new ArticleSearchQueryBuilder().setTags(new Tag("oil", "category"))
+                .setSource("ap")));
+        // Like the flattened ES tag fields, tag and tagType may match on different tags of an article
+        assertEquals(Arrays.asList("a"), ids(new ArticleSearchQueryBuilder().setTags(new Tag("oil", "category"))));
+
+        assertEquals(Arrays.asList("a", "b", "d"), ids(new SearchQueryBuilder().setFilters(QueryBuilders.boolQuery()
+                .should(QueryBuilders.termQuery("tags.tag", "oil"))
+                .should(QueryBuilders.termQuery("source.raw", "bbc")))));
+        assertEquals(Arrays.asList("a"), ids(new SearchQueryBuilder().setFilters(QueryBuilders.boolQuery()
+                .should(QueryBuilders.termQuery("tags.tag", "oil"))
+                .should(QueryBuilders.termQuery("tags.tag", "markets"))
+                .minimumShouldMatch(2))));
+        assertEquals(Arrays.asList("b", "d"), ids(new SearchQueryBuilder().setFilters(QueryBuilders.boolQuery()
+                .mustNot(QueryBuilders.termQuery("source.raw", "reuters")))));
+    }
+
+    @Test
+    public void hitsAreOrderedByScoreThenInsertion() {
+        datastore.save(article("e", "Oil oil everywhere", "ap", null, null));
+        final List<ArticleHit> hits = datastore.search(new SearchQueryBuilder()
+                .setFields("title", "description")
+                .setSearchQuery("oil")
+                .build());
+        assertEquals(Arrays.asList("http://example.com/e", "http://example.com/a", "http://example.com/b"),
+                hits.stream().map(hit -> hit.URL).collect(Collectors.toList()));
+        assertTrue(hits.get(0).searchScore > hits.get(1).searchScore);
+        // Equal length titles with one match each tie, the older article first
+        assertEquals(hits.get(1).searchScore, hits.get(2).searchScore, 0f);
+
+        // best_fields: a boosted field outscores the same match elsewhere
+        final List<ArticleHit> boosted = datastore.search(new SearchQueryBuilder()
+                .setFields("title", "source^3")
+                .setSearchQuery("reuters oil")
+                .build());
+        assertEquals("http://example.com/a", boosted.get(0).URL);
+        assertEquals("http://example.com/c", boosted.get(1).URL);
+
+        final List<ArticleHit> page = datastore.search(new SearchQueryBuilder()
+                .setFields("title")
+                .setSearchQuery("oil")
+                .setFrom(1)
+                .setLimit(1)
+                .build());
+        assertEquals(1, page.size());
+        assertEquals("http://example.com/a", page.get(0).URL);
+        assertEquals(3, datastore.count(new SearchQueryBuilder().setFields("title").setSearchQuery("oil").build()));
+        assertFalse(datastore.exists(new SearchQueryBuilder().setFields("title").setSearchQuery("gold").build()));
+    }
+
+    @Test
+    public void deletedAndReplacedArticlesAreGone() {
+        datastore.delete("http://example.com/a");
+        datastore.save(article("b", "Gas output cut", "ap", "John Roe", "2017-06-15T00:00:00Z",
+                new Tag("gas", "keyword")));
+        final DeleteResult result = datastore.deleteAll(Arrays.asList("http://example.com/d", "http://example.com/z"));
+        assertEquals(1, result.getDeleted());
+        assertEquals(1, result.getNotFound());
+
+        assertEquals(2, datastore.size());
+        assertNull(datastore.get("http://example.com/a"));
+        assertEquals("Gas output cut", datastore.get("http://example.com/b").title);
+        assertEquals(0, datastore.count(new SearchQueryBuilder().setFields("title").setSearchQuery("oil").build()));
+        // The replaced article is indexed again after c
+        assertEquals(Arrays.asList("c", "b"), ids(new SearchQueryBuilder()));
+        assertEquals(Arrays.asList(), ids(new ArticleSearchQueryBuilder().setTags(new Tag("oil", "keyword"))));
+        assertEquals(Arrays.asList("b"), ids(new ArticleSearchQueryBuilder().setTags(new Tag("gas", "keyword"))));
+        assertEquals(1, datastore.deleteByQuery(new ArticleSearchQueryBuilder().setSource("ap").build()).getDeleted());
+        assertEquals(Arrays.asList("c"), ids(new SearchQueryBuilder()));
+    }
+
+    @Test
+    public void tombstonedDocsLeaveScoringStats() {
+        // Replaced and deleted versions must not change the scores of the live articles
+        for(int i = 0; i < 5; i++) {
+            datastore.save(article("b", "Oil output cut", "ap", "John Roe", "2017-06-15T00:00:00Z"));
+            datastore.save(article("x" + i, "Oil oil oil oil and a very long title about nothing else", "ap", null, null));
+            datastore.delete("http://example.com/x" + i);
+        }
+        final InMemoryArticleDatastore fresh = new InMemoryArticleDatastore();
+        fresh.saveAll(Arrays.asList(
+                article("a", "Oil prices rise", "reuters", "Jane Doe", null),
+                article("c", "Central bank holds rates", "reuters", "John Roe", null),
+                article("d", "Weather warning", "bbc", null, null),
+                article("b", "Oil output cut", "ap", "John Roe", null)));
+
+        final SearchQuery query = new SearchQueryBuilder().setFields("title").setSearchQuery("oil rates").build();
+        final List<ArticleHit> hits = datastore.search(query);
+        final List<ArticleHit> expected = fresh.search(query);
+        assertEquals(expected.size(), hits.size());
+        for(int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).URL, hits.get(i).URL);
+            assertEquals(expected.get(i).searchScore, hits.get(i).searchScore, 0f);
+        }
+    }
+
+    private List<String> ids(final SearchQueryBuilder builder) {
+        final List<String> ids = new ArrayList<>();
+        for(ArticleHit hit: datastore.search(builder.setLimit(100).build())) {
+            ids.add(hit.URL.substring("http://example.com/".length()));
+        }
+        return ids;
+    }
+
+    private static Article article(final String id,
+                                   final String title,
+                                   final String source,
+                                   final String author,
+                                   final String published,
+                                   final Tag... tags) {
+        final Article article = new Article();
+        article.URL = "http://example.com/" + id;
+        article.title = title;
+        article.source = source;
+        article.author = author;
+        article.published = published;
+        article.contentType = "text/html";
+        article.tags = (tags.length == 0) ? null : Arrays.asList(tags);
+        return article;
+    }
+}
@@ -0,0 +1,71 @@
+package org.russpollock.rss.utils;
+
+import org.junit.Test;
+
+import java.time.DayOfWeek;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DatesTest {
+    private static final long JUNE_16 = 1497571200000L;
+
+    @Test
+    public void parsesMappingFormats() {
+        assertEquals(Long.valueOf(JUNE_16), Dates.parseMillis("2017-06-16"));
+        assertEquals(Long.valueOf(JUNE_16 + 3600000), Dates.parseMillis("2017-06-16T01:00:00"));
+        assertEquals(Long.valueOf(JUNE_16 + 3600000), Dates.parseMillis("2017-06-16T01:00:00Z"));
+        assertEquals(Long.valueOf(JUNE_16 - 3600000), Dates.parseMillis("2017-06-16T01:00:00+02:00"));
+        assertEquals(Long.valueOf(JUNE_16 + 1500), Dates.parseMillis("2017-06-16T00:00:01.500Z"));
+        assertEquals(Long.valueOf(JUNE_16), Dates.parseMillis(" 1497571200000 "));
+        assertEquals(Long.valueOf(JUNE_16), Dates.parseMillis(JUNE_16));
+    }
+
+    @Test
+    public void unparseableValuesAreNull() {
+        assertNull(Dates.parseMillis(null));
+        assertNull(Dates.parseMillis(""));
+        assertNull(Dates.parseMillis("yesterday"));
+        assertNull(Dates.parseMillis("16/06/2017"));
+        // Too short to be epoch millis and not an ISO date either
+        assertNull(Dates.parseMillis("20170616"));
+        assertNull(Dates.parseMillis("now-7x"));
+        assertNull(Dates.parseMillis("now-7d/"));
+        assertNull(Dates.parseMillis("now 7d"));
+    }
+
+    @Test
+    public void dateMathAddsAndRoundsDownInUtc() {
+        assertNow(now -> now, "now");
+        assertNow(now -> now.minusDays(7), "now-7d");
+        assertNow(now -> now.plusHours(1).plusMinutes(30), "now+1h+30m");
+        assertNow(now -> now.truncatedTo(ChronoUnit.DAYS), "now/d");
+        assertNow(now -> now.minusDays(1).truncatedTo(ChronoUnit.DAYS), "now-1d/d");
+        assertNow(now -> now.truncatedTo(ChronoUnit.HOURS), "now/H");
+        assertNow(now -> now.truncatedTo(ChronoUnit.DAYS)
+                .with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)), "now/w");
+        assertNow(now -> now.truncatedTo(ChronoUnit.DAYS).withDayOfMonth(1), "now/M");
+        assertNow(now -> now.minusMonths(1).truncatedTo(ChronoUnit.DAYS).withDayOfMonth(1), "now-1M/M");
+        assertNow(now -> now.truncatedTo(ChronoUnit.DAYS).withDayOfYear(1), "now/y");
+    }
+
+    /**
+     * assertNow
+     *
+     * Asserts date math resolves against the current time, checked before and after parsing so a
+     * rounding boundary passing in between does not fail the test.
+     */
+    private static void assertNow(final Function<ZonedDateTime, ZonedDateTime> expected, final String math) {
+        final long before = expected.apply(ZonedDateTime.now(ZoneOffset.UTC)).toInstant().toEpochMilli();
+        final Long parsed = Dates.parseMillis(math);
+        final long after = expected.apply(ZonedDateTime.now(ZoneOffset.UTC)).toInstant().toEpochMilli();
+        assertTrue(String.format("%s parsed as %s, expected between %s and %s", math, parsed, before, after),
+                parsed != null && parsed >= before && parsed <= after);
+    }
+}